@@ -0,0 +1,99 @@
+import floodit.bench.FloodTarget;
+import java.awt.Color;
+import javalib.worldimages.Posn;
+
+// Runs the benchmarks' calls on a FloodItWorld
+public class FloodWorldTarget implements FloodTarget {
+  FloodItWorld world;
+
+  // the points posnToCell is called with, one inside every cell of a diagonal
+  Posn[] posns;
+
+  // reused by every call to bestByEvaluation
+  MoveEvaluation moves = new MoveEvaluation();
+
+  public void reset(int size, int colors, long seed) {
+    this.world = new FloodItWorld(size, colors, seed);
+
+    this.posns = new Posn[size];
+    BoardLayout layout = this.world.layout;
+    for (int i = 0; i < size; i++) {
+      this.posns[i] = new Posn(
+          layout.left + (layout.columnStart(i) + layout.columnStart(i + 1)) / 2,
+          layout.top + (layout.rowStart(i) + layout.rowStart(i + 1)) / 2);
+    }
+  }
+
+  public void makeCells() {
+    this.world.makeCells();
+  }
+
+  public void newGame() {
+    this.world.makeCells();
+    this.world.startFlood();
+  }
+
+  public void restart() {
+    this.world.onKeyEvent("r");
+  }
+
+  public int floodToWin() {
+    int calls = 0;
+    while (!this.world.game.isWon()) {
+      Color next = this.world.colorList.get(calls % this.world.colorList.size());
+      this.world.newFloodColor = next;
+      this.world.updateCells();
+      calls++;
+    }
+    return calls;
+  }
+
+  public void floodPart(double fraction) {
+    int calls = 0;
+    while (this.world.game.floodedCount < fraction * this.world.game.cellCount()) {
+      this.world.newFloodColor = this.world.colorList.get(calls % this.world.colorList.size());
+      this.world.updateCells();
+      calls++;
+    }
+  }
+
+  public int bestByEvaluation() {
+    FloodGame game = this.world.game;
+    return game.evaluateMoves(this.moves).best(game.colors, game.floodColor());
+  }
+
+  public int bestBySnapshots() {
+    FloodGame game = this.world.game;
+    int best = -1;
+    int bestGain = -1;
+    for (int c : game.colors) {
+      if (c != game.floodColor()) {
+        int gain = game.snapshot().flood(c);
+        if (gain > bestGain) {
+          best = c;
+          bestGain = gain;
+        }
+      }
+    }
+    return best;
+  }
+
+  public boolean succesfulFlood() {
+    return this.world.succesfulFlood();
+  }
+
+  public Object posnToCell(int i) {
+    return this.world.posnToCell(this.posns[i]);
+  }
+
+  public int posnCount() {
+    return this.posns.length;
+  }
+
+  public Object makeScene(boolean redraw) {
+    if (redraw) {
+      this.world.invalidateScene();
+    }
+    return this.world.makeScene();
+  }
+}
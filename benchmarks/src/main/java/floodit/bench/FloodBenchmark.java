@@ -0,0 +1,136 @@
+package floodit.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Benchmarks of FloodItWorld's generation, flood, win check, hit test and render
+// paths over a range of board sizes and numbers of colors. Every world is seeded,
+// so runs compare the same boards. Run with -prof gc to see the bytes allocated
+// by each operation.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FloodBenchmark {
+  @Param({"8", "24", "50", "100", "200"})
+  int size;
+
+  @Param({"2", "3", "4", "5", "6"})
+  int colors;
+
+  FloodTarget target;
+  int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws ReflectiveOperationException {
+    this.target = (FloodTarget) Class.forName("FloodWorldTarget")
+        .getDeclaredConstructor().newInstance();
+    this.target.reset(this.size, this.colors, 42);
+  }
+
+  // Generating a new board of cells
+  @Benchmark
+  public void makeCells() {
+    this.target.makeCells();
+  }
+
+  // Starting over on a new board of a size already played, which reuses the board,
+  // its cells and the game; with -prof gc, gc.alloc.rate.norm should stay near
+  // 0 B/op
+  @Benchmark
+  public void restart() {
+    this.target.restart();
+  }
+
+  // Flooding a fresh board to the end, one updateCells call per color in turn.
+  // Making the board is part of the operation, so subtract makeCells from it.
+  @Benchmark
+  public int updateCells() {
+    this.target.newGame();
+    return this.target.floodToWin();
+  }
+
+  // Checking a board that has been flooded completely, which has to look at
+  // every cell
+  @Benchmark
+  public boolean succesfulFlood(FloodedBoard flooded) {
+    return flooded.target.succesfulFlood();
+  }
+
+  // Finding the best next move halfway through a game by evaluating every color
+  // at once, without copying the board
+  @Benchmark
+  public int evaluateMoves(HalfFlooded half) {
+    return half.target.bestByEvaluation();
+  }
+
+  // Finding the best next move halfway through a game by copying the game and
+  // playing each color on the copy, for comparison with evaluateMoves
+  @Benchmark
+  public int evaluateMovesBySnapshots(HalfFlooded half) {
+    return half.target.bestBySnapshots();
+  }
+
+  // Finding the cell under a click, cycling through points across the board
+  @Benchmark
+  public Object posnToCell() {
+    this.next++;
+    if (this.next == this.target.posnCount()) {
+      this.next = 0;
+    }
+    return this.target.posnToCell(this.next);
+  }
+
+  // Drawing the whole scene, as after every click or new board
+  @Benchmark
+  public Object makeScene() {
+    return this.target.makeScene(true);
+  }
+
+  // Drawing a frame in which nothing changed, as on idle ticks
+  @Benchmark
+  public Object makeSceneUnchanged() {
+    return this.target.makeScene(false);
+  }
+
+  // A world whose board has been flooded completely
+  @State(Scope.Thread)
+  public static class FloodedBoard {
+    FloodTarget target;
+
+    @Setup(Level.Trial)
+    public void setUp(FloodBenchmark benchmark) throws ReflectiveOperationException {
+      this.target = (FloodTarget) Class.forName("FloodWorldTarget")
+          .getDeclaredConstructor().newInstance();
+      this.target.reset(benchmark.size, benchmark.colors, 42);
+      this.target.floodToWin();
+    }
+  }
+
+  // A world whose board has been flooded halfway
+  @State(Scope.Thread)
+  public static class HalfFlooded {
+    FloodTarget target;
+
+    @Setup(Level.Trial)
+    public void setUp(FloodBenchmark benchmark) throws ReflectiveOperationException {
+      this.target = (FloodTarget) Class.forName("FloodWorldTarget")
+          .getDeclaredConstructor().newInstance();
+      this.target.reset(benchmark.size, benchmark.colors, 42);
+      this.target.floodPart(0.5);
+    }
+  }
+}
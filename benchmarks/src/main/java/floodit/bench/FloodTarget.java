@@ -0,0 +1,47 @@
+package floodit.bench;
+
+// The game as the benchmarks see it. JMH cannot generate code for benchmarks in
+// the default package, and classes in a named package cannot use the game's
+// default package classes, so the benchmarks call the game through this
+// interface, implemented by FloodWorldTarget next to the game's classes.
+public interface FloodTarget {
+  // Starts over with a new size x size world with the given number of colors,
+  // with its colors drawn from the given seed
+  void reset(int size, int colors, long seed);
+
+  // Calls makeCells on the world
+  void makeCells();
+
+  // Makes new cells and starts a new game on them
+  void newGame();
+
+  // Starts over on a new board of the same size, as the r key does
+  void restart();
+
+  // Calls updateCells with each of the world's colors in turn until the board is
+  // flooded, returning the number of calls
+  int floodToWin();
+
+  // Calls updateCells with each of the world's colors in turn until at least the
+  // given fraction of the board is flooded
+  void floodPart(double fraction);
+
+  // The color that absorbs the most cells, found by evaluating every move at once
+  int bestByEvaluation();
+
+  // The color that absorbs the most cells, found by playing each one on a snapshot
+  // of the game
+  int bestBySnapshots();
+
+  // Calls succesfulFlood on the world
+  boolean succesfulFlood();
+
+  // Calls posnToCell on the i-th of a fixed set of points spread over the board
+  Object posnToCell(int i);
+
+  // The number of points posnToCell can be called with
+  int posnCount();
+
+  // Calls makeScene on the world, first marking the scene out of date if redraw
+  Object makeScene(boolean redraw);
+}
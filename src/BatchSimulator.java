@@ -0,0 +1,374 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import tester.Tester;
+
+// Plays a batch of seeded games of one size and number of colors with a strategy,
+// split across every core with fork/join, and gathers how many moves each took and
+// how many were won under the clicks allowed. Game i of a batch is the board
+// FloodGame.newGame makes from boardSeed(seed, i), and the strategy's random
+// choices come from SplittableRandoms split in a fixed pattern, so a batch gives
+// the same result for the same seed however the work is scheduled.
+class BatchSimulator {
+  // the most games one task plays before it is split in two
+  static final int GAMES_PER_TASK = 64;
+
+  // spreads the board seeds of a batch over the whole range of longs
+  static final long SEED_GAMMA = 0x9E3779B97F4A7C15L;
+
+  // the board and game every thread reuses for each game it plays
+  static final ThreadLocal<SimulationWorker> WORKERS = new ThreadLocal<SimulationWorker>();
+
+  // the boards played, and how they are played
+  int size;
+  int numColors;
+  Strategy strategy;
+
+  // the number of moves a game may take and still count as won
+  int movesAllowed;
+
+  // A simulator of size x size boards with numColors colors, counting games won
+  // under the usual clicks allowed
+  BatchSimulator(int size, int numColors, Strategy strategy) {
+    this.size = size;
+    this.numColors = numColors;
+    this.strategy = strategy;
+    this.movesAllowed = FloodGame.defaultMovesAllowed(size, numColors);
+  }
+
+  // The seed of the board of the given game in a batch with the given seed
+  static long boardSeed(long seed, int game) {
+    return seed + game * SEED_GAMMA;
+  }
+
+  // The worker of the current thread
+  static SimulationWorker worker() {
+    SimulationWorker worker = WORKERS.get();
+    if (worker == null) {
+      worker = new SimulationWorker();
+      WORKERS.set(worker);
+    }
+    return worker;
+  }
+
+  // Plays the given number of games on the common fork/join pool
+  SimulationResult run(long seed, int games) {
+    return this.run(seed, games, ForkJoinPool.commonPool());
+  }
+
+  // Plays the given number of games on the given pool
+  SimulationResult run(long seed, int games, ForkJoinPool pool) {
+    return pool.invoke(new SimulationTask(this, seed, 0, games, new SplittableRandom(seed)));
+  }
+
+  // Prints the statistics of every usual board size and number of colors, playing
+  // the number of games given as the first argument (10000 by default) with the
+  // greedy solver
+  public static void main(String[] args) {
+    int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+    int[] sizes = {8, 12, 15, 20, 24};
+    Strategy greedy = new SolverStrategy(new GreedySolver());
+    for (int size : sizes) {
+      for (int numColors = 2; numColors <= Palette.SIZE; numColors++) {
+        SimulationResult result = new BatchSimulator(size, numColors, greedy).run(seed, games);
+        System.out.println("size " + size + ", " + numColors + " colors: " + result.report());
+      }
+    }
+  }
+}
+
+// Decides the moves that flood a game's board
+interface Strategy {
+  // The number of moves this strategy takes to flood the given game, counting the
+  // moves already made, drawing any random choices from rand. It may play the game.
+  // Strategies are shared by every thread of a batch, so they must keep no state.
+  public int movesToFlood(FloodGame game, SplittableRandom rand);
+}
+
+// Plays random colors until the board is flooded; picking the flood color again is
+// not a move, so it costs nothing
+class RandomStrategy implements Strategy {
+  public int movesToFlood(FloodGame game, SplittableRandom rand) {
+    while (!game.isWon()) {
+      game.play(game.colors[rand.nextInt(game.colors.length)]);
+    }
+    return game.moves;
+  }
+}
+
+// Plays the color that absorbs the most cells, as the game's engine works it out
+// for every color at once, until the board is flooded. Ties go to the color that
+// leaves the larger frontier.
+class GreedyStrategy implements Strategy {
+  public int movesToFlood(FloodGame game, SplittableRandom rand) {
+    MoveEvaluation moves = new MoveEvaluation();
+    while (!game.isWon()) {
+      game.play(game.evaluateMoves(moves).best(game.colors, game.floodColor()));
+    }
+    return game.moves;
+  }
+}
+
+// Takes the moves a solver finds on the game's regions
+class SolverStrategy implements Strategy {
+  Solver solver;
+
+  SolverStrategy(Solver solver) {
+    this.solver = solver;
+  }
+
+  public int movesToFlood(FloodGame game, SplittableRandom rand) {
+    return game.moves + this.solver.solve(RegionGraph.of(game)).length();
+  }
+}
+
+// Plays the games from one index up to another, splitting itself in halves until
+// each part has at most GAMES_PER_TASK games
+class SimulationTask extends RecursiveTask<SimulationResult> {
+  static final long serialVersionUID = 1L;
+
+  BatchSimulator simulator;
+  long seed;
+  int from;
+  int to;
+  SplittableRandom rand;
+
+  SimulationTask(BatchSimulator simulator, long seed, int from, int to, SplittableRandom rand) {
+    this.simulator = simulator;
+    this.seed = seed;
+    this.from = from;
+    this.to = to;
+    this.rand = rand;
+  }
+
+  // The statistics of this task's games
+  protected SimulationResult compute() {
+    if (this.to - this.from <= BatchSimulator.GAMES_PER_TASK) {
+      return this.play();
+    }
+    int mid = (this.from + this.to) >>> 1;
+    SimulationTask left = new SimulationTask(this.simulator, this.seed, this.from, mid,
+        this.rand.split());
+    SimulationTask right = new SimulationTask(this.simulator, this.seed, mid, this.to,
+        this.rand);
+    left.fork();
+    SimulationResult result = right.compute();
+    return left.join().merge(result);
+  }
+
+  // Plays this task's games one after another on the thread's reused game
+  SimulationResult play() {
+    SimulationWorker worker = BatchSimulator.worker();
+    SimulationResult result = new SimulationResult();
+    for (int i = this.from; i < this.to; i++) {
+      FloodGame game = worker.game(this.simulator.size, this.simulator.numColors,
+          BatchSimulator.boardSeed(this.seed, i));
+      int moves = this.simulator.strategy.movesToFlood(game, this.rand);
+      result.add(moves, moves <= this.simulator.movesAllowed);
+    }
+    return result;
+  }
+}
+
+// The board and game one thread refills for every game it plays. Games
+// flood with bitboards when the board is narrow enough for them.
+class SimulationWorker {
+  PackedBoard board;
+  FloodGame game;
+
+  // The game FloodGame.newGame would make from the given seed, played on this
+  // worker's board
+  // EFFECT: refills and restarts this.game, making a new one if the size or number
+  // of colors has changed
+  FloodGame game(int size, int numColors, long seed) {
+    if (this.board == null || this.board.width() != size
+        || this.game.colors.length != numColors) {
+      int[] colors = new int[numColors];
+      for (int i = 0; i < numColors; i++) {
+        colors[i] = i;
+      }
+      this.board = new PackedBoard(size, size);
+      FloodEngine engine;
+      if (size <= BitboardEngine.MAX_WIDTH) {
+        engine = new BitboardEngine(this.board);
+      }
+      else {
+        engine = new FrontierEngine(this.board);
+      }
+      this.game = new FloodGame(this.board, engine, colors, 0);
+    }
+    this.board.clearFlooded();
+    BoardGenerator.fill(this.board, seed, numColors, BoardGenerator.CANONICAL);
+    this.game.movesAllowed = FloodGame.defaultMovesAllowed(size, numColors);
+    this.game.restart();
+    return this.game;
+  }
+}
+
+// The statistics of a batch of games: how many were played and won, and how many
+// games took each number of moves
+class SimulationResult {
+  long games;
+  long wins;
+
+  // the number of games that took each number of moves
+  long[] histogram = new long[64];
+
+  // Counts one game that took the given number of moves
+  // EFFECT: updates the counts and histogram
+  void add(int moves, boolean won) {
+    if (moves >= this.histogram.length) {
+      this.histogram = Arrays.copyOf(this.histogram,
+          Math.max(moves + 1, this.histogram.length * 2));
+    }
+    this.histogram[moves]++;
+    this.games++;
+    if (won) {
+      this.wins++;
+    }
+  }
+
+  // Adds the games of another result to this one, returning this result
+  // EFFECT: updates the counts and histogram
+  SimulationResult merge(SimulationResult other) {
+    if (other.histogram.length > this.histogram.length) {
+      this.histogram = Arrays.copyOf(this.histogram, other.histogram.length);
+    }
+    for (int moves = 0; moves < other.histogram.length; moves++) {
+      this.histogram[moves] += other.histogram[moves];
+    }
+    this.games += other.games;
+    this.wins += other.wins;
+    return this;
+  }
+
+  // The average number of moves a game took
+  double mean() {
+    long total = 0;
+    for (int moves = 0; moves < this.histogram.length; moves++) {
+      total += moves * this.histogram[moves];
+    }
+    return this.games == 0 ? 0 : (double) total / this.games;
+  }
+
+  // The fraction of games won
+  double winRate() {
+    return this.games == 0 ? 0 : (double) this.wins / this.games;
+  }
+
+  // The fewest moves that at least the given fraction of games took no more than
+  int percentile(double fraction) {
+    long needed = (long) Math.ceil(fraction * this.games);
+    long seen = 0;
+    for (int moves = 0; moves < this.histogram.length; moves++) {
+      seen += this.histogram[moves];
+      if (seen >= Math.max(needed, 1)) {
+        return moves;
+      }
+    }
+    return this.histogram.length - 1;
+  }
+
+  // A one line summary of these statistics
+  String report() {
+    return this.games + " games, mean " + String.format("%.2f", this.mean())
+        + " moves, p50 " + this.percentile(0.5) + ", p99 " + this.percentile(0.99)
+        + ", won " + String.format("%.1f", 100 * this.winRate()) + "%";
+  }
+}
+
+// Examples of batch simulation
+class ExamplesBatchSimulator {
+
+  // tests the boardSeed method and that workers make the boards newGame makes
+  void testWorkerGame(Tester t) {
+    SimulationWorker worker = new SimulationWorker();
+    FloodGame expected = FloodGame.newGame(10, 4, BatchSimulator.boardSeed(5, 3));
+    FloodGame game = worker.game(10, 4, BatchSimulator.boardSeed(5, 3));
+    FloodGame reused = worker.game(10, 4, BatchSimulator.boardSeed(5, 3));
+
+    t.checkExpect(BatchSimulator.boardSeed(5, 0), 5L);
+    t.checkExpect(reused, game);
+    t.checkExpect(game.floodedCount, expected.floodedCount);
+    t.checkExpect(game.movesAllowed, expected.movesAllowed);
+    for (int i = 0; i < 100; i++) {
+      t.checkExpect(game.board.colorAt(i), expected.board.colorAt(i));
+    }
+
+    t.checkExpect(game.engine instanceof BitboardEngine, true);
+
+    // A new size gets a new game
+    t.checkExpect(worker.game(6, 4, 1).board.width(), 6);
+    t.checkExpect(worker.game(70, 4, 1).engine instanceof FrontierEngine, true);
+  }
+
+  // tests the strategies
+  void testStrategies(Tester t) {
+    FloodGame game = FloodGame.newGame(8, 4, 11);
+    int greedy = new GreedySolver().solve(RegionGraph.of(game)).length();
+    t.checkExpect(new SolverStrategy(new GreedySolver())
+        .movesToFlood(game, new SplittableRandom(1)), greedy);
+
+    int random = new RandomStrategy().movesToFlood(game, new SplittableRandom(1));
+    t.checkExpect(game.isWon(), true);
+    t.checkExpect(random, game.moves);
+
+    // Greedy moves flood the board in fewer moves than random ones
+    FloodGame fresh = FloodGame.newGame(8, 4, 11);
+    int byGain = new GreedyStrategy().movesToFlood(fresh, new SplittableRandom(1));
+    t.checkExpect(fresh.isWon(), true);
+    t.checkExpect(byGain, fresh.moves);
+    t.checkExpect(byGain < random, true);
+  }
+
+  // tests that a batch has the same result however many threads play it
+  void testRun(Tester t) {
+    BatchSimulator greedy = new BatchSimulator(8, 4, new SolverStrategy(new GreedySolver()));
+    ForkJoinPool single = new ForkJoinPool(1);
+    ForkJoinPool three = new ForkJoinPool(3);
+    ForkJoinPool four = new ForkJoinPool(4);
+    SimulationResult one = greedy.run(7, 300, single);
+    SimulationResult onFour = greedy.run(7, 300, four);
+
+    t.checkExpect(one.games, 300L);
+    t.checkExpect(onFour, one);
+    t.checkExpect(greedy.run(7, 300), one);
+    t.checkExpect(one.wins <= 300, true);
+
+    // Random choices are split the same way on any number of threads
+    BatchSimulator random = new BatchSimulator(6, 3, new RandomStrategy());
+    t.checkExpect(random.run(3, 500, three), random.run(3, 500, single));
+
+    single.shutdown();
+    three.shutdown();
+    four.shutdown();
+  }
+
+  // tests the add, merge and statistics methods of SimulationResult
+  void testSimulationResult(Tester t) {
+    SimulationResult result = new SimulationResult();
+    t.checkExpect(result.mean(), 0.0);
+    t.checkExpect(result.winRate(), 0.0);
+
+    result.add(10, true);
+    result.add(12, true);
+    result.add(20, false);
+    t.checkExpect(result.games, 3L);
+    t.checkExpect(result.wins, 2L);
+    t.checkInexact(result.mean(), 14.0, 0.001);
+    t.checkExpect(result.percentile(0.5), 12);
+    t.checkExpect(result.percentile(1.0), 20);
+    t.checkExpect(result.report(), "3 games, mean 14.00 moves, p50 12, p99 20, won 66.7%");
+
+    SimulationResult other = new SimulationResult();
+    other.add(100, false);
+    t.checkExpect(other.histogram.length, 128);
+    t.checkExpect(result.merge(other), result);
+    t.checkExpect(result.games, 4L);
+    t.checkExpect(result.histogram[100], 1L);
+    t.checkExpect(result.percentile(1.0), 100);
+  }
+
+}
@@ -0,0 +1,443 @@
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// Floods a board of at most 64 columns with bitboards: every row of the flooded
+// region, and of each color, is one long with bit x for the cell in column x. A
+// spread grows the flooded rows into the new color's rows with shifts, ANDs and ORs
+// until nothing changes, so it works on a whole row of cells at once instead of
+// one cell and its neighbors at a time. Absorbed cells are then marked flooded on
+// the board as well.
+class BitboardEngine implements FloodEngine {
+  // the most columns a board can have, one per bit of a long
+  static final int MAX_WIDTH = 64;
+
+  // the board being flooded
+  Board board;
+  int width;
+  int height;
+
+  // the bits of a row that are on the board
+  long rowMask;
+
+  // the cells of each color index, row by row, as they were when the game started
+  long[][] colorRows;
+
+  // the flooded cells, row by row, and scratch space for them before a spread
+  long[] flooded;
+  long[] before;
+
+  // scratch space for the flooded rows an evaluation grows for each color
+  long[] trial;
+
+  // the color index the flooded region currently has
+  int floodColor;
+
+  // the XOR of the Zobrist keys of the flooded cells
+  long floodedHash;
+
+  BitboardEngine(Board board) {
+    if (board.width() > MAX_WIDTH) {
+      throw new IllegalArgumentException("Bitboards hold at most " + MAX_WIDTH + " columns");
+    }
+    this.board = board;
+    this.width = board.width();
+    this.height = board.height();
+    this.rowMask = this.width == MAX_WIDTH ? -1L : (1L << this.width) - 1;
+    this.colorRows = new long[Palette.SIZE][this.height];
+    this.flooded = new long[this.height];
+    this.before = new long[this.height];
+    this.trial = new long[this.height];
+  }
+
+  // Copies the state of another engine onto a copy of its board; the colors never
+  // change during a game, so they are shared
+  BitboardEngine(Board board, BitboardEngine other) {
+    this.board = board;
+    this.width = other.width;
+    this.height = other.height;
+    this.rowMask = other.rowMask;
+    this.colorRows = other.colorRows;
+    this.flooded = other.flooded.clone();
+    this.before = new long[this.height];
+    this.trial = new long[this.height];
+    this.floodColor = other.floodColor;
+    this.floodedHash = other.floodedHash;
+  }
+
+  // Reads the colors of the board into rows, floods the top-left cell and every cell
+  // connected to it by its color, returning the number of cells flooded
+  // EFFECT: replaces the color and flooded rows
+  public int start() {
+    for (int color = 0; color < Palette.SIZE; color++) {
+      for (int y = 0; y < this.height; y++) {
+        this.colorRows[color][y] = 0;
+      }
+    }
+    for (int y = 0; y < this.height; y++) {
+      this.flooded[y] = 0;
+      for (int x = 0; x < this.width; x++) {
+        this.colorRows[this.board.colorAt(y * this.width + x)][y] |= 1L << x;
+      }
+    }
+    this.board.flood(0);
+    this.floodedHash = Zobrist.cellKey(0);
+    this.flooded[0] = 1L;
+    this.floodColor = this.board.colorAt(0);
+    return 1 + this.spread(this.floodColor);
+  }
+
+  // Changes the flood color and absorbs every unflooded cell of that color that is
+  // connected to the flooded region, returning the number of cells absorbed. The
+  // rows are swept down and then up until a pair of sweeps changes nothing.
+  // EFFECT: grows the flooded rows and floods the absorbed cells on the board
+  public int spread(int color) {
+    System.arraycopy(this.flooded, 0, this.before, 0, this.height);
+    this.growAll(this.flooded, this.colorRows[color]);
+    this.floodColor = color;
+    return this.markAbsorbed();
+  }
+
+  // Grows the given flooded rows into the connected cells of the mask, sweeping
+  // down and then up until a pair of sweeps changes nothing
+  // EFFECT: updates the given rows
+  void growAll(long[] rows, long[] mask) {
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int y = 0; y < this.height; y++) {
+        changed = this.grow(rows, y, mask) || changed;
+      }
+      for (int y = this.height - 2; y >= 0; y--) {
+        changed = this.grow(rows, y, mask) || changed;
+      }
+    }
+  }
+
+  // Grows the flooded cells of the given row into the cells of the mask next to
+  // them, in this row or the rows above and below, returning true if it changed
+  // EFFECT: updates the row of flooded cells
+  boolean grow(long[] rows, int y, long[] mask) {
+    long row = rows[y];
+    long reach = (row << 1) | (row >>> 1);
+    if (y > 0) {
+      reach |= rows[y - 1];
+    }
+    if (y < this.height - 1) {
+      reach |= rows[y + 1];
+    }
+    long grown = row | (reach & mask[y]);
+
+    // Runs of the color along the row fill in one bit further each time
+    long last = row;
+    while (grown != last) {
+      last = grown;
+      grown |= ((grown << 1) | (grown >>> 1)) & mask[y];
+    }
+    rows[y] = grown;
+    return grown != row;
+  }
+
+  // Floods the cells on the board that the last spread absorbed, returning how many
+  // there were
+  // EFFECT: floods every cell flooded since the spread started, adding their keys
+  // to the hash
+  int markAbsorbed() {
+    int absorbed = 0;
+    for (int y = 0; y < this.height; y++) {
+      long added = this.flooded[y] & ~this.before[y];
+      absorbed += Long.bitCount(added);
+      while (added != 0) {
+        int cell = y * this.width + Long.numberOfTrailingZeros(added);
+        this.board.flood(cell);
+        this.floodedHash ^= Zobrist.cellKey(cell);
+        added &= added - 1;
+      }
+    }
+    return absorbed;
+  }
+
+  // Works out what spreading every color would do by growing a scratch copy of the
+  // flooded rows into each color in turn, so the board and the flooded rows are
+  // left alone. Colors with no cells next to the flood are skipped.
+  // EFFECT: fills in into, and uses this.trial as scratch space
+  public void evaluateMoves(MoveEvaluation into) {
+    int floodedCells = 0;
+    for (int y = 0; y < this.height; y++) {
+      floodedCells += Long.bitCount(this.flooded[y]);
+    }
+    int frontier = this.frontierOf(this.flooded);
+    for (int c = 0; c < Palette.SIZE; c++) {
+      into.gain[c] = 0;
+      into.frontier[c] = frontier;
+      if (c == this.floodColor || !this.touches(this.colorRows[c])) {
+        continue;
+      }
+      System.arraycopy(this.flooded, 0, this.trial, 0, this.height);
+      this.growAll(this.trial, this.colorRows[c]);
+      int grownCells = 0;
+      for (int y = 0; y < this.height; y++) {
+        grownCells += Long.bitCount(this.trial[y]);
+      }
+      into.gain[c] = grownCells - floodedCells;
+      into.frontier[c] = this.frontierOf(this.trial);
+    }
+  }
+
+  // True if any unflooded cell of the mask is next to a flooded cell
+  boolean touches(long[] mask) {
+    for (int y = 0; y < this.height; y++) {
+      long row = this.flooded[y];
+      long reach = (row << 1) | (row >>> 1);
+      if (y > 0) {
+        reach |= this.flooded[y - 1];
+      }
+      if (y < this.height - 1) {
+        reach |= this.flooded[y + 1];
+      }
+      if ((reach & mask[y] & ~row) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // The number of cells of the given flooded rows that are next to a cell that is
+  // not flooded, counted a row at a time
+  int frontierOf(long[] rows) {
+    int count = 0;
+    for (int y = 0; y < this.height; y++) {
+      long open = ~rows[y] & this.rowMask;
+      long near = ((open << 1) | (open >>> 1)) & this.rowMask;
+      if (y > 0) {
+        near |= ~rows[y - 1] & this.rowMask;
+      }
+      if (y < this.height - 1) {
+        near |= ~rows[y + 1] & this.rowMask;
+      }
+      count += Long.bitCount(rows[y] & near);
+    }
+    return count;
+  }
+
+  // True if every cell has been flooded, checked a row at a time
+  boolean allFlooded() {
+    for (int y = 0; y < this.height; y++) {
+      if (this.flooded[y] != this.rowMask) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The color index the flooded region currently has
+  public int floodColor() {
+    return this.floodColor;
+  }
+
+  // A copy of this engine, with its own flooded rows, flooding the given board
+  public FloodEngine copyOnto(Board board) {
+    return new BitboardEngine(board, this);
+  }
+
+  // The XOR of the Zobrist keys of every flooded cell
+  public long floodedHash() {
+    return this.floodedHash;
+  }
+
+}
+
+// Examples of flooding with bitboards
+class ExamplesBitboardEngine {
+
+  PackedBoard board;
+  BitboardEngine engine;
+
+  void initData() {
+    // 4 columns, 3 rows of color indexes:
+    // 0 0 1 2
+    // 1 1 1 2
+    // 2 0 1 0
+    this.board = new PackedBoard(4, 3);
+    int[] colors = {0, 0, 1, 2, 1, 1, 1, 2, 2, 0, 1, 0};
+    for (int i = 0; i < colors.length; i++) {
+      this.board.setColor(i, colors[i]);
+    }
+    this.engine = new BitboardEngine(this.board);
+  }
+
+  // tests the BitboardEngine constructor
+  void testConstructor(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.engine.rowMask, 15L);
+    t.checkExpect(new BitboardEngine(new PackedBoard(64, 2)).rowMask, -1L);
+    t.checkConstructorException(
+        new IllegalArgumentException("Bitboards hold at most 64 columns"),
+        "BitboardEngine", new PackedBoard(65, 2));
+  }
+
+  // tests the start method
+  void testStart(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.engine.start(), 2);
+    t.checkExpect(this.engine.colorRows[1], new long[] {4L, 7L, 4L});
+    t.checkExpect(this.engine.colorRows[2], new long[] {8L, 8L, 1L});
+    t.checkExpect(this.engine.flooded, new long[] {3L, 0L, 0L});
+    t.checkExpect(this.board.isFlooded(1), true);
+    t.checkExpect(this.board.isFlooded(2), false);
+    t.checkExpect(this.engine.floodColor(), 0);
+  }
+
+  // tests the spread, grow and markAbsorbed methods
+  void testSpread(Tester t) {
+    this.initData();
+    this.engine.start();
+
+    // Color 1 runs along the middle row and down to the bottom one
+    t.checkExpect(this.engine.spread(1), 5);
+    t.checkExpect(this.engine.flooded, new long[] {7L, 7L, 4L});
+    t.checkExpect(this.board.isFlooded(10), true);
+    t.checkExpect(this.board.isFlooded(3), false);
+    t.checkExpect(this.engine.floodColor(), 1);
+
+    t.checkExpect(this.engine.spread(5), 0);
+    t.checkExpect(this.engine.spread(2), 3);
+    t.checkExpect(this.engine.allFlooded(), false);
+    t.checkExpect(this.engine.spread(0), 2);
+    t.checkExpect(this.engine.allFlooded(), true);
+    for (int i = 0; i < 12; i++) {
+      t.checkExpect(this.board.isFlooded(i), true);
+    }
+  }
+
+  // tests that a spread reaches back up rows it has already swept past
+  void testSpreadWindingPath(Tester t) {
+    // 3 columns, 5 rows, with a path of 1s that goes down, up and down again:
+    // 0 1 1
+    // 1 1 0
+    // 1 0 1
+    // 1 0 1
+    // 1 1 1
+    PackedBoard winding = new PackedBoard(3, 5);
+    int[] colors = {0, 1, 1, 1, 1, 0, 1, 0, 1, 1, 0, 1, 1, 1, 1};
+    for (int i = 0; i < colors.length; i++) {
+      winding.setColor(i, colors[i]);
+    }
+    BitboardEngine engine = new BitboardEngine(winding);
+    engine.start();
+
+    t.checkExpect(engine.spread(1), 11);
+    t.checkExpect(winding.isFlooded(8), true);
+    t.checkExpect(winding.isFlooded(5), false);
+  }
+
+  // tests the grow method at the edges of a 64 column board
+  void testGrowEdges(Tester t) {
+    PackedBoard wide = new PackedBoard(64, 2);
+    for (int i = 0; i < 128; i++) {
+      wide.setColor(i, 1);
+    }
+    wide.setColor(0, 0);
+    BitboardEngine engine = new BitboardEngine(wide);
+
+    t.checkExpect(engine.start(), 1);
+    t.checkExpect(engine.spread(1), 127);
+    t.checkExpect(engine.flooded, new long[] {-1L, -1L});
+    t.checkExpect(engine.allFlooded(), true);
+    t.checkExpect(wide.isFlooded(63), true);
+    t.checkExpect(wide.isFlooded(127), true);
+  }
+
+  // tests the copyOnto method
+  void testCopyOnto(Tester t) {
+    this.initData();
+    this.engine.start();
+    this.engine.spread(1);
+    PackedBoard copyBoard = new PackedBoard(this.board);
+    FloodEngine copy = this.engine.copyOnto(copyBoard);
+
+    t.checkExpect(copy.spread(2), 3);
+    t.checkExpect(copyBoard.isFlooded(3), true);
+    t.checkExpect(this.board.isFlooded(3), false);
+    t.checkExpect(this.engine.spread(2), 3);
+  }
+
+  // tests that bitboards flood the same cells as FloodItWorld's updateCells on the
+  // ConsCell graph, move for move, on random boards up to 64 columns wide
+  void testMatchesUpdateCells(Tester t) {
+    int[] sizes = {8, 24, 63, 64};
+    for (int size : sizes) {
+      for (int seed = 0; seed < 5; seed++) {
+        FloodItWorld world = new FloodItWorld(size, 6, seed);
+
+        PackedBoard board = new PackedBoard(size, size);
+        for (int i = 0; i < size * size; i++) {
+          board.setColor(i, world.cells.colorAt(i));
+        }
+        BitboardEngine engine = new BitboardEngine(board);
+        engine.start();
+
+        Random moves = new Random(seed);
+        boolean same = true;
+        while (!world.game.isWon()) {
+          int color = world.game.colors[moves.nextInt(world.game.colors.length)];
+          world.newFloodColor = Palette.color(color);
+          world.updateCells();
+          engine.spread(color);
+          for (int i = 0; i < size * size; i++) {
+            same = same && board.isFlooded(i) == world.cells.isFlooded(i);
+          }
+        }
+        t.checkExpect(same, true);
+        t.checkExpect(engine.allFlooded(), true);
+      }
+    }
+  }
+
+  // tests the evaluateMoves, touches and frontierOf methods
+  void testEvaluateMoves(Tester t) {
+    this.initData();
+    this.engine.start();
+    MoveEvaluation moves = new MoveEvaluation();
+    this.engine.evaluateMoves(moves);
+
+    t.checkExpect(moves.gain, new int[] {0, 5, 0, 0, 0, 0});
+    t.checkExpect(moves.frontier, new int[] {2, 5, 2, 2, 2, 2});
+    t.checkExpect(this.engine.touches(this.engine.colorRows[1]), true);
+    t.checkExpect(this.engine.touches(this.engine.colorRows[2]), false);
+    t.checkExpect(this.engine.frontierOf(new long[] {15L, 15L, 15L}), 0);
+
+    // The flooded rows are left as they were
+    t.checkExpect(this.engine.flooded, new long[] {3L, 0L, 0L});
+    t.checkExpect(this.board.isFlooded(2), false);
+  }
+
+  // tests that bitboards evaluate every move the same way as the frontier engine,
+  // on random boards up to 64 columns wide
+  void testEvaluateMovesMatchesFrontier(Tester t) {
+    MoveEvaluation bits = new MoveEvaluation();
+    MoveEvaluation cells = new MoveEvaluation();
+    boolean same = true;
+    for (int size : new int[] {5, 31, 64}) {
+      for (int seed = 0; seed < 4; seed++) {
+        FloodGame byFrontier = FloodGame.newGame(size, 6, seed);
+        PackedBoard board = BoardGenerator.generate(seed, size, 6);
+        FloodGame byBits = new FloodGame(board, new BitboardEngine(board), byFrontier.colors, 0);
+
+        Random rand = new Random(seed);
+        while (!byFrontier.isWon()) {
+          byFrontier.evaluateMoves(cells);
+          byBits.evaluateMoves(bits);
+          same = same && Arrays.equals(bits.gain, cells.gain)
+              && Arrays.equals(bits.frontier, cells.frontier);
+          int color = rand.nextInt(6);
+          byFrontier.play(color);
+          byBits.play(color);
+        }
+      }
+    }
+    t.checkExpect(same, true);
+  }
+}
@@ -0,0 +1,388 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import tester.Tester;
+
+// Represents the cells of a Flood-It game by index, so the flood can run over
+// any representation of the board. Cells are numbered row by row from the
+// top-left corner: the cell at column x and row y has index y * width() + x.
+// Colors are small indexes rather than Color objects.
+interface Board {
+  // The number of columns in this board
+  public int width();
+
+  // The number of rows in this board
+  public int height();
+
+  // The color index of the cell at the given index
+  public int colorAt(int index);
+
+  // Changes the color index of the cell at the given index
+  public void setColor(int index, int color);
+
+  // True if the cell at the given index has been flooded
+  public boolean isFlooded(int index);
+
+  // 'Floods' the cell at the given index
+  public void flood(int index);
+
+}
+
+// A board stored as primitive arrays: one byte of color index per cell and one
+// bit of flooded state per cell. Neighbors are never stored, they are computed
+// from the index, and a whole board is only a couple of arrays on the heap.
+class PackedBoard implements Board {
+  int width;
+  int height;
+
+  // the color index of every cell, row by row
+  byte[] colors;
+
+  // the flooded state of every cell, 64 cells to a word
+  long[] flooded;
+
+  // Creates a board of the given size where every cell has color 0
+  PackedBoard(int width, int height) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Board must have at least one row and column");
+    }
+    this.width = width;
+    this.height = height;
+    this.colors = new byte[width * height];
+    this.flooded = new long[(width * height + 63) >>> 6];
+  }
+
+  // Copies the colors and flooded state of any other board
+  PackedBoard(Board other) {
+    this(other.width(), other.height());
+    for (int i = 0; i < this.colors.length; i++) {
+      this.colors[i] = (byte) other.colorAt(i);
+      if (other.isFlooded(i)) {
+        this.flood(i);
+      }
+    }
+  }
+
+  // The number of columns in this board
+  public int width() {
+    return this.width;
+  }
+
+  // The number of rows in this board
+  public int height() {
+    return this.height;
+  }
+
+  // The color index of the cell at the given index
+  public int colorAt(int index) {
+    return this.colors[index];
+  }
+
+  // Changes the color index of the cell at the given index
+  public void setColor(int index, int color) {
+    this.colors[index] = (byte) color;
+  }
+
+  // True if the cell at the given index has been flooded
+  public boolean isFlooded(int index) {
+    return (this.flooded[index >>> 6] & (1L << index)) != 0;
+  }
+
+  // 'Floods' the cell at the given index
+  public void flood(int index) {
+    this.flooded[index >>> 6] |= 1L << index;
+  }
+
+  // Unfloods every cell, so the board can be refilled and played again
+  // EFFECT: clears every flooded bit
+  void clearFlooded() {
+    Arrays.fill(this.flooded, 0L);
+  }
+
+}
+
+// Adapts the ConsCell graph of a FloodItWorld to the Board interface, so the
+// UI and tests can keep working on cells while the flood runs on indexes.
+// Color indexes are Palette indexes.
+class CellBoard implements Board {
+  // the cells of the game, indexed by column and then by row
+  ArrayList<ArrayList<ConsCell>> cells;
+
+  // the indexes of the cells flooded since the log was last cleared, in
+  // floodLog[0] to floodLog[floodLogSize - 1], or null if floods are not logged
+  int[] floodLog;
+  int floodLogSize;
+
+  CellBoard(ArrayList<ArrayList<ConsCell>> cells) {
+    this.cells = cells;
+  }
+
+  // The number of columns in this board
+  public int width() {
+    return this.cells.size();
+  }
+
+  // The number of rows in this board
+  public int height() {
+    return this.cells.get(0).size();
+  }
+
+  // The ConsCell at the given index
+  ConsCell cellAt(int index) {
+    int width = this.cells.size();
+    return this.cells.get(index % width).get(index / width);
+  }
+
+  // The color index of the cell at the given index
+  public int colorAt(int index) {
+    return this.cellAt(index).colorIndex;
+  }
+
+  // Changes the color index of the cell at the given index
+  public void setColor(int index, int color) {
+    this.cellAt(index).setColorIndex(color);
+  }
+
+  // True if the cell at the given index has been flooded
+  public boolean isFlooded(int index) {
+    return this.cellAt(index).flooded;
+  }
+
+  // 'Floods' the cell at the given index
+  public void flood(int index) {
+    this.cellAt(index).flood();
+    if (this.floodLog != null) {
+      if (this.floodLogSize == this.floodLog.length) {
+        this.floodLog = Arrays.copyOf(this.floodLog, this.floodLog.length * 2);
+      }
+      this.floodLog[this.floodLogSize] = index;
+      this.floodLogSize++;
+    }
+  }
+
+  // Starts logging the cells flooded, so a renderer can find what a move changed
+  // without looking at every cell
+  // EFFECT: sets this.floodLog if it is not already set
+  void logFloods() {
+    if (this.floodLog == null) {
+      this.floodLog = new int[64];
+    }
+  }
+
+  // Empties the flood log, once the cells in it have been seen
+  // EFFECT: sets this.floodLogSize to 0
+  void clearFloodLog() {
+    this.floodLogSize = 0;
+  }
+
+}
+
+// A window onto a rectangle of another board, seen as a board of its own: cell
+// (x, y) of the window is cell (firstColumn + x, firstRow + y) of the board under
+// it, and reads and writes go through to that cell.
+class BoardWindow implements Board {
+  Board board;
+  int firstColumn;
+  int firstRow;
+  int width;
+  int height;
+
+  BoardWindow(Board board, int firstColumn, int firstRow, int width, int height) {
+    if (firstColumn < 0 || firstRow < 0 || width < 1 || height < 1
+        || firstColumn + width > board.width() || firstRow + height > board.height()) {
+      throw new IllegalArgumentException("A window must be a rectangle of its board");
+    }
+    this.board = board;
+    this.firstColumn = firstColumn;
+    this.firstRow = firstRow;
+    this.width = width;
+    this.height = height;
+  }
+
+  // The number of columns in this window
+  public int width() {
+    return this.width;
+  }
+
+  // The number of rows in this window
+  public int height() {
+    return this.height;
+  }
+
+  // The index on the board under this window of the cell at the given index here
+  int boardIndex(int index) {
+    return (this.firstRow + index / this.width) * this.board.width()
+        + this.firstColumn + index % this.width;
+  }
+
+  // The index here of the cell at the given index on the board under this window,
+  // or -1 if the window does not cover it
+  int windowIndex(int boardIndex) {
+    int x = boardIndex % this.board.width() - this.firstColumn;
+    int y = boardIndex / this.board.width() - this.firstRow;
+    if (x < 0 || x >= this.width || y < 0 || y >= this.height) {
+      return -1;
+    }
+    return y * this.width + x;
+  }
+
+  // The color index of the cell at the given index
+  public int colorAt(int index) {
+    return this.board.colorAt(this.boardIndex(index));
+  }
+
+  // Changes the color index of the cell at the given index
+  public void setColor(int index, int color) {
+    this.board.setColor(this.boardIndex(index), color);
+  }
+
+  // True if the cell at the given index has been flooded
+  public boolean isFlooded(int index) {
+    return this.board.isFlooded(this.boardIndex(index));
+  }
+
+  // 'Floods' the cell at the given index
+  public void flood(int index) {
+    this.board.flood(this.boardIndex(index));
+  }
+
+}
+
+// Examples of Boards
+class ExamplesBoard {
+
+  PackedBoard packed;
+  FloodItWorld world;
+  CellBoard cellBoard;
+
+  void initData() {
+    // 3 columns, 2 rows:
+    // 0 1 2
+    // 3 4 5
+    this.packed = new PackedBoard(3, 2);
+    this.world = new FloodItWorld(1234);
+    this.cellBoard = new CellBoard(this.world.board);
+  }
+
+  // tests the PackedBoard constructors
+  void testPackedBoardConstructor(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.packed.width(), 3);
+    t.checkExpect(this.packed.height(), 2);
+    t.checkExpect(this.packed.colors.length, 6);
+    t.checkExpect(this.packed.flooded.length, 1);
+    t.checkExpect(new PackedBoard(8, 8).flooded.length, 1);
+    t.checkExpect(new PackedBoard(8, 9).flooded.length, 2);
+    t.checkConstructorException(
+        new IllegalArgumentException("Board must have at least one row and column"),
+        "PackedBoard", 0, 4);
+
+    // Copying keeps every color and flooded cell of the original
+    PackedBoard copy = new PackedBoard(this.cellBoard);
+    t.checkExpect(copy.width(), 3);
+    t.checkExpect(copy.height(), 3);
+    for (int i = 0; i < 9; i++) {
+      t.checkExpect(copy.colorAt(i), this.cellBoard.colorAt(i));
+      t.checkExpect(copy.isFlooded(i), this.cellBoard.isFlooded(i));
+    }
+  }
+
+  // tests the colorAt and setColor methods of PackedBoard
+  void testPackedBoardColors(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.packed.colorAt(4), 0);
+    this.packed.setColor(4, 5);
+    t.checkExpect(this.packed.colorAt(4), 5);
+    t.checkExpect(this.packed.colorAt(3), 0);
+    t.checkExpect(this.packed.colorAt(5), 0);
+  }
+
+  // tests the flood and isFlooded methods of PackedBoard
+  void testPackedBoardFlood(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.packed.isFlooded(2), false);
+    this.packed.flood(2);
+    t.checkExpect(this.packed.isFlooded(2), true);
+    t.checkExpect(this.packed.isFlooded(1), false);
+    t.checkExpect(this.packed.isFlooded(3), false);
+
+    // Cells past the first word of flooded bits
+    PackedBoard big = new PackedBoard(10, 10);
+    big.flood(64);
+    big.flood(99);
+    t.checkExpect(big.isFlooded(64), true);
+    t.checkExpect(big.isFlooded(99), true);
+    t.checkExpect(big.isFlooded(0), false);
+    t.checkExpect(big.isFlooded(63), false);
+
+    big.clearFlooded();
+    t.checkExpect(big.isFlooded(64), false);
+    t.checkExpect(big.isFlooded(99), false);
+  }
+
+  // tests that CellBoard reads and writes through to the ConsCell graph
+  void testCellBoard(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.cellBoard.width(), 3);
+    t.checkExpect(this.cellBoard.height(), 3);
+
+    // Index 5 is column 2, row 1
+    t.checkExpect(this.cellBoard.cellAt(5), this.world.board.get(2).get(1));
+    t.checkExpect(this.cellBoard.colorAt(5),
+        Palette.indexOf(this.world.board.get(2).get(1).color));
+
+    this.cellBoard.setColor(5, Palette.GREEN);
+    t.checkExpect(this.world.board.get(2).get(1).color, Palette.color(Palette.GREEN));
+
+    t.checkExpect(this.cellBoard.isFlooded(0), true);
+    t.checkExpect(this.cellBoard.isFlooded(5), false);
+    this.cellBoard.flood(5);
+    t.checkExpect(this.world.board.get(2).get(1).flooded, true);
+    t.checkExpect(this.cellBoard.floodLog, null);
+
+    // Once logged, every cell flooded is kept until the log is cleared
+    this.cellBoard.logFloods();
+    for (int i = 0; i < 100; i++) {
+      this.cellBoard.flood(i % 9);
+    }
+    t.checkExpect(this.cellBoard.floodLogSize, 100);
+    t.checkExpect(this.cellBoard.floodLog[98], 8);
+    this.cellBoard.clearFloodLog();
+    this.cellBoard.flood(7);
+    t.checkExpect(this.cellBoard.floodLogSize, 1);
+    t.checkExpect(this.cellBoard.floodLog[0], 7);
+  }
+
+  // tests that a BoardWindow reads and writes through to its rectangle of the board
+  void testBoardWindow(Tester t) {
+    this.initData();
+    for (int i = 0; i < 6; i++) {
+      this.packed.setColor(i, i);
+    }
+
+    // Columns 1 and 2 of row 1
+    BoardWindow window = new BoardWindow(this.packed, 1, 1, 2, 1);
+    t.checkExpect(window.width(), 2);
+    t.checkExpect(window.height(), 1);
+    t.checkExpect(window.boardIndex(0), 4);
+    t.checkExpect(window.windowIndex(5), 1);
+    t.checkExpect(window.windowIndex(3), -1);
+    t.checkExpect(window.windowIndex(1), -1);
+    t.checkExpect(window.colorAt(1), 5);
+
+    window.setColor(0, Palette.RED);
+    t.checkExpect(this.packed.colorAt(4), Palette.RED);
+    window.flood(1);
+    t.checkExpect(this.packed.isFlooded(5), true);
+    t.checkExpect(window.isFlooded(1), true);
+    t.checkExpect(window.isFlooded(0), false);
+
+    t.checkConstructorException(
+        new IllegalArgumentException("A window must be a rectangle of its board"),
+        "BoardWindow", this.packed, 2, 0, 2, 1);
+  }
+
+}
@@ -0,0 +1,228 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import tester.Tester;
+
+// Makes boards from 64-bit seeds, the same board for the same seed, size and number
+// of colors on any machine, so a board can be logged, shared and made again from
+// its id instead of being stored. Colors come from the splitmix64 sequence that
+// SplittableRandom gives for the seed, worked out here without any object or
+// locking, and each draw colors two cells. Boards also have a 64-bit fingerprint of
+// their colors, so two boards can be compared without looking at every cell.
+class BoardGenerator {
+  // the amount splitmix64 adds to its state for every draw
+  static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+  // the palette indexes of a canonical board, which uses the first colors in order
+  static final int[] CANONICAL = {0, 1, 2, 3, 4, 5};
+
+  // A new size x size board with colors 0 up to numColors, made from the seed
+  static PackedBoard generate(long seed, int size, int numColors) {
+    return generate(seed, size, size, numColors);
+  }
+
+  // A new width x height board with colors 0 up to numColors, made from the seed
+  static PackedBoard generate(long seed, int width, int height, int numColors) {
+    PackedBoard board = new PackedBoard(width, height);
+    fill(board, seed, numColors, CANONICAL);
+    return board;
+  }
+
+  // Colors every cell of the board with one of the first numColors entries of
+  // colors, drawn from the seed in index order. Each 64-bit draw colors two cells,
+  // one from each half, by scaling the half into the range of colors.
+  // EFFECT: sets the color of every cell
+  static void fill(Board board, long seed, int numColors, int[] colors) {
+    checkColors(numColors);
+    int cellCount = board.width() * board.height();
+    long state = seed;
+    for (int i = 0; i < cellCount; i += 2) {
+      state += GAMMA;
+      long bits = mix(state);
+      board.setColor(i, colors[(int) (((bits & 0xFFFFFFFFL) * numColors) >>> 32)]);
+      if (i + 1 < cellCount) {
+        board.setColor(i + 1, colors[(int) (((bits >>> 32) * numColors) >>> 32)]);
+      }
+    }
+  }
+
+  // The color fill gives the cell at the given index, worked out from that cell's
+  // draw alone, so any part of a board can be made without the cells before it
+  static int colorOf(long seed, int numColors, int[] colors, int index) {
+    long bits = mix(seed + (index / 2 + 1) * GAMMA);
+    long half = (index & 1) == 0 ? bits & 0xFFFFFFFFL : bits >>> 32;
+    return colors[(int) ((half * numColors) >>> 32)];
+  }
+
+  // Throws if a board cannot have the given number of colors
+  static void checkColors(int numColors) {
+    if (numColors < 1 || numColors > Palette.SIZE) {
+      throw new IllegalArgumentException("Number of colors must be between 1 and "
+          + Palette.SIZE);
+    }
+  }
+
+  // Scrambles the bits of a long, the way splitmix64 turns its state into a draw
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // A 64-bit fingerprint of the size and colors of the board, which ignores which
+  // cells are flooded. The colors are packed 21 to a long, 3 bits each, and every
+  // long is mixed into the fingerprint in turn.
+  static long fingerprint(Board board) {
+    long hash = mix(((long) board.width() << 32) | board.height());
+    int cellCount = board.width() * board.height();
+    long word = 0;
+    int packed = 0;
+    for (int i = 0; i < cellCount; i++) {
+      word |= (long) board.colorAt(i) << (3 * packed);
+      packed++;
+      if (packed == 21) {
+        hash = mix(hash ^ word);
+        word = 0;
+        packed = 0;
+      }
+    }
+    return mix(hash ^ word);
+  }
+
+  // The id of the board made from the given seed, size and number of colors, such
+  // as "14-6-00000000000004d2"
+  static String boardId(long seed, int size, int numColors) {
+    return size + "-" + numColors + "-" + String.format("%016x", seed);
+  }
+
+  // The id of the board made from the given seed, width, height and number of
+  // colors: the id above for square boards, and one such as "1000x40-6-00000000000004d2"
+  // for others
+  static String boardId(long seed, int width, int height, int numColors) {
+    if (width == height) {
+      return boardId(seed, width, numColors);
+    }
+    return width + "x" + height + "-" + numColors + "-" + String.format("%016x", seed);
+  }
+
+  // The board with the given id
+  static PackedBoard fromId(String id) {
+    String[] parts = id.split("-");
+    if (parts.length != 3) {
+      throw new IllegalArgumentException("Not a board id: " + id);
+    }
+    String[] sides = parts[0].split("x");
+    int width = Integer.parseInt(sides[0]);
+    int height = width;
+    if (sides.length == 2) {
+      height = Integer.parseInt(sides[1]);
+    }
+    else if (sides.length != 1) {
+      throw new IllegalArgumentException("Not a board id: " + id);
+    }
+    return generate(Long.parseUnsignedLong(parts[2], 16), width, height,
+        Integer.parseInt(parts[1]));
+  }
+}
+
+// Examples of generating boards
+class ExamplesBoardGenerator {
+
+  // tests that generating follows SplittableRandom's sequence for the seed
+  void testMix(Tester t) {
+    SplittableRandom rand = new SplittableRandom(1234);
+    long state = 1234;
+    for (int i = 0; i < 5; i++) {
+      state += BoardGenerator.GAMMA;
+      t.checkExpect(BoardGenerator.mix(state), rand.nextLong());
+    }
+  }
+
+  // tests that colorOf gives every cell the color fill does
+  void testColorOf(Tester t) {
+    PackedBoard board = BoardGenerator.generate(-7, 13, 9, 5);
+    boolean same = true;
+    for (int i = 0; i < 13 * 9; i++) {
+      same = same && BoardGenerator.colorOf(-7, 5, BoardGenerator.CANONICAL, i)
+          == board.colorAt(i);
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(BoardGenerator.colorOf(-7, 5, new int[] {4, 3, 2, 1, 0}, 0),
+        4 - board.colorAt(0));
+  }
+
+  // tests the generate and fill methods
+  void testGenerate(Tester t) {
+    PackedBoard first = BoardGenerator.generate(99, 9, 4);
+    PackedBoard second = BoardGenerator.generate(99, 9, 4);
+    PackedBoard other = BoardGenerator.generate(100, 9, 4);
+
+    t.checkExpect(first.width(), 9);
+    t.checkExpect(first.colors, second.colors);
+    t.checkExpect(Arrays.equals(first.colors, other.colors), false);
+
+    // Each draw colors two cells, the low half first
+    SplittableRandom rand = new SplittableRandom(99);
+    long bits = rand.nextLong();
+    t.checkExpect(first.colorAt(0), (int) (((bits & 0xFFFFFFFFL) * 4) >>> 32));
+    t.checkExpect(first.colorAt(1), (int) (((bits >>> 32) * 4) >>> 32));
+
+    // Every color is used, and no others
+    int[] counts = new int[Palette.SIZE];
+    for (int i = 0; i < 81; i++) {
+      counts[first.colorAt(i)]++;
+    }
+    t.checkExpect(counts[0] > 0 && counts[1] > 0 && counts[2] > 0 && counts[3] > 0, true);
+    t.checkExpect(counts[4] + counts[5], 0);
+
+    // Colors can be any palette indexes
+    PackedBoard mapped = new PackedBoard(9, 9);
+    BoardGenerator.fill(mapped, 99, 4, new int[] {5, 3, 1, 0});
+    int[] map = {5, 3, 1, 0};
+    for (int i = 0; i < 81; i++) {
+      t.checkExpect(mapped.colorAt(i), map[first.colorAt(i)]);
+    }
+
+    t.checkException(new IllegalArgumentException("Number of colors must be between 1 and 6"),
+        new BoardGenerator(), "generate", 1L, 5, 0);
+  }
+
+  // tests the fingerprint method
+  void testFingerprint(Tester t) {
+    PackedBoard board = BoardGenerator.generate(7, 12, 6);
+    long fingerprint = BoardGenerator.fingerprint(board);
+
+    t.checkExpect(BoardGenerator.fingerprint(BoardGenerator.generate(7, 12, 6)), fingerprint);
+
+    // Flooding doesn't change it, but any color does
+    board.flood(5);
+    t.checkExpect(BoardGenerator.fingerprint(board), fingerprint);
+    board.setColor(143, (board.colorAt(143) + 1) % 6);
+    t.checkExpect(BoardGenerator.fingerprint(board) == fingerprint, false);
+
+    // Boards of different shapes with the same colors differ
+    t.checkExpect(BoardGenerator.fingerprint(new PackedBoard(2, 8))
+        == BoardGenerator.fingerprint(new PackedBoard(4, 4)), false);
+  }
+
+  // tests the boardId and fromId methods
+  void testBoardId(Tester t) {
+    t.checkExpect(BoardGenerator.boardId(1234, 14, 6), "14-6-00000000000004d2");
+    t.checkExpect(BoardGenerator.boardId(-1, 8, 2), "8-2-ffffffffffffffff");
+
+    PackedBoard board = BoardGenerator.fromId(BoardGenerator.boardId(-5, 10, 3));
+    t.checkExpect(board.colors, BoardGenerator.generate(-5, 10, 3).colors);
+    t.checkException(new IllegalArgumentException("Not a board id: 14-6"),
+        new BoardGenerator(), "fromId", "14-6");
+
+    // Boards whose sides differ give both
+    t.checkExpect(BoardGenerator.boardId(1234, 14, 14, 6), "14-6-00000000000004d2");
+    t.checkExpect(BoardGenerator.boardId(1234, 1000, 40, 6), "1000x40-6-00000000000004d2");
+    PackedBoard strip = BoardGenerator.fromId(BoardGenerator.boardId(-5, 30, 4, 3));
+    t.checkExpect(strip.width, 30);
+    t.checkExpect(strip.height, 4);
+    t.checkExpect(strip.colors, BoardGenerator.generate(-5, 30, 4, 3).colors);
+    t.checkException(new IllegalArgumentException("Not a board id: 3x4x5-6-00"),
+        new BoardGenerator(), "fromId", "3x4x5-6-00");
+  }
+
+}
@@ -0,0 +1,220 @@
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+// Where a board of any number of columns and rows is drawn on the canvas: a
+// rectangle of pixels whose top left corner is at (left, top). Cells need not be a
+// whole number of pixels. Column c covers the pixels from columnStart(c) up to but
+// not including columnStart(c + 1), both rounded down from c * pixelsWide / columns,
+// and rows are the same; with more columns than pixels some columns cover none.
+// Hit tests invert that rounding with one division, so the cell under a point is
+// always the cell painted there, right up to the edges.
+class BoardLayout {
+  // the number of columns and rows of the board
+  int columns;
+  int rows;
+
+  // the canvas position of the board's top left pixel
+  int left;
+  int top;
+
+  // the size of the board on the canvas, in pixels
+  int pixelsWide;
+  int pixelsHigh;
+
+  BoardLayout(int columns, int rows, int left, int top, int pixelsWide, int pixelsHigh) {
+    if (columns < 1 || rows < 1) {
+      throw new IllegalArgumentException("A board needs at least one column and one row");
+    }
+    if (pixelsWide < 1 || pixelsHigh < 1) {
+      throw new IllegalArgumentException("A board needs at least one pixel each way");
+    }
+    this.columns = columns;
+    this.rows = rows;
+    this.left = left;
+    this.top = top;
+    this.pixelsWide = pixelsWide;
+    this.pixelsHigh = pixelsHigh;
+  }
+
+  // The layout of the board in a square of side pixels whose top left is given, with
+  // every cell the same whole number of pixels, as many as fit. Boards with more
+  // cells a side than the square has pixels are scaled instead.
+  static BoardLayout wholeCells(int columns, int rows, int left, int top, int side) {
+    int cellSize = side / Math.max(columns, rows);
+    if (cellSize < 1) {
+      return scaled(columns, rows, left, top, side);
+    }
+    return new BoardLayout(columns, rows, left, top, columns * cellSize, rows * cellSize);
+  }
+
+  // The layout of the board scaled to fill a square of side pixels whose top left is
+  // given along its longer side, keeping cells square as nearly as whole pixels allow
+  static BoardLayout scaled(int columns, int rows, int left, int top, int side) {
+    int longer = Math.max(columns, rows);
+    int pixelsWide = (int) Math.max((long) side * columns / longer, 1);
+    int pixelsHigh = (int) Math.max((long) side * rows / longer, 1);
+    return new BoardLayout(columns, rows, left, top, pixelsWide, pixelsHigh);
+  }
+
+  // The side of every cell in pixels if they are all the same whole number of pixels
+  // square, or 0 if they are not
+  int cellSize() {
+    int cellSize = this.pixelsWide / this.columns;
+    if (cellSize * this.columns != this.pixelsWide || cellSize * this.rows != this.pixelsHigh) {
+      return 0;
+    }
+    return cellSize;
+  }
+
+  // The first pixel of the given column, counted from the board's left edge; the
+  // column after the last one starts at pixelsWide
+  int columnStart(int column) {
+    return (int) ((long) column * this.pixelsWide / this.columns);
+  }
+
+  // The first pixel of the given row, counted from the board's top edge; the row
+  // after the last one starts at pixelsHigh
+  int rowStart(int row) {
+    return (int) ((long) row * this.pixelsHigh / this.rows);
+  }
+
+  // The column drawn at the given canvas x, or -1 if it is off the board: the last
+  // column that starts at or before it
+  int columnAt(int x) {
+    int pixel = x - this.left;
+    if (pixel < 0 || pixel >= this.pixelsWide) {
+      return -1;
+    }
+    return (int) (((pixel + 1L) * this.columns - 1) / this.pixelsWide);
+  }
+
+  // The row drawn at the given canvas y, or -1 if it is off the board
+  int rowAt(int y) {
+    int pixel = y - this.top;
+    if (pixel < 0 || pixel >= this.pixelsHigh) {
+      return -1;
+    }
+    return (int) (((pixel + 1L) * this.rows - 1) / this.pixelsHigh);
+  }
+
+  // The index of the cell drawn at the given point, row by row, or -1 if the point
+  // is off the board
+  int cellAt(Posn p) {
+    int column = this.columnAt(p.x);
+    int row = this.rowAt(p.y);
+    if (column < 0 || row < 0) {
+      return -1;
+    }
+    return row * this.columns + column;
+  }
+
+  // Whether this lays out a board of the given size over the same pixels as that
+  boolean sameAs(BoardLayout that) {
+    return this.columns == that.columns && this.rows == that.rows
+        && this.pixelsWide == that.pixelsWide && this.pixelsHigh == that.pixelsHigh;
+  }
+}
+
+// Examples of board layouts
+class ExamplesBoardLayout {
+
+  // tests the constructor
+  void testConstructor(Tester t) {
+    t.checkConstructorException(
+        new IllegalArgumentException("A board needs at least one column and one row"),
+        "BoardLayout", 0, 3, 75, 80, 600, 600);
+    t.checkConstructorException(
+        new IllegalArgumentException("A board needs at least one pixel each way"),
+        "BoardLayout", 3, 3, 75, 80, 600, 0);
+  }
+
+  // tests the wholeCells, scaled and cellSize methods
+  void testFit(Tester t) {
+    BoardLayout square = BoardLayout.wholeCells(24, 24, 75, 80, 600);
+    t.checkExpect(square.pixelsWide, 600);
+    t.checkExpect(square.cellSize(), 25);
+
+    // 600 is not a multiple of 7, so the board is a little smaller than the square
+    BoardLayout seven = BoardLayout.wholeCells(7, 7, 75, 80, 600);
+    t.checkExpect(seven.pixelsWide, 595);
+    t.checkExpect(seven.cellSize(), 85);
+
+    BoardLayout wide = BoardLayout.wholeCells(30, 10, 75, 80, 600);
+    t.checkExpect(wide.pixelsWide, 600);
+    t.checkExpect(wide.pixelsHigh, 200);
+    t.checkExpect(wide.cellSize(), 20);
+
+    // A strip of more columns than pixels is scaled to fit
+    BoardLayout strip = BoardLayout.wholeCells(1000, 40, 75, 80, 600);
+    t.checkExpect(strip, BoardLayout.scaled(1000, 40, 75, 80, 600));
+    t.checkExpect(strip.pixelsWide, 600);
+    t.checkExpect(strip.pixelsHigh, 24);
+    t.checkExpect(strip.cellSize(), 0);
+
+    BoardLayout huge = BoardLayout.scaled(2000, 2000, 75, 80, 600);
+    t.checkExpect(huge.pixelsWide, 600);
+    t.checkExpect(huge.pixelsHigh, 600);
+
+    // Even a single row keeps a pixel
+    t.checkExpect(BoardLayout.scaled(5000, 1, 0, 0, 600).pixelsHigh, 1);
+    t.checkExpect(BoardLayout.scaled(250, 250, 0, 0, 600).cellSize(), 0);
+  }
+
+  // tests the columnStart and rowStart methods
+  void testStarts(Tester t) {
+    // 4 columns over 10 pixels: 2.5 pixels each
+    BoardLayout layout = new BoardLayout(4, 3, 75, 80, 10, 9);
+    t.checkExpect(layout.columnStart(0), 0);
+    t.checkExpect(layout.columnStart(1), 2);
+    t.checkExpect(layout.columnStart(2), 5);
+    t.checkExpect(layout.columnStart(3), 7);
+    t.checkExpect(layout.columnStart(4), 10);
+    t.checkExpect(layout.rowStart(2), 6);
+    t.checkExpect(layout.rowStart(3), 9);
+  }
+
+  // tests the columnAt, rowAt and cellAt methods
+  void testHitTest(Tester t) {
+    BoardLayout layout = new BoardLayout(4, 3, 75, 80, 10, 9);
+    t.checkExpect(layout.columnAt(74), -1);
+    t.checkExpect(layout.columnAt(75), 0);
+    t.checkExpect(layout.columnAt(76), 0);
+    t.checkExpect(layout.columnAt(77), 1);
+    t.checkExpect(layout.columnAt(79), 1);
+    t.checkExpect(layout.columnAt(80), 2);
+    t.checkExpect(layout.columnAt(84), 3);
+    t.checkExpect(layout.columnAt(85), -1);
+    t.checkExpect(layout.rowAt(79), -1);
+    t.checkExpect(layout.rowAt(88), 2);
+    t.checkExpect(layout.rowAt(89), -1);
+
+    t.checkExpect(layout.cellAt(new Posn(80, 86)), 10);
+    t.checkExpect(layout.cellAt(new Posn(80, 89)), -1);
+    t.checkExpect(layout.cellAt(new Posn(85, 80)), -1);
+  }
+
+  // tests that every pixel of every layout hits the cell that starts at or before
+  // it and ends after it, with more and fewer cells than pixels
+  void testHitTestExact(Tester t) {
+    int[] counts = {1, 3, 7, 24, 41, 600, 1000, 2000};
+    boolean exact = true;
+    for (int columns : counts) {
+      BoardLayout layout = BoardLayout.wholeCells(columns, 5, 75, 80, 600);
+      for (int pixel = 0; pixel < layout.pixelsWide; pixel++) {
+        int column = layout.columnAt(75 + pixel);
+        exact = exact && layout.columnStart(column) <= pixel
+            && pixel < layout.columnStart(column + 1);
+      }
+    }
+    t.checkExpect(exact, true);
+  }
+
+  // tests the sameAs method
+  void testSameAs(Tester t) {
+    BoardLayout layout = BoardLayout.wholeCells(24, 24, 75, 80, 600);
+    t.checkExpect(layout.sameAs(BoardLayout.wholeCells(24, 24, 0, 0, 600)), true);
+    t.checkExpect(layout.sameAs(BoardLayout.wholeCells(24, 20, 75, 80, 600)), false);
+    t.checkExpect(layout.sameAs(BoardLayout.wholeCells(24, 24, 75, 80, 480)), false);
+  }
+
+}
@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import tester.Tester;
+
+// The colors of a board at a series of smaller sizes, for drawing boards that have
+// more cells than there are pixels to show them. Level 0 is the board itself, and
+// every cell of level k stands for a 2 x 2 block of level k - 1 in its most common
+// color, so it covers a square of up to 2^k x 2^k cells of the board. Colors never
+// change during a game, so the levels are made once per board. Whether a cell of a
+// level is flooded is read when it is asked from the board cell in the middle of
+// its square, so the flood shows as it spreads without making anything again.
+class BoardMipmap {
+  // level 0
+  Board board;
+
+  // levels 1 and up, with level k at index k - 1, down to a single cell
+  ArrayList<MipmapLevel> levels = new ArrayList<MipmapLevel>();
+
+  // Makes every level of the given board
+  BoardMipmap(Board board) {
+    this.board = board;
+    Board below = board;
+    while (below.width() > 1 || below.height() > 1) {
+      MipmapLevel level = new MipmapLevel(board, this.levels.size() + 1, below);
+      this.levels.add(level);
+      below = level;
+    }
+  }
+
+  // The number of levels, counting the board itself
+  int levelCount() {
+    return this.levels.size() + 1;
+  }
+
+  // The given level, where level 0 is the board itself
+  Board level(int level) {
+    if (level == 0) {
+      return this.board;
+    }
+    return this.levels.get(level - 1);
+  }
+
+  // The first level at which the given columns and rows of the board, counted from
+  // the given first ones, take no more than the given number of pixels each way
+  static int levelFor(int firstColumn, int columns, int firstRow, int rows,
+      int pixelsWide, int pixelsHigh) {
+    int level = 0;
+    while (span(firstColumn, columns, level) > pixelsWide
+        || span(firstRow, rows, level) > pixelsHigh) {
+      level++;
+    }
+    return level;
+  }
+
+  // The number of columns or rows of the given level that cover the given number of
+  // columns or rows of the board, counted from the given first one
+  static int span(int first, int count, int level) {
+    return ((first + count - 1) >> level) - (first >> level) + 1;
+  }
+
+  // The color that appears most often among the given ones, where -1 stands for no
+  // cell; on a tie, the one that appears first
+  static int mostCommon(int a, int b, int c, int d) {
+    int[] colors = {a, b, c, d};
+    int best = -1;
+    int bestCount = 0;
+    for (int i = 0; i < colors.length; i++) {
+      int count = 0;
+      for (int j = 0; j < colors.length; j++) {
+        if (colors[i] >= 0 && colors[j] == colors[i]) {
+          count++;
+        }
+      }
+      if (count > bestCount) {
+        best = colors[i];
+        bestCount = count;
+      }
+    }
+    return best;
+  }
+}
+
+// One level above the board of a BoardMipmap, seen as a board of its own that
+// cannot be changed
+class MipmapLevel implements Board {
+  // the board at level 0, where flooded cells are looked up
+  Board board;
+
+  // the level: each cell stands for a square of 2^level cells a side of the board
+  int level;
+
+  int width;
+  int height;
+
+  // the color index of every cell, row by row
+  byte[] colors;
+
+  // The given level of the given board, made from the level below it
+  MipmapLevel(Board board, int level, Board below) {
+    this.board = board;
+    this.level = level;
+    this.width = (below.width() + 1) / 2;
+    this.height = (below.height() + 1) / 2;
+    this.colors = new byte[this.width * this.height];
+    for (int y = 0; y < this.height; y++) {
+      for (int x = 0; x < this.width; x++) {
+        this.colors[y * this.width + x] = (byte) BoardMipmap.mostCommon(
+            colorAt(below, 2 * x, 2 * y), colorAt(below, 2 * x + 1, 2 * y),
+            colorAt(below, 2 * x, 2 * y + 1), colorAt(below, 2 * x + 1, 2 * y + 1));
+      }
+    }
+  }
+
+  // The color of the given column and row of the given board, or -1 if it is past
+  // the board's edge
+  static int colorAt(Board board, int x, int y) {
+    if (x >= board.width() || y >= board.height()) {
+      return -1;
+    }
+    return board.colorAt(y * board.width() + x);
+  }
+
+  // The number of columns in this level
+  public int width() {
+    return this.width;
+  }
+
+  // The number of rows in this level
+  public int height() {
+    return this.height;
+  }
+
+  // The most common color index of the square of the board under the given cell
+  public int colorAt(int index) {
+    return this.colors[index];
+  }
+
+  // Levels are made from the board and cannot be changed
+  public void setColor(int index, int color) {
+    throw new UnsupportedOperationException("A mipmap level cannot be changed");
+  }
+
+  // True if the board cell in the middle of the square under the given cell has
+  // been flooded
+  public boolean isFlooded(int index) {
+    int half = (1 << this.level) / 2;
+    int x = Math.min(((index % this.width) << this.level) + half, this.board.width() - 1);
+    int y = Math.min(((index / this.width) << this.level) + half, this.board.height() - 1);
+    return this.board.isFlooded(y * this.board.width() + x);
+  }
+
+  // Levels are made from the board and cannot be changed
+  public void flood(int index) {
+    throw new UnsupportedOperationException("A mipmap level cannot be changed");
+  }
+}
+
+// Examples of board mipmaps
+class ExamplesBoardMipmap {
+
+  // tests the mostCommon method
+  void testMostCommon(Tester t) {
+    t.checkExpect(BoardMipmap.mostCommon(1, 2, 2, 3), 2);
+    t.checkExpect(BoardMipmap.mostCommon(1, 2, 3, 4), 1);
+    t.checkExpect(BoardMipmap.mostCommon(3, 1, 1, 3), 3);
+    t.checkExpect(BoardMipmap.mostCommon(4, -1, -1, -1), 4);
+    t.checkExpect(BoardMipmap.mostCommon(-1, 5, -1, 5), 5);
+  }
+
+  // tests the levelFor and span methods
+  void testLevelFor(Tester t) {
+    t.checkExpect(BoardMipmap.span(0, 5, 1), 3);
+    t.checkExpect(BoardMipmap.span(0, 2000, 2), 500);
+    t.checkExpect(BoardMipmap.span(1, 4, 1), 3);
+    t.checkExpect(BoardMipmap.span(3, 1, 2), 1);
+    t.checkExpect(BoardMipmap.levelFor(0, 600, 0, 600, 600, 600), 0);
+    t.checkExpect(BoardMipmap.levelFor(0, 601, 0, 10, 600, 600), 1);
+    t.checkExpect(BoardMipmap.levelFor(0, 2000, 0, 2000, 600, 600), 2);
+    t.checkExpect(BoardMipmap.levelFor(0, 5000, 0, 40, 600, 24), 4);
+
+    // A window that starts inside a block can take one more cell of a level
+    t.checkExpect(BoardMipmap.levelFor(0, 1200, 0, 1, 600, 600), 1);
+    t.checkExpect(BoardMipmap.levelFor(1, 1200, 0, 1, 600, 600), 2);
+  }
+
+  // tests the constructor, levelCount and level methods, and the colors of levels
+  void testLevels(Tester t) {
+    // 5 columns, 3 rows:
+    // 0 0 1 1 2
+    // 0 3 1 4 2
+    // 5 5 5 1 1
+    int[] colors = {0, 0, 1, 1, 2, 0, 3, 1, 4, 2, 5, 5, 5, 1, 1};
+    PackedBoard board = new PackedBoard(5, 3);
+    for (int i = 0; i < colors.length; i++) {
+      board.setColor(i, colors[i]);
+    }
+    BoardMipmap mipmap = new BoardMipmap(board);
+    t.checkExpect(mipmap.levelCount(), 4);
+    t.checkExpect(mipmap.level(0), board);
+
+    Board one = mipmap.level(1);
+    t.checkExpect(one.width(), 3);
+    t.checkExpect(one.height(), 2);
+    t.checkExpect(((MipmapLevel) one).colors, new byte[] {0, 1, 2, 5, 5, 1});
+
+    Board two = mipmap.level(2);
+    t.checkExpect(two.width(), 2);
+    t.checkExpect(two.height(), 1);
+    t.checkExpect(((MipmapLevel) two).colors, new byte[] {5, 2});
+
+    Board three = mipmap.level(3);
+    t.checkExpect(three.width(), 1);
+    t.checkExpect(three.colorAt(0), 5);
+
+    t.checkException(new UnsupportedOperationException("A mipmap level cannot be changed"),
+        one, "flood", 0);
+    t.checkException(new UnsupportedOperationException("A mipmap level cannot be changed"),
+        one, "setColor", 0, 1);
+  }
+
+  // tests that levels read whether a cell is flooded from the middle of its square
+  void testIsFlooded(Tester t) {
+    PackedBoard board = new PackedBoard(5, 3);
+    BoardMipmap mipmap = new BoardMipmap(board);
+    board.flood(6);
+    board.flood(4);
+
+    // Level 1 cell 0 covers columns 0-1 and rows 0-1, with (1, 1) in the middle
+    Board one = mipmap.level(1);
+    t.checkExpect(one.isFlooded(0), true);
+    t.checkExpect(one.isFlooded(1), false);
+
+    // Cell 2 would have (5, 1) in the middle, past the edge, so it reads (4, 1)
+    t.checkExpect(one.isFlooded(2), false);
+    board.flood(9);
+    t.checkExpect(one.isFlooded(2), true);
+
+    // Level 2 cell 0 covers columns 0-3 and rows 0-3, with (2, 2) in the middle
+    t.checkExpect(mipmap.level(2).isFlooded(0), false);
+    board.flood(12);
+    t.checkExpect(mipmap.level(2).isFlooded(0), true);
+  }
+
+}
@@ -0,0 +1,492 @@
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// Floods a Board outward from its top-left cell. FloodGame makes its moves through
+// one of these, so how the flooded region is tracked can change with the board.
+interface FloodEngine {
+  // Floods the top-left cell and every cell connected to it by its color, returning
+  // the number of cells flooded. The board must have no flooded cells yet.
+  public int start();
+
+  // Changes the flood color and absorbs every unflooded cell of that color that is
+  // connected to the flooded region, returning the number of cells absorbed
+  public int spread(int color);
+
+  // The color index the flooded region currently has
+  public int floodColor();
+
+  // An engine in the same state as this one, flooding the given copy of its board
+  public FloodEngine copyOnto(Board board);
+
+  // The XOR of the Zobrist keys of every flooded cell, kept up to date as cells are
+  // absorbed
+  public long floodedHash();
+
+  // Works out what spreading every color would do, all at once, without changing
+  // the board or the engine, and fills in the given evaluation
+  // EFFECT: overwrites the gain and frontier of every color in into
+  public void evaluateMoves(MoveEvaluation into);
+}
+
+// What every possible move would do to a game: for each palette index, the number
+// of cells spreading it would absorb, and the size of the frontier left behind. The
+// current flood color absorbs nothing and leaves the frontier as it is. One of
+// these can be reused for every move of a game.
+class MoveEvaluation {
+  // the cells each color would absorb
+  int[] gain = new int[Palette.SIZE];
+
+  // the size of the frontier after each color, in the engine's own unit: flooded
+  // cells that border an unflooded cell, or for RegionEngine, regions on the border
+  int[] frontier = new int[Palette.SIZE];
+
+  // Sets every gain and frontier size back to zero
+  // EFFECT: clears gain and frontier
+  void clear() {
+    Arrays.fill(this.gain, 0);
+    Arrays.fill(this.frontier, 0);
+  }
+
+  // The color out of the given ones, other than the flood color, that absorbs the
+  // most cells, breaking ties by the larger frontier and then the earlier color, or
+  // -1 if there is no other color
+  int best(int[] colors, int floodColor) {
+    int best = -1;
+    for (int c : colors) {
+      if (c != floodColor && (best < 0 || this.gain[c] > this.gain[best]
+          || (this.gain[c] == this.gain[best] && this.frontier[c] > this.frontier[best]))) {
+        best = c;
+      }
+    }
+    return best;
+  }
+}
+
+// Floods a board by searching from the frontier: the flooded cells that still
+// border an unflooded cell. A spread only searches from there through connected
+// cells of the new color, so a move costs the number of absorbed cells plus the
+// frontier size, never the whole board.
+class FrontierEngine implements FloodEngine {
+  // the board being flooded
+  Board board;
+  int width;
+  int height;
+
+  // the color index the flooded region currently has
+  int floodColor;
+
+  // indexes of the flooded cells that border an unflooded cell,
+  // only the first frontierSize entries are in use
+  int[] frontier = new int[16];
+  int frontierSize;
+
+  // the XOR of the Zobrist keys of the flooded cells
+  long floodedHash;
+
+  // scratch space for the cells visited by a spread, kept between moves
+  int[] worklist = new int[16];
+
+  // the cells an evaluation has visited are the ones marked with the current stamp,
+  // so nothing has to be cleared between evaluations
+  int[] seen = new int[0];
+  int stamp;
+
+  FrontierEngine(Board board) {
+    this.board = board;
+    this.width = board.width();
+    this.height = board.height();
+  }
+
+  // Copies the state of another engine onto a copy of its board
+  FrontierEngine(Board board, FrontierEngine other) {
+    this(board);
+    this.floodColor = other.floodColor;
+    this.frontier = Arrays.copyOf(other.frontier, Math.max(other.frontierSize, 16));
+    this.frontierSize = other.frontierSize;
+    this.floodedHash = other.floodedHash;
+  }
+
+  // Floods the top-left cell and every cell connected to it by its color, returning
+  // the number of cells flooded
+  // EFFECT: resets the frontier and flood color for a fresh board
+  public int start() {
+    this.board.flood(0);
+    this.floodedHash = Zobrist.cellKey(0);
+    this.frontier[0] = 0;
+    this.frontierSize = 1;
+    this.floodColor = this.board.colorAt(0);
+    return 1 + this.spread(this.floodColor);
+  }
+
+  // Changes the flood color and absorbs every unflooded cell of that color that is
+  // connected to the flooded region, returning the number of cells absorbed
+  // EFFECT: floods the absorbed cells and rebuilds the frontier
+  public int spread(int color) {
+    int size = this.frontierSize;
+    this.worklist = this.ensureCapacity(this.worklist, size);
+    System.arraycopy(this.frontier, 0, this.worklist, 0, size);
+
+    // size grows as cells are absorbed, so this is a breadth-first search
+    int cellCount = this.width * this.height;
+    for (int i = 0; i < size; i++) {
+      int cell = this.worklist[i];
+      int x = cell % this.width;
+      if (x > 0) {
+        size = this.absorb(cell - 1, color, size);
+      }
+      if (x < this.width - 1) {
+        size = this.absorb(cell + 1, color, size);
+      }
+      if (cell >= this.width) {
+        size = this.absorb(cell - this.width, color, size);
+      }
+      if (cell + this.width < cellCount) {
+        size = this.absorb(cell + this.width, color, size);
+      }
+    }
+
+    // Keeps only the visited cells that can still absorb something later
+    int absorbed = size - this.frontierSize;
+    this.frontier = this.ensureCapacity(this.frontier, size);
+    this.frontierSize = 0;
+    for (int i = 0; i < size; i++) {
+      int cell = this.worklist[i];
+      if (this.bordersUnflooded(cell)) {
+        this.frontier[this.frontierSize] = cell;
+        this.frontierSize++;
+      }
+    }
+    this.floodColor = color;
+    return absorbed;
+  }
+
+  // The color index the flooded region currently has
+  public int floodColor() {
+    return this.floodColor;
+  }
+
+  // A copy of this engine, with its own frontier, flooding the given board
+  public FloodEngine copyOnto(Board board) {
+    return new FrontierEngine(board, this);
+  }
+
+  // The XOR of the Zobrist keys of every flooded cell
+  public long floodedHash() {
+    return this.floodedHash;
+  }
+
+  // Works out what spreading every color would do in one pass over the frontier:
+  // each unflooded region of cells next to it is searched once, within its own
+  // color, and counted towards that color only. Nothing is flooded.
+  // EFFECT: fills in into, and uses the worklist and seen marks as scratch space
+  public void evaluateMoves(MoveEvaluation into) {
+    into.clear();
+    int cellCount = this.width * this.height;
+    if (this.seen.length < cellCount) {
+      this.seen = new int[cellCount];
+      this.stamp = 0;
+    }
+    this.stamp++;
+    if (this.stamp == 0) {
+      Arrays.fill(this.seen, 0);
+      this.stamp = 1;
+    }
+
+    for (int i = 0; i < this.frontierSize; i++) {
+      int cell = this.frontier[i];
+      this.countFrontier(into, this.unfloodedColors(cell));
+      int x = cell % this.width;
+      if (x > 0) {
+        this.evaluateFrom(cell - 1, into);
+      }
+      if (x < this.width - 1) {
+        this.evaluateFrom(cell + 1, into);
+      }
+      if (cell >= this.width) {
+        this.evaluateFrom(cell - this.width, into);
+      }
+      if (cell + this.width < cellCount) {
+        this.evaluateFrom(cell + this.width, into);
+      }
+    }
+  }
+
+  // Counts the cells of the given cell's color connected to it, if it is unflooded
+  // and not yet seen, as the gain of that color, along with the ones that would be
+  // left on the frontier
+  // EFFECT: marks the counted cells seen and adds them to into
+  void evaluateFrom(int start, MoveEvaluation into) {
+    if (this.board.isFlooded(start) || this.seen[start] == this.stamp) {
+      return;
+    }
+    int color = this.board.colorAt(start);
+    int cellCount = this.width * this.height;
+    this.seen[start] = this.stamp;
+    this.worklist = this.ensureCapacity(this.worklist, 1);
+    this.worklist[0] = start;
+    int size = 1;
+    while (size > 0) {
+      size--;
+      int cell = this.worklist[size];
+      into.gain[color]++;
+      if ((this.unfloodedColors(cell) & ~(1 << color)) != 0) {
+        into.frontier[color]++;
+      }
+      int x = cell % this.width;
+      if (x > 0) {
+        size = this.push(cell - 1, color, size);
+      }
+      if (x < this.width - 1) {
+        size = this.push(cell + 1, color, size);
+      }
+      if (cell >= this.width) {
+        size = this.push(cell - this.width, color, size);
+      }
+      if (cell + this.width < cellCount) {
+        size = this.push(cell + this.width, color, size);
+      }
+    }
+  }
+
+  // Pushes the given cell onto the worklist if it is unflooded, unseen and of the
+  // given color, returning the new number of cells on it
+  // EFFECT: marks the cell seen and adds it to the end of the worklist
+  int push(int cell, int color, int size) {
+    if (this.seen[cell] != this.stamp && !this.board.isFlooded(cell)
+        && this.board.colorAt(cell) == color) {
+      this.seen[cell] = this.stamp;
+      this.worklist = this.ensureCapacity(this.worklist, size + 1);
+      this.worklist[size] = cell;
+      return size + 1;
+    }
+    return size;
+  }
+
+  // The colors of the unflooded cells next to the given cell, one bit per color
+  int unfloodedColors(int cell) {
+    int x = cell % this.width;
+    int mask = 0;
+    if (x > 0 && !this.board.isFlooded(cell - 1)) {
+      mask |= 1 << this.board.colorAt(cell - 1);
+    }
+    if (x < this.width - 1 && !this.board.isFlooded(cell + 1)) {
+      mask |= 1 << this.board.colorAt(cell + 1);
+    }
+    if (cell >= this.width && !this.board.isFlooded(cell - this.width)) {
+      mask |= 1 << this.board.colorAt(cell - this.width);
+    }
+    if (cell + this.width < this.width * this.height
+        && !this.board.isFlooded(cell + this.width)) {
+      mask |= 1 << this.board.colorAt(cell + this.width);
+    }
+    return mask;
+  }
+
+  // Counts a flooded cell with unflooded neighbors of the given colors towards the
+  // frontier of every color that would still leave it one of another color
+  // EFFECT: adds to into.frontier
+  void countFrontier(MoveEvaluation into, int neighborColors) {
+    for (int c = 0; c < Palette.SIZE; c++) {
+      if ((neighborColors & ~(1 << c)) != 0) {
+        into.frontier[c]++;
+      }
+    }
+  }
+
+  // Floods the given cell if it is unflooded and has the given color, returning
+  // the new number of cells in the worklist
+  // EFFECT: adds the flooded cell to the end of the worklist and its key to the hash
+  int absorb(int cell, int color, int size) {
+    if (!this.board.isFlooded(cell) && this.board.colorAt(cell) == color) {
+      this.board.flood(cell);
+      this.floodedHash ^= Zobrist.cellKey(cell);
+      this.worklist = this.ensureCapacity(this.worklist, size + 1);
+      this.worklist[size] = cell;
+      return size + 1;
+    }
+    return size;
+  }
+
+  // True if any of the four cells next to the given cell is unflooded
+  boolean bordersUnflooded(int cell) {
+    int x = cell % this.width;
+    return (x > 0 && !this.board.isFlooded(cell - 1))
+        || (x < this.width - 1 && !this.board.isFlooded(cell + 1))
+        || (cell >= this.width && !this.board.isFlooded(cell - this.width))
+        || (cell + this.width < this.width * this.height
+            && !this.board.isFlooded(cell + this.width));
+  }
+
+  // Returns the given array, or a larger copy of it if it cannot hold the given
+  // number of entries
+  int[] ensureCapacity(int[] arr, int needed) {
+    if (needed <= arr.length) {
+      return arr;
+    }
+    return Arrays.copyOf(arr, Math.max(needed, arr.length * 2));
+  }
+
+}
+
+// Examples of the flood engine
+class ExamplesFloodEngine {
+
+  PackedBoard board;
+  FrontierEngine engine;
+
+  void initData() {
+    // 4 columns, 3 rows of color indexes:
+    // 0 0 1 2
+    // 1 1 1 2
+    // 2 0 1 0
+    this.board = new PackedBoard(4, 3);
+    int[] colors = {0, 0, 1, 2, 1, 1, 1, 2, 2, 0, 1, 0};
+    for (int i = 0; i < colors.length; i++) {
+      this.board.setColor(i, colors[i]);
+    }
+    this.engine = new FrontierEngine(this.board);
+  }
+
+  // tests the start method
+  void testStart(Tester t) {
+    this.initData();
+
+    // The top-left cell absorbs the cell of the same color next to it
+    t.checkExpect(this.engine.start(), 2);
+    t.checkExpect(this.board.isFlooded(0), true);
+    t.checkExpect(this.board.isFlooded(1), true);
+    t.checkExpect(this.board.isFlooded(2), false);
+    t.checkExpect(this.engine.floodColor, 0);
+    t.checkExpect(this.engine.frontierSize, 2);
+  }
+
+  // tests the spread method
+  void testSpread(Tester t) {
+    this.initData();
+    this.engine.start();
+
+    // Color 1 is a chain that reaches the bottom row in one move
+    t.checkExpect(this.engine.spread(1), 5);
+    t.checkExpect(this.board.isFlooded(10), true);
+    t.checkExpect(this.board.isFlooded(3), false);
+    t.checkExpect(this.board.isFlooded(9), false);
+    t.checkExpect(this.engine.floodColor, 1);
+
+    // Cells surrounded by the flood are dropped from the frontier
+    t.checkExpect(this.engine.bordersUnflooded(0), false);
+    t.checkExpect(this.engine.bordersUnflooded(4), true);
+
+    // A color with no connected cells absorbs nothing
+    t.checkExpect(this.engine.spread(5), 0);
+
+    t.checkExpect(this.engine.spread(2), 3);
+    t.checkExpect(this.engine.spread(0), 2);
+    t.checkExpect(this.engine.frontierSize, 0);
+    for (int i = 0; i < 12; i++) {
+      t.checkExpect(this.board.isFlooded(i), true);
+    }
+  }
+
+  // tests the absorb method
+  void testAbsorb(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.engine.absorb(4, 0, 0), 0);
+    t.checkExpect(this.board.isFlooded(4), false);
+    t.checkExpect(this.engine.absorb(4, 1, 0), 1);
+    t.checkExpect(this.board.isFlooded(4), true);
+    t.checkExpect(this.engine.worklist[0], 4);
+
+    // Already flooded cells are not absorbed twice
+    t.checkExpect(this.engine.absorb(4, 1, 1), 1);
+  }
+
+  // tests the floodColor and copyOnto methods
+  void testCopyOnto(Tester t) {
+    this.initData();
+    this.engine.start();
+    this.engine.spread(1);
+    PackedBoard copyBoard = new PackedBoard(this.board);
+    FloodEngine copy = this.engine.copyOnto(copyBoard);
+
+    t.checkExpect(copy.floodColor(), 1);
+    t.checkExpect(copy.spread(2), 3);
+    t.checkExpect(this.engine.floodColor(), 1);
+    t.checkExpect(this.board.isFlooded(3), false);
+    t.checkExpect(this.engine.spread(2), 3);
+  }
+
+  // tests the ensureCapacity method
+  void testEnsureCapacity(Tester t) {
+    this.initData();
+    int[] arr = new int[4];
+
+    t.checkExpect(this.engine.ensureCapacity(arr, 4) == arr, true);
+    t.checkExpect(this.engine.ensureCapacity(arr, 5).length, 8);
+    t.checkExpect(this.engine.ensureCapacity(arr, 20).length, 20);
+  }
+
+  // tests the evaluateMoves, unfloodedColors and countFrontier methods
+  void testEvaluateMoves(Tester t) {
+    this.initData();
+    this.engine.start();
+    MoveEvaluation moves = new MoveEvaluation();
+    this.engine.evaluateMoves(moves);
+
+    // Color 1 absorbs the chain of five 1s, which borders something on every side
+    t.checkExpect(moves.gain, new int[] {0, 5, 0, 0, 0, 0});
+    t.checkExpect(moves.frontier, new int[] {2, 5, 2, 2, 2, 2});
+    t.checkExpect(this.engine.unfloodedColors(1), 2);
+    t.checkExpect(this.engine.unfloodedColors(5), 3);
+
+    // Nothing is flooded, and evaluating again gives the same answer
+    t.checkExpect(this.board.isFlooded(2), false);
+    t.checkExpect(this.engine.frontierSize, 2);
+    this.engine.evaluateMoves(moves);
+    t.checkExpect(moves.gain, new int[] {0, 5, 0, 0, 0, 0});
+
+    this.engine.spread(1);
+    this.engine.evaluateMoves(moves);
+    t.checkExpect(moves.gain, new int[] {2, 0, 3, 0, 0, 0});
+    t.checkExpect(moves.frontier, new int[] {5, 5, 4, 5, 5, 5});
+  }
+
+  // tests that evaluating every move gives the same gains and frontiers as playing
+  // each one on a snapshot of the game, on random boards
+  void testEvaluateMovesMatchesSpread(Tester t) {
+    MoveEvaluation moves = new MoveEvaluation();
+    boolean same = true;
+    for (int seed = 0; seed < 20; seed++) {
+      FloodGame game = FloodGame.newGame(12, 3 + seed % 4, seed);
+      Random rand = new Random(seed);
+      while (!game.isWon()) {
+        game.evaluateMoves(moves);
+        for (int c = 0; c < Palette.SIZE; c++) {
+          FloodGame copy = game.snapshot();
+          same = same && copy.flood(c) == moves.gain[c]
+              && ((FrontierEngine) copy.engine).frontierSize == moves.frontier[c];
+        }
+        game.play(game.colors[rand.nextInt(game.colors.length)]);
+      }
+    }
+    t.checkExpect(same, true);
+  }
+
+  // tests the best and clear methods of MoveEvaluation
+  void testBest(Tester t) {
+    MoveEvaluation moves = new MoveEvaluation();
+    moves.gain = new int[] {4, 3, 4, 9, 0, 0};
+    moves.frontier = new int[] {2, 8, 5, 1, 0, 0};
+
+    t.checkExpect(moves.best(new int[] {0, 1, 2, 3}, 3), 2);
+    t.checkExpect(moves.best(new int[] {0, 1, 2, 3}, 0), 3);
+    t.checkExpect(moves.best(new int[] {0, 1}, 1), 0);
+    t.checkExpect(moves.best(new int[] {1}, 1), -1);
+
+    moves.clear();
+    t.checkExpect(moves.gain, new int[6]);
+    t.checkExpect(moves.frontier, new int[6]);
+    t.checkExpect(moves.best(new int[] {0, 1, 2}, 0), 1);
+  }
+}
@@ -0,0 +1,535 @@
+import java.util.Arrays;
+import tester.Tester;
+
+// A game of Flood-It without any window: a board, the flood engine running on it,
+// and the count of moves. Colors are Palette indexes. FloodItWorld draws one of
+// these, and simulations can run as many as they like with no display at all.
+class FloodGame {
+  // the cells of the game
+  Board board;
+
+  // floods the board, from the frontier of the flooded region unless the game was
+  // given another engine
+  FloodEngine engine;
+
+  // the palette indexes of the colors used on this board
+  int[] colors;
+
+  // the number of moves made, and the number allowed before the game is lost
+  int moves;
+  int movesAllowed;
+
+  // the number of flooded cells on the board, kept up to date by every move
+  int floodedCount;
+
+  // when true, isWon() also scans the whole board and fails if the count is off;
+  // meant for tests, since it makes every check look at every cell
+  boolean checkFloodedCount = false;
+
+  // the color of every move made so far, move i at moveLog[i - 1], or null when the
+  // game is not recording its moves
+  byte[] moveLog;
+
+  // the fingerprint of the board's colors, or the key of a tiled board, worked out
+  // the first time stateHash needs it after the game starts
+  long boardKey;
+  boolean hasBoardKey;
+
+  // Starts a game on the given board by flooding its top-left cell with the given
+  // engine, which must be flooding that board
+  FloodGame(Board board, FloodEngine engine, int[] colors, int movesAllowed) {
+    this.board = board;
+    this.colors = colors;
+    this.movesAllowed = movesAllowed;
+    this.engine = engine;
+    this.floodedCount = this.engine.start();
+  }
+
+  // Starts a game on the given board, flooding it from the frontier
+  FloodGame(Board board, int[] colors, int movesAllowed) {
+    this(board, new FrontierEngine(board), colors, movesAllowed);
+  }
+
+  // Copies a game onto a copy of its board, keeping the moves and the engine's state
+  FloodGame(FloodGame other, Board board) {
+    this.board = board;
+    this.colors = other.colors;
+    this.moves = other.moves;
+    this.movesAllowed = other.movesAllowed;
+    this.floodedCount = other.floodedCount;
+    this.engine = other.engine.copyOnto(board);
+    this.boardKey = other.boardKey;
+    this.hasBoardKey = other.hasBoardKey;
+    if (other.moveLog != null) {
+      this.moveLog = other.moveLog.clone();
+    }
+  }
+
+  // A new size x size game using the first numColors palette colors, with cell colors
+  // and the move limit decided by the seed, size and number of colors alone. The
+  // board is the one BoardGenerator makes from the seed.
+  static FloodGame newGame(int size, int numColors, long seed) {
+    BoardGenerator.checkColors(numColors);
+    PackedBoard board = BoardGenerator.generate(seed, size, numColors);
+
+    int[] colors = new int[numColors];
+    for (int i = 0; i < numColors; i++) {
+      colors[i] = i;
+    }
+    return new FloodGame(board, colors, defaultMovesAllowed(size, numColors));
+  }
+
+  // The fastest engine for flooding the given board: bitboards when it is narrow
+  // enough, and whole regions when it is not
+  static FloodEngine fastEngine(Board board) {
+    if (board.width() <= BitboardEngine.MAX_WIDTH) {
+      return new BitboardEngine(board);
+    }
+    return new RegionEngine(board);
+  }
+
+  // The number of moves allowed on a board of the given size and number of colors:
+  // 1 + 2 + ... + numColors, plus the size
+  static int defaultMovesAllowed(int size, int numColors) {
+    int movesAllowed = size;
+    for (int i = numColors; i > 0; i--) {
+      movesAllowed += i;
+    }
+    return movesAllowed;
+  }
+
+  // A new width x height game on a TiledBoard, for boards too big to hold whole: the
+  // board has the colors newGame would give it, and only the tiles near the flood
+  // are kept
+  static FloodGame newTiledGame(int width, int height, int numColors, long seed) {
+    TiledBoard board = new TiledBoard(seed, width, height, numColors);
+    int[] colors = new int[numColors];
+    for (int i = 0; i < numColors; i++) {
+      colors[i] = i;
+    }
+    return new FloodGame(board, new TileEngine(board), colors,
+        defaultMovesAllowed(Math.max(width, height), numColors));
+  }
+
+  // Starts this game over on its board, which must have no flooded cells, so one
+  // game can be played on many boards without allocating a new one each time
+  // EFFECT: resets the moves and floods the top-left cell again
+  void restart() {
+    this.moves = 0;
+    this.hasBoardKey = false;
+    this.floodedCount = this.engine.start();
+  }
+
+  // Makes a move by flooding the board in the given color, returning the number of
+  // cells absorbed. Picking the current flood color is not a move and changes nothing.
+  // EFFECT: floods the board and counts the move
+  int play(int color) {
+    if (color == this.engine.floodColor()) {
+      return 0;
+    }
+    this.moves++;
+    if (this.moveLog != null) {
+      this.logMove(color);
+    }
+    return this.flood(color);
+  }
+
+  // Starts keeping the color of every move, so the game can be saved as a
+  // GameRecord; it must be called before the first move. Restarting the game reuses
+  // the log.
+  // EFFECT: sets this.moveLog if it is not already set
+  void recordMoves() {
+    if (this.moves > 0 && this.moveLog == null) {
+      throw new IllegalStateException("Moves must be recorded from the start of a game");
+    }
+    if (this.moveLog == null) {
+      this.moveLog = new byte[16];
+    }
+  }
+
+  // Writes the color of the move just counted into the log, doubling it when full
+  // EFFECT: sets moveLog[moves - 1], growing the log if needed
+  void logMove(int color) {
+    if (this.moves > this.moveLog.length) {
+      this.moveLog = Arrays.copyOf(this.moveLog, this.moveLog.length * 2);
+    }
+    this.moveLog[this.moves - 1] = (byte) color;
+  }
+
+  // Floods the board in the given color without counting a move, returning the number
+  // of cells absorbed
+  // EFFECT: floods the board and updates floodedCount
+  int flood(int color) {
+    int absorbed = this.engine.spread(color);
+    this.floodedCount += absorbed;
+    return absorbed;
+  }
+
+  // What every possible move would do, worked out by the engine without changing
+  // the game or copying its board
+  // EFFECT: overwrites the gains and frontier sizes in into, returning it
+  MoveEvaluation evaluateMoves(MoveEvaluation into) {
+    this.engine.evaluateMoves(into);
+    return into;
+  }
+
+  // What every possible move would do, in a new evaluation
+  MoveEvaluation evaluateMoves() {
+    return this.evaluateMoves(new MoveEvaluation());
+  }
+
+  // The Zobrist hash of the state of this game: the colors of its board, which
+  // cells are flooded and the flood color. The engine keeps the flooded cells' part
+  // up to date, so after the first call this takes constant time. A tiled board is
+  // keyed by its seed, size and colors rather than fingerprinted, so even the first
+  // call never makes its tiles.
+  // EFFECT: works out this.boardKey the first time it is needed
+  long stateHash() {
+    if (!this.hasBoardKey) {
+      if (this.board instanceof TiledBoard) {
+        this.boardKey = ((TiledBoard) this.board).boardKey();
+      }
+      else {
+        this.boardKey = BoardGenerator.fingerprint(this.board);
+      }
+      this.hasBoardKey = true;
+    }
+    return Zobrist.stateHash(this.boardKey, this.engine.floodedHash(), this.floodColor());
+  }
+
+  // The palette index of the flooded region's color
+  int floodColor() {
+    return this.engine.floodColor();
+  }
+
+  // The number of cells on the board
+  int cellCount() {
+    return this.board.width() * this.board.height();
+  }
+
+  // True if every cell has been flooded, in constant time from the flooded count
+  boolean isWon() {
+    boolean won = this.floodedCount == this.cellCount();
+    if (this.checkFloodedCount && won != this.allFlooded()) {
+      throw new IllegalStateException("Flooded count " + this.floodedCount
+          + " does not match the board");
+    }
+    return won;
+  }
+
+  // True if every cell has been flooded, found by looking at every cell
+  boolean allFlooded() {
+    for (int i = 0; i < this.cellCount(); i++) {
+      if (!this.board.isFlooded(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The number of moves that can still be made before the game is lost
+  int movesLeft() {
+    return Math.max(0, this.movesAllowed - this.moves);
+  }
+
+  // An independent copy of this game on a PackedBoard, or for a tiled board on a
+  // copy of its tiles, which can be played or searched without changing this game
+  FloodGame snapshot() {
+    if (this.board instanceof TiledBoard) {
+      return new FloodGame(this, new TiledBoard((TiledBoard) this.board));
+    }
+    return new FloodGame(this, new PackedBoard(this.board));
+  }
+
+}
+
+// What another thread needs to copy a game without the thread playing it doing any
+// work per cell: the game's board and colors, and the number and colors of the
+// moves played so far. The copy is made on the other thread from the board's colors
+// with the moves played again on it. A game that does not record its moves is
+// copied up front instead. The board is the game's own, not a copy. Moves never
+// recolor its cells, but a world that restarts its game recolors the board in
+// place, maybe while it is being copied, so a copy made across a restart can mix
+// two boards. That copy's answer is never used: the restart starts a new
+// calibration and hint request, which cancels the one holding this copy. A hint
+// search that finishes first caches its hint under the hash of the copy it
+// searched, which is still the right hint for that state.
+class GameCopy {
+  Board board;
+  int[] colors;
+  int moves;
+  int movesAllowed;
+  byte[] moveLog;
+
+  // a copy of a game that does not record its moves, or null
+  FloodGame snapshot;
+
+  GameCopy(FloodGame game) {
+    this.board = game.board;
+    this.colors = game.colors;
+    this.moves = game.moves;
+    this.movesAllowed = game.movesAllowed;
+    this.moveLog = game.moveLog;
+    if (game.moves > 0 && game.moveLog == null) {
+      this.snapshot = game.snapshot();
+    }
+  }
+
+  // The game as it was when this was made, on a board of its own: a PackedBoard with
+  // the board's colors, or a new TiledBoard from the same seed
+  FloodGame make() {
+    if (this.snapshot != null) {
+      return this.snapshot;
+    }
+    FloodGame game;
+    if (this.board instanceof TiledBoard) {
+      TiledBoard tiled = (TiledBoard) this.board;
+      TiledBoard copy = new TiledBoard(tiled.seed, tiled.width, tiled.height, tiled.numColors);
+      game = new FloodGame(copy, new TileEngine(copy), this.colors, this.movesAllowed);
+    }
+    else {
+      PackedBoard copy = new PackedBoard(this.board.width(), this.board.height());
+      for (int i = 0; i < copy.width() * copy.height(); i++) {
+        copy.setColor(i, this.board.colorAt(i));
+      }
+      game = new FloodGame(copy, FloodGame.fastEngine(copy), this.colors, this.movesAllowed);
+    }
+    for (int i = 0; i < this.moves; i++) {
+      game.play(this.moveLog[i]);
+    }
+    return game;
+  }
+}
+
+// Examples of headless games
+class ExamplesFloodGame {
+
+  FloodGame game;
+
+  void initData() {
+    // 3 columns, 3 rows of palette indexes:
+    // 0 1 1
+    // 0 2 1
+    // 2 2 0
+    PackedBoard board = new PackedBoard(3, 3);
+    int[] colors = {0, 1, 1, 0, 2, 1, 2, 2, 0};
+    for (int i = 0; i < colors.length; i++) {
+      board.setColor(i, colors[i]);
+    }
+    this.game = new FloodGame(board, new int[] {0, 1, 2}, 4);
+    this.game.checkFloodedCount = true;
+  }
+
+  // tests the FloodGame constructor
+  void testConstructor(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.game.floodedCount, 2);
+    t.checkExpect(this.game.moves, 0);
+    t.checkExpect(this.game.movesLeft(), 4);
+    t.checkExpect(this.game.floodColor(), 0);
+    t.checkExpect(this.game.cellCount(), 9);
+  }
+
+  // tests the newGame method
+  void testNewGame(Tester t) {
+    FloodGame first = FloodGame.newGame(10, 4, 42);
+    FloodGame second = FloodGame.newGame(10, 4, 42);
+
+    t.checkExpect(first.board.width(), 10);
+    t.checkExpect(first.board.height(), 10);
+    t.checkExpect(first.colors, new int[] {0, 1, 2, 3});
+    t.checkExpect(first.movesAllowed, 20);
+
+    // The same seed gives the same board
+    boolean same = true;
+    for (int i = 0; i < 100; i++) {
+      same = same && first.board.colorAt(i) == second.board.colorAt(i);
+      t.checkExpect(first.board.colorAt(i) < 4, true);
+    }
+    t.checkExpect(same, true);
+
+    t.checkException(new IllegalArgumentException("Number of colors must be between 1 and 6"),
+        first, "newGame", 3, 7, 1L);
+  }
+
+  // tests the restart method
+  void testRestart(Tester t) {
+    FloodGame fresh = FloodGame.newGame(8, 3, 9);
+    PackedBoard board = new PackedBoard(8, 8);
+    FloodGame game = new FloodGame(board, new int[] {0, 1, 2}, 20);
+    game.play(1);
+    game.play(2);
+
+    board.clearFlooded();
+    BoardGenerator.fill(board, 9, 3, BoardGenerator.CANONICAL);
+    game.restart();
+    t.checkExpect(game.moves, 0);
+    t.checkExpect(game.floodedCount, fresh.floodedCount);
+    t.checkExpect(game.floodColor(), fresh.floodColor());
+    t.checkExpect(((FrontierEngine) game.engine).frontierSize,
+        ((FrontierEngine) fresh.engine).frontierSize);
+    for (int i = 0; i < 64; i++) {
+      t.checkExpect(board.colorAt(i), fresh.board.colorAt(i));
+    }
+  }
+
+  // tests the fastEngine method
+  void testFastEngine(Tester t) {
+    t.checkExpect(FloodGame.fastEngine(new PackedBoard(64, 80)) instanceof BitboardEngine, true);
+    t.checkExpect(FloodGame.fastEngine(new PackedBoard(65, 3)) instanceof RegionEngine, true);
+  }
+
+  // tests the defaultMovesAllowed method
+  void testDefaultMovesAllowed(Tester t) {
+    t.checkExpect(FloodGame.defaultMovesAllowed(3, 2), 6);
+    t.checkExpect(FloodGame.defaultMovesAllowed(24, 6), 45);
+  }
+
+  // tests the play and isWon methods
+  void testPlay(Tester t) {
+    this.initData();
+
+    // The current color is not a move
+    t.checkExpect(this.game.play(0), 0);
+    t.checkExpect(this.game.moves, 0);
+
+    t.checkExpect(this.game.play(2), 3);
+    t.checkExpect(this.game.moves, 1);
+    t.checkExpect(this.game.isWon(), false);
+
+    t.checkExpect(this.game.play(1), 3);
+    t.checkExpect(this.game.isWon(), false);
+    t.checkExpect(this.game.play(0), 1);
+    t.checkExpect(this.game.isWon(), true);
+    t.checkExpect(this.game.movesLeft(), 1);
+  }
+
+  // tests the recordMoves and logMove methods
+  void testRecordMoves(Tester t) {
+    this.initData();
+    this.game.recordMoves();
+    this.game.play(2);
+    this.game.play(2);
+    this.game.play(1);
+
+    // Only counted moves are kept
+    t.checkExpect(this.game.moveLog.length, 16);
+    t.checkExpect(this.game.moveLog[0], (byte) 2);
+    t.checkExpect(this.game.moveLog[1], (byte) 1);
+
+    // The log grows as needed, and copies keep their own
+    FloodGame copy = this.game.snapshot();
+    for (int i = 0; i < 20; i++) {
+      copy.play(i % 2);
+    }
+    t.checkExpect(copy.moves, 22);
+    t.checkExpect(copy.moveLog.length, 32);
+    t.checkExpect(copy.moveLog[21], (byte) 1);
+    t.checkExpect(this.game.moveLog[2], (byte) 0);
+
+    FloodGame unrecorded = FloodGame.newGame(5, 3, 1);
+    unrecorded.play(unrecorded.floodColor() == 0 ? 1 : 0);
+    t.checkException(
+        new IllegalStateException("Moves must be recorded from the start of a game"),
+        unrecorded, "recordMoves");
+  }
+
+  // tests the flood method
+  void testFlood(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.game.flood(2), 3);
+    t.checkExpect(this.game.moves, 0);
+    t.checkExpect(this.game.floodedCount, 5);
+    t.checkExpect(this.game.floodColor(), 2);
+  }
+
+  // tests the isWon and allFlooded methods when cells are flooded behind the game's back
+  void testIsWon(Tester t) {
+    this.initData();
+
+    for (int i = 0; i < 9; i++) {
+      this.game.board.flood(i);
+    }
+    t.checkExpect(this.game.allFlooded(), true);
+    t.checkException(new IllegalStateException("Flooded count 2 does not match the board"),
+        this.game, "isWon");
+    this.game.checkFloodedCount = false;
+    t.checkExpect(this.game.isWon(), false);
+  }
+
+  // tests the movesLeft method
+  void testMovesLeft(Tester t) {
+    this.initData();
+
+    this.game.moves = 3;
+    t.checkExpect(this.game.movesLeft(), 1);
+    this.game.moves = 6;
+    t.checkExpect(this.game.movesLeft(), 0);
+  }
+
+  // tests the snapshot method
+  void testSnapshot(Tester t) {
+    this.initData();
+    this.game.play(2);
+    FloodGame copy = this.game.snapshot();
+
+    t.checkExpect(copy.moves, 1);
+    t.checkExpect(copy.floodedCount, 5);
+    t.checkExpect(copy.floodColor(), 2);
+    t.checkExpect(copy.board.isFlooded(6), true);
+
+    // Playing the copy leaves the original alone
+    t.checkExpect(copy.play(1), 3);
+    t.checkExpect(copy.play(0), 1);
+    t.checkExpect(copy.isWon(), true);
+    t.checkExpect(this.game.moves, 1);
+    t.checkExpect(this.game.board.isFlooded(2), false);
+    t.checkExpect(this.game.play(1), 3);
+  }
+
+  // tests the evaluateMoves method
+  void testEvaluateMoves(Tester t) {
+    this.initData();
+    MoveEvaluation moves = this.game.evaluateMoves();
+
+    t.checkExpect(moves.gain, new int[] {0, 3, 3, 0, 0, 0});
+    t.checkExpect(moves.frontier, new int[] {2, 3, 3, 2, 2, 2});
+    t.checkExpect(moves.best(this.game.colors, this.game.floodColor()), 1);
+
+    // Evaluating is not a move and floods nothing
+    t.checkExpect(this.game.moves, 0);
+    t.checkExpect(this.game.floodedCount, 2);
+    t.checkExpect(this.game.board.isFlooded(1), false);
+
+    this.game.play(2);
+    t.checkExpect(this.game.evaluateMoves(moves) == moves, true);
+    t.checkExpect(moves.gain, new int[] {1, 3, 0, 0, 0, 0});
+  }
+
+  // tests that a GameCopy makes the game as it was when it was taken, from the
+  // colors and moves of games that record them and from a snapshot of others
+  void testGameCopy(Tester t) {
+    this.initData();
+    this.game.play(1);
+    GameCopy unrecorded = new GameCopy(this.game);
+    t.checkExpect(unrecorded.snapshot == null, false);
+    t.checkExpect(unrecorded.make() == unrecorded.snapshot, true);
+
+    FloodGame tiled = FloodGame.newTiledGame(70, 70, 3, 11);
+    tiled.recordMoves();
+    tiled.play(1);
+    tiled.play(2);
+    GameCopy copy = new GameCopy(tiled);
+    t.checkExpect(copy.snapshot, null);
+    tiled.play(0);
+
+    FloodGame made = copy.make();
+    t.checkExpect(made.board instanceof TiledBoard, true);
+    t.checkExpect(made.board == tiled.board, false);
+    t.checkExpect(made.moves, 2);
+    t.checkExpect(made.movesAllowed, tiled.movesAllowed);
+    t.checkExpect(made.floodColor(), 2);
+  }
+}
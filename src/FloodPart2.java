@@ -1,10 +1,14 @@
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import tester.Tester;
 import javalib.impworld.*;
 import java.awt.Color;
 import javalib.worldimages.*;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 interface ICell {
   // Draws a cell in the flood it game
@@ -13,8 +17,8 @@ interface ICell {
   // Draws a brighter cell in the flood game
   public WorldImage drawBrighterCell(Color color, int cellSize);
 
-  // True if given color is the same as the color of this ICell
-  public boolean sameColor(Color otherColor);
+  // True if the given palette index is the color of this ICell
+  public boolean sameColor(int colorIndex);
 
   // 'Floods' the cell
   public void flood();
@@ -37,7 +41,7 @@ class MtCell implements ICell {
   }
 
   // No such thing as same color in border cell
-  public boolean sameColor(Color otherColor) {
+  public boolean sameColor(int colorIndex) {
     return false;
   }
 
@@ -54,40 +58,26 @@ class ConsCell implements ICell {
   int x;
   int y;
 
-  ArrayList<ConsCell> floodList = new ArrayList<ConsCell>();
   // Properties of a cell
   Color color;
   boolean flooded;
 
+  // the palette index of color, or -1 if it has none, kept with it so comparing
+  // colors never looks a color up
+  int colorIndex;
+
   // The four adjacent cells to this cell
   ICell left;
   ICell top;
   ICell right;
   ICell bottom;
 
-
-
-  // Standard colors
-  Color red = new Color(217, 28, 60);
-  Color orange = new Color(240, 117, 10);
-  Color yellow = new Color(237, 211, 43);
-  Color green = new Color(62, 212, 51);
-  Color blue = new Color(34, 122, 230);
-  Color purple = new Color(105, 48, 191);
-
-  // Brighter colors
-  Color redBright = new Color(217, 95, 116);
-  Color orangeBright = new Color(242, 150, 70);
-  Color yellowBright = new Color(242, 227, 126);
-  Color greenBright = new Color(121, 212, 114);
-  Color blueBright = new Color(98, 156, 227);
-  Color purpleBright = new Color(139, 103, 194);
-
   // Regular constructor for ConsCell
   ConsCell(int x, int y, Color color, boolean flooded) {
     this.x = x;
     this.y = y;
     this.color = color;
+    this.colorIndex = Palette.indexOf(color);
     this.flooded = false;
   }
 
@@ -97,6 +87,7 @@ class ConsCell implements ICell {
     this.x = x;
     this.y = y;
     this.color = color;
+    this.colorIndex = Palette.indexOf(color);
     this.flooded = false;
     this.left = left;
     this.top = top;
@@ -121,9 +112,23 @@ class ConsCell implements ICell {
             RectangleImage(cellSize, cellSize, "solid", color));
   }
 
-  // True if given color is the same as the color of this ConsCell
-  public boolean sameColor(Color otherColor) {
-    return this.color.equals(otherColor);
+  // True if the given palette index is the color of this ConsCell
+  public boolean sameColor(int colorIndex) {
+    return this.colorIndex == colorIndex;
+  }
+
+  // Gives this ConsCell the given color and looks up its palette index once
+  // EFFECT: changes this.color and this.colorIndex
+  void setColor(Color color) {
+    this.color = color;
+    this.colorIndex = Palette.indexOf(color);
+  }
+
+  // Gives this ConsCell the standard color with the given palette index
+  // EFFECT: changes this.color and this.colorIndex
+  void setColorIndex(int colorIndex) {
+    this.color = Palette.color(colorIndex);
+    this.colorIndex = colorIndex;
   }
 
   // 'Floods' this ConsCell
@@ -133,107 +138,196 @@ class ConsCell implements ICell {
 
   // Finds the brighter version of a color
   public Color brighter(Color color) {
-    if (color.equals(this.red)) {
-      return this.redBright;
-    }
-    else if (color.equals(this.orange)) {
-      return this.orangeBright;
-    }
-    else if (color.equals(this.yellow)) {
-      return this.yellowBright;
-    }
-    else if (color.equals(this.green)) {
-      return this.greenBright;
-    }
-    else if (color.equals(this.blue)) {
-      return this.blueBright;
-    }
-    else {
-      return this.purpleBright;
-    }
+    return Palette.brighter(color);
   }
 
 }
 
 // Represents a Flood-It World
 class FloodItWorld extends World {
-  // the amount of rows/columns in a game
+  // the amount of rows/columns in a game: the longer side of the board when its
+  // sides differ
   int boardSize;
 
+  // the number of columns and rows of the board
+  int boardWidth;
+  int boardHeight;
+
   // the amount of colors distributed through the game board
   int numColors;
 
-  // the number of clicks used in this game
-  int clicks;
+  // the size of each cell in the game board, or 0 when cells are not all the same
+  // whole number of pixels
+  int cellSize;
 
-  // the amount of clicks allowed to be made in the game
-  int clicksAllowed;
+  // the part of the board shown, which keys and the right and middle mouse buttons
+  // zoom and pan
+  Viewport view;
 
-  // the size of each cell in the game board
-  int cellSize;
+  // where the cells shown are drawn on the canvas, and which of them is under a point
+  BoardLayout layout;
+
+  // the colors of the board at smaller sizes, for showing more cells than there are
+  // pixels; made when first needed, and dropped with every new board
+  BoardMipmap overview;
 
   // the array and arrangement of all cells
   ArrayList<ArrayList<ConsCell>> board;
 
-  Color red = new Color(217, 28, 60);
-  Color orange = new Color(240, 117, 10);
-  Color yellow = new Color(237, 211, 43);
-  Color green = new Color(62, 212, 51);
-  Color blue = new Color(34, 122, 230);
-  Color purple = new Color(105, 48, 191);
-
-  // list of all possible colors to be used
-  ArrayList<Color> colors = new ArrayList<Color>(
-      Arrays.asList(red, orange, yellow, green, blue, purple));
-
-  // list of length (numColors) of random colors that
+  // list of length (numColors) of random palette colors that
   // makeCells() can chose randomly from
   ArrayList<Color> colorList = new ArrayList<Color>();
 
   // random variable
   Random rand;
 
-  Color currentFloodColor;
+  // where the seed of each new board comes from, or null when cells are colored from
+  // this.rand one at a time, as on the fixed test boards
+  SplittableRandom seeds;
+
+  // the seed BoardGenerator made the current board from
+  long boardSeed;
+
+  // the palette indexes of this.colorList, in the same order
+  int[] paletteIndexes = new int[Palette.SIZE];
 
   Color newFloodColor;
 
+  // this.board seen through the Board interface, with Palette indexes
+  CellBoard cells;
+
+  // the game being played on this.cells: the flood, the clicks used and allowed,
+  // and whether it has been won. This world only draws it and turns input into moves.
+  FloodGame game;
+
+  // the last scene drawn, and whether the game has changed since it was drawn
+  WorldScene scene;
+  boolean sceneChanged = true;
+
+  // images of cells for each palette color, unflooded at 2 * index and flooded at
+  // 2 * index + 1, drawn at cellImagesSize
+  WorldImage[] cellImages = new WorldImage[Palette.SIZE * 2];
+  int cellImagesSize;
+
+  // paints boards of at least RasterRenderer.MIN_BOARD_SIZE cells a side into a
+  // single image, kept for the next board of the same size
+  RasterRenderer raster;
+
+  // the cells and the first column and row of the window this.raster last painted
+  // at full size, and whether the next frame must look at every cell shown all the
+  // same, because the board was recolored or restarted; a frame of the same window
+  // paints only the cells this.cells logged flooded since
+  CellBoard rasterCells;
+  int rasterColumn = -1;
+  int rasterRow = -1;
+  boolean rasterScan = true;
+
+  // when not null, works out the clicks allowed for each new board from a solver in
+  // the background; the formula's limit is used until it answers
+  MoveLimitCalibrator calibrator;
+
+  // when not null, works out a hint for the next color in the background after
+  // every move, and the palette index of the hint to show, or HintEngine.NOT_READY
+  // while there is none
+  HintEngine hints;
+  int hint = HintEngine.NOT_READY;
+
+  // the boards of every size this world has made, by poolKey, reused by makeCells
+  HashMap<Long, ArrayList<ArrayList<ConsCell>>> boardPool =
+      new HashMap<Long, ArrayList<ArrayList<ConsCell>>>();
+
+  // when true, games flood a whole region at a time with a RegionEngine, which
+  // suits very large boards
+  boolean floodByRegion = false;
+
+  // times the game loop when not null; set by the floodit.metrics property
+  GameMetrics metrics;
+
+  // The one empty cell beyond the borders of every board
+  static final MtCell BORDER = new MtCell();
+
+  // The most cells a board of this world may have. Every cell is a ConsCell made up
+  // front, so a larger board would run out of memory; games on boards larger than
+  // this are played on a TiledBoard, from FloodGame.newTiledGame.
+  static final int MAX_CELLS = 1 << 22;
+
+  // The black background that outlines the cells in the game
+  static final WorldImage BACKGROUND =
+      new RectangleImage(624, 624, OutlineMode.SOLID, Color.black);
+
+  // Flood-It header
+  static final WorldImage HEADER = new TextImage("FLOOD-IT", 45, FontStyle.BOLD, Color.black);
+
+  // The sub-text underneath the counter
+  static final WorldImage NUM_CLICKS_SUB_TEXT = new TextImage(
+      "Try to solve the puzzle before you max out your clicks!", 20, FontStyle.BOLD, Color.black);
+
+  // Empty white box to cover up sub-text
+  static final WorldImage RECTANGLE_BLOCK =
+      new RectangleImage(900, 25, OutlineMode.SOLID, Color.white);
+
+  // Winning sub-text
+  static final WorldImage YOU_WON = new TextImage(
+      "You win! Press 'r' to restart with this boardsize.", 20, FontStyle.BOLD, Color.black);
+
+  // Losing sub-text
+  static final WorldImage YOU_LOST = new TextImage(
+      "Sorry, you ran out of clicks. Press 'r' to restart with this boardsize.",
+      20, FontStyle.BOLD, Color.black);
+
+  // The label next to the hinted color
+  static final WorldImage HINT_TEXT = new TextImage("Hint: ", 20, FontStyle.BOLD, Color.black);
 
-  // regular constructor for FloodItWorld
+  // Button to cycle through boardsizes: 24, 20, 15, 12, 8
+  static final WorldImage CHANGE_BOARD_SIZE_BUTTON = new RectangleImage(100, 40,
+      OutlineMode.SOLID, new Color(217, 53, 41));
+
+  // Text overlayed on the button
+  static final WorldImage CHANGE_BOARD_SIZE_TEXT = new TextImage("New Size",
+      15, FontStyle.BOLD, Color.white);
+
+  // Button to cycle through color counts: 6, 5, 4, 3, 2
+  static final WorldImage CHANGE_COLORS_BUTTON = new RectangleImage(100, 40,
+      OutlineMode.SOLID, new Color(33, 138, 61));
+
+  // Text overlayed on the button
+  static final WorldImage CHANGE_COLORS_TEXT = new TextImage("New Colors",
+      14, FontStyle.BOLD, Color.white);
+
+
+  // regular constructor for FloodItWorld, with a new random seed every time
   FloodItWorld(int boardSize, int numColors) {
-    this.boardSize = boardSize;
-    this.numColors = numColors;
+    this(boardSize, numColors, new SplittableRandom().nextLong());
+  }
 
-    // Because this random variable isn't seeded, the board will be
-    // random for every test in ExamplesFlood
-    this.rand = new Random();
+  // constructor for a FloodItWorld whose colors and boards all come from the seed,
+  // so the same seed plays the same boards in the same order
+  FloodItWorld(int boardSize, int numColors, long seed) {
+    this(boardSize, boardSize, numColors, seed);
+  }
 
-    // Clicks allowed will be further expanded upon in part 2,
-    // but this is a rough draft of varying the amount of clicks allowed
-    // in accordance to the size of the board and the amount of colors used
-    this.clicks = 0;
-    for (int i = numColors; i > 0; i--) {
-      this.clicksAllowed += i;
-    }
-    this.clicksAllowed += boardSize;
+  // constructor for a FloodItWorld whose boards have the given number of columns and
+  // rows, with colors and boards from the seed as above
+  FloodItWorld(int boardWidth, int boardHeight, int numColors, long seed) {
+    this.numColors = numColors;
+
+    // The colors are chosen with this.rand, and every board is made by
+    // BoardGenerator from the next of this.seeds
+    this.rand = new Random(seed);
+    this.seeds = new SplittableRandom(seed);
+    this.metrics = GameMetrics.configured();
 
-    // cellSize is dependent on boardSize as cells will need to be larger
-    // if boardSize is smaller, and vice versa.
-    // 600 is the pixel-space allowed in the game (as seen in makeScene())
-    this.cellSize = 600 / this.boardSize;
+    // cellSize is dependent on the board's size as cells will need to be larger
+    // if the board is smaller, and vice versa
+    this.resize(boardWidth, boardHeight);
 
     // Sets up numColors amount of possible random color choices
-    for (int i = 6; i > 6 - numColors; i--) {
-      this.colorList.add(this.colors.remove(rand.nextInt(i)));
-    }
+    this.chooseColors();
 
     // Arranges the cells needed for a board of a given size boardSize
     makeCells();
 
-    this.currentFloodColor = this.board.get(0).get(0).color;
-
-    this.newFloodColor = this.board.get(0).get(0).color;
-
-    this.board.get(0).get(0).flood();
+    this.startFlood();
 
   }
 
@@ -241,41 +335,76 @@ class FloodItWorld extends World {
   // FOR CONSISTENCY PURPOSES IN TESTING,
   // THIS BOARD WILL ALWAYS BE 3x3 WITH 2 COLORS
   FloodItWorld(int seed) {
-    this.boardSize = 3;
     this.numColors = 2;
 
     // Because this random variable is seeded, the board will be
     // consistent for every test in ExamplesFlood
     this.rand = new Random(seed);
 
-    // Clicks allowed will be further expanded upon in part 2,
-    // but this is a rough draft of varying the amount of clicks allowed
-    // in accordance to the size of the board and the amount of colors used
-    this.clicks = 0;
-    for (int i = numColors; i > 0; i--) {
-      this.clicksAllowed += i;
-    }
-    this.clicksAllowed += boardSize;
-
-    // cellSize is dependent on boardSize as cells will need to be larger
-    // if boardSize is smaller, and vice versa.
-    // 600 is the pixel-space allowed in the game (as seen in makeScene())
-    this.cellSize = 600 / this.boardSize;
+    // cellSize is dependent on the board's size as cells will need to be larger
+    // if the board is smaller, and vice versa
+    this.resize(3, 3);
 
     // Sets up numColors amount of possible random color choices
-    for (int i = 6; i > 6 - numColors; i--) {
-      this.colorList.add(this.colors.remove(rand.nextInt(i)));
-    }
+    this.chooseColors();
 
     // Arranges the cells needed for a board of a given size boardSize
     makeCells();
 
-    this.currentFloodColor = this.board.get(0).get(0).color;
+    this.startFlood();
+
+  }
+
+  // Changes the size of the boards to the given number of columns and rows, and
+  // shows the whole board
+  // EFFECT: sets the board's size, this.view, this.layout and this.cellSize; the
+  // next makeCells makes a board of the new size
+  void resize(int boardWidth, int boardHeight) {
+    if ((long) boardWidth * boardHeight > MAX_CELLS) {
+      throw new IllegalArgumentException("A board of this world can have at most "
+          + MAX_CELLS + " cells; play larger boards with FloodGame.newTiledGame");
+    }
+    this.boardWidth = boardWidth;
+    this.boardHeight = boardHeight;
+    this.boardSize = Math.max(boardWidth, boardHeight);
+    this.view = new Viewport(boardWidth, boardHeight);
+    this.layOut();
+  }
 
-    this.newFloodColor = this.board.get(0).get(0).color;
+  // Lays out the cells this.view shows in the 600 pixel square the game draws its
+  // board in (as seen in makeScene()). Fewer cells than RasterRenderer.MIN_BOARD_SIZE
+  // a side are drawn cell by cell, each one whole number of pixels; more are drawn
+  // as one image, scaled to fill the square with cells of fractional size.
+  // EFFECT: sets this.layout and this.cellSize
+  void layOut() {
+    int columns = this.view.columnsShown();
+    int rows = this.view.rowsShown();
+    if (Math.max(columns, rows) < RasterRenderer.MIN_BOARD_SIZE) {
+      this.layout = BoardLayout.wholeCells(columns, rows, 75, 80, 600);
+    }
+    else {
+      this.layout = BoardLayout.scaled(columns, rows, 75, 80, 600);
+    }
+    this.cellSize = this.layout.cellSize();
+    this.invalidateScene();
+  }
 
-    this.board.get(0).get(0).flood();
+  // Lays the board out again if the given change to this.view moved it
+  // EFFECT: may set this.layout and this.cellSize
+  void moveView(boolean moved) {
+    if (moved) {
+      this.layOut();
+    }
+  }
 
+  // Picks numColors different palette colors at random for the board to use
+  // EFFECT: replaces the contents of this.colorList
+  void chooseColors() {
+    ArrayList<Color> colors = Palette.colors();
+    this.colorList.clear();
+    for (int i = Palette.SIZE; i > Palette.SIZE - this.numColors; i--) {
+      this.colorList.add(colors.remove(rand.nextInt(i)));
+    }
   }
 
   // Gets a random color from a list of colors within the parameter
@@ -286,140 +415,518 @@ class FloodItWorld extends World {
 
   }
 
-  // Sets up 2D arrayList of cells for the game with random cell colors
-  // EFFECT: adds cells to this.board
+  // Sets up the 2D arrayList of cells for the game with random cell colors. Boards
+  // are kept for every size this world has used and reset in place, so after the
+  // first board of a size, making another one allocates nothing. Worlds made with a
+  // seed color the cells with BoardGenerator from the next board seed.
+  // EFFECT: sets this.board to the board of this size, recolored and unflooded
   void makeCells() {
-    // Initializes board
-    this.board = new ArrayList<ArrayList<ConsCell>>();
+    if (this.metrics == null) {
+      this.colorCells();
+      return;
+    }
+    long start = this.metrics.start();
+    this.colorCells();
+    this.metrics.cellsMade(start);
+  }
+
+  // Does the work of makeCells
+  // EFFECT: sets this.board to the board of this size, recolored and unflooded
+  void colorCells() {
+    this.takePooledBoard();
+    this.overview = null;
+    this.rasterScan = true;
+    this.invalidateScene();
+    if (this.seeds != null) {
+      this.boardSeed = this.seeds.nextLong();
+      this.generateColors();
+      return;
+    }
+
+    // Colors cells in the order they are numbered: 0, 1, 2, 3, ...
+    for (int row = 0; row < this.boardWidth; row++) {
+      ArrayList<ConsCell> rowList = this.board.get(row);
+      for (int col = 0; col < this.boardHeight; col++) {
+        ConsCell cell = rowList.get(col);
+        cell.setColor(getRandomColor());
+        cell.flooded = false;
+      }
+    }
+  }
+
+  // Sets this.board to the pooled board of this size, making it the first time
+  // that size is used
+  // EFFECT: may change this.board and add to this.boardPool
+  void takePooledBoard() {
+    if (this.board == null || this.board.size() != this.boardWidth
+        || this.board.get(0).size() != this.boardHeight) {
+      this.board = this.boardPool.get(this.poolKey());
+    }
+    if (this.board == null) {
+      this.board = this.newBoard();
+      this.boardPool.put(this.poolKey(), this.board);
+    }
+  }
+
+  // The key of boards of this size in this.boardPool: the columns and then the rows
+  long poolKey() {
+    return ((long) this.boardWidth << 32) | this.boardHeight;
+  }
 
-    // Adds random-colored cells with indexes that sequence as so: 0, 1, 2, 3, ...
-    for (int row = 0; row < boardSize; row++) {
+  // Plays the board at the given index of the corpus. Only the board's entry is read
+  // from the mapped file, and its cells are colored straight from the seed there,
+  // so the corpus is never read onto the heap.
+  // EFFECT: changes the size and colors to the board's, recolors this.board and
+  // starts a new game on it
+  void loadBoard(PuzzleCorpus corpus, int index) {
+    this.resize(corpus.boardSize(index), corpus.boardSize(index));
+    int numColors = corpus.numColors(index);
+    if (numColors != this.numColors) {
+      this.numColors = numColors;
+      this.chooseColors();
+    }
+    this.takePooledBoard();
+    this.overview = null;
+    this.rasterScan = true;
+    this.invalidateScene();
+    this.boardSeed = corpus.seed(index);
+    this.generateColors();
+    this.startFlood();
+  }
+
+  // Colors the cells of this.board with BoardGenerator from this.boardSeed, using
+  // the colors of this.colorList, and unfloods them
+  // EFFECT: recolors and unfloods every cell
+  void generateColors() {
+    if (this.cells == null || this.cells.cells != this.board) {
+      this.cells = new CellBoard(this.board);
+    }
+    for (int i = 0; i < this.numColors; i++) {
+      this.paletteIndexes[i] = Palette.indexOf(this.colorList.get(i));
+    }
+    BoardGenerator.fill(this.cells, this.boardSeed, this.numColors, this.paletteIndexes);
+    for (int row = 0; row < this.boardWidth; row++) {
+      ArrayList<ConsCell> rowList = this.board.get(row);
+      for (int col = 0; col < this.boardHeight; col++) {
+        rowList.get(col).flooded = false;
+      }
+    }
+  }
+
+  // The id of the current board; only for worlds made with a seed. BoardGenerator
+  // makes the same board from it, with colors 0, 1, 2, ... standing for the colors
+  // of this.colorList in order.
+  String boardId() {
+    return BoardGenerator.boardId(this.boardSeed, this.boardWidth, this.boardHeight,
+        this.numColors);
+  }
+
+  // The current game as a record that can be saved and replayed, with the seed of
+  // the board it is played on
+  GameRecord record() {
+    return GameRecord.of(this.game, this.boardSeed);
+  }
+
+  // A new boardWidth x boardHeight board of uncolored cells, linked to their
+  // neighbors and to the shared BORDER cell at the edges
+  ArrayList<ArrayList<ConsCell>> newBoard() {
+    ArrayList<ArrayList<ConsCell>> cells = new ArrayList<ArrayList<ConsCell>>();
+    for (int row = 0; row < this.boardWidth; row++) {
       ArrayList<ConsCell> rowList = new ArrayList<ConsCell>();
-      for (int col = 0; col < boardSize; col++) {
-        Color randomColor = getRandomColor();
-        rowList.add(new ConsCell(row, col, randomColor, false));
+      for (int col = 0; col < this.boardHeight; col++) {
+        rowList.add(new ConsCell(row, col, null, false));
       }
-      this.board.add(rowList);
+      cells.add(rowList);
     }
 
-    // Sets up adjacent cells and makes border cells into MtCell()'s
-    for (int col = 0; col < boardSize; col++) {
-      for (int row = 0; row < boardSize; row++) {
-        ConsCell cell = this.board.get(row).get(col);
+    // Sets up adjacent cells and makes border cells into the BORDER MtCell
+    for (int col = 0; col < this.boardHeight; col++) {
+      for (int row = 0; row < this.boardWidth; row++) {
+        ConsCell cell = cells.get(row).get(col);
         if (row > 0) {
-          cell.left = this.board.get(row - 1).get(col);
+          cell.left = cells.get(row - 1).get(col);
         }
         else {
-          cell.left = new MtCell();
+          cell.left = BORDER;
         }
         if (col > 0) {
-          cell.top = this.board.get(row).get(col - 1);
+          cell.top = cells.get(row).get(col - 1);
         }
         else {
-          cell.top = new MtCell();
+          cell.top = BORDER;
         }
-        if (row < boardSize - 1) {
-          cell.right = this.board.get(row + 1).get(col);
+        if (row < this.boardWidth - 1) {
+          cell.right = cells.get(row + 1).get(col);
         }
         else {
-          cell.right = new MtCell();
+          cell.right = BORDER;
         }
-        if (col < boardSize - 1) {
-          cell.bottom = this.board.get(row).get(col + 1);
+        if (col < this.boardHeight - 1) {
+          cell.bottom = cells.get(row).get(col + 1);
         }
         else {
-          cell.bottom = new MtCell();
+          cell.bottom = BORDER;
         }
       }
     }
+    return cells;
   }
 
-  // Draws the state of the world
-  public WorldScene makeScene() {
-    // The empty canvas to work off
-    WorldScene scene = new WorldScene(900, 950);
+  // Starts a new game on this.board, which floods the top-left cell along with every
+  // cell connected to it that shares its color. The number of clicks allowed varies
+  // with the size of the board and the amount of colors used.
+  // The game is restarted in place when it can be, so a restart on a board size
+  // already played allocates nothing.
+  // EFFECT: restarts or replaces this.game and resets the flood color
+  void startFlood() {
+    if (this.cells == null || this.cells.cells != this.board) {
+      this.cells = new CellBoard(this.board);
+    }
+    int movesAllowed = FloodGame.defaultMovesAllowed(this.boardSize, this.numColors);
+    if (this.canRestartGame()) {
+      this.game.movesAllowed = movesAllowed;
+      this.game.restart();
+    }
+    else {
+      int[] colors = new int[this.colorList.size()];
+      for (int i = 0; i < colors.length; i++) {
+        colors[i] = Palette.indexOf(this.colorList.get(i));
+      }
+      FloodEngine engine;
+      if (this.floodByRegion) {
+        engine = new RegionEngine(this.cells);
+      }
+      else {
+        engine = new FrontierEngine(this.cells);
+      }
+      this.game = new FloodGame(this.cells, engine, colors, movesAllowed);
+      this.game.recordMoves();
+    }
+    this.newFloodColor = this.floodColor();
+    this.rasterScan = true;
+    this.cells.clearFloodLog();
+    this.invalidateScene();
+    if (this.calibrator != null) {
+      this.calibrator.calibrate(this.game);
+    }
+    this.requestHint();
+  }
 
-    // The black background that outlines the cells in the game
-    WorldImage background = new RectangleImage(624, 624, OutlineMode.SOLID, Color.black);
+  // True if this.game can start over on this.cells instead of being replaced: it is
+  // played on them, with the same colors and the kind of engine this world wants
+  boolean canRestartGame() {
+    if (this.game == null || this.game.board != this.cells
+        || (this.game.engine instanceof RegionEngine) != this.floodByRegion
+        || this.game.colors.length != this.colorList.size()) {
+      return false;
+    }
+    for (int i = 0; i < this.game.colors.length; i++) {
+      if (this.game.colors[i] != Palette.indexOf(this.colorList.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-    // Flood-It header
-    WorldImage header = new TextImage("FLOOD-IT", 45, FontStyle.BOLD, Color.black);
+  // Uses the given calibrator to decide the clicks allowed on this board and every
+  // new one after it
+  // EFFECT: sets this.calibrator and starts calibrating the current game
+  void calibrateClicks(MoveLimitCalibrator calibrator) {
+    this.calibrator = calibrator;
+    calibrator.calibrate(this.game);
+  }
 
-    // The counter displayed that shows how many clicks have been used compare to how
-    // many are allowed to be used
-    WorldImage numClicksText = new TextImage(
-        Integer.toString(clicks) + "/" + Integer.toString(clicksAllowed), 30, FontStyle.BOLD_ITALIC,
-        Color.black);
+  // Shows hints worked out by the given engine, or none if it is null
+  // EFFECT: replaces this.hints, cancelling the old engine's search, and asks the
+  // new one for a hint on the current game
+  void showHints(HintEngine hints) {
+    if (this.hints != null) {
+      this.hints.cancel();
+    }
+    this.hints = hints;
+    this.requestHint();
+  }
 
-    // The sub-text underneath the counter
-    WorldImage numClicksSubText = new TextImage(
-        "Try to solve the puzzle before you max out your clicks!", 20, FontStyle.BOLD, Color.black);
+  // Drops the hint shown, which is out of date after a move, and asks for a new one
+  // if the game is still going. The search runs in the background.
+  // EFFECT: clears this.hint and replaces the engine's pending search
+  void requestHint() {
+    if (this.hint != HintEngine.NOT_READY) {
+      this.hint = HintEngine.NOT_READY;
+      this.invalidateScene();
+    }
+    if (this.hints == null) {
+      return;
+    }
+    if (this.game.movesLeft() > 0 && !this.game.isWon()) {
+      this.hints.request(this.game);
+    }
+    else {
+      this.hints.cancel();
+    }
+  }
 
-    // Empty white box to cover up sub-text
-    WorldImage rectangleBlock = new RectangleImage(900, 25, OutlineMode.SOLID, Color.white);
+  // Checks on the calibrator and the hint engine every tick, so the clicks allowed
+  // and the hint change as soon as they are ready without the UI ever waiting
+  public void onTick() {
+    this.applyCalibratedLimit();
+    this.applyHint();
+  }
 
-    // Winning sub-text
-    WorldImage youWon = new TextImage(
-        "You win! Press 'r' to restart with this boardsize.", 20, FontStyle.BOLD, Color.black);
+  // Shows the hint engine's hint once it has one
+  // EFFECT: may set this.hint
+  void applyHint() {
+    if (this.hints == null) {
+      return;
+    }
+    int hint = this.hints.poll();
+    if (hint != HintEngine.NOT_READY) {
+      this.hint = hint;
+      this.invalidateScene();
+    }
+  }
 
-    // Losing sub-text
-    WorldImage youLost = new TextImage(
-        "Sorry, you ran out of clicks. Press 'r' to restart with this boardsize.",
-        20, FontStyle.BOLD, Color.black);
+  // Sets the clicks allowed to the calibrator's limit once it has one. A late answer
+  // always leaves at least one more click in a game that was still going, and never
+  // brings back a game that was already lost.
+  // EFFECT: may change this.game.movesAllowed
+  void applyCalibratedLimit() {
+    if (this.calibrator == null) {
+      return;
+    }
+    int limit = this.calibrator.poll();
+    if (limit != MoveLimitCalibrator.NOT_READY && this.game.movesLeft() > 0) {
+      this.game.movesAllowed = Math.max(limit, this.game.moves + 1);
+      this.invalidateScene();
+    }
+  }
 
-    // Button to cycle through boardsizes: 24, 20, 15, 12, 8
-    WorldImage changeBoardSizeButton = new RectangleImage(100, 40,
-        OutlineMode.SOLID, new Color(217, 53, 41));
+  // The color of the flooded region
+  Color floodColor() {
+    return Palette.color(this.game.floodColor());
+  }
 
-    // Text overlayed on the button
-    WorldImage changeBoardSizeText = new TextImage("New Size",
-        15, FontStyle.BOLD, Color.white);
+  // Draws the state of the world. The last scene is reused until a click, key or
+  // new board changes something, so idle ticks do no work at all.
+  public WorldScene makeScene() {
+    if (this.metrics == null) {
+      return this.drawScene();
+    }
+    long start = this.metrics.start();
+    long bytes = this.metrics.allocatedBytes();
+    WorldScene scene = this.drawScene();
+    this.metrics.sceneDrawn(start, bytes);
+    return scene;
+  }
 
-    // Button to cycle through color counts: 6, 5, 4, 3, 2
-    WorldImage changeColorsButton = new RectangleImage(100, 40,
-        OutlineMode.SOLID, new Color(33, 138, 61));
+  // Does the work of makeScene
+  WorldScene drawScene() {
+    if (this.scene != null && !this.sceneChanged) {
+      return this.scene;
+    }
 
-    // Text overlayed on the button
-    WorldImage changeColorsText = new TextImage("New Colors",
-        14, FontStyle.BOLD, Color.white);
+    // The empty canvas to work off
+    WorldScene scene = new WorldScene(900, 950);
 
-    // Places everything above onto the canvas
-    scene.placeImageXY(background, 375, 380);
-    scene.placeImageXY(header, 375, 35);
+    // The counter displayed that shows how many clicks have been used compare to how
+    // many are allowed to be used
+    WorldImage numClicksText = new TextImage(
+        Integer.toString(game.moves) + "/" + Integer.toString(game.movesAllowed), 30,
+        FontStyle.BOLD_ITALIC, Color.black);
+
+    // Places everything that never changes and the counter onto the canvas
+    scene.placeImageXY(BACKGROUND, 375, 380);
+    scene.placeImageXY(HEADER, 375, 35);
     scene.placeImageXY(numClicksText, 375, 725);
-    scene.placeImageXY(numClicksSubText, 375, 765);
-    scene.placeImageXY(changeBoardSizeButton, 113, 40);
-    scene.placeImageXY(changeBoardSizeText, 113, 40);
-    scene.placeImageXY(changeColorsButton, 637, 40);
-    scene.placeImageXY(changeColorsText, 637, 40);
+    scene.placeImageXY(NUM_CLICKS_SUB_TEXT, 375, 765);
+    scene.placeImageXY(CHANGE_BOARD_SIZE_BUTTON, 113, 40);
+    scene.placeImageXY(CHANGE_BOARD_SIZE_TEXT, 113, 40);
+    scene.placeImageXY(CHANGE_COLORS_BUTTON, 637, 40);
+    scene.placeImageXY(CHANGE_COLORS_TEXT, 637, 40);
 
     // Checks if the board has been fully flooded within the amount of clicks allowed
     // Places winning text
-    if (this.clicks <= this.clicksAllowed && this.succesfulFlood()) {
-      scene.placeImageXY(rectangleBlock, 375, 765);
-      scene.placeImageXY(youWon, 375, 765);
+    if (this.game.moves <= this.game.movesAllowed && this.game.isWon()) {
+      scene.placeImageXY(RECTANGLE_BLOCK, 375, 765);
+      scene.placeImageXY(YOU_WON, 375, 765);
 
     }
 
     // Checks if the amount of clicks used exceeds the amount allowed
     // Places winning text
-    if (this.clicks >= this.clicksAllowed) {
-      scene.placeImageXY(rectangleBlock, 375, 765);
-      scene.placeImageXY(youLost, 375, 765);
+    if (this.game.moves >= this.game.movesAllowed) {
+      scene.placeImageXY(RECTANGLE_BLOCK, 375, 765);
+      scene.placeImageXY(YOU_LOST, 375, 765);
     }
 
-    // Places all cells on the board centered in the black background
-    for (ArrayList<ConsCell> arr : board) {
-      for (ConsCell c : arr) {
-        scene.placeImageXY(c.drawCell(c.color, this.cellSize),
-            (cellSize * (c.x + 1)) + 75 - (cellSize / 2),
-            (cellSize * (c.y + 1)) + 80 - (cellSize / 2));
+    // Shows the hinted color next to the counter
+    if (this.hint != HintEngine.NOT_READY) {
+      scene.placeImageXY(new BesideImage(HINT_TEXT,
+          new RectangleImage(24, 24, OutlineMode.SOLID, Palette.color(this.hint))), 560, 725);
+    }
+
+    // Large windows are one image, with only the cells that changed painted again
+    int columns = this.view.columnsShown();
+    int rows = this.view.rowsShown();
+    if (Math.max(columns, rows) >= RasterRenderer.MIN_BOARD_SIZE) {
+      this.placeRaster(scene);
+      this.scene = scene;
+      this.sceneChanged = false;
+      return scene;
+    }
+
+    // Places all cells shown centered in the black background
+    // Flooded cells are not recolored as the flood spreads, so they are drawn
+    // in the current flood color
+    Color floodColor = this.floodColor();
+    for (int x = 0; x < columns; x++) {
+      ArrayList<ConsCell> arr = this.board.get(this.view.firstColumn + x);
+      for (int y = 0; y < rows; y++) {
+        ConsCell c = arr.get(this.view.firstRow + y);
+        Color color = c.color;
+        if (c.flooded) {
+          color = floodColor;
+        }
+        scene.placeImageXY(this.cellImage(c, color),
+            (cellSize * (x + 1)) + 75 - (cellSize / 2),
+            (cellSize * (y + 1)) + 80 - (cellSize / 2));
       }
     }
 
+    this.scene = scene;
+    this.sceneChanged = false;
     return scene;
   }
 
+  // Places the cells shown onto the scene as the image of this.raster, where they
+  // would have been placed one by one. When there are more of them than pixels, the
+  // image is of the first level of this.overview that has no more cells than pixels,
+  // so a frame never looks at more cells than it has pixels, however large the board.
+  // At full size, a frame of the same window as the last one looks only at the cells
+  // flooded since, and the flooded ones before them; after a new board, a resize, a
+  // pan or a zoom, it looks at every cell shown.
+  // EFFECT: replaces this.raster if the size of what is shown changed, makes
+  // this.overview if it is needed, paints the cells that look different since the
+  // last scene, and clears the flood log of this.cells
+  void placeRaster(WorldScene scene) {
+    int level = this.shownLevel();
+    BoardWindow shown = this.shownBoard(level);
+    BoardLayout layout = this.shownLayout(shown);
+    if (this.raster == null || !this.raster.fits(layout)) {
+      this.raster = new RasterRenderer(layout);
+      this.rasterScan = true;
+    }
+    WorldImage image = this.renderRaster(shown, level);
+    scene.placeImageXY(image, layout.left + layout.pixelsWide / 2,
+        layout.top + layout.pixelsHigh / 2);
+  }
+
+  // The level of this.overview the cells shown are drawn from: 0 when they fit in
+  // the pixels of this.layout, or the first level that fits when they do not
+  int shownLevel() {
+    return BoardMipmap.levelFor(this.view.firstColumn, this.view.columnsShown(),
+        this.view.firstRow, this.view.rowsShown(), this.layout.pixelsWide,
+        this.layout.pixelsHigh);
+  }
+
+  // The cells shown, as they are drawn at the given level: a window onto this.cells
+  // at level 0, or onto that level of this.overview above it
+  // EFFECT: makes this.overview if it is needed
+  BoardWindow shownBoard(int level) {
+    Viewport view = this.view;
+    if (level == 0) {
+      return new BoardWindow(this.cells, view.firstColumn, view.firstRow,
+          view.columnsShown(), view.rowsShown());
+    }
+    if (this.overview == null) {
+      this.overview = new BoardMipmap(this.cells);
+    }
+    return new BoardWindow(this.overview.level(level), view.firstColumn >> level,
+        view.firstRow >> level, BoardMipmap.span(view.firstColumn, view.columnsShown(), level),
+        BoardMipmap.span(view.firstRow, view.rowsShown(), level));
+  }
+
+  // Where the given cells shown are drawn: this.layout, or the same pixels divided
+  // among the cells of a level of this.overview
+  BoardLayout shownLayout(BoardWindow shown) {
+    BoardLayout layout = this.layout;
+    if (shown.width() == layout.columns && shown.height() == layout.rows) {
+      return layout;
+    }
+    return new BoardLayout(shown.width(), shown.height(), layout.left, layout.top,
+        layout.pixelsWide, layout.pixelsHigh);
+  }
+
+  // The palette index of the color drawn at the given point, which a click there
+  // plays, or -1 if the point is off the board or on the flood. When the board is
+  // drawn from a level of this.overview, the point is found among that level's
+  // cells, so a click plays the color of the block under it.
+  // EFFECT: makes this.overview if it is needed
+  int colorShownAt(Posn p) {
+    BoardWindow shown = this.shownBoard(this.shownLevel());
+    int cell = this.shownLayout(shown).cellAt(p);
+    if (cell < 0 || shown.isFlooded(cell)) {
+      return -1;
+    }
+    return shown.colorAt(cell);
+  }
+
+  // The image of this.raster painted with the given board, shown at the given level
+  // of this.overview: from the cells this.cells logged flooded if it shows the same
+  // window at full size as the last frame, or from every cell shown otherwise
+  // EFFECT: paints this.raster, starts this.cells logging floods, clears its log,
+  // and records the window painted
+  WorldImage renderRaster(Board shown, int level) {
+    CellBoard cells = this.cells;
+    boolean sameWindow = level == 0 && cells == this.rasterCells
+        && this.view.firstColumn == this.rasterColumn && this.view.firstRow == this.rasterRow;
+    WorldImage image;
+    if (sameWindow && !this.rasterScan && cells.floodLog != null) {
+      image = this.raster.renderFloods((BoardWindow) shown, this.game.floodColor(),
+          cells.floodLog, cells.floodLogSize);
+    }
+    else {
+      image = this.raster.render(shown, this.game.floodColor());
+    }
+    cells.logFloods();
+    cells.clearFloodLog();
+    this.rasterScan = level != 0;
+    this.rasterCells = cells;
+    this.rasterColumn = this.view.firstColumn;
+    this.rasterRow = this.view.firstRow;
+    return image;
+  }
+
+  // The image of the given cell drawn in the given color. Images of palette colors
+  // are made once per color, flooded state and cell size, then shared by every cell.
+  // EFFECT: fills in this.cellImages, clearing it first if the cell size changed
+  WorldImage cellImage(ConsCell c, Color color) {
+    if (this.cellImagesSize != this.cellSize) {
+      Arrays.fill(this.cellImages, null);
+      this.cellImagesSize = this.cellSize;
+    }
+
+    int colorIndex = Palette.indexOf(color);
+    if (colorIndex < 0) {
+      return c.drawCell(color, this.cellSize);
+    }
+
+    int key = colorIndex * 2;
+    if (c.flooded) {
+      key += 1;
+    }
+    if (this.cellImages[key] == null) {
+      this.cellImages[key] = c.drawCell(color, this.cellSize);
+    }
+    return this.cellImages[key];
+  }
+
+  // Marks the scene as out of date so the next makeScene draws it again
+  // EFFECT: sets this.sceneChanged
+  void invalidateScene() {
+    this.sceneChanged = true;
+  }
+
   // When the mouse is pressed, it checks if the mouse's location is within the bounds of
   // the game board. If it is, the cell color associated with the mouse's location will be updated
   // to flood the board
@@ -427,9 +934,41 @@ class FloodItWorld extends World {
   // onMousePressed is also used to check if one of the buttons was pressed. If one of of them was,
   // it cycles their boardSize/numColors
   public void onMousePressed(Posn p) {
+    if (this.metrics == null) {
+      this.pressMouse(p);
+      return;
+    }
+    long start = this.metrics.start();
+    this.pressMouse(p);
+    this.metrics.clicked(start);
+  }
+
+  // The right mouse button zooms in on the cell under it and the middle button zooms
+  // out; the others press as above
+  public void onMousePressed(Posn p, String button) {
+    if (button.equals("RightButton")) {
+      int column = this.layout.columnAt(p.x);
+      int row = this.layout.rowAt(p.y);
+      if (column >= 0 && row >= 0) {
+        this.moveView(this.view.zoomIn(this.view.firstColumn + column,
+            this.view.firstRow + row));
+      }
+    }
+    else if (button.equals("MiddleButton")) {
+      this.moveView(this.view.zoomOut());
+    }
+    else {
+      this.onMousePressed(p);
+    }
+  }
+
+  // Does the work of onMousePressed
+  // EFFECT: may change the size or colors and start a new game, or make a move
+  void pressMouse(Posn p) {
 
     // New Size button
     if (p.x >= 63 && p.x <= 163 && p.y >= 20 && p.y <= 60) {
+      int boardSize;
       if (this.boardSize == 24) {
         boardSize = 20;
       } else if (this.boardSize == 20) {
@@ -443,18 +982,9 @@ class FloodItWorld extends World {
       }
 
       // Properties to reset with a new game board
-      this.clicks = 0;
+      this.resize(boardSize, boardSize);
       this.makeCells();
-      this.currentFloodColor = this.board.get(0).get(0).color;
-      this.newFloodColor = this.board.get(0).get(0).color;
-      this.board.get(0).get(0).flood();
-      this.clicksAllowed = 0;
-      for (int i = numColors; i > 0; i--) {
-        this.clicksAllowed += i;
-      }
-      this.clicksAllowed += boardSize;
-      this.cellSize = 600 / this.boardSize;
-
+      this.startFlood();
 
     }
 
@@ -473,83 +1003,99 @@ class FloodItWorld extends World {
       }
 
       // Properties to reset with a new game board
-      this.clicks = 0;
+      this.chooseColors();
       this.makeCells();
-      this.currentFloodColor = this.board.get(0).get(0).color;
-      this.newFloodColor = this.board.get(0).get(0).color;
-      this.board.get(0).get(0).flood();
+      this.startFlood();
 
     }
 
     // Flooding sequence
-    if (clicks < clicksAllowed) {
+    if (this.game.movesLeft() > 0) {
 
-      // Out of bounds of game board Posn check
-      if (p.x < 75 || p.x >= 675 || p.y < 80 || p.x >= 680) {
+      // Off the board, on the flood, or on a cell of the flood's color
+      int color = this.colorShownAt(p);
+      if (color < 0 || color == this.game.floodColor()) {
         return;
       }
 
-      ConsCell clicked = this.posnToCell(p);
-
-      if (clicked.flooded || clicked.color.equals(currentFloodColor)) {
-        return;
+      this.newFloodColor = Palette.color(color);
+      int absorbed = this.game.play(color);
+      if (this.metrics != null) {
+        this.metrics.cellsFlooded(absorbed);
       }
-
-      this.clicks++;
-      this.newFloodColor = clicked.color;
-
-      this.updateCells();
+      this.invalidateScene();
+      this.requestHint();
     }
 
   }
 
-  // Resets the game using the ‘r’ key to reset the game and create a new board
+  // Resets the game using the ‘r’ key to reset the game and create a new board, and
+  // turns hints on and off with the 'h' key. '+' and '-' zoom in and out, the arrow
+  // keys pan, and '0' shows the whole board again.
   public void onKeyEvent(String key) {
+    if (key.equals("+") || key.equals("=")) {
+      this.moveView(this.view.zoomIn(this.view.firstColumn + this.view.columnsShown() / 2,
+          this.view.firstRow + this.view.rowsShown() / 2));
+    }
+    if (key.equals("-")) {
+      this.moveView(this.view.zoomOut());
+    }
+    if (key.equals("0")) {
+      this.moveView(this.view.showAll());
+    }
+    if (key.equals("left")) {
+      this.moveView(this.view.pan(-1, 0));
+    }
+    if (key.equals("right")) {
+      this.moveView(this.view.pan(1, 0));
+    }
+    if (key.equals("up")) {
+      this.moveView(this.view.pan(0, -1));
+    }
+    if (key.equals("down")) {
+      this.moveView(this.view.pan(0, 1));
+    }
     if (key.equals("r")) {
-      this.clicks = 0;
       this.makeCells();
-      this.currentFloodColor = this.board.get(0).get(0).color;
-      this.newFloodColor = this.board.get(0).get(0).color;
-      this.board.get(0).get(0).flood();
+      this.startFlood();
+    }
+    if (key.equals("h")) {
+      if (this.hints == null) {
+        this.showHints(new HintEngine());
+      }
+      else {
+        this.showHints(null);
+      }
     }
   }
 
-  // Uses a Posn to find which cell  on the game board the mouse clicked
+  // Uses a Posn to find which cell  on the game board the mouse clicked, which must
+  // be on the board
   public ConsCell posnToCell(Posn p) {
-    int x = (p.x - 75) / cellSize;
-    int y = (p.y - 80) / cellSize;
+    int x = this.view.firstColumn + this.layout.columnAt(p.x);
+    int y = this.view.firstRow + this.layout.rowAt(p.y);
 
     return this.board.get(x).get(y);
   }
 
-  // Floods the game board by checking if each cell is flooded, flooding neighboring
-  // cells that also share the same color, and setting the new color to the cells
-  // that are getting flooded
+  // Floods the game board in the new flood color without counting a click. The
+  // engine searches outward from the frontier through every connected cell of that
+  // color, so chains of same-colored cells are absorbed in a single call. Cells
+  // already flooded keep their old color field.
+  // EFFECT: floods the absorbed cells and updates the game's frontier
   public void updateCells() {
-
-    for (ArrayList<ConsCell> arr : this.board) {
-      for (ConsCell c : arr) {
-        if (c.flooded) {
-          c.color = this.newFloodColor;
-          if (c.left.sameColor(c.color)) {
-            c.left.flood();
-          }
-          if (c.top.sameColor(c.color)) {
-            c.top.flood();
-          }
-          if (c.right.sameColor(c.color)) {
-            c.right.flood();
-          }
-          if (c.bottom.sameColor(c.color)) {
-            c.bottom.flood();
-          }
-        }
-      }
+    if (this.metrics == null) {
+      this.game.flood(Palette.indexOf(this.newFloodColor));
+    }
+    else {
+      long start = this.metrics.start();
+      this.game.flood(Palette.indexOf(this.newFloodColor));
+      this.metrics.cellsUpdated(start);
     }
-    this.currentFloodColor = this.newFloodColor;
+    this.invalidateScene();
   }
 
-  // Checks if every cell in the board has been flooded
+  // Checks if every cell in the board has been flooded by looking at every cell
   public boolean succesfulFlood() {
     for (ArrayList<ConsCell> arr : this.board) {
       for (ConsCell c : arr) {
@@ -567,20 +1113,20 @@ class FloodItWorld extends World {
 class ExamplesFlood {
 
   //Standard colors
-  Color red = new Color(217, 28, 60);
-  Color orange = new Color(240, 117, 10);
-  Color yellow = new Color(237, 211, 43);
-  Color green = new Color(62, 212, 51);
-  Color blue = new Color(34, 122, 230);
-  Color purple = new Color(105, 48, 191);
+  Color red = Palette.color(Palette.RED);
+  Color orange = Palette.color(Palette.ORANGE);
+  Color yellow = Palette.color(Palette.YELLOW);
+  Color green = Palette.color(Palette.GREEN);
+  Color blue = Palette.color(Palette.BLUE);
+  Color purple = Palette.color(Palette.PURPLE);
 
   // Brighter colors
-  Color redBright = new Color(217, 95, 116);
-  Color orangeBright = new Color(242, 150, 70);
-  Color yellowBright = new Color(242, 227, 126);
-  Color greenBright = new Color(121, 212, 114);
-  Color blueBright = new Color(98, 156, 227);
-  Color purpleBright = new Color(139, 103, 194);
+  Color redBright = Palette.bright(Palette.RED);
+  Color orangeBright = Palette.bright(Palette.ORANGE);
+  Color yellowBright = Palette.bright(Palette.YELLOW);
+  Color greenBright = Palette.bright(Palette.GREEN);
+  Color blueBright = Palette.bright(Palette.BLUE);
+  Color purpleBright = Palette.bright(Palette.PURPLE);
 
   // example cells
   ConsCell redCell;
@@ -722,6 +1268,27 @@ class ExamplesFlood {
     t.checkExpect(this.orangeCell.flooded, false);
   }
 
+  // tests the sameColor, setColor and setColorIndex methods
+  void testSameColor(Tester t) {
+    initData();
+
+    t.checkExpect(this.redCell.colorIndex, Palette.RED);
+    t.checkExpect(this.redCell.sameColor(Palette.RED), true);
+    t.checkExpect(this.redCell.sameColor(Palette.BLUE), false);
+    t.checkExpect(new MtCell().sameColor(Palette.RED), false);
+
+    this.redCell.setColor(blue);
+    t.checkExpect(this.redCell.colorIndex, Palette.BLUE);
+    t.checkExpect(this.redCell.sameColor(Palette.BLUE), true);
+
+    this.redCell.setColorIndex(Palette.GREEN);
+    t.checkExpect(this.redCell.color, green);
+    t.checkExpect(this.redCell.sameColor(Palette.GREEN), true);
+
+    // A cell not yet colored matches no palette index
+    t.checkExpect(new ConsCell(0, 0, null, false).sameColor(0), false);
+  }
+
 
 
   ////////////////////////////////////// FloodItWorld Tests ///////////////////////////////////////
@@ -744,6 +1311,22 @@ class ExamplesFlood {
 
   }
 
+  // tests the chooseColors method
+  void testChooseColors(Tester t) {
+    this.initData();
+    t.checkExpect(this.testFloodWorld.colorList.size(), 2);
+
+    // Going back up to more colors replaces the list instead of running past its end
+    this.testFloodWorld.numColors = 6;
+    this.testFloodWorld.chooseColors();
+    t.checkExpect(this.testFloodWorld.colorList.size(), 6);
+    for (int i = 0; i < Palette.SIZE; i++) {
+      t.checkExpect(this.testFloodWorld.colorList.contains(Palette.color(i)), true);
+    }
+    this.testFloodWorld.makeCells();
+    t.checkExpect(this.testFloodWorld.board.size(), 3);
+  }
+
   // tests the makeCells method
   void testMakeCells(Tester t) {
     // Initializes world and cell data
@@ -774,6 +1357,195 @@ class ExamplesFlood {
 
   }
 
+  // tests that worlds made with a seed make the same boards from it, and that
+  // BoardGenerator makes them again from their ids
+  void testSeededWorld(Tester t) {
+    FloodItWorld first = new FloodItWorld(12, 5, 77L);
+    FloodItWorld second = new FloodItWorld(12, 5, 77L);
+
+    t.checkExpect(first.colorList, second.colorList);
+    t.checkExpect(first.boardSeed, second.boardSeed);
+    t.checkExpect(first.boardId(), BoardGenerator.boardId(first.boardSeed, 12, 5));
+    for (int i = 0; i < 144; i++) {
+      t.checkExpect(first.cells.colorAt(i), second.cells.colorAt(i));
+    }
+
+    // Every new board has its own seed, in the same order for the same world seed
+    long firstBoard = first.boardSeed;
+    first.onKeyEvent("r");
+    second.onKeyEvent("r");
+    t.checkExpect(first.boardSeed == firstBoard, false);
+    t.checkExpect(first.boardSeed, second.boardSeed);
+
+    PackedBoard regenerated = BoardGenerator.fromId(first.boardId());
+    boolean same = true;
+    for (int i = 0; i < 144; i++) {
+      same = same
+          && first.cells.colorAt(i) == first.paletteIndexes[regenerated.colorAt(i)]
+          && (i == 0 || !first.cells.isFlooded(i)
+              || first.cells.colorAt(i) == first.cells.colorAt(0));
+    }
+    t.checkExpect(same, true);
+  }
+
+  // tests the record method
+  void testRecord(Tester t) {
+    FloodItWorld world = new FloodItWorld(12, 4, 5L);
+    int[] colors = world.game.colors;
+    for (int i = 0; i < 6; i++) {
+      world.game.play(colors[i % colors.length]);
+    }
+    GameRecord record = world.record();
+
+    t.checkExpect(record.moves.length, world.game.moves);
+    t.checkExpect(record.matchesSeed(), true);
+    FloodGame replayed = record.replay();
+    t.checkExpect(replayed.floodedCount, world.game.floodedCount);
+    t.checkExpect(replayed.floodColor(), world.game.floodColor());
+
+    // A restarted game records from its first move again
+    world.onKeyEvent("r");
+    t.checkExpect(world.record().moves.length, 0);
+    t.checkExpect(world.record().seed, world.boardSeed);
+  }
+
+  // tests that worlds whose board sides differ can be recorded
+  void testRecordNonSquare(Tester t) {
+    FloodItWorld world = new FloodItWorld(30, 10, 4, 77);
+    world.onMousePressed(new Posn(75 + 590, 80 + 190));
+    GameRecord record = world.record();
+    t.checkExpect(record.width, 30);
+    t.checkExpect(record.height, 10);
+    t.checkExpect(record.matchesSeed(), true);
+    t.checkExpect(record.replay().floodedCount, world.game.floodedCount);
+  }
+
+  // tests the loadBoard method
+  void testLoadBoard(Tester t) throws IOException {
+    PuzzleCorpusWriter writer = new PuzzleCorpusWriter();
+    writer.add(31, 15, 4, 19, false);
+    writer.add(32, 8, 6, 12, true);
+    File file = File.createTempFile("puzzles", ".corpus");
+    file.deleteOnExit();
+    writer.write(file.toPath());
+    PuzzleCorpus corpus = new PuzzleCorpus(file.toPath());
+
+    FloodItWorld world = new FloodItWorld(12, 6, 3L);
+    world.loadBoard(corpus, 1);
+    t.checkExpect(world.boardSize, 15);
+    t.checkExpect(world.cellSize, 40);
+    t.checkExpect(world.colorList.size(), 4);
+    t.checkExpect(world.boardId(), corpus.boardId(1));
+    t.checkExpect(world.game.moves, 0);
+    t.checkExpect(world.record().matchesSeed(), true);
+
+    PackedBoard board = BoardGenerator.fromId(corpus.boardId(1));
+    boolean same = true;
+    for (int i = 0; i < 225; i++) {
+      same = same && world.cells.colorAt(i) == world.paletteIndexes[board.colorAt(i)];
+    }
+    t.checkExpect(same, true);
+
+    // Loading the other board changes the size and colors again
+    world.onKeyEvent("r");
+    world.loadBoard(corpus, 0);
+    t.checkExpect(world.board.size(), 8);
+    t.checkExpect(world.numColors, 6);
+    t.checkExpect(world.boardSeed, 32L);
+  }
+
+  // tests that makeCells reuses the board of each size and resets it in place
+  void testMakeCellsPooled(Tester t) {
+    this.initData();
+    ArrayList<ArrayList<ConsCell>> first = testFloodWorld.board;
+    ConsCell corner = first.get(0).get(0);
+    testFloodWorld.newFloodColor = first.get(1).get(0).color;
+    testFloodWorld.updateCells();
+    t.checkExpect(first.get(2).get(2).flooded, true);
+
+    // A new board recolors and unfloods the same cells
+    testFloodWorld.makeCells();
+    t.checkExpect(testFloodWorld.board == first, true);
+    t.checkExpect(testFloodWorld.board.get(0).get(0) == corner, true);
+    for (ArrayList<ConsCell> row : first) {
+      for (ConsCell cell : row) {
+        t.checkExpect(cell.flooded, false);
+        t.checkExpect(testFloodWorld.colorList.contains(cell.color), true);
+      }
+    }
+
+    // Every edge points at the one shared border cell
+    t.checkExpect(corner.left == FloodItWorld.BORDER, true);
+    t.checkExpect(corner.top == FloodItWorld.BORDER, true);
+    t.checkExpect(first.get(2).get(2).right == FloodItWorld.BORDER, true);
+    t.checkExpect(first.get(2).get(2).bottom == FloodItWorld.BORDER, true);
+
+    // Other sizes get their own boards, which are kept for next time
+    testFloodWorld.resize(4, 4);
+    testFloodWorld.makeCells();
+    t.checkExpect(testFloodWorld.board.size(), 4);
+    testFloodWorld.resize(4, 2);
+    testFloodWorld.makeCells();
+    t.checkExpect(testFloodWorld.board.size(), 4);
+    t.checkExpect(testFloodWorld.board.get(3).size(), 2);
+    testFloodWorld.resize(3, 3);
+    testFloodWorld.makeCells();
+    t.checkExpect(testFloodWorld.board == first, true);
+    // Boards too large to make a cell for every square are turned away before any
+    // cell is made
+    t.checkException(new IllegalArgumentException("A board of this world can have at most "
+        + FloodItWorld.MAX_CELLS + " cells; play larger boards with FloodGame.newTiledGame"),
+        testFloodWorld, "resize", 5000, 5000);
+    t.checkExpect(testFloodWorld.board == first, true);
+    t.checkExpect(testFloodWorld.boardWidth, 3);
+  }
+
+  // tests that startFlood restarts the game in place unless the colors or engine
+  // have changed
+  void testStartFloodRestart(Tester t) {
+    this.initData();
+    FloodGame game = testFloodWorld.game;
+    testFloodWorld.game.moves = 3;
+
+    testFloodWorld.onKeyEvent("r");
+    t.checkExpect(testFloodWorld.game == game, true);
+    t.checkExpect(testFloodWorld.game.moves, 0);
+    t.checkExpect(testFloodWorld.canRestartGame(), true);
+
+    testFloodWorld.floodByRegion = true;
+    t.checkExpect(testFloodWorld.canRestartGame(), false);
+    testFloodWorld.floodByRegion = false;
+    testFloodWorld.colorList.set(0, Palette.color(Palette.PURPLE));
+    testFloodWorld.colorList.set(1, Palette.color(Palette.BLUE));
+    t.checkExpect(testFloodWorld.canRestartGame(), false);
+    testFloodWorld.makeCells();
+    testFloodWorld.startFlood();
+    t.checkExpect(testFloodWorld.game == game, false);
+    t.checkExpect(testFloodWorld.game.colors, new int[] {Palette.PURPLE, Palette.BLUE});
+  }
+
+  // tests that restarting on a board size already played reuses the board, its
+  // cells and the game instead of making new ones. The bytes a restart allocates
+  // are measured by FloodBenchmark.restart with -prof gc.
+  void testRestartAllocation(Tester t) {
+    FloodItWorld world = new FloodItWorld(24, 6);
+    world.onKeyEvent("r");
+    ArrayList<ArrayList<ConsCell>> board = world.board;
+    ConsCell corner = board.get(23).get(23);
+    CellBoard cells = world.cells;
+    FloodGame game = world.game;
+
+    boolean reused = true;
+    for (int i = 0; i < 20; i++) {
+      world.onKeyEvent("r");
+      reused = reused && world.board == board && world.board.get(23).get(23) == corner
+          && world.cells == cells && world.game == game;
+    }
+    t.checkExpect(reused, true);
+    t.checkExpect(world.game.moves, 0);
+    t.checkExpect(world.game.floodedCount > 0, true);
+  }
+
   //Tests the method makeScene() by reconstructing the entire makeScene method
   // and comparing the
   // reconstructed version to the method call on testFloodWorld
@@ -819,12 +1591,61 @@ class ExamplesFlood {
     t.checkExpect(this.testFloodWorld.makeScene(), expectedScene);
   }
 
+  // tests that makeScene reuses the last scene until the game changes
+  void testMakeSceneCache(Tester t) {
+    this.initData();
+
+    WorldScene first = this.testFloodWorld.makeScene();
+    t.checkExpect(this.testFloodWorld.makeScene() == first, true);
+
+    // A flood changes the board, so the scene is drawn again
+    this.testFloodWorld.newFloodColor = this.testFloodWorld.board.get(1).get(0).color;
+    this.testFloodWorld.updateCells();
+    WorldScene second = this.testFloodWorld.makeScene();
+    t.checkExpect(second == first, false);
+    t.checkExpect(this.testFloodWorld.makeScene() == second, true);
+
+    // So does a reset, or anything that invalidates the scene
+    this.testFloodWorld.onKeyEvent("r");
+    t.checkExpect(this.testFloodWorld.makeScene() == second, false);
+    WorldScene third = this.testFloodWorld.makeScene();
+    this.testFloodWorld.invalidateScene();
+    t.checkExpect(this.testFloodWorld.makeScene() == third, false);
+  }
+
+  // tests the cellImage method
+  void testCellImage(Tester t) {
+    this.initData();
+    int size = this.testFloodWorld.cellSize;
+
+    // Unflooded and flooded cells of one color share one image each
+    WorldImage plain = this.testFloodWorld.cellImage(this.orangeCell, orange);
+    t.checkExpect(plain, new RectangleImage(size, size, "solid", orange));
+    t.checkExpect(this.testFloodWorld.cellImage(this.orangeCell, orange) == plain, true);
+    t.checkExpect(this.testFloodWorld.cellImage(this.redCell, orange) == plain, true);
+
+    this.redCell.flood();
+    WorldImage bright = this.testFloodWorld.cellImage(this.redCell, orange);
+    t.checkExpect(bright, this.redCell.drawBrighterCell(orange, size));
+    t.checkExpect(bright == plain, false);
+
+    // Changing the cell size throws the old images away
+    this.testFloodWorld.cellSize = 50;
+    t.checkExpect(this.testFloodWorld.cellImage(this.orangeCell, orange),
+        new RectangleImage(50, 50, "solid", orange));
+    t.checkExpect(this.testFloodWorld.cellImages[Palette.ORANGE * 2 + 1], null);
+
+    // Colors outside the palette are drawn without being cached
+    t.checkExpect(this.testFloodWorld.cellImage(this.orangeCell, Color.gray),
+        new RectangleImage(50, 50, "solid", Color.gray));
+  }
+
   // Starts the game. In this test, a boardSize of 20 and a numColors of 6 are used
   // to create a 20x20 Flood-It game board distributing 6 random colors to 400 tiles
   void testBigBang(Tester t) {
-    // boardSize must be a factor of 600 to fit the crop of the background
-    // Possible boardSizes: 1, 2, 3, 4, 5, 6, 8, 10, 12, 15, 20, 24, 25, 30, 40, 50,
-    // 60, 75 ...
+    // Any boardSize fits the background: under 50, cells are the whole number of
+    // pixels that fit in 600, and from 50 up, or with new FloodItWorld(width, height,
+    // numColors, seed) for boards whose sides differ, the board is scaled to fill it
     int boardSize = 24;
     int numColors = 6;
     FloodItWorld scene = new FloodItWorld(boardSize, numColors);
@@ -854,8 +1675,106 @@ class ExamplesFlood {
     initData();
 
     testFloodWorld.onKeyEvent("r");
-    t.checkExpect(testFloodWorld.clicks, 0);
+    t.checkExpect(testFloodWorld.game.moves, 0);
     t.checkExpect(testFloodWorld.board.get(0).get(0).flooded, true);
+
+    // 'h' turns hints on and off
+    testFloodWorld.onKeyEvent("h");
+    t.checkExpect(testFloodWorld.hints.depth, 5);
+    testFloodWorld.onKeyEvent("h");
+    t.checkExpect(testFloodWorld.hints, null);
+  }
+
+  // tests the showHints, requestHint and applyHint methods
+  void testShowHints(Tester t) {
+    FloodItWorld world = new FloodItWorld(12, 4, 9);
+
+    // Without a hint engine, ticks show no hint
+    world.onTick();
+    t.checkExpect(world.hint, HintEngine.NOT_READY);
+
+    world.showHints(new HintEngine(3, 10000));
+    world.makeScene();
+    for (int i = 0; i < 10000 && world.hint == HintEngine.NOT_READY; i++) {
+      world.onTick();
+      try {
+        Thread.sleep(1);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    t.checkExpect(world.hint == HintEngine.NOT_READY, false);
+    t.checkExpect(world.hint == world.game.floodColor(), false);
+    t.checkExpect(world.sceneChanged, true);
+    int hint = world.hint;
+
+    // Asking again in the same position is answered from the cache
+    world.requestHint();
+    t.checkExpect(world.hint, HintEngine.NOT_READY);
+    for (int i = 0; i < 10000 && world.hint == HintEngine.NOT_READY; i++) {
+      world.onTick();
+      try {
+        Thread.sleep(1);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    t.checkExpect(world.hint, hint);
+
+    // A move drops the hint until the next one is ready
+    ConsCell target = world.board.get(11).get(11);
+    for (ArrayList<ConsCell> column : world.board) {
+      for (ConsCell c : column) {
+        if (!c.flooded && !c.sameColor(world.game.floodColor())) {
+          target = c;
+        }
+      }
+    }
+    world.onMousePressed(new Posn(75 + target.x * world.cellSize + 1,
+        80 + target.y * world.cellSize + 1));
+    t.checkExpect(world.game.moves, 1);
+    t.checkExpect(world.hint, HintEngine.NOT_READY);
+    t.checkExpect(world.hints.pending == null, false);
+
+    world.showHints(null);
+    t.checkExpect(world.hint, HintEngine.NOT_READY);
+  }
+
+  // tests the calibrateClicks, onTick and applyCalibratedLimit methods
+  void testCalibrateClicks(Tester t) {
+    initData();
+
+    // Without a calibrator, ticks leave the formula's limit alone
+    testFloodWorld.onTick();
+    t.checkExpect(testFloodWorld.game.movesAllowed, 6);
+
+    // The seed 1234 board takes the greedy solver 2 clicks; 50% slack allows 3
+    testFloodWorld.calibrateClicks(new MoveLimitCalibrator(new GreedySolver(), 50, 10000));
+    testFloodWorld.makeScene();
+    while (testFloodWorld.calibrator.pending != null) {
+      testFloodWorld.onTick();
+    }
+    t.checkExpect(testFloodWorld.game.movesAllowed, 3);
+    t.checkExpect(testFloodWorld.sceneChanged, true);
+
+    // A new board is calibrated too, and a stalled solver leaves the formula's limit
+    testFloodWorld.calibrator = new MoveLimitCalibrator(new StalledSolver(), 50, 20);
+    testFloodWorld.onKeyEvent("r");
+    while (testFloodWorld.calibrator.pending != null) {
+      testFloodWorld.onTick();
+    }
+    t.checkExpect(testFloodWorld.game.movesAllowed, 6);
+
+    // A late limit below the clicks used still leaves one more click
+    testFloodWorld.game.moves = 4;
+    testFloodWorld.calibrator = new MoveLimitCalibrator(new GreedySolver(), 0, 10000);
+    testFloodWorld.calibrator.calibrate(testFloodWorld.game);
+    while (testFloodWorld.calibrator.pending != null) {
+      testFloodWorld.onTick();
+    }
+    t.checkExpect(testFloodWorld.game.movesAllowed, 5);
   }
 
   // tests the updateCells method
@@ -868,8 +1787,8 @@ class ExamplesFlood {
 
     t.checkExpect(testFloodWorld.board.get(1).get(0).flooded, false);
 
-    testFloodWorld.board.get(1).get(0).color =
-        testFloodWorld.board.get(0).get(0).color;
+    testFloodWorld.board.get(1).get(0).setColor(
+        testFloodWorld.board.get(0).get(0).color);
     testFloodWorld.updateCells();
 
     t.checkExpect(testFloodWorld.board.get(1).get(0).flooded, true);
@@ -877,8 +1796,8 @@ class ExamplesFlood {
 
     t.checkExpect(testFloodWorld.board.get(1).get(1).flooded, false);
 
-    testFloodWorld.board.get(1).get(1).color =
-        testFloodWorld.board.get(0).get(0).color;
+    testFloodWorld.board.get(1).get(1).setColor(
+        testFloodWorld.board.get(0).get(0).color);
     testFloodWorld.updateCells();
 
     t.checkExpect(testFloodWorld.board.get(1).get(1).flooded, true);
@@ -886,14 +1805,68 @@ class ExamplesFlood {
 
     t.checkExpect(testFloodWorld.board.get(2).get(1).flooded, false);
 
-    testFloodWorld.board.get(2).get(1).color =
-        testFloodWorld.board.get(0).get(0).color;
+    testFloodWorld.board.get(2).get(1).setColor(
+        testFloodWorld.board.get(0).get(0).color);
     testFloodWorld.updateCells();
 
     t.checkExpect(testFloodWorld.board.get(2).get(1).flooded, true);
 
   }
 
+  // tests that updateCells absorbs a whole chain of same-colored cells in one call
+  // and only keeps cells that border unflooded cells in the frontier
+  void testUpdateCellsFrontier(Tester t) {
+    initData();
+    FrontierEngine engine = (FrontierEngine) testFloodWorld.game.engine;
+
+    // The seeded board starts with only the top-left cell flooded
+    t.checkExpect(engine.frontierSize, 1);
+    t.checkExpect(engine.frontier[0], 0);
+
+    // Floods everything of the other color; the whole board is connected through it
+    testFloodWorld.newFloodColor = testFloodWorld.board.get(1).get(0).color;
+    testFloodWorld.updateCells();
+
+    t.checkExpect(testFloodWorld.board.get(2).get(2).flooded, true);
+    t.checkExpect(testFloodWorld.board.get(0).get(2).flooded, false);
+    t.checkExpect(testFloodWorld.board.get(1).get(2).flooded, false);
+    t.checkExpect(testFloodWorld.floodColor(), testFloodWorld.board.get(1).get(0).color);
+
+    // Only the cells next to the two unflooded bottom cells are still on the frontier
+    t.checkExpect(engine.frontierSize, 3);
+    t.checkExpect(engine.bordersUnflooded(3), true);
+    t.checkExpect(engine.bordersUnflooded(4), true);
+    t.checkExpect(engine.bordersUnflooded(8), true);
+    t.checkExpect(engine.bordersUnflooded(0), false);
+
+    // Flooding back to the first color finishes the board and empties the frontier
+    testFloodWorld.newFloodColor = testFloodWorld.board.get(0).get(2).color;
+    testFloodWorld.updateCells();
+
+    t.checkExpect(testFloodWorld.succesfulFlood(), true);
+    t.checkExpect(engine.frontierSize, 0);
+  }
+
+  // tests that a world flooding by region plays the same as one flooding from the
+  // frontier
+  void testFloodByRegion(Tester t) {
+    initData();
+    FloodItWorld byRegion = new FloodItWorld(1234);
+    byRegion.floodByRegion = true;
+    byRegion.rand = new Random(99);
+    byRegion.onKeyEvent("r");
+    testFloodWorld.rand = new Random(99);
+    testFloodWorld.onKeyEvent("r");
+
+    t.checkExpect(byRegion.game.engine instanceof RegionEngine, true);
+    t.checkExpect(byRegion.game.floodedCount, testFloodWorld.game.floodedCount);
+    byRegion.onMousePressed(new Posn(300, 500));
+    testFloodWorld.onMousePressed(new Posn(300, 500));
+    t.checkExpect(byRegion.game.floodedCount, testFloodWorld.game.floodedCount);
+    t.checkExpect(byRegion.board.get(2).get(1).flooded,
+        testFloodWorld.board.get(2).get(1).flooded);
+  }
+
   // tests the succesfulFlood method
   void testSuccessfulFlood(Tester t) {
     initData();
@@ -913,4 +1886,202 @@ class ExamplesFlood {
 
   }
 
+  // tests that the game follows the flood when the world floods the board
+  void testGameFloodedCount(Tester t) {
+    initData();
+    testFloodWorld.game.checkFloodedCount = true;
+
+    t.checkExpect(testFloodWorld.game.floodedCount, 1);
+    t.checkExpect(testFloodWorld.game.isWon(), false);
+
+    // 6 cells of the second color join the corner
+    testFloodWorld.newFloodColor = testFloodWorld.board.get(1).get(0).color;
+    testFloodWorld.updateCells();
+    t.checkExpect(testFloodWorld.game.floodedCount, 7);
+    t.checkExpect(testFloodWorld.game.isWon(), false);
+
+    testFloodWorld.newFloodColor = testFloodWorld.board.get(0).get(2).color;
+    testFloodWorld.updateCells();
+    t.checkExpect(testFloodWorld.game.floodedCount, 9);
+    t.checkExpect(testFloodWorld.game.isWon(), true);
+    t.checkExpect(testFloodWorld.game.moves, 0);
+
+    // Resets start the game over, with a count that matches the new board
+    testFloodWorld.onKeyEvent("r");
+    t.checkExpect(testFloodWorld.game.isWon(), false);
+    t.checkExpect(testFloodWorld.game.floodedCount < 9, true);
+    t.checkExpect(testFloodWorld.game.moves, 0);
+  }
+
+  // tests that clicking a cell makes a move in the game
+  void testOnMousePressedFlood(Tester t) {
+    initData();
+    Color other = testFloodWorld.board.get(1).get(0).color;
+
+    // Clicking the flooded corner or a cell of the flood color is not a move
+    testFloodWorld.onMousePressed(new Posn(100, 100));
+    testFloodWorld.onMousePressed(new Posn(100, 500));
+    t.checkExpect(testFloodWorld.game.moves, 0);
+
+    // Clicking the cell to the right floods in its color
+    testFloodWorld.onMousePressed(new Posn(300, 100));
+    t.checkExpect(testFloodWorld.game.moves, 1);
+    t.checkExpect(testFloodWorld.floodColor(), other);
+    t.checkExpect(testFloodWorld.game.floodedCount, 7);
+
+    // Clicks outside the board do nothing
+    testFloodWorld.onMousePressed(new Posn(700, 100));
+    testFloodWorld.onMousePressed(new Posn(100, 690));
+    t.checkExpect(testFloodWorld.game.moves, 1);
+  }
+
+  // tests zooming and panning with the keys and mouse, and that the cells shown are
+  // the ones clicked
+  void testViewport(Tester t) {
+    FloodItWorld world = new FloodItWorld(24, 6, 8L);
+    t.checkExpect(world.view.columnsShown(), 24);
+
+    world.onKeyEvent("+");
+    t.checkExpect(world.view.columnsShown(), 12);
+    t.checkExpect(world.cellSize, 50);
+    t.checkExpect(world.posnToCell(new Posn(75, 80)), world.board.get(6).get(6));
+    t.checkExpect(world.posnToCell(new Posn(75 + 599, 80 + 50)), world.board.get(17).get(7));
+
+    world.onKeyEvent("right");
+    world.onKeyEvent("down");
+    world.onKeyEvent("down");
+    t.checkExpect(world.view.firstColumn, 9);
+    t.checkExpect(world.view.firstRow, 12);
+    t.checkExpect(world.posnToCell(new Posn(75, 80)), world.board.get(9).get(12));
+
+    // The scene is drawn from the cells shown
+    world.drawScene();
+    t.checkExpect(world.sceneChanged, false);
+    world.onKeyEvent("left");
+    t.checkExpect(world.sceneChanged, true);
+    t.checkExpect(world.view.firstColumn, 6);
+
+    // The right button zooms in on the cell under it, the middle one zooms out
+    world.onMousePressed(new Posn(75 + 599, 80 + 599), "RightButton");
+    t.checkExpect(world.view.zoom, 1);
+    world.onKeyEvent("0");
+    world.onMousePressed(new Posn(75 + 599, 80 + 599), "RightButton");
+    t.checkExpect(world.view.zoom, 1);
+    t.checkExpect(world.view.firstColumn, 12);
+    t.checkExpect(world.posnToCell(new Posn(75 + 599, 80 + 599)), world.board.get(23).get(23));
+    world.onMousePressed(new Posn(10, 10), "MiddleButton");
+    t.checkExpect(world.view.zoom, 0);
+    t.checkExpect(world.cellSize, 25);
+
+    // Clicking a cell of the window floods in its color
+    world.onKeyEvent("+");
+    ConsCell target = world.posnToCell(new Posn(75 + 300, 80 + 300));
+    boolean playable = !target.flooded && !target.sameColor(world.game.floodColor());
+    world.onMousePressed(new Posn(75 + 300, 80 + 300), "LeftButton");
+    t.checkExpect(world.game.moves == 1, playable);
+  }
+
+  // tests that boards with more cells than pixels are drawn from the level of the
+  // overview that fits, and only from the cells shown when zoomed in
+  void testOverview(Tester t) {
+    FloodItWorld world = new FloodItWorld(2000, 40, 3, 2L);
+    t.checkExpect(world.layout.pixelsHigh, 12);
+    world.drawScene();
+    t.checkExpect(world.overview.levelCount(), 12);
+    t.checkExpect(world.raster.width, 500);
+    t.checkExpect(world.raster.height, 10);
+    t.checkExpect(world.raster.repainted, 5000);
+
+    // Half the columns at level 1
+    world.onKeyEvent("+");
+    world.drawScene();
+    t.checkExpect(world.layout.pixelsHigh, 24);
+    t.checkExpect(world.raster.width, 500);
+    t.checkExpect(world.raster.height, 20);
+
+    // 250 columns are few enough to draw from the board itself, and a new board
+    // needs a new overview
+    world.onKeyEvent("+");
+    world.onKeyEvent("+");
+    world.drawScene();
+    t.checkExpect(world.view.columnsShown(), 250);
+    t.checkExpect(world.raster.width, 250);
+    t.checkExpect(world.raster.height, 40);
+    world.onKeyEvent("r");
+    t.checkExpect(world.overview, null);
+  }
+
+  // tests that a click on a board drawn from a level of the overview plays the
+  // color drawn under it, even where the cell of the board there has another color
+  void testClickOverview(Tester t) {
+    FloodItWorld world = new FloodItWorld(1000, 40, 4, 5L);
+    world.drawScene();
+    t.checkExpect(world.shownLevel(), 1);
+    BoardLayout layout = world.raster.layout;
+    int wrong = 0;
+    Posn differs = null;
+    for (int y = 0; y < layout.pixelsHigh; y++) {
+      for (int x = 0; x < layout.pixelsWide; x++) {
+        Posn p = new Posn(layout.left + x, layout.top + y);
+        int color = world.colorShownAt(p);
+        if (color >= 0 && !world.raster.image.getPixel(x, y).equals(Palette.color(color))) {
+          wrong++;
+        }
+        if (color >= 0 && color != world.game.floodColor() && differs == null
+            && !world.posnToCell(p).sameColor(color)) {
+          differs = p;
+        }
+      }
+    }
+    t.checkExpect(wrong, 0);
+    t.checkExpect(differs == null, false);
+
+    int drawn = world.colorShownAt(differs);
+    world.onMousePressed(differs);
+    t.checkExpect(world.game.moves, 1);
+    t.checkExpect(world.game.floodColor(), drawn);
+  }
+
+  // tests the resize and posnToCell methods on boards whose sides differ or whose
+  // cells are not a whole number of pixels
+  void testResize(Tester t) {
+    FloodItWorld world = new FloodItWorld(7, 7, 3, 5L);
+    t.checkExpect(world.cellSize, 85);
+    t.checkExpect(world.layout.pixelsWide, 595);
+
+    // The last pixel of the board is its last cell, and the next is off the board
+    t.checkExpect(world.posnToCell(new Posn(75 + 594, 80 + 594)),
+        world.board.get(6).get(6));
+    t.checkExpect(world.posnToCell(new Posn(75 + 85, 80 + 84)), world.board.get(1).get(0));
+    world.onMousePressed(new Posn(75 + 595, 80 + 300));
+    t.checkExpect(world.game.moves, 0);
+
+    // A strip of 1000 x 40 cells is 600 x 24 pixels, 0.6 of a pixel a cell
+    FloodItWorld strip = new FloodItWorld(1000, 40, 4, 5L);
+    t.checkExpect(strip.boardSize, 1000);
+    t.checkExpect(strip.board.size(), 1000);
+    t.checkExpect(strip.board.get(0).size(), 40);
+    t.checkExpect(strip.cellSize, 0);
+    t.checkExpect(strip.layout.pixelsHigh, 24);
+    t.checkExpect(strip.posnToCell(new Posn(75, 80)), strip.board.get(1).get(1));
+    t.checkExpect(strip.posnToCell(new Posn(75 + 599, 80 + 23)),
+        strip.board.get(999).get(39));
+    t.checkExpect(strip.boardId(), BoardGenerator.boardId(strip.boardSeed, 1000, 40, 4));
+
+    strip.drawScene();
+    t.checkExpect(strip.raster.image.width, 600);
+    t.checkExpect(strip.raster.image.height, 24);
+
+    // The cell hit is the cell drawn under the click
+    Posn click = new Posn(75 + 300, 80 + 12);
+    ConsCell clicked = strip.posnToCell(click);
+    t.checkExpect(strip.raster.image.getPixel(300, 12), clicked.color);
+    int moves = 0;
+    if (!clicked.flooded && !clicked.sameColor(strip.game.floodColor())) {
+      moves = 1;
+    }
+    strip.onMousePressed(click);
+    t.checkExpect(strip.game.moves, moves);
+  }
+
 }
\ No newline at end of file
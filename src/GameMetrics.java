@@ -0,0 +1,437 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+// Counts values in log-linear buckets, in the style of HdrHistogram: values below 64
+// have a bucket each, and every power of two above that is split into 32 buckets, so
+// any value is counted within about 3% of itself in a fixed array of longs. Recording
+// is a few shifts and an increment, with no allocation.
+class Histogram {
+  // the bits of a value kept below its highest bit, and the buckets they give
+  static final int SUB_BITS = 5;
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+  // enough buckets for any positive long
+  static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  long[] counts = new long[BUCKETS];
+  long count;
+  long total;
+  long max;
+
+  // The bucket the given value is counted in
+  static int bucketOf(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) Math.max(0, value);
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  // The smallest value counted in the given bucket
+  static long lowestIn(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+  }
+
+  // Counts the given value
+  // EFFECT: increments its bucket and the totals
+  void record(long value) {
+    this.counts[bucketOf(value)]++;
+    this.count++;
+    this.total += value;
+    if (value > this.max) {
+      this.max = value;
+    }
+  }
+
+  // Counts every value another histogram has counted
+  // EFFECT: adds its buckets and totals to these
+  void add(Histogram other) {
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      this.counts[bucket] += other.counts[bucket];
+    }
+    this.count += other.count;
+    this.total += other.total;
+    this.max = Math.max(this.max, other.max);
+  }
+
+  // The mean of the values counted, or 0 if there are none
+  double mean() {
+    if (this.count == 0) {
+      return 0;
+    }
+    return (double) this.total / this.count;
+  }
+
+  // The value that the given percent of the values counted are at or below, to the
+  // precision of its bucket, or 0 if there are none
+  long percentile(double percent) {
+    long rank = (long) Math.ceil(this.count * percent / 100);
+    if (rank >= this.count) {
+      return this.max;
+    }
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += this.counts[bucket];
+      if (seen >= rank && seen > 0) {
+        return Math.min(lowestIn(bucket), this.max);
+      }
+    }
+    return 0;
+  }
+
+  // Forgets every value counted
+  // EFFECT: clears the buckets and totals
+  void reset() {
+    Arrays.fill(this.counts, 0);
+    this.count = 0;
+    this.total = 0;
+    this.max = 0;
+  }
+
+  // A line describing the values counted, each divided by scale and followed by unit
+  String describe(String name, long scale, String unit) {
+    return name + ": n=" + this.count
+        + " mean=" + Math.round(this.mean() / scale) + unit
+        + " p50=" + this.percentile(50) / scale + unit
+        + " p99=" + this.percentile(99) / scale + unit
+        + " max=" + this.max / scale + unit;
+  }
+}
+
+// Times the game loop of a FloodItWorld: how long drawing scenes, handling clicks,
+// flooding cells and making boards take, how many cells each move absorbs, and how
+// many bytes each scene allocates when the JVM can count them. A world without
+// metrics only checks a null field, so they cost nothing when turned off. Setting
+// the floodit.metrics property turns them on for every world, shows them through
+// JMX, and prints them every that many seconds if it is more than 0.
+//
+// Only the game loop records; JMX and the periodic dump read from other threads
+// without locking, so what they show can be a frame behind.
+class GameMetrics implements GameMetricsMBean {
+  // the name the metrics are registered under
+  static final String OBJECT_NAME = "floodit:type=GameMetrics";
+
+  // the longest a scene can take and still make a 60 Hz frame
+  static final long FRAME_BUDGET_NANOS = 16666667;
+
+  // prints the metrics, on a daemon thread so it never keeps the program running
+  static final ScheduledExecutorService DUMPS =
+      Executors.newSingleThreadScheduledExecutor(new DaemonThreads("flood-metrics"));
+
+  // the metrics turned on by the floodit.metrics property, once made
+  static GameMetrics configured;
+
+  // times in nanoseconds
+  Histogram scene = new Histogram();
+  Histogram click = new Histogram();
+  Histogram updateCells = new Histogram();
+  Histogram makeCells = new Histogram();
+
+  Histogram cellsPerClick = new Histogram();
+  Histogram bytesPerFrame = new Histogram();
+  long slowFrames;
+
+  // counts the bytes each thread allocates, or null if this JVM cannot
+  com.sun.management.ThreadMXBean threads;
+
+  GameMetrics() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) bean;
+      if (counting.isThreadAllocatedMemorySupported()
+          && counting.isThreadAllocatedMemoryEnabled()) {
+        this.threads = counting;
+      }
+    }
+  }
+
+  // The metrics the floodit.metrics property asks for, made, registered and
+  // scheduled the first time, or null if it is not set
+  static synchronized GameMetrics configured() {
+    String period = System.getProperty("floodit.metrics");
+    if (period == null) {
+      return null;
+    }
+    if (configured == null) {
+      configured = new GameMetrics();
+      configured.register(OBJECT_NAME);
+      long seconds = Long.parseLong(period);
+      if (seconds > 0) {
+        configured.startDump(seconds, System.out);
+      }
+    }
+    return configured;
+  }
+
+  // Shows these metrics through JMX under the given name, replacing any there
+  // EFFECT: registers this with the platform MBean server
+  void register(String name) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(name);
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(this, objectName);
+    }
+    catch (javax.management.JMException e) {
+      throw new IllegalStateException("Metrics could not be registered as " + name, e);
+    }
+  }
+
+  // Prints the report to the given stream every given number of seconds
+  // EFFECT: schedules the report on DUMPS
+  void startDump(long seconds, PrintStream out) {
+    DUMPS.scheduleAtFixedRate(new MetricsDump(this, out), seconds, seconds, TimeUnit.SECONDS);
+  }
+
+  // The time to measure from
+  long start() {
+    return System.nanoTime();
+  }
+
+  // The bytes the current thread has allocated so far, or -1 if they are not counted
+  long allocatedBytes() {
+    if (this.threads == null) {
+      return -1;
+    }
+    return this.threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // Records a scene that started drawing at the given time and allocated count
+  // EFFECT: records its time and bytes, and counts it if it missed its frame
+  void sceneDrawn(long startNanos, long startBytes) {
+    long nanos = System.nanoTime() - startNanos;
+    this.scene.record(nanos);
+    if (nanos > FRAME_BUDGET_NANOS) {
+      this.slowFrames++;
+    }
+    if (startBytes >= 0) {
+      this.bytesPerFrame.record(this.allocatedBytes() - startBytes);
+    }
+  }
+
+  // Records a mouse press that started being handled at the given time
+  // EFFECT: records its time
+  void clicked(long startNanos) {
+    this.click.record(System.nanoTime() - startNanos);
+  }
+
+  // Records a move that absorbed the given number of cells
+  // EFFECT: records the count
+  void cellsFlooded(int cells) {
+    this.cellsPerClick.record(cells);
+  }
+
+  // Records a flood of the cells that started at the given time
+  // EFFECT: records its time
+  void cellsUpdated(long startNanos) {
+    this.updateCells.record(System.nanoTime() - startNanos);
+  }
+
+  // Records a new board that started being made at the given time
+  // EFFECT: records its time
+  void cellsMade(long startNanos) {
+    this.makeCells.record(System.nanoTime() - startNanos);
+  }
+
+  public long getFrames() {
+    return this.scene.count;
+  }
+
+  public long getSlowFrames() {
+    return this.slowFrames;
+  }
+
+  public double getSceneMeanMicros() {
+    return this.scene.mean() / 1000;
+  }
+
+  public long getSceneP50Micros() {
+    return this.scene.percentile(50) / 1000;
+  }
+
+  public long getSceneP99Micros() {
+    return this.scene.percentile(99) / 1000;
+  }
+
+  public long getSceneMaxMicros() {
+    return this.scene.max / 1000;
+  }
+
+  public long getClickP99Micros() {
+    return this.click.percentile(99) / 1000;
+  }
+
+  public long getUpdateCellsP99Micros() {
+    return this.updateCells.percentile(99) / 1000;
+  }
+
+  public long getMakeCellsP99Micros() {
+    return this.makeCells.percentile(99) / 1000;
+  }
+
+  public double getCellsPerClickMean() {
+    return this.cellsPerClick.mean();
+  }
+
+  public double getBytesPerFrameMean() {
+    return this.bytesPerFrame.mean();
+  }
+
+  public String getReport() {
+    return this.scene.describe("makeScene", 1000, "us") + " slow=" + this.slowFrames + "\n"
+        + this.click.describe("onMousePressed", 1000, "us") + "\n"
+        + this.updateCells.describe("updateCells", 1000, "us") + "\n"
+        + this.makeCells.describe("makeCells", 1000, "us") + "\n"
+        + this.cellsPerClick.describe("cellsPerClick", 1, "") + "\n"
+        + this.bytesPerFrame.describe("bytesPerFrame", 1, "B");
+  }
+
+  public void reset() {
+    this.scene.reset();
+    this.click.reset();
+    this.updateCells.reset();
+    this.makeCells.reset();
+    this.cellsPerClick.reset();
+    this.bytesPerFrame.reset();
+    this.slowFrames = 0;
+  }
+}
+
+// Prints the report of some metrics
+class MetricsDump implements Runnable {
+  GameMetrics metrics;
+  PrintStream out;
+
+  MetricsDump(GameMetrics metrics, PrintStream out) {
+    this.metrics = metrics;
+    this.out = out;
+  }
+
+  public void run() {
+    this.out.println(this.metrics.getReport());
+  }
+}
+
+// Examples of game loop metrics
+class ExamplesGameMetrics {
+
+  // tests the bucketOf and lowestIn methods
+  void testBuckets(Tester t) {
+    t.checkExpect(Histogram.bucketOf(0), 0);
+    t.checkExpect(Histogram.bucketOf(63), 63);
+    t.checkExpect(Histogram.bucketOf(64), 64);
+    t.checkExpect(Histogram.bucketOf(65), 64);
+    t.checkExpect(Histogram.bucketOf(128), 96);
+    t.checkExpect(Histogram.bucketOf(Long.MAX_VALUE), Histogram.BUCKETS - 1);
+    t.checkExpect(Histogram.lowestIn(64), 64L);
+    t.checkExpect(Histogram.lowestIn(96), 128L);
+
+    // Every value is in a bucket within about 3% of it
+    boolean close = true;
+    for (long value = 1; value < 1L << 40; value = value * 3 + 1) {
+      long lowest = Histogram.lowestIn(Histogram.bucketOf(value));
+      close = close && lowest <= value && value - lowest <= value / 32;
+    }
+    t.checkExpect(close, true);
+  }
+
+  // tests the record, mean, percentile and reset methods
+  void testHistogram(Tester t) {
+    Histogram histogram = new Histogram();
+    t.checkExpect(histogram.percentile(99), 0L);
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000);
+    }
+
+    t.checkExpect(histogram.count, 1000L);
+    t.checkInexact(histogram.mean(), 500500.0, 0.0001);
+    t.checkExpect(histogram.max, 1000000L);
+    t.checkInexact((double) histogram.percentile(50), 500000.0, 0.04);
+    t.checkInexact((double) histogram.percentile(99), 990000.0, 0.04);
+    t.checkExpect(histogram.percentile(100), 1000000L);
+    t.checkExpect(histogram.describe("x", 1000, "us").startsWith("x: n=1000 mean=501us"),
+        true);
+
+    Histogram more = new Histogram();
+    more.record(2000000);
+    more.add(histogram);
+    t.checkExpect(more.count, 1001L);
+    t.checkExpect(more.max, 2000000L);
+    t.checkExpect(more.percentile(50), histogram.percentile(50));
+
+    histogram.reset();
+    t.checkExpect(histogram.count, 0L);
+    t.checkExpect(histogram.percentile(50), 0L);
+  }
+
+  // tests the metrics a FloodItWorld records as it is played
+  void testWorldMetrics(Tester t) {
+    FloodItWorld world = new FloodItWorld(8, 3, 11L);
+    GameMetrics metrics = new GameMetrics();
+    world.metrics = metrics;
+
+    world.makeScene();
+    world.invalidateScene();
+    world.makeScene();
+    t.checkExpect(metrics.getFrames(), 2L);
+
+    // A click on an unflooded cell of another color is a move
+    int index = 0;
+    while (world.cells.isFlooded(index)
+        || world.cells.colorAt(index) == world.game.floodColor()) {
+      index++;
+    }
+    world.onMousePressed(new Posn(85 + 75 * (index % 8), 90 + 75 * (index / 8)));
+    t.checkExpect(world.game.moves, 1);
+    t.checkExpect(metrics.click.count, 1L);
+    t.checkExpect(metrics.cellsPerClick.count, 1L);
+    t.checkExpect(metrics.cellsPerClick.max > 0, true);
+
+    world.updateCells();
+    world.onKeyEvent("r");
+    t.checkExpect(metrics.updateCells.count, 1L);
+    t.checkExpect(metrics.makeCells.count, 1L);
+    t.checkExpect(metrics.getReport().split("\n").length, 6);
+
+    metrics.reset();
+    t.checkExpect(metrics.getFrames(), 0L);
+  }
+
+  // tests that metrics can be read through JMX
+  void testRegister(Tester t) throws Exception {
+    GameMetrics metrics = new GameMetrics();
+    metrics.scene.record(5000);
+    metrics.register("floodit:type=GameMetrics,name=test");
+    metrics.register("floodit:type=GameMetrics,name=test");
+
+    javax.management.MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("floodit:type=GameMetrics,name=test");
+    t.checkExpect(server.getAttribute(name, "Frames"), 1L);
+    t.checkExpect(server.getAttribute(name, "SceneMaxMicros"), 5L);
+    server.invoke(name, "reset", new Object[0], new String[0]);
+    t.checkExpect(server.getAttribute(name, "Frames"), 0L);
+    server.unregisterMBean(name);
+  }
+
+  // tests that a world made without the floodit.metrics property has no metrics
+  void testConfigured(Tester t) {
+    t.checkExpect(System.getProperty("floodit.metrics"), null);
+    t.checkExpect(GameMetrics.configured(), null);
+    t.checkExpect(new FloodItWorld(8, 3, 1L).metrics, null);
+  }
+
+}
@@ -0,0 +1,35 @@
+// The game loop numbers GameMetrics shows through JMX. Times are in microseconds.
+public interface GameMetricsMBean {
+  // The number of scenes drawn, and how many took longer than a 60 Hz frame
+  public long getFrames();
+
+  public long getSlowFrames();
+
+  // How long drawing a scene takes
+  public double getSceneMeanMicros();
+
+  public long getSceneP50Micros();
+
+  public long getSceneP99Micros();
+
+  public long getSceneMaxMicros();
+
+  // How long handling a mouse press, flooding the cells and making a board take
+  public long getClickP99Micros();
+
+  public long getUpdateCellsP99Micros();
+
+  public long getMakeCellsP99Micros();
+
+  // The cells a move absorbs, and the bytes drawing a scene allocates when the JVM
+  // can count them
+  public double getCellsPerClickMean();
+
+  public double getBytesPerFrameMean();
+
+  // Every number above, as lines of text
+  public String getReport();
+
+  // Starts every count over
+  public void reset();
+}
@@ -0,0 +1,597 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import tester.Tester;
+
+// A played game in the form it is saved in: the board's width and height, colors
+// and seed, the clicks allowed, the color of every cell, and the color of every
+// move. Saved, a record is a 22-byte header followed by the palette indexes the
+// board uses, the cell colors packed 3 bits each, and the moves packed the same
+// way, so a 14 x 14 game of 25 moves takes 112 bytes. Replaying a record plays its
+// moves again through a flood engine, on a board made from the saved colors.
+class GameRecord {
+  // the version of the record layout written by this class
+  static final int VERSION = 1;
+
+  // the bytes before the palette indexes: version, number of colors, width, height,
+  // seed, clicks allowed and number of moves
+  static final int HEADER_BYTES = 22;
+
+  int width;
+  int height;
+  int numColors;
+
+  // the seed the board was made from; the cell colors are saved as well, so boards
+  // that were not made by BoardGenerator can be saved too
+  long seed;
+
+  int movesAllowed;
+
+  // the palette indexes the board uses
+  int[] colors;
+
+  // the palette index of every cell, row by row, and of every move, in order
+  byte[] cells;
+  byte[] moves;
+
+  GameRecord(int width, int height, long seed, int movesAllowed, int[] colors, byte[] cells,
+      byte[] moves) {
+    BoardGenerator.checkColors(colors.length);
+    if (width <= 0 || width > 0xFFFF || height <= 0 || height > 0xFFFF
+        || cells.length != width * height) {
+      throw new IllegalArgumentException("A record needs " + width + " x " + height
+          + " cells");
+    }
+    this.width = width;
+    this.height = height;
+    this.numColors = colors.length;
+    this.seed = seed;
+    this.movesAllowed = movesAllowed;
+    this.colors = colors;
+    this.cells = cells;
+    this.moves = moves;
+  }
+
+  // The record of a game that has recorded its moves from the start, on a board made
+  // from the given seed
+  static GameRecord of(FloodGame game, long seed) {
+    if (game.moveLog == null && game.moves > 0) {
+      throw new IllegalStateException("The game did not record its moves");
+    }
+    Board board = game.board;
+    byte[] cells = new byte[game.cellCount()];
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = (byte) board.colorAt(i);
+    }
+    byte[] moves = new byte[game.moves];
+    if (game.moves > 0) {
+      System.arraycopy(game.moveLog, 0, moves, 0, game.moves);
+    }
+    return new GameRecord(board.width(), board.height(), seed, game.movesAllowed,
+        game.colors.clone(), cells, moves);
+  }
+
+  // The number of bytes needed for count values of 3 bits
+  static int packedBytes(int count) {
+    return (int) ((count * 3L + 7) >>> 3);
+  }
+
+  // The number of bytes this record takes when saved
+  int byteLength() {
+    return HEADER_BYTES + this.numColors + packedBytes(this.cells.length)
+        + packedBytes(this.moves.length);
+  }
+
+  // Writes this record at the buffer's position
+  // EFFECT: puts byteLength() bytes into the buffer
+  void writeTo(ByteBuffer out) {
+    out.put((byte) VERSION);
+    out.put((byte) this.numColors);
+    out.putShort((short) this.width);
+    out.putShort((short) this.height);
+    out.putLong(this.seed);
+    out.putInt(this.movesAllowed);
+    out.putInt(this.moves.length);
+    for (int color : this.colors) {
+      out.put((byte) color);
+    }
+    pack(out, this.cells);
+    pack(out, this.moves);
+  }
+
+  // Reads the record at the buffer's position. Every palette index, cell color and
+  // move must be one the record can hold, and the buffer must hold every move.
+  // EFFECT: moves the buffer's position past the record
+  static GameRecord readFrom(ByteBuffer in) {
+    int version = in.get();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unknown record version " + version);
+    }
+    int numColors = in.get();
+    BoardGenerator.checkColors(numColors);
+    int width = in.getShort() & 0xFFFF;
+    int height = in.getShort() & 0xFFFF;
+    long seed = in.getLong();
+    int movesAllowed = in.getInt();
+    int moveCount = in.getInt();
+    if (moveCount < 0 || numColors + (long) packedBytes(width * height)
+        + packedBytes(moveCount) > in.remaining()) {
+      throw new IllegalArgumentException("A record cannot have " + moveCount + " moves");
+    }
+    int[] colors = new int[numColors];
+    for (int i = 0; i < numColors; i++) {
+      colors[i] = in.get();
+      if (colors[i] < 0 || colors[i] >= Palette.SIZE) {
+        throw new IllegalArgumentException("Not a palette index: " + colors[i]);
+      }
+    }
+    byte[] cells = new byte[width * height];
+    unpack(in, cells);
+    byte[] moves = new byte[moveCount];
+    unpack(in, moves);
+    GameRecord record = new GameRecord(width, height, seed, movesAllowed, colors, cells,
+        moves);
+    record.checkUses(cells);
+    record.checkUses(moves);
+    return record;
+  }
+
+  // Throws if any of the given palette indexes is not one of the board's colors
+  void checkUses(byte[] values) {
+    boolean[] used = new boolean[Palette.SIZE];
+    for (int c : this.colors) {
+      used[c] = true;
+    }
+    for (byte value : values) {
+      if (!used[value]) {
+        throw new IllegalArgumentException("Not a color of the board: " + value);
+      }
+    }
+  }
+
+  // The number of bytes of the record at the given index of the buffer, read from
+  // its header alone
+  static int byteLengthAt(ByteBuffer in, int index) {
+    int numColors = in.get(index + 1);
+    int width = in.getShort(index + 2) & 0xFFFF;
+    int height = in.getShort(index + 4) & 0xFFFF;
+    int moveCount = in.getInt(index + 18);
+    return HEADER_BYTES + numColors + packedBytes(width * height) + packedBytes(moveCount);
+  }
+
+  // Writes the low 3 bits of every value, 8 values to every 3 bytes, the first value
+  // in the lowest bits
+  // EFFECT: puts packedBytes(values.length) bytes into the buffer
+  static void pack(ByteBuffer out, byte[] values) {
+    long bits = 0;
+    int used = 0;
+    for (byte value : values) {
+      bits |= (long) (value & 7) << used;
+      used += 3;
+      if (used == 24) {
+        out.put((byte) bits);
+        out.put((byte) (bits >>> 8));
+        out.put((byte) (bits >>> 16));
+        bits = 0;
+        used = 0;
+      }
+    }
+    while (used > 0) {
+      out.put((byte) bits);
+      bits >>>= 8;
+      used -= 8;
+    }
+  }
+
+  // Reads values packed by pack, filling the given array
+  // EFFECT: fills values and moves the buffer's position past them
+  static void unpack(ByteBuffer in, byte[] values) {
+    long bits = 0;
+    int held = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (held < 3) {
+        bits |= (long) (in.get() & 0xFF) << held;
+        held += 8;
+      }
+      int value = (int) (bits & 7);
+      if (value >= Palette.SIZE) {
+        throw new IllegalArgumentException("Not a palette index: " + value);
+      }
+      values[i] = (byte) value;
+      bits >>>= 3;
+      held -= 3;
+    }
+  }
+
+  // A new board with the saved colors, nothing flooded
+  PackedBoard board() {
+    PackedBoard board = new PackedBoard(this.width, this.height);
+    System.arraycopy(this.cells, 0, board.colors, 0, this.cells.length);
+    return board;
+  }
+
+  // True if BoardGenerator makes exactly the saved cells from the seed, so the board
+  // was not changed after it was made
+  boolean matchesSeed() {
+    PackedBoard generated = new PackedBoard(this.width, this.height);
+    BoardGenerator.fill(generated, this.seed, this.numColors, this.colors);
+    return Arrays.equals(generated.colors, this.cells);
+  }
+
+  // The game after replaying every move
+  FloodGame replay() {
+    return this.replay(this.moves.length);
+  }
+
+  // The game after replaying the first count moves, on a new board flooded with
+  // bitboards when it is narrow enough and by region when not. Every move must be one
+  // of the board's colors and not the flood color it is played on.
+  FloodGame replay(int count) {
+    PackedBoard board = this.board();
+    FloodGame game = new FloodGame(board, FloodGame.fastEngine(board), this.colors,
+        this.movesAllowed);
+    for (int i = 0; i < count; i++) {
+      int color = this.moves[i];
+      if (color == game.floodColor() || !this.usesColor(color)) {
+        throw new IllegalStateException("Move " + (i + 1) + " is not a legal move");
+      }
+      game.play(color);
+    }
+    return game;
+  }
+
+  // True if the board uses the given palette index
+  boolean usesColor(int color) {
+    for (int c : this.colors) {
+      if (c == color) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
+
+// Appends game records to a file through one FileChannel. Records are gathered in a
+// buffer and written in batches, so archiving a game costs a copy into memory rather
+// than a write to the file. Nothing is certain to be in the file until flush or
+// close.
+class GameArchiveWriter {
+  // the first bytes of every archive file: "FLOD"
+  static final int MAGIC = 0x464C4F44;
+
+  // the bytes gathered before a write
+  static final int BUFFER_BYTES = 1 << 16;
+
+  FileChannel channel;
+  ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+  // Opens the archive at the given path for appending, creating it if needed
+  GameArchiveWriter(Path path) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+    if (this.channel.size() == 0) {
+      this.buffer.putInt(MAGIC);
+    }
+  }
+
+  // Adds a record to the end of the archive; safe to call from many threads
+  // EFFECT: writes the buffer to the file first if the record does not fit in it
+  synchronized void append(GameRecord record) throws IOException {
+    int length = record.byteLength();
+    if (length > this.buffer.remaining()) {
+      this.flush();
+    }
+    if (length > this.buffer.capacity()) {
+      ByteBuffer large = ByteBuffer.allocate(length);
+      record.writeTo(large);
+      large.flip();
+      this.write(large);
+      return;
+    }
+    record.writeTo(this.buffer);
+  }
+
+  // Writes every record appended so far to the file
+  // EFFECT: empties the buffer
+  synchronized void flush() throws IOException {
+    this.buffer.flip();
+    this.write(this.buffer);
+    this.buffer.clear();
+  }
+
+  // Writes all of the given bytes to the file
+  void write(ByteBuffer bytes) throws IOException {
+    while (bytes.hasRemaining()) {
+      this.channel.write(bytes);
+    }
+  }
+
+  // Writes every record appended so far and closes the file
+  synchronized void close() throws IOException {
+    this.flush();
+    this.channel.close();
+  }
+}
+
+// Reads the records of an archive file in order, memory-mapped, so reading a record
+// copies only its own bytes out of the page cache. Files are mapped whole and so
+// must be under 2 GB.
+class GameArchive {
+  ByteBuffer records;
+
+  // Maps the archive at the given path
+  GameArchive(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Archives over 2 GB cannot be mapped");
+      }
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      this.records = mapped;
+    }
+    finally {
+      channel.close();
+    }
+    if (this.records.remaining() < 4 || this.records.getInt() != GameArchiveWriter.MAGIC) {
+      throw new IllegalArgumentException("Not a game archive: " + path);
+    }
+  }
+
+  // True if there are records left to read
+  boolean hasNext() {
+    return this.records.hasRemaining();
+  }
+
+  // The next record
+  // EFFECT: moves past it
+  GameRecord next() {
+    return GameRecord.readFrom(this.records);
+  }
+
+  // Passes over the next record using its header alone
+  // EFFECT: moves past it
+  void skip() {
+    int position = this.records.position();
+    this.records.position(position + GameRecord.byteLengthAt(this.records, position));
+  }
+
+  // The number of records left to read, counted from their headers
+  int remaining() {
+    int count = 0;
+    int position = this.records.position();
+    while (position < this.records.limit()) {
+      position += GameRecord.byteLengthAt(this.records, position);
+      count++;
+    }
+    return count;
+  }
+}
+
+// Examples of saving and replaying games
+class ExamplesGameRecord {
+
+  // A game of the given size and colors from the seed, recorded and played to the
+  // end with the greedy moves of its regions
+  FloodGame playedGame(int size, int numColors, long seed) {
+    FloodGame game = FloodGame.newGame(size, numColors, seed);
+    game.recordMoves();
+    for (int color : new GreedySolver().solve(RegionGraph.of(game)).moves) {
+      game.play(color);
+    }
+    return game;
+  }
+
+  // tests the packedBytes, pack and unpack methods
+  void testPack(Tester t) {
+    t.checkExpect(GameRecord.packedBytes(0), 0);
+    t.checkExpect(GameRecord.packedBytes(8), 3);
+    t.checkExpect(GameRecord.packedBytes(9), 4);
+
+    ByteBuffer buffer = ByteBuffer.allocate(8);
+    GameRecord.pack(buffer, new byte[] {1, 2, 3, 4, 5, 0, 1, 2, 5});
+    t.checkExpect(buffer.position(), 4);
+
+    // 1, 2 and part of 3 in the first byte: 001, 010, 11
+    t.checkExpect(buffer.get(0), (byte) 0b11010001);
+    buffer.flip();
+    byte[] values = new byte[9];
+    GameRecord.unpack(buffer, values);
+    t.checkExpect(values, new byte[] {1, 2, 3, 4, 5, 0, 1, 2, 5});
+    t.checkExpect(buffer.remaining(), 0);
+
+    ByteBuffer bad = ByteBuffer.wrap(new byte[] {7});
+    t.checkException(new IllegalArgumentException("Not a palette index: 7"),
+        new GameRecord(1, 1, 0, 0, new int[] {0}, new byte[1], new byte[0]), "unpack", bad,
+        new byte[1]);
+  }
+
+  // tests the of, writeTo, readFrom and byteLength methods
+  void testWriteAndRead(Tester t) {
+    FloodGame game = this.playedGame(14, 6, 1234);
+    GameRecord record = GameRecord.of(game, 1234);
+
+    t.checkExpect(record.byteLength(),
+        22 + 6 + 74 + GameRecord.packedBytes(game.moves));
+    ByteBuffer buffer = ByteBuffer.allocate(record.byteLength() + 1);
+    record.writeTo(buffer);
+    t.checkExpect(buffer.position(), record.byteLength());
+    t.checkExpect(GameRecord.byteLengthAt(buffer, 0), record.byteLength());
+
+    buffer.flip();
+    GameRecord read = GameRecord.readFrom(buffer);
+    t.checkExpect(read.width, 14);
+    t.checkExpect(read.height, 14);
+    t.checkExpect(read.seed, 1234L);
+    t.checkExpect(read.movesAllowed, game.movesAllowed);
+    t.checkExpect(read.colors, game.colors);
+    t.checkExpect(read.cells, record.cells);
+    t.checkExpect(read.moves, record.moves);
+
+    buffer.put(0, (byte) 3);
+    buffer.rewind();
+    t.checkException(new IllegalArgumentException("Unknown record version 3"),
+        record, "readFrom", buffer);
+    t.checkException(new IllegalStateException("The game did not record its moves"),
+        record, "of", this.playedUnrecorded(), 0L);
+  }
+
+  // tests that boards whose sides differ are recorded, saved and replayed
+  void testNonSquare(Tester t) {
+    PackedBoard board = BoardGenerator.generate(21, 30, 10, 4);
+    FloodGame game = new FloodGame(board, FloodGame.fastEngine(board), new int[] {0, 1, 2, 3},
+        50);
+    game.recordMoves();
+    for (int color : new GreedySolver().solve(RegionGraph.of(game)).moves) {
+      game.play(color);
+    }
+    GameRecord record = GameRecord.of(game, 21);
+    t.checkExpect(record.width, 30);
+    t.checkExpect(record.height, 10);
+    t.checkExpect(record.matchesSeed(), true);
+
+    ByteBuffer buffer = ByteBuffer.allocate(record.byteLength());
+    record.writeTo(buffer);
+    t.checkExpect(GameRecord.byteLengthAt(buffer, 0), record.byteLength());
+    buffer.flip();
+    GameRecord read = GameRecord.readFrom(buffer);
+    t.checkExpect(read.width, 30);
+    t.checkExpect(read.height, 10);
+    t.checkExpect(read.cells, record.cells);
+    FloodGame replayed = read.replay();
+    t.checkExpect(replayed.board.width(), 30);
+    t.checkExpect(replayed.isWon(), true);
+  }
+
+  // tests that reading rejects palette indexes, cell colors and moves that a record
+  // cannot hold
+  void testReadBadColors(Tester t) {
+    GameRecord record = new GameRecord(2, 1, 0, 5, new int[] {0, 1},
+        new byte[] {0, 1}, new byte[] {1});
+    ByteBuffer buffer = ByteBuffer.allocate(record.byteLength());
+    record.writeTo(buffer);
+
+    // The board's second color becomes 9, which is not in the palette
+    buffer.put(22 + 1, (byte) 9);
+    buffer.rewind();
+    t.checkException(new IllegalArgumentException("Not a palette index: 9"),
+        record, "readFrom", buffer);
+
+    // The board's second color becomes 4, which its cells and moves do not use
+    buffer.put(22 + 1, (byte) 4);
+    buffer.rewind();
+    t.checkException(new IllegalArgumentException("Not a color of the board: 1"),
+        record, "readFrom", buffer);
+
+    // A move of a color the board does not use
+    record.moves[0] = 3;
+    buffer.clear();
+    record.writeTo(buffer);
+    buffer.flip();
+    t.checkException(new IllegalArgumentException("Not a color of the board: 3"),
+        record, "readFrom", buffer);
+    t.checkException(new IllegalArgumentException("Not a color of the board: 5"),
+        record, "checkUses", new byte[] {0, 5});
+  }
+
+  // tests that reading rejects a count of moves below zero or past the end of the
+  // buffer before making room for them
+  void testReadBadMoveCount(Tester t) {
+    GameRecord record = new GameRecord(2, 1, 0, 5, new int[] {0, 1},
+        new byte[] {0, 1}, new byte[] {1});
+    ByteBuffer buffer = ByteBuffer.allocate(record.byteLength());
+    record.writeTo(buffer);
+
+    buffer.putInt(18, -1);
+    buffer.rewind();
+    t.checkException(new IllegalArgumentException("A record cannot have -1 moves"),
+        record, "readFrom", buffer);
+
+    buffer.putInt(18, Integer.MAX_VALUE);
+    buffer.rewind();
+    t.checkException(new IllegalArgumentException("A record cannot have "
+        + Integer.MAX_VALUE + " moves"), record, "readFrom", buffer);
+
+    buffer.putInt(18, 1);
+    buffer.rewind();
+    t.checkExpect(GameRecord.readFrom(buffer).moves, new byte[] {1});
+  }
+
+  // A game that has made a move without recording it
+  FloodGame playedUnrecorded() {
+    FloodGame game = FloodGame.newGame(6, 3, 2);
+    game.play(game.floodColor() == 0 ? 1 : 0);
+    return game;
+  }
+
+  // tests the replay, board, usesColor and matchesSeed methods
+  void testReplay(Tester t) {
+    FloodGame game = this.playedGame(14, 6, 99);
+    GameRecord record = GameRecord.of(game, 99);
+
+    FloodGame replayed = record.replay();
+    t.checkExpect(replayed.isWon(), true);
+    t.checkExpect(replayed.moves, game.moves);
+    t.checkExpect(replayed.engine instanceof BitboardEngine, true);
+    t.checkExpect(record.matchesSeed(), true);
+
+    FloodGame partial = record.replay(3);
+    t.checkExpect(partial.moves, 3);
+    t.checkExpect(partial.floodColor(), (int) record.moves[2]);
+
+    // A tampered board or move log is caught
+    record.cells[50] = (byte) ((record.cells[50] + 1) % 6);
+    t.checkExpect(record.matchesSeed(), false);
+    record.moves[1] = record.moves[0];
+    t.checkException(new IllegalStateException("Move 2 is not a legal move"),
+        record, "replay");
+
+    // Boards too wide for bitboards are replayed by region
+    FloodGame wide = this.playedGame(70, 3, 5);
+    FloodGame wideReplay = GameRecord.of(wide, 5).replay();
+    t.checkExpect(wideReplay.engine instanceof RegionEngine, true);
+    t.checkExpect(wideReplay.isWon(), true);
+  }
+
+  // tests that games written to an archive through GameArchiveWriter come back out
+  // of GameArchive in order, across flushes of its buffer
+  void testArchive(Tester t) throws IOException {
+    Path path = File.createTempFile("games", ".flood").toPath();
+    path.toFile().delete();
+    path.toFile().deleteOnExit();
+
+    GameArchiveWriter writer = new GameArchiveWriter(path);
+    GameRecord[] written = new GameRecord[40];
+    for (int i = 0; i < written.length; i++) {
+      written[i] = GameRecord.of(this.playedGame(8 + i, 2 + i % 5, i), i);
+      writer.append(written[i]);
+    }
+    // One record larger than the buffer
+    GameRecord large = GameRecord.of(this.playedGame(500, 2, 7), 7);
+    writer.append(large);
+    writer.close();
+
+    // Appending again adds to the end
+    writer = new GameArchiveWriter(path);
+    writer.append(written[0]);
+    writer.close();
+
+    GameArchive archive = new GameArchive(path);
+    t.checkExpect(archive.remaining(), 42);
+    archive.skip();
+    for (int i = 1; i < written.length; i++) {
+      GameRecord read = archive.next();
+      t.checkExpect(read.seed, (long) i);
+      t.checkExpect(read.cells, written[i].cells);
+      t.checkExpect(read.moves, written[i].moves);
+    }
+    t.checkExpect(archive.next().cells, large.cells);
+    t.checkExpect(archive.next().replay().isWon(), true);
+    t.checkExpect(archive.hasNext(), false);
+  }
+
+}
@@ -0,0 +1,494 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import tester.Tester;
+
+// Suggests the next color to play, worked out in the background so the game never
+// waits on it. Each hint is a lookahead over the game's regions on a snapshot,
+// deepened one move at a time until it reaches its depth or runs out of its time
+// budget, when the deepest finished answer is used. Asking again cancels the search
+// before, and hints are cached by the Zobrist hash of the game's state, so a
+// position seen before gets its hint without a search. Asking does no work per
+// cell: the snapshot, its hash and the cache lookup are all made on the search
+// thread, which is the only one that touches the cache. The searches share a
+// transposition table, TABLE, which nothing else uses.
+class HintEngine {
+  // runs the searches, on a daemon thread so they never keep the program running
+  static final ExecutorService SEARCHES =
+      Executors.newSingleThreadExecutor(new DaemonThreads("flood-solver"));
+
+  // the scores of the states every search has worked out, shared by all of them
+  static final TranspositionTable TABLE = new TranspositionTable(1 << 16);
+
+  // the value poll() returns while there is no new hint
+  static final int NOT_READY = -1;
+
+  // the most hints kept in the cache
+  static final int CACHE_SIZE = 4096;
+
+  // the most moves a search looks ahead
+  int depth;
+
+  // how long a search may take, in nanoseconds
+  long budgetNanos;
+
+  // hints already worked out, by the state of the game they are for
+  HintCache cache = new HintCache(CACHE_SIZE);
+
+  // the request in progress or done but not yet handed out, if any
+  Future<Integer> pending;
+
+  HintEngine(int depth, long budgetMillis) {
+    this.depth = depth;
+    this.budgetNanos = budgetMillis * 1000000L;
+  }
+
+  // An engine looking up to 5 moves ahead with a 30ms budget
+  HintEngine() {
+    this(5, 30);
+  }
+
+  // Starts working out a hint for the given game on the search thread, cancelling
+  // any request before. Takes constant time for a game that records its moves.
+  // EFFECT: replaces the pending request
+  void request(FloodGame game) {
+    this.cancel();
+    this.pending = SEARCHES.submit(new HintRequest(new GameCopy(game), this.cache,
+        this.depth, System.nanoTime() + this.budgetNanos));
+  }
+
+  // The hint for the last game given to request, as a palette index, if it is
+  // ready, or NOT_READY if the request is still running or failed. Never waits for
+  // the request. Returns NOT_READY again once a hint has been handed out.
+  // EFFECT: clears the finished request
+  int poll() {
+    if (this.pending == null || !this.pending.isDone()) {
+      return NOT_READY;
+    }
+    Future<Integer> done = this.pending;
+    this.pending = null;
+    try {
+      return done.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return NOT_READY;
+    }
+    catch (ExecutionException e) {
+      return NOT_READY;
+    }
+  }
+
+  // Stops the pending request and drops any hint not yet handed out
+  // EFFECT: clears the pending request
+  void cancel() {
+    if (this.pending != null) {
+      this.pending.cancel(true);
+      this.pending = null;
+    }
+  }
+}
+
+// One request for a hint, run on the search thread: copies the game, answers from
+// the cache if the copy's state is in it, and searches and caches the answer if
+// not. An answer cut short by cancelling the request is not cached.
+class HintRequest implements Callable<Integer> {
+  GameCopy game;
+  HintCache cache;
+  int depth;
+  long deadline;
+
+  HintRequest(GameCopy game, HintCache cache, int depth, long deadline) {
+    this.game = game;
+    this.cache = cache;
+    this.depth = depth;
+    this.deadline = deadline;
+  }
+
+  // The hint for the game as it was when the request was made
+  // EFFECT: may add the hint to the cache
+  public Integer call() {
+    FloodGame snapshot = this.game.make();
+    long key = snapshot.stateHash();
+    Integer cached = this.cache.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    int hint = new HintSearch(snapshot, this.depth, this.deadline, HintEngine.TABLE).call();
+    if (hint != HintEngine.NOT_READY && !Thread.currentThread().isInterrupted()) {
+      this.cache.put(key, hint);
+    }
+    return hint;
+  }
+}
+
+// The most recently used hints, by game state, dropping the least recently used
+// once it holds more than its capacity
+class HintCache extends LinkedHashMap<Long, Integer> {
+  static final long serialVersionUID = 1L;
+
+  int capacity;
+
+  HintCache(int capacity) {
+    super(16, 0.75f, true);
+    this.capacity = capacity;
+  }
+
+  protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+    return this.size() > this.capacity;
+  }
+}
+
+// Looks ahead from a snapshot of a game for the color that floods the most cells a
+// few moves from now, or the board in the fewest moves. It searches to depth 1,
+// then 2 and so on, and once it is past its deadline or cancelled it stops and
+// answers from the deepest search it finished. The score of a state with a number
+// of moves to go is the same however the state was reached, so scores are kept in
+// a transposition table under the state's Zobrist hash and the moves to go, and a
+// state reached again, by another order of moves, an earlier depth or an earlier
+// search, is not searched again.
+class HintSearch implements Callable<Integer> {
+  FloodGame snapshot;
+  int depth;
+  long deadline;
+
+  // the scores of states already searched, or null to search every state
+  TranspositionTable table;
+
+  // the fingerprint of the snapshot's colors, part of every state's hash
+  long boardKey;
+
+  // the number of sets of flooded regions expanded so far
+  long expanded;
+
+  // the regions of the snapshot and every move on them; one RegionMoves per level
+  // of the search, since expanding a set overwrites its children
+  RegionGraph graph;
+  RegionMoves[] levels;
+
+  // true once a search has been stopped part way through
+  boolean stopped;
+
+  HintSearch(FloodGame snapshot, int depth, long deadline, TranspositionTable table) {
+    this.snapshot = snapshot;
+    this.depth = depth;
+    this.deadline = deadline;
+    this.table = table;
+  }
+
+  // A search that keeps no table
+  HintSearch(FloodGame snapshot, int depth, long deadline) {
+    this(snapshot, depth, deadline, null);
+  }
+
+  // The color to play next, or HintEngine.NOT_READY if the board is already flooded
+  public Integer call() {
+    this.graph = RegionGraph.of(this.snapshot);
+    this.snapshot.stateHash();
+    this.boardKey = this.snapshot.boardKey;
+    long[] start = this.graph.startSet();
+    if (this.graph.isFull(start)) {
+      return HintEngine.NOT_READY;
+    }
+    this.levels = new RegionMoves[this.depth];
+    for (int i = 0; i < this.depth; i++) {
+      this.levels[i] = new RegionMoves(this.graph);
+    }
+
+    int hint = HintEngine.NOT_READY;
+    for (int d = 1; d <= this.depth; d++) {
+      int best = this.bestMove(start, this.graph.regionKey[0], this.graph.cellsIn(start), d);
+      if (this.stopped) {
+        break;
+      }
+      hint = best;
+    }
+    return hint;
+  }
+
+  // The first color of the best line of at most the given number of moves from
+  // the given set of flooded regions, whose cells have the given hash
+  // EFFECT: counts the sets expanded
+  int bestMove(long[] flooded, long floodedHash, int cells, int moves) {
+    RegionMoves level = this.levels[0];
+    level.expand(flooded, floodedHash);
+    this.expanded++;
+    int best = HintEngine.NOT_READY;
+    int bestScore = Integer.MIN_VALUE;
+    for (int c : level.candidates()) {
+      int score = this.score(level.children[c], level.childHash[c], c,
+          cells + level.gain[c], moves - 1, 1);
+      if (score > bestScore) {
+        best = c;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  // The score of the best line of at most the given number of moves from the given
+  // set of flooded regions, whose cells have the given hash, in the given color: the
+  // cells flooded at the end, or more than the whole board for a line that floods
+  // it, more still the fewer moves it takes
+  // EFFECT: counts the sets expanded, stores the scores of states searched to the
+  // end in the table, and sets this.stopped if the search is cancelled or past its
+  // deadline
+  int score(long[] flooded, long floodedHash, int color, int cells, int moves, int level) {
+    if (cells == this.graph.cellCount) {
+      return this.graph.cellCount + 1 + moves;
+    }
+    if (moves == 0) {
+      return cells;
+    }
+    long key = this.entryKey(floodedHash, color, moves);
+    if (this.table != null) {
+      long stored = this.table.get(key);
+      if (stored != TranspositionTable.MISSING) {
+        return (int) stored;
+      }
+    }
+    if (this.stopped || Thread.currentThread().isInterrupted()
+        || System.nanoTime() > this.deadline) {
+      this.stopped = true;
+      return cells;
+    }
+    RegionMoves here = this.levels[level];
+    here.expand(flooded, floodedHash);
+    this.expanded++;
+    int best = cells;
+    for (int c : here.candidates()) {
+      best = Math.max(best, this.score(here.children[c], here.childHash[c], c,
+          cells + here.gain[c], moves - 1, level + 1));
+    }
+
+    // A search cut short may have missed better lines, so its score is not kept
+    if (this.table != null && !this.stopped) {
+      this.table.put(key, best);
+    }
+    return best;
+  }
+
+  // The table key of a state with the given flooded cells' hash and flood color,
+  // with the given number of moves to go
+  long entryKey(long floodedHash, int color, int moves) {
+    return BoardGenerator.mix(Zobrist.stateHash(this.boardKey, floodedHash, color) + moves);
+  }
+}
+
+// Examples of hints
+class ExamplesHintEngine {
+
+  // how long await waits for a hint before giving up, in nanoseconds
+  static final long AWAIT_NANOS = 10000000000L;
+
+  // Polls the engine until it has a hint, or HintEngine.NOT_READY if it has none
+  // after AWAIT_NANOS, so a search that fails fails the test instead of hanging it
+  int await(HintEngine hints) {
+    long deadline = System.nanoTime() + AWAIT_NANOS;
+    int hint = hints.poll();
+    while (hint == HintEngine.NOT_READY && System.nanoTime() < deadline) {
+      try {
+        Thread.sleep(1);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      hint = hints.poll();
+    }
+    return hint;
+  }
+
+  // tests the request and poll methods
+  void testRequest(Tester t) {
+    HintEngine hints = new HintEngine(3, 10000);
+    FloodGame game = FloodGame.newGame(10, 4, 7);
+
+    t.checkExpect(hints.poll(), HintEngine.NOT_READY);
+    hints.request(game);
+    int hint = this.await(hints);
+    t.checkExpect(hint != game.floodColor(), true);
+    t.checkExpect(hints.cache.get(game.stateHash()), hint);
+
+    // The hint is only handed out once, and asking again is answered from the cache,
+    // which shows here as the answer planted in it
+    t.checkExpect(hints.poll(), HintEngine.NOT_READY);
+    int planted = (hint + 1) % 4;
+    hints.cache.put(game.stateHash(), planted);
+    hints.request(game);
+    t.checkExpect(this.await(hints), planted);
+
+    // Requesting never changes the game
+    t.checkExpect(game.moves, 0);
+    t.checkExpect(game.floodedCount, FloodGame.newGame(10, 4, 7).floodedCount);
+  }
+
+  // tests that request reads no cell of the game: it is copied, hashed and looked up
+  // on the search thread, which is kept busy here until the request has returned
+  void testRequestReadsNoCells(Tester t) {
+    CountingBoard board = new CountingBoard(BoardGenerator.generate(4, 40, 40, 5));
+    FloodGame game = new FloodGame(board, new FrontierEngine(board),
+        new int[] {0, 1, 2, 3, 4}, 100);
+    game.recordMoves();
+    game.play((game.floodColor() + 1) % 5);
+    HintEngine hints = new HintEngine(3, 10000);
+
+    CountDownLatch open = new CountDownLatch(1);
+    HintEngine.SEARCHES.submit(new SearchGate(open));
+    board.reads = 0;
+    hints.request(game);
+    t.checkExpect(board.reads, 0);
+    open.countDown();
+
+    int hint = this.await(hints);
+    t.checkExpect(hint >= 0 && hint != game.floodColor(), true);
+    // The search thread read each color once, to copy the board
+    t.checkExpect(board.reads, 1600);
+  }
+
+  // tests that a new request cancels the search before it
+  void testCancel(Tester t) {
+    HintEngine hints = new HintEngine(40, 60000);
+    FloodGame game = FloodGame.newGame(24, 6, 1);
+    hints.request(game);
+    Future<Integer> first = hints.pending;
+
+    game.play((game.floodColor() + 1) % 6);
+    hints.request(game);
+    t.checkExpect(first.isCancelled(), true);
+    hints.cancel();
+    t.checkExpect(hints.pending, null);
+    t.checkExpect(hints.poll(), HintEngine.NOT_READY);
+  }
+
+  // tests that a search past its deadline answers from the depth it finished. A
+  // search already past it still finishes depth 1, which looks no further than the
+  // moves from the start, then expands the start once more for depth 2 and stops.
+  void testBudget(Tester t) {
+    FloodGame game = FloodGame.newGame(24, 6, 2);
+    HintSearch late = new HintSearch(game.snapshot(), 40, System.nanoTime());
+    int hint = late.call();
+
+    t.checkExpect(hint >= 0 && hint != game.floodColor(), true);
+    t.checkExpect(hint, new HintSearch(game.snapshot(), 1, Long.MAX_VALUE).call());
+    t.checkExpect(late.stopped, true);
+    t.checkExpect(late.expanded, 2L);
+  }
+
+  // tests that a search finds a win within its depth, and gives no hint on a
+  // flooded board
+  void testSearch(Tester t) {
+    // 3 columns, 1 row: 0 1 2, won in two moves, and 1 is the only color next to
+    // the flood
+    PackedBoard board = new PackedBoard(3, 1);
+    board.setColor(1, 1);
+    board.setColor(2, 2);
+    FloodGame game = new FloodGame(board, new int[] {0, 1, 2}, 5);
+
+    t.checkExpect(new HintSearch(game.snapshot(), 2, Long.MAX_VALUE).call(), 1);
+    game.play(1);
+    game.play(2);
+    t.checkExpect(new HintSearch(game.snapshot(), 2, Long.MAX_VALUE).call(),
+        HintEngine.NOT_READY);
+  }
+
+  // tests that a transposition table gives the same hints on 14x14 boards with 6
+  // colors while expanding fewer sets, and fewer again for a search that follows
+  // one it shares the table with
+  void testTranspositions(Tester t) {
+    for (int seed = 1; seed <= 3; seed++) {
+      FloodGame game = FloodGame.newGame(14, 6, seed);
+      TranspositionTable table = new TranspositionTable(1 << 16);
+      HintSearch plain = new HintSearch(game.snapshot(), 5, Long.MAX_VALUE);
+      HintSearch tabled = new HintSearch(game.snapshot(), 5, Long.MAX_VALUE, table);
+      int hint = plain.call();
+
+      t.checkExpect(tabled.call(), hint);
+      t.checkExpect(tabled.expanded < plain.expanded, true);
+
+      game.play(hint);
+      HintSearch next = new HintSearch(game.snapshot(), 5, Long.MAX_VALUE);
+      HintSearch nextTabled = new HintSearch(game.snapshot(), 5, Long.MAX_VALUE, table);
+      t.checkExpect(nextTabled.call(), next.call());
+      t.checkExpect(nextTabled.expanded < next.expanded, true);
+    }
+  }
+
+  // tests the HintCache class
+  void testHintCache(Tester t) {
+    HintCache cache = new HintCache(2);
+    cache.put(1L, 0);
+    cache.put(2L, 1);
+    cache.get(1L);
+    cache.put(3L, 2);
+
+    t.checkExpect(cache.size(), 2);
+    t.checkExpect(cache.containsKey(1L), true);
+    t.checkExpect(cache.containsKey(2L), false);
+  }
+
+}
+
+// A board that counts how often its cells are read, for testing what reads them
+class CountingBoard implements Board {
+  Board board;
+  int reads;
+
+  CountingBoard(Board board) {
+    this.board = board;
+  }
+
+  public int width() {
+    return this.board.width();
+  }
+
+  public int height() {
+    return this.board.height();
+  }
+
+  // The color index of the cell at the given index
+  // EFFECT: counts the read
+  public int colorAt(int index) {
+    this.reads++;
+    return this.board.colorAt(index);
+  }
+
+  public void setColor(int index, int color) {
+    this.board.setColor(index, color);
+  }
+
+  // True if the cell at the given index has been flooded
+  // EFFECT: counts the read
+  public boolean isFlooded(int index) {
+    this.reads++;
+    return this.board.isFlooded(index);
+  }
+
+  public void flood(int index) {
+    this.board.flood(index);
+  }
+}
+
+// Holds the thread it runs on until it is let go, for testing what happens before
+// that thread gets to a task
+class SearchGate implements Runnable {
+  CountDownLatch open;
+
+  SearchGate(CountDownLatch open) {
+    this.open = open;
+  }
+
+  public void run() {
+    try {
+      this.open.await(10, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
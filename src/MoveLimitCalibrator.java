@@ -0,0 +1,262 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import tester.Tester;
+
+// Works out a fair number of clicks for a new board from a solver, in the
+// background so making a board never waits on it. The limit is the solver's number
+// of moves plus a slack percentage. If the solver takes longer than the latency
+// budget, its solve is cancelled, which interrupts the solver and frees the thread
+// for the next board, and the board keeps the limit it started with.
+class MoveLimitCalibrator {
+  // runs the solvers, on daemon threads so they never keep the program running
+  static final ExecutorService SOLVERS =
+      Executors.newSingleThreadExecutor(new DaemonThreads("flood-solver"));
+
+  // the value poll() returns while the solver is still running
+  static final int NOT_READY = -1;
+
+  // finds the moves the limit is based on
+  Solver solver;
+
+  // how many percent more moves than the solver's are allowed
+  int slackPercent;
+
+  // how long the solver may take, in nanoseconds
+  long budgetNanos;
+
+  // the solve in progress, when it has to be done by, and the limit to fall back on
+  Future<Integer> pending;
+  long deadline;
+  int fallback;
+
+  MoveLimitCalibrator(Solver solver, int slackPercent, long budgetMillis) {
+    this.solver = solver;
+    this.slackPercent = slackPercent;
+    this.budgetNanos = budgetMillis * 1000000L;
+  }
+
+  // A calibrator using the greedy solver with 20% slack and a 250ms budget
+  MoveLimitCalibrator() {
+    this(new GreedySolver(), 20, 250);
+  }
+
+  // The number of moves allowed for a board the solver flooded in the given number
+  // of moves
+  int limitFor(int solverMoves) {
+    return solverMoves + (solverMoves * this.slackPercent + 99) / 100;
+  }
+
+  // Starts working out the limit for the given game, whose current limit is used if
+  // the solver misses its budget. Any earlier solve is cancelled.
+  // EFFECT: replaces the pending solve
+  void calibrate(FloodGame game) {
+    this.cancel();
+    this.fallback = game.movesAllowed;
+    this.deadline = System.nanoTime() + this.budgetNanos;
+    this.pending = SOLVERS.submit(new Calibration(this, game));
+  }
+
+  // The limit for the last game given to calibrate: the solver's limit if it has
+  // finished, the fallback if it ran out of time or failed, or NOT_READY if it is
+  // still running within its budget. Returns NOT_READY again once a limit has been
+  // handed out.
+  // EFFECT: clears the pending solve once it has an answer
+  int poll() {
+    if (this.pending == null) {
+      return NOT_READY;
+    }
+    if (this.pending.isDone()) {
+      Future<Integer> done = this.pending;
+      this.pending = null;
+      try {
+        return done.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return this.fallback;
+      }
+      catch (ExecutionException e) {
+        return this.fallback;
+      }
+    }
+    if (System.nanoTime() > this.deadline) {
+      this.cancel();
+      return this.fallback;
+    }
+    return NOT_READY;
+  }
+
+  // Stops the pending solve, if there is one
+  // EFFECT: clears the pending solve
+  void cancel() {
+    if (this.pending != null) {
+      this.pending.cancel(true);
+      this.pending = null;
+    }
+  }
+}
+
+// Solves a copy of a game and turns the solution into a move limit. The copy is made
+// on the solver's thread, from a GameCopy taken when the calibration started.
+class Calibration implements Callable<Integer> {
+  MoveLimitCalibrator calibrator;
+  GameCopy game;
+
+  Calibration(MoveLimitCalibrator calibrator, FloodGame game) {
+    this.calibrator = calibrator;
+    this.game = new GameCopy(game);
+  }
+
+  // The move limit for the game as it was when the calibration started
+  public Integer call() {
+    FloodGame game = this.game.make();
+    Solution solution = this.calibrator.solver.solve(RegionGraph.of(game));
+    return this.calibrator.limitFor(game.moves + solution.length());
+  }
+}
+
+// Makes daemon threads of the given name, so the background work of the game, its
+// solvers, hints, sessions and metrics, never keeps the program running
+class DaemonThreads implements ThreadFactory {
+  String name;
+
+  DaemonThreads(String name) {
+    this.name = name;
+  }
+
+  public Thread newThread(Runnable task) {
+    Thread thread = new Thread(task, this.name);
+    thread.setDaemon(true);
+    return thread;
+  }
+}
+
+// A solver that takes far longer than any latency budget, for testing fallbacks
+class StalledSolver implements Solver {
+  public Solution solve(RegionGraph graph) {
+    try {
+      Thread.sleep(60000);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return new Solution(new int[0], false, 0);
+  }
+}
+
+// A solver that keeps searching until it is interrupted, for testing that a
+// cancelled solve frees the solver thread
+class SpinningSolver implements Solver {
+  public Solution solve(RegionGraph graph) {
+    RegionMoves moves = new RegionMoves(graph);
+    while (true) {
+      RegionMoves.stopIfInterrupted();
+      moves.expand(graph.startSet());
+    }
+  }
+}
+
+// Examples of move limit calibration
+class ExamplesMoveLimitCalibrator {
+
+  // Polls the calibrator until it has an answer
+  int await(MoveLimitCalibrator calibrator) {
+    int limit = calibrator.poll();
+    while (limit == MoveLimitCalibrator.NOT_READY) {
+      try {
+        Thread.sleep(5);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      limit = calibrator.poll();
+    }
+    return limit;
+  }
+
+  // tests that the threads made are daemons of the given name
+  void testDaemonThreads(Tester t) {
+    Thread thread = new DaemonThreads("flood-test")
+        .newThread(new SearchGate(new CountDownLatch(0)));
+    t.checkExpect(thread.getName(), "flood-test");
+    t.checkExpect(thread.isDaemon(), true);
+  }
+
+  // tests the limitFor method
+  void testLimitFor(Tester t) {
+    MoveLimitCalibrator calibrator = new MoveLimitCalibrator();
+    t.checkExpect(calibrator.limitFor(10), 12);
+    t.checkExpect(calibrator.limitFor(21), 26);
+    t.checkExpect(new MoveLimitCalibrator(new GreedySolver(), 0, 250).limitFor(21), 21);
+  }
+
+  // tests the calibrate and poll methods
+  void testCalibrate(Tester t) {
+    MoveLimitCalibrator calibrator = new MoveLimitCalibrator(new GreedySolver(), 20, 10000);
+    FloodGame game = FloodGame.newGame(12, 5, 3);
+    int greedy = new GreedySolver().solve(RegionGraph.of(game)).length();
+
+    t.checkExpect(calibrator.poll(), MoveLimitCalibrator.NOT_READY);
+    calibrator.calibrate(game);
+    t.checkExpect(this.await(calibrator), calibrator.limitFor(greedy));
+
+    // The answer is only handed out once
+    t.checkExpect(calibrator.poll(), MoveLimitCalibrator.NOT_READY);
+
+    // Moves already made count toward the limit
+    game.play((game.floodColor() + 1) % 5);
+    calibrator.calibrate(game);
+    int fromHere = new GreedySolver().solve(RegionGraph.of(game)).length();
+    t.checkExpect(this.await(calibrator), calibrator.limitFor(1 + fromHere));
+  }
+
+  // tests that a solver missing its budget falls back to the game's own limit
+  void testCalibrateFallback(Tester t) {
+    MoveLimitCalibrator calibrator = new MoveLimitCalibrator(new StalledSolver(), 20, 20);
+    FloodGame game = FloodGame.newGame(12, 5, 3);
+
+    calibrator.calibrate(game);
+    t.checkExpect(this.await(calibrator), game.movesAllowed);
+    t.checkExpect(calibrator.pending, null);
+  }
+
+  // tests that a solve cancelled for missing its budget stops, so a later
+  // calibration gets the solver thread within its own budget
+  void testCalibrateAfterTimeout(Tester t) {
+    FloodGame game = FloodGame.newGame(12, 5, 3);
+    MoveLimitCalibrator stuck = new MoveLimitCalibrator(new SpinningSolver(), 20, 20);
+    stuck.calibrate(game);
+    t.checkExpect(this.await(stuck), game.movesAllowed);
+
+    MoveLimitCalibrator next = new MoveLimitCalibrator(new GreedySolver(), 20, 10000);
+    next.calibrate(game);
+    int greedy = new GreedySolver().solve(RegionGraph.of(game)).length();
+    t.checkExpect(this.await(next), next.limitFor(greedy));
+  }
+
+  // tests that a game recording its moves is copied on the solver thread as it was
+  // when the calibration started
+  void testCalibrateReplay(Tester t) {
+    FloodGame game = FloodGame.newGame(12, 5, 3);
+    game.recordMoves();
+    game.play((game.floodColor() + 1) % 5);
+    game.play((game.floodColor() + 1) % 5);
+    Calibration calibration = new Calibration(new MoveLimitCalibrator(), game);
+    t.checkExpect(calibration.game.snapshot, null);
+
+    FloodGame copy = calibration.game.make();
+    t.checkExpect(copy.moves, 2);
+    t.checkExpect(copy.floodedCount, game.floodedCount);
+    t.checkExpect(copy.stateHash(), game.stateHash());
+
+    // Moves made after the calibration started are left out
+    game.play((game.floodColor() + 1) % 5);
+    t.checkExpect(calibration.game.make().moves, 2);
+  }
+
+}
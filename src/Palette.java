@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import tester.Tester;
+import java.awt.Color;
+
+// The colors a Flood-It board can use. A color is identified by its index, and
+// every index has one shared Color for unflooded cells and one brighter Color
+// for flooded cells, so no cell ever needs its own Color objects.
+final class Palette {
+  // Indexes of the standard colors
+  static final int RED = 0;
+  static final int ORANGE = 1;
+  static final int YELLOW = 2;
+  static final int GREEN = 3;
+  static final int BLUE = 4;
+  static final int PURPLE = 5;
+
+  // The number of colors in the palette
+  static final int SIZE = 6;
+
+  // Standard colors, by index
+  private static final Color[] BASE = {
+      new Color(217, 28, 60),
+      new Color(240, 117, 10),
+      new Color(237, 211, 43),
+      new Color(62, 212, 51),
+      new Color(34, 122, 230),
+      new Color(105, 48, 191) };
+
+  // Brighter colors, by the index of the standard color they brighten
+  private static final Color[] BRIGHT = {
+      new Color(217, 95, 116),
+      new Color(242, 150, 70),
+      new Color(242, 227, 126),
+      new Color(121, 212, 114),
+      new Color(98, 156, 227),
+      new Color(139, 103, 194) };
+
+  // Looks up the index of a standard color by value
+  private static final HashMap<Color, Integer> INDEXES = new HashMap<Color, Integer>();
+
+  static {
+    for (int i = 0; i < SIZE; i++) {
+      INDEXES.put(BASE[i], i);
+    }
+  }
+
+  private Palette() {}
+
+  // The standard color with the given index
+  static Color color(int index) {
+    return BASE[index];
+  }
+
+  // The brighter color for the standard color with the given index
+  static Color bright(int index) {
+    return BRIGHT[index];
+  }
+
+  // The index of the given standard color, or -1 if it is not in the palette
+  static int indexOf(Color color) {
+    Integer index = INDEXES.get(color);
+    if (index == null) {
+      return -1;
+    }
+    return index;
+  }
+
+  // The brighter version of a color. Colors outside the palette are brightened by AWT.
+  static Color brighter(Color color) {
+    int index = indexOf(color);
+    if (index < 0) {
+      return color.brighter();
+    }
+    return BRIGHT[index];
+  }
+
+  // A new list of all the standard colors, in index order
+  static ArrayList<Color> colors() {
+    return new ArrayList<Color>(Arrays.asList(BASE));
+  }
+
+}
+
+// Examples of the palette
+class ExamplesPalette {
+
+  // tests the color and bright methods
+  void testColorAndBright(Tester t) {
+    t.checkExpect(Palette.color(Palette.RED), new Color(217, 28, 60));
+    t.checkExpect(Palette.color(Palette.PURPLE), new Color(105, 48, 191));
+    t.checkExpect(Palette.bright(Palette.ORANGE), new Color(242, 150, 70));
+    t.checkExpect(Palette.bright(Palette.BLUE), new Color(98, 156, 227));
+
+    // The same shared instance is returned every time
+    t.checkExpect(Palette.color(Palette.GREEN) == Palette.color(Palette.GREEN), true);
+  }
+
+  // tests the indexOf method
+  void testIndexOf(Tester t) {
+    for (int i = 0; i < Palette.SIZE; i++) {
+      t.checkExpect(Palette.indexOf(Palette.color(i)), i);
+    }
+
+    // Equal colors that are not the shared instances are still found
+    t.checkExpect(Palette.indexOf(new Color(237, 211, 43)), Palette.YELLOW);
+
+    // Brighter colors and other colors are not standard colors
+    t.checkExpect(Palette.indexOf(Palette.bright(Palette.RED)), -1);
+    t.checkExpect(Palette.indexOf(Color.black), -1);
+  }
+
+  // tests the brighter method
+  void testBrighter(Tester t) {
+    for (int i = 0; i < Palette.SIZE; i++) {
+      t.checkExpect(Palette.brighter(Palette.color(i)), Palette.bright(i));
+    }
+    t.checkExpect(Palette.brighter(new Color(100, 100, 100)), new Color(100, 100, 100).brighter());
+  }
+
+  // tests the colors method
+  void testColors(Tester t) {
+    ArrayList<Color> colors = Palette.colors();
+    t.checkExpect(colors.size(), Palette.SIZE);
+    t.checkExpect(colors.get(Palette.BLUE), Palette.color(Palette.BLUE));
+
+    // Each list is a fresh copy, so removing from one does not change the palette
+    colors.remove(0);
+    t.checkExpect(Palette.colors().size(), Palette.SIZE);
+    t.checkExpect(Palette.color(Palette.RED), new Color(217, 28, 60));
+  }
+
+}
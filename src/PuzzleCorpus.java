@@ -0,0 +1,414 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import tester.Tester;
+
+// A file of boards tagged with the moves a solver needed for them, read memory-mapped
+// so a corpus of tens of millions of boards is never loaded onto the heap. Boards are
+// stored as the seeds BoardGenerator makes them from, in fixed 16-byte entries, so
+// board i is found at a known offset. Entries are sorted by size, number of colors
+// and moves, and a table of where each combination starts, binary searched, finds
+// the boards of a given difficulty.
+//
+// The file is a 16-byte header (magic, version, number of entries, number of keys),
+// the key table of (key, first entry) pairs, then the entries: seed, size, number of
+// colors, flags, moves and two unused bytes.
+class PuzzleCorpus {
+  // the first bytes of every corpus file: "FLPC"
+  static final int MAGIC = 0x464C5043;
+  static final int VERSION = 1;
+
+  static final int HEADER_BYTES = 16;
+  static final int KEY_BYTES = 8;
+  static final int ENTRY_BYTES = 16;
+
+  // the flag of an entry whose moves are known to be the fewest possible
+  static final int OPTIMAL = 1;
+
+  // the largest size and number of moves a key can hold
+  static final int MAX_SIZE = 0xFFF;
+  static final int MAX_MOVES = 0xFFFF;
+
+  // the mapped file
+  ByteBuffer file;
+
+  int entryCount;
+  int keyCount;
+
+  // where the entries start in the file
+  int entriesStart;
+
+  // Maps the corpus at the given path. Files are mapped whole, so a corpus holds at
+  // most about 130 million boards.
+  PuzzleCorpus(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Corpora over 2 GB cannot be mapped");
+      }
+      this.file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally {
+      channel.close();
+    }
+    if (this.file.limit() < HEADER_BYTES || this.file.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a puzzle corpus: " + path);
+    }
+    if (this.file.getInt(4) != VERSION) {
+      throw new IllegalArgumentException("Unknown corpus version " + this.file.getInt(4));
+    }
+    this.entryCount = this.file.getInt(8);
+    this.keyCount = this.file.getInt(12);
+    this.entriesStart = HEADER_BYTES + this.keyCount * KEY_BYTES;
+  }
+
+  // The key of the boards of the given size and number of colors that took the given
+  // number of moves; keys sort by size, then colors, then moves
+  static int key(int size, int numColors, int moves) {
+    return (size << 19) | (numColors << 16) | moves;
+  }
+
+  // The number of boards in the corpus
+  int size() {
+    return this.entryCount;
+  }
+
+  // Where the entry of the given board starts in the file
+  int entryAt(int index) {
+    if (index < 0 || index >= this.entryCount) {
+      throw new IndexOutOfBoundsException("No board " + index + " in a corpus of "
+          + this.entryCount);
+    }
+    return this.entriesStart + index * ENTRY_BYTES;
+  }
+
+  // The seed of the given board
+  long seed(int index) {
+    return this.file.getLong(this.entryAt(index));
+  }
+
+  // The number of rows and columns of the given board
+  int boardSize(int index) {
+    return this.file.getShort(this.entryAt(index) + 8) & 0xFFFF;
+  }
+
+  // The number of colors of the given board
+  int numColors(int index) {
+    return this.file.get(this.entryAt(index) + 10);
+  }
+
+  // True if the moves of the given board are known to be the fewest possible
+  boolean optimal(int index) {
+    return (this.file.get(this.entryAt(index) + 11) & OPTIMAL) != 0;
+  }
+
+  // The number of moves the solver needed for the given board
+  int moves(int index) {
+    return this.file.getShort(this.entryAt(index) + 12) & 0xFFFF;
+  }
+
+  // The id BoardGenerator knows the given board by
+  String boardId(int index) {
+    return BoardGenerator.boardId(this.seed(index), this.boardSize(index),
+        this.numColors(index));
+  }
+
+  // Colors the given board with the cells of board index, using the given palette
+  // indexes for its colors
+  // EFFECT: sets the color of every cell of the board
+  void fill(int index, Board board, int[] colors) {
+    BoardGenerator.fill(board, this.seed(index), this.numColors(index), colors);
+  }
+
+  // The index of the first board whose key is at least the given key, found by
+  // binary search over the key table
+  int firstAtLeast(int key) {
+    int low = 0;
+    int high = this.keyCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (this.file.getInt(HEADER_BYTES + mid * KEY_BYTES) < key) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    if (low == this.keyCount) {
+      return this.entryCount;
+    }
+    return this.file.getInt(HEADER_BYTES + low * KEY_BYTES + 4);
+  }
+
+  // The index of the first board of the given size and number of colors that took at
+  // least minMoves
+  int firstWith(int size, int numColors, int minMoves) {
+    return this.firstAtLeast(key(size, numColors, minMoves));
+  }
+
+  // The number of boards of the given size and number of colors that took from
+  // minMoves up to maxMoves
+  int count(int size, int numColors, int minMoves, int maxMoves) {
+    return this.firstWith(size, numColors, maxMoves + 1)
+        - this.firstWith(size, numColors, minMoves);
+  }
+
+  // The index of a board of the given size and number of colors that took from
+  // minMoves up to maxMoves, chosen by pick, which can be any number, such as a day
+  // or a random draw; -1 if there are none
+  int pick(int size, int numColors, int minMoves, int maxMoves, long pick) {
+    int first = this.firstWith(size, numColors, minMoves);
+    int count = this.firstWith(size, numColors, maxMoves + 1) - first;
+    if (count == 0) {
+      return -1;
+    }
+    return first + (int) Math.floorMod(pick, (long) count);
+  }
+
+  // Makes a corpus of boards of one size and number of colors, from the seeds of a
+  // batch, tagged by the A* solver. Arguments: path, boards, size, colors, seed.
+  public static void main(String[] args) throws IOException {
+    Path path = Paths.get(args[0]);
+    int boards = Integer.parseInt(args[1]);
+    int size = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+    int numColors = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+    PuzzleCorpusWriter writer = new PuzzleCorpusWriter();
+    writer.addSolved(seed, boards, size, numColors, new AStarSolver(200000, 16));
+    writer.write(path);
+  }
+}
+
+// Gathers the boards of a corpus in primitive arrays and writes them sorted by key,
+// with the key table in front
+class PuzzleCorpusWriter {
+  // the seed, key and flags of every board added, only the first count in use
+  long[] seeds = new long[1024];
+  int[] keys = new int[1024];
+  byte[] flags = new byte[1024];
+  int count;
+
+  // Adds a board that the solver needed the given number of moves for
+  // EFFECT: adds it to the arrays, doubling them when full
+  void add(long seed, int size, int numColors, int moves, boolean optimal) {
+    BoardGenerator.checkColors(numColors);
+    if (size <= 0 || size > PuzzleCorpus.MAX_SIZE || moves < 0
+        || moves > PuzzleCorpus.MAX_MOVES) {
+      throw new IllegalArgumentException("Size " + size + " and moves " + moves
+          + " cannot be stored");
+    }
+    if (this.count == this.seeds.length) {
+      this.seeds = Arrays.copyOf(this.seeds, this.count * 2);
+      this.keys = Arrays.copyOf(this.keys, this.count * 2);
+      this.flags = Arrays.copyOf(this.flags, this.count * 2);
+    }
+    this.seeds[this.count] = seed;
+    this.keys[this.count] = PuzzleCorpus.key(size, numColors, moves);
+    this.flags[this.count] = (byte) (optimal ? PuzzleCorpus.OPTIMAL : 0);
+    this.count++;
+  }
+
+  // Adds the given number of boards made from the board seeds of a batch with the
+  // given seed, each tagged with the solution the solver finds for it
+  // EFFECT: adds every board
+  void addSolved(long seed, int boards, int size, int numColors, Solver solver) {
+    for (int i = 0; i < boards; i++) {
+      long boardSeed = BatchSimulator.boardSeed(seed, i);
+      FloodGame game = FloodGame.newGame(size, numColors, boardSeed);
+      Solution solution = solver.solve(RegionGraph.of(game));
+      this.add(boardSeed, size, numColors, solution.length(), solution.optimal);
+    }
+  }
+
+  // The order to write the boards in: by key, and in the order added within a key
+  long[] sortedOrder() {
+    long[] order = new long[this.count];
+    for (int i = 0; i < this.count; i++) {
+      order[i] = ((long) this.keys[i] << 32) | i;
+    }
+    Arrays.sort(order);
+    return order;
+  }
+
+  // Writes the corpus to the given path, replacing any file there
+  // EFFECT: writes the file
+  void write(Path path) throws IOException {
+    long[] order = this.sortedOrder();
+    int keyCount = 0;
+    for (int i = 0; i < this.count; i++) {
+      if (i == 0 || (order[i] >>> 32) != (order[i - 1] >>> 32)) {
+        keyCount++;
+      }
+    }
+
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(GameArchiveWriter.BUFFER_BYTES);
+      buffer.putInt(PuzzleCorpus.MAGIC);
+      buffer.putInt(PuzzleCorpus.VERSION);
+      buffer.putInt(this.count);
+      buffer.putInt(keyCount);
+      for (int i = 0; i < this.count; i++) {
+        if (i == 0 || (order[i] >>> 32) != (order[i - 1] >>> 32)) {
+          this.makeRoom(channel, buffer, PuzzleCorpus.KEY_BYTES);
+          buffer.putInt((int) (order[i] >>> 32));
+          buffer.putInt(i);
+        }
+      }
+      for (int i = 0; i < this.count; i++) {
+        int board = (int) order[i];
+        int key = this.keys[board];
+        this.makeRoom(channel, buffer, PuzzleCorpus.ENTRY_BYTES);
+        buffer.putLong(this.seeds[board]);
+        buffer.putShort((short) (key >>> 19));
+        buffer.put((byte) ((key >>> 16) & 7));
+        buffer.put(this.flags[board]);
+        buffer.putShort((short) key);
+        buffer.putShort((short) 0);
+      }
+      this.makeRoom(channel, buffer, buffer.capacity());
+    }
+    finally {
+      channel.close();
+    }
+  }
+
+  // Writes out the buffer if it has less than the given number of bytes free
+  // EFFECT: may write the buffer to the channel and clear it
+  void makeRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
+
+// Examples of puzzle corpora
+class ExamplesPuzzleCorpus {
+
+  // A new temporary file, deleted when the tests end
+  Path tempFile() throws IOException {
+    File file = File.createTempFile("puzzles", ".corpus");
+    file.deleteOnExit();
+    return file.toPath();
+  }
+
+  // tests the key method
+  void testKey(Tester t) {
+    t.checkExpect(PuzzleCorpus.key(14, 6, 20), (14 << 19) + (6 << 16) + 20);
+    t.checkExpect(PuzzleCorpus.key(14, 6, 20) < PuzzleCorpus.key(14, 6, 21), true);
+    t.checkExpect(PuzzleCorpus.key(14, 6, 900) < PuzzleCorpus.key(15, 2, 0), true);
+    t.checkExpect(PuzzleCorpus.key(PuzzleCorpus.MAX_SIZE, 6, 65535) > 0, true);
+  }
+
+  // tests writing a corpus, and reading boards by index
+  void testEntries(Tester t) throws IOException {
+    PuzzleCorpusWriter writer = new PuzzleCorpusWriter();
+    writer.add(-3, 14, 6, 22, true);
+    writer.add(7, 8, 3, 9, false);
+    writer.add(5, 14, 6, 20, true);
+    writer.add(11, 14, 6, 22, false);
+    Path path = this.tempFile();
+    writer.write(path);
+    PuzzleCorpus corpus = new PuzzleCorpus(path);
+
+    // Sorted by size, colors and moves, and by the order added within those
+    t.checkExpect(corpus.size(), 4);
+    t.checkExpect(corpus.keyCount, 3);
+    t.checkExpect(path.toFile().length(), 16L + 3 * 8 + 4 * 16);
+    t.checkExpect(corpus.seed(0), 7L);
+    t.checkExpect(corpus.boardSize(0), 8);
+    t.checkExpect(corpus.numColors(0), 3);
+    t.checkExpect(corpus.moves(0), 9);
+    t.checkExpect(corpus.optimal(0), false);
+    t.checkExpect(corpus.seed(1), 5L);
+    t.checkExpect(corpus.seed(2), -3L);
+    t.checkExpect(corpus.optimal(2), true);
+    t.checkExpect(corpus.seed(3), 11L);
+    t.checkExpect(corpus.boardId(2), BoardGenerator.boardId(-3, 14, 6));
+
+    PackedBoard board = new PackedBoard(14, 14);
+    corpus.fill(2, board, BoardGenerator.CANONICAL);
+    t.checkExpect(board.colors, BoardGenerator.generate(-3, 14, 6).colors);
+
+    t.checkException(new IndexOutOfBoundsException("No board 4 in a corpus of 4"),
+        corpus, "seed", 4);
+    t.checkException(new IllegalArgumentException("Size 4096 and moves 1 cannot be stored"),
+        writer, "add", 1L, 4096, 2, 1, false);
+  }
+
+  // tests the firstAtLeast, firstWith, count and pick methods
+  void testTiers(Tester t) throws IOException {
+    PuzzleCorpusWriter writer = new PuzzleCorpusWriter();
+    for (int i = 0; i < 3000; i++) {
+      writer.add(i, 10 + i % 3, 4, 10 + i % 7, false);
+    }
+    Path path = this.tempFile();
+    writer.write(path);
+    PuzzleCorpus corpus = new PuzzleCorpus(path);
+
+    t.checkExpect(corpus.size(), 3000);
+    t.checkExpect(corpus.keyCount, 21);
+    t.checkExpect(corpus.firstWith(10, 4, 0), 0);
+    t.checkExpect(corpus.firstWith(11, 4, 0), 1000);
+    t.checkExpect(corpus.firstAtLeast(Integer.MAX_VALUE), 3000);
+
+    // Boards of size 11 with moves 12 or 13: i % 3 == 1 and i % 7 is 2 or 3
+    int count = corpus.count(11, 4, 12, 13);
+    int expected = 0;
+    for (int i = 0; i < 3000; i++) {
+      if (i % 3 == 1 && (i % 7 == 2 || i % 7 == 3)) {
+        expected++;
+      }
+    }
+    t.checkExpect(count, expected);
+    boolean inTier = true;
+    for (long day = -5; day < 300; day++) {
+      int index = corpus.pick(11, 4, 12, 13, day);
+      inTier = inTier && corpus.boardSize(index) == 11 && corpus.moves(index) >= 12
+          && corpus.moves(index) <= 13;
+    }
+    t.checkExpect(inTier, true);
+    t.checkExpect(corpus.pick(11, 4, 12, 13, 0), corpus.firstWith(11, 4, 12));
+    t.checkExpect(corpus.pick(11, 5, 0, 100, 3), -1);
+    t.checkExpect(corpus.pick(11, 4, 20, 30, 3), -1);
+  }
+
+  // tests addSolved with a solver's real results
+  void testAddSolved(Tester t) throws IOException {
+    PuzzleCorpusWriter writer = new PuzzleCorpusWriter();
+    writer.addSolved(42, 20, 6, 3, new AStarSolver(100000, 8));
+    Path path = this.tempFile();
+    writer.write(path);
+    PuzzleCorpus corpus = new PuzzleCorpus(path);
+
+    t.checkExpect(corpus.size(), 20);
+    boolean solved = true;
+    for (int i = 0; i < corpus.size(); i++) {
+      FloodGame game = FloodGame.newGame(6, 3, corpus.seed(i));
+      Solution solution = new AStarSolver(100000, 8).solve(RegionGraph.of(game));
+      solved = solved && corpus.optimal(i) && corpus.moves(i) == solution.length()
+          && (i == 0 || corpus.moves(i) >= corpus.moves(i - 1));
+    }
+    t.checkExpect(solved, true);
+  }
+
+  // tests that files that are not corpora are refused
+  void testNotACorpus(Tester t) throws IOException {
+    Path path = this.tempFile();
+    t.checkConstructorException(
+        new IllegalArgumentException("Not a puzzle corpus: " + path),
+        "PuzzleCorpus", path);
+  }
+
+}
@@ -0,0 +1,444 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import javalib.worldimages.ComputedPixelImage;
+import javalib.worldimages.WorldImage;
+import tester.Tester;
+
+// Paints a board into the pixels of one image that is kept from frame to frame,
+// so a scene shows the whole board as a single image instead of an image per cell.
+// It remembers what every cell showed when it was last painted and only writes
+// the pixels of cells that look different now: the cells a move absorbed, and the
+// flooded cells when the flood color changed. Told which cells the moves since the
+// last frame flooded, it looks at only those and the ones it painted flooded, so a
+// frame costs what changed rather than what is shown. Cells cover the pixels a BoardLayout
+// gives them, and look the same as the images of ConsCell: a rectangle of their
+// color, or of the flood color with a brighter rectangle inside when they are
+// flooded.
+class RasterRenderer {
+  // boards with at least this many cells a side are drawn by a RasterRenderer
+  static final int MIN_BOARD_SIZE = 50;
+
+  // what shown holds for a cell that has not been painted yet
+  static final int UNPAINTED = -1;
+
+  // the packed ARGB of every palette color and of its brighter color, by index
+  static final int[] FILL = new int[Palette.SIZE];
+  static final int[] BRIGHT = new int[Palette.SIZE];
+
+  static {
+    for (int i = 0; i < Palette.SIZE; i++) {
+      FILL[i] = Palette.color(i).getRGB();
+      BRIGHT[i] = Palette.bright(i).getRGB();
+    }
+  }
+
+  // the board's size in cells
+  int width;
+  int height;
+
+  // the pixels the board is drawn over, and the first pixel of every column and
+  // row, with the end of the board after the last one
+  BoardLayout layout;
+  int[] columnStarts;
+  int[] rowStarts;
+
+  // the columns and rows that cover at least one pixel; when there are more cells
+  // than pixels, only these are ever looked at
+  int[] visibleColumns;
+  int[] visibleRows;
+
+  // the image the board is painted into, and its pixels row by row as packed ARGB,
+  // or null if they could not be reached, when pixels are set through the image
+  ComputedPixelImage image;
+  int[] pixels;
+
+  // what every cell showed when it was last painted: its color index when it is
+  // not flooded, Palette.SIZE plus the flood color when it is, or UNPAINTED
+  int[] shown;
+
+  // the cells last painted flooded, in floodedCells[0] to
+  // floodedCells[floodedCount - 1], which a new flood color repaints
+  int[] floodedCells;
+  int floodedCount;
+
+  // the number of cells the last render painted
+  int repainted;
+
+  // A renderer for boards laid out by the given layout
+  RasterRenderer(BoardLayout layout) {
+    this.width = layout.columns;
+    this.height = layout.rows;
+    this.layout = layout;
+    this.columnStarts = new int[this.width + 1];
+    for (int x = 0; x <= this.width; x++) {
+      this.columnStarts[x] = layout.columnStart(x);
+    }
+    this.rowStarts = new int[this.height + 1];
+    for (int y = 0; y <= this.height; y++) {
+      this.rowStarts[y] = layout.rowStart(y);
+    }
+    this.visibleColumns = visible(this.columnStarts);
+    this.visibleRows = visible(this.rowStarts);
+    this.image = new ComputedPixelImage(layout.pixelsWide, layout.pixelsHigh);
+    this.pixels = pixelsOf(this.image);
+    this.shown = new int[width * height];
+    Arrays.fill(this.shown, UNPAINTED);
+    this.floodedCells = new int[width * height];
+  }
+
+  // The pixels behind the given image, so they can be written without a Color per
+  // pixel, or null if the image keeps them somewhere they cannot be reached
+  static int[] pixelsOf(ComputedPixelImage image) {
+    try {
+      Field field = ComputedPixelImage.class.getDeclaredField("image");
+      field.setAccessible(true);
+      BufferedImage buffered = (BufferedImage) field.get(image);
+      if (!(buffered.getRaster().getDataBuffer() instanceof DataBufferInt)) {
+        return null;
+      }
+      return ((DataBufferInt) buffered.getRaster().getDataBuffer()).getData();
+    }
+    catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  // The columns or rows, given by their starts, that end after they start
+  static int[] visible(int[] starts) {
+    int count = 0;
+    for (int i = 0; i + 1 < starts.length; i++) {
+      if (starts[i + 1] > starts[i]) {
+        count++;
+      }
+    }
+    int[] visible = new int[count];
+    count = 0;
+    for (int i = 0; i + 1 < starts.length; i++) {
+      if (starts[i + 1] > starts[i]) {
+        visible[count] = i;
+        count++;
+      }
+    }
+    return visible;
+  }
+
+  // Whether this renderer can draw boards laid out by the given layout
+  boolean fits(BoardLayout layout) {
+    return this.layout.sameAs(layout);
+  }
+
+  // The image of the given board with its flooded cells in the given color, found
+  // by looking at every cell shown
+  // EFFECT: paints the cells that look different since the last render into
+  // this.image, counts them in this.repainted, and lists the flooded ones
+  WorldImage render(Board board, int floodColor) {
+    this.repainted = 0;
+    this.floodedCount = 0;
+    int flooded = Palette.SIZE + floodColor;
+    for (int y : this.visibleRows) {
+      for (int x : this.visibleColumns) {
+        int cell = y * this.width + x;
+        int look;
+        if (board.isFlooded(cell)) {
+          look = flooded;
+          this.floodedCells[this.floodedCount] = cell;
+          this.floodedCount++;
+        }
+        else {
+          look = board.colorAt(cell);
+        }
+        this.repaint(cell, look);
+      }
+    }
+    return this.image;
+  }
+
+  // The image of the given window after moves that flooded the given cells of the
+  // board under it, by index, and nothing else, with its flooded cells in the given
+  // color. Only those cells and the ones last painted flooded are looked at. The
+  // window must show the same cells as it did at the last render.
+  // EFFECT: paints the cells flooded since the last render, and the others when the
+  // flood color changed, counts them in this.repainted, and lists the new ones
+  WorldImage renderFloods(BoardWindow window, int floodColor, int[] floods, int count) {
+    this.repainted = 0;
+    int flooded = Palette.SIZE + floodColor;
+    for (int i = 0; i < this.floodedCount; i++) {
+      this.repaint(this.floodedCells[i], flooded);
+    }
+    for (int i = 0; i < count; i++) {
+      int cell = window.windowIndex(floods[i]);
+      if (cell >= 0 && this.shown[cell] != flooded) {
+        this.floodedCells[this.floodedCount] = cell;
+        this.floodedCount++;
+        this.repaint(cell, flooded);
+      }
+    }
+    return this.image;
+  }
+
+  // Paints the given cell if it looks different from when it was last painted
+  // EFFECT: may write the cell's pixels, record its look and count it
+  void repaint(int cell, int look) {
+    if (this.shown[cell] != look) {
+      this.shown[cell] = look;
+      this.paintCell(cell, look);
+      this.repainted++;
+    }
+  }
+
+  // Forgets what every cell showed, so the next render paints them all
+  // EFFECT: resets this.shown
+  void repaintAll() {
+    Arrays.fill(this.shown, UNPAINTED);
+  }
+
+  // Paints the given cell the way it looks, as kept in this.shown
+  // EFFECT: writes the cell's pixels
+  void paintCell(int cell, int look) {
+    int x = cell % this.width;
+    int y = cell / this.width;
+    int left = this.columnStarts[x];
+    int top = this.rowStarts[y];
+    int wide = this.columnStarts[x + 1] - left;
+    int high = this.rowStarts[y + 1] - top;
+    if (wide == 0 || high == 0) {
+      return;
+    }
+    if (look < Palette.SIZE) {
+      this.fill(left, top, wide, high, FILL[look]);
+      return;
+    }
+    int color = look - Palette.SIZE;
+    int innerWide = wide - wide / 5;
+    int innerHigh = high - high / 5;
+    if (innerWide < wide || innerHigh < high) {
+      this.fill(left, top, wide, high, FILL[color]);
+    }
+    this.fill(left + (wide - innerWide) / 2, top + (high - innerHigh) / 2, innerWide,
+        innerHigh, BRIGHT[color]);
+  }
+
+  // Fills the rectangle of the given size whose top left pixel is given with the
+  // given packed ARGB color
+  // EFFECT: writes the rectangle's pixels
+  void fill(int left, int top, int wide, int high, int argb) {
+    if (this.pixels == null) {
+      this.image.setPixels(left, top, wide, high, new Color(argb, true));
+      return;
+    }
+    int rowStart = top * this.image.width + left;
+    for (int row = 0; row < high; row++) {
+      Arrays.fill(this.pixels, rowStart, rowStart + wide, argb);
+      rowStart += this.image.width;
+    }
+  }
+}
+
+// Examples of raster renderers
+class ExamplesRasterRenderer {
+
+  // tests the constructor and pixelsOf method
+  void testPixels(Tester t) {
+    RasterRenderer raster = new RasterRenderer(new BoardLayout(3, 2, 0, 0, 15, 10));
+    t.checkExpect(raster.image.width, 15);
+    t.checkExpect(raster.image.height, 10);
+    t.checkExpect(raster.pixels.length, 150);
+    t.checkExpect(raster.shown[5], RasterRenderer.UNPAINTED);
+
+    // Writing the array shows in the image
+    raster.pixels[16] = RasterRenderer.FILL[Palette.BLUE];
+    t.checkExpect(raster.image.getPixel(1, 1), Palette.color(Palette.BLUE));
+  }
+
+  // tests the fits method
+  void testFits(Tester t) {
+    RasterRenderer raster = new RasterRenderer(new BoardLayout(3, 2, 0, 0, 15, 10));
+    t.checkExpect(raster.fits(new BoardLayout(3, 2, 75, 80, 15, 10)), true);
+    t.checkExpect(raster.fits(new BoardLayout(2, 3, 0, 0, 15, 10)), false);
+    t.checkExpect(raster.fits(new BoardLayout(3, 2, 0, 0, 12, 8)), false);
+  }
+
+  // tests the render, paintCell and fill methods
+  void testRender(Tester t) {
+    // 2 columns, 2 rows: 0 1 / 2 3, with cells 10 pixels a side
+    PackedBoard board = new PackedBoard(2, 2);
+    for (int i = 0; i < 4; i++) {
+      board.setColor(i, i);
+    }
+    board.flood(0);
+    RasterRenderer raster = new RasterRenderer(new BoardLayout(2, 2, 0, 0, 20, 20));
+
+    WorldImage image = raster.render(board, Palette.RED);
+    t.checkExpect(image, raster.image);
+    t.checkExpect(raster.repainted, 4);
+    t.checkExpect(raster.image.getPixel(15, 5), Palette.color(Palette.ORANGE));
+    t.checkExpect(raster.image.getPixel(19, 19), Palette.color(Palette.GREEN));
+
+    // A flooded cell is its color around a brighter square 8 pixels a side
+    t.checkExpect(raster.image.getPixel(0, 0), Palette.color(Palette.RED));
+    t.checkExpect(raster.image.getPixel(1, 1), Palette.bright(Palette.RED));
+    t.checkExpect(raster.image.getPixel(8, 8), Palette.bright(Palette.RED));
+    t.checkExpect(raster.image.getPixel(9, 9), Palette.color(Palette.RED));
+
+    // Nothing changed, so nothing is painted
+    raster.render(board, Palette.RED);
+    t.checkExpect(raster.repainted, 0);
+
+    // Flooding cell 1 in orange repaints it and cell 0, now orange
+    board.flood(1);
+    raster.render(board, Palette.ORANGE);
+    t.checkExpect(raster.repainted, 2);
+    t.checkExpect(raster.image.getPixel(0, 0), Palette.color(Palette.ORANGE));
+    t.checkExpect(raster.image.getPixel(15, 5), Palette.bright(Palette.ORANGE));
+    t.checkExpect(raster.image.getPixel(5, 15), Palette.color(Palette.YELLOW));
+
+    raster.repaintAll();
+    raster.render(board, Palette.ORANGE);
+    t.checkExpect(raster.repainted, 4);
+  }
+
+  // tests that the renderFloods method paints what render would, looking only at
+  // the cells given and the ones painted flooded before
+  void testRenderFloods(Tester t) {
+    // 3 columns, 2 rows: 0 1 2 / 1 2 0, shown through a window of columns 1 and 2
+    PackedBoard board = new PackedBoard(3, 2);
+    for (int i = 0; i < 6; i++) {
+      board.setColor(i, (i % 3 + i / 3) % 3);
+    }
+    board.flood(1);
+    BoardWindow window = new BoardWindow(board, 1, 0, 2, 2);
+    RasterRenderer raster = new RasterRenderer(new BoardLayout(2, 2, 0, 0, 20, 20));
+    raster.render(window, Palette.ORANGE);
+    t.checkExpect(raster.floodedCount, 1);
+
+    // A move in yellow floods cells 0 and 2, and 0 is outside the window
+    board.flood(0);
+    board.flood(2);
+    raster.renderFloods(window, Palette.YELLOW, new int[] {0, 2}, 2);
+    t.checkExpect(raster.repainted, 2);
+    t.checkExpect(raster.floodedCount, 2);
+    t.checkExpect(raster.image.getPixel(5, 5), Palette.bright(Palette.YELLOW));
+    t.checkExpect(raster.image.getPixel(15, 5), Palette.bright(Palette.YELLOW));
+
+    // No move, nothing painted
+    raster.renderFloods(window, Palette.YELLOW, new int[0], 0);
+    t.checkExpect(raster.repainted, 0);
+
+    RasterRenderer fresh = new RasterRenderer(new BoardLayout(2, 2, 0, 0, 20, 20));
+    fresh.render(window, Palette.YELLOW);
+    t.checkExpect(raster.shown, fresh.shown);
+  }
+
+  // tests that cells too small for a border are drawn all in the brighter color
+  void testSmallCells(Tester t) {
+    PackedBoard board = new PackedBoard(2, 1);
+    board.setColor(1, Palette.GREEN);
+    board.flood(0);
+    RasterRenderer raster = new RasterRenderer(new BoardLayout(2, 1, 0, 0, 4, 2));
+    raster.render(board, Palette.RED);
+
+    t.checkExpect(raster.image.getPixel(0, 0), Palette.bright(Palette.RED));
+    t.checkExpect(raster.image.getPixel(1, 1), Palette.bright(Palette.RED));
+    t.checkExpect(raster.image.getPixel(2, 0), Palette.color(Palette.GREEN));
+  }
+
+  // tests that cells are painted over the pixels their layout gives them when they
+  // are not a whole number of pixels, and that the pixel of several cells shows the
+  // one the layout hits there
+  void testFractionalCells(Tester t) {
+    PackedBoard board = new PackedBoard(4, 1);
+    for (int i = 0; i < 4; i++) {
+      board.setColor(i, i);
+    }
+    RasterRenderer crowded = new RasterRenderer(new BoardLayout(4, 1, 0, 0, 2, 1));
+    t.checkExpect(crowded.visibleColumns, new int[] {1, 3});
+    crowded.render(board, Palette.RED);
+    t.checkExpect(crowded.repainted, 2);
+    t.checkExpect(crowded.image.getPixel(0, 0), Palette.color(crowded.layout.columnAt(0)));
+    t.checkExpect(crowded.image.getPixel(1, 0), Palette.color(crowded.layout.columnAt(1)));
+    t.checkExpect(crowded.image.getPixel(1, 0), Palette.color(Palette.GREEN));
+
+    // 3 columns over 8 pixels are 2, 3 and 3 pixels wide
+    PackedBoard three = new PackedBoard(3, 1);
+    three.setColor(1, Palette.BLUE);
+    three.setColor(2, Palette.PURPLE);
+    RasterRenderer spread = new RasterRenderer(new BoardLayout(3, 1, 0, 0, 8, 3));
+    spread.render(three, Palette.RED);
+    t.checkExpect(spread.image.getPixel(1, 2), Palette.color(Palette.RED));
+    t.checkExpect(spread.image.getPixel(2, 0), Palette.color(Palette.BLUE));
+    t.checkExpect(spread.image.getPixel(4, 2), Palette.color(Palette.BLUE));
+    t.checkExpect(spread.image.getPixel(5, 0), Palette.color(Palette.PURPLE));
+  }
+
+  // tests that a FloodItWorld draws large boards as the image of a raster renderer,
+  // painting only what a move changed
+  void testDrawScene(Tester t) {
+    FloodItWorld small = new FloodItWorld(24, 6, 7);
+    small.drawScene();
+    t.checkExpect(small.raster, null);
+
+    FloodItWorld world = new FloodItWorld(60, 6, 7);
+    world.drawScene();
+    t.checkExpect(world.raster.image.width, 600);
+    t.checkExpect(world.raster.repainted, 3600);
+
+    // Every flooded cell, old and new, is painted again in the new color
+    int color = world.game.colors[0];
+    if (color == world.game.floodColor()) {
+      color = world.game.colors[1];
+    }
+    world.game.play(color);
+    world.invalidateScene();
+    world.drawScene();
+    t.checkExpect(world.raster.repainted, world.game.floodedCount);
+    t.checkExpect(world.raster.image.getPixel(5, 5), Palette.bright(color));
+
+    world.invalidateScene();
+    world.drawScene();
+    t.checkExpect(world.raster.repainted, 0);
+    t.checkExpect(world.rasterScan, false);
+    t.checkExpect(world.cells.floodLogSize, 0);
+
+    // A new board of the same size is painted into the same image
+    RasterRenderer raster = world.raster;
+    world.onKeyEvent("r");
+    world.drawScene();
+    t.checkExpect(world.raster == raster, true);
+    t.checkExpect(world.raster.repainted > world.game.floodedCount, true);
+  }
+
+  // tests that a FloodItWorld paints only the cells a move flooded while its window
+  // stays put, and every cell shown again once it moves
+  void testDrawMoves(Tester t) {
+    FloodItWorld world = new FloodItWorld(120, 6, 3);
+    world.onKeyEvent("+");
+    world.onKeyEvent("left");
+    world.onKeyEvent("left");
+    world.onKeyEvent("up");
+    world.onKeyEvent("up");
+    world.drawScene();
+    t.checkExpect(world.view.columnsShown(), 60);
+    t.checkExpect(world.raster.repainted, 3600);
+
+    for (int move = 0; move < 8; move++) {
+      world.game.play((world.game.floodColor() + 1 + move % 5) % 6);
+      world.invalidateScene();
+      world.drawScene();
+    }
+    RasterRenderer fresh = new RasterRenderer(world.raster.layout);
+    fresh.render(new BoardWindow(world.cells, 0, 0, 60, 60), world.game.floodColor());
+    t.checkExpect(world.raster.shown, fresh.shown);
+
+    // Panning right looks at every cell of the new window
+    world.onKeyEvent("right");
+    world.drawScene();
+    fresh = new RasterRenderer(world.raster.layout);
+    fresh.render(new BoardWindow(world.cells, 15, 0, 60, 60), world.game.floodColor());
+    t.checkExpect(world.rasterColumn, 15);
+    t.checkExpect(world.raster.shown, fresh.shown);
+  }
+
+}
@@ -0,0 +1,384 @@
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// Floods a board a whole region at a time. At the start it finds the regions of the
+// board with union-find, as a RegionGraph, and from then on a spread absorbs the
+// regions of the new color on the border of the flood. A move costs the number of
+// regions on the border plus the neighbors of the absorbed ones, and the only work
+// per cell is marking absorbed cells flooded on the board, with no searching between
+// cells at all. The flooded regions are a RegionGraph bitset, the same set the
+// solvers search over.
+class RegionEngine implements FloodEngine {
+  // the board being flooded, and its regions as they were when the game started
+  Board board;
+  RegionGraph graph;
+
+  // the color index the flooded region currently has
+  int floodColor;
+
+  // the regions flooded so far, and the regions that have ever been on the border
+  long[] flooded;
+  long[] bordered;
+
+  // the unflooded regions next to the flooded ones; only the first borderSize
+  // entries are in use
+  int[] border;
+  int borderSize;
+
+  // scratch space for the regions a spread brings onto the border
+  int[] added;
+
+  // the colors an evaluation has already counted each region towards, one bit per
+  // color, valid only for regions marked with the current stamp
+  byte[] counted;
+  int[] countedStamp;
+  int stamp;
+
+  // the number of regions left, counting all the flooded ones as one
+  int regionsLeft;
+
+  // the XOR of the Zobrist keys of the flooded cells, a region's worth at a time
+  long floodedHash;
+
+  // the cells of every region: region r has the cells from regionCells[regionStart[r]]
+  // up to regionCells[regionStart[r + 1]]
+  int[] regionStart;
+  int[] regionCells;
+
+  RegionEngine(Board board) {
+    this.board = board;
+  }
+
+  // Copies the state of another engine onto a copy of its board; the regions
+  // themselves never change, so they are shared
+  RegionEngine(Board board, RegionEngine other) {
+    this.board = board;
+    this.graph = other.graph;
+    this.floodColor = other.floodColor;
+    this.flooded = other.flooded.clone();
+    this.bordered = other.bordered.clone();
+    this.border = other.border.clone();
+    this.borderSize = other.borderSize;
+    this.added = new int[other.added.length];
+    this.counted = new byte[other.counted.length];
+    this.countedStamp = new int[other.countedStamp.length];
+    this.regionsLeft = other.regionsLeft;
+    this.floodedHash = other.floodedHash;
+    this.regionStart = other.regionStart;
+    this.regionCells = other.regionCells;
+  }
+
+  // Floods the top-left cell, finds the regions of the board, and absorbs the
+  // region of the top-left cell's color next to it, returning the number of cells
+  // flooded
+  // EFFECT: replaces the regions and every set of them
+  public int start() {
+    this.board.flood(0);
+    this.floodColor = this.board.colorAt(0);
+    this.graph = new RegionGraph(this.board, this.floodColor);
+    this.listCells();
+
+    int regionCount = this.graph.regionCount;
+    this.flooded = this.graph.startSet();
+    this.bordered = this.graph.startSet();
+    this.border = new int[regionCount];
+    this.added = new int[regionCount];
+    this.counted = new byte[regionCount];
+    this.countedStamp = new int[regionCount];
+    this.stamp = 0;
+    this.borderSize = 0;
+    for (int n : this.graph.neighbors[0]) {
+      RegionGraph.add(this.bordered, n);
+      this.border[this.borderSize] = n;
+      this.borderSize++;
+    }
+    this.regionsLeft = regionCount;
+    this.floodedHash = this.graph.regionKey[0];
+    return 1 + this.spread(this.floodColor);
+  }
+
+  // Groups the cells of the board by region
+  // EFFECT: sets regionStart and regionCells
+  void listCells() {
+    int[] cellRegion = this.graph.cellRegion;
+    this.regionStart = new int[this.graph.regionCount + 1];
+    for (int cell = 0; cell < cellRegion.length; cell++) {
+      this.regionStart[cellRegion[cell] + 1]++;
+    }
+    for (int r = 0; r < this.graph.regionCount; r++) {
+      this.regionStart[r + 1] += this.regionStart[r];
+    }
+    int[] next = this.regionStart.clone();
+    this.regionCells = new int[cellRegion.length];
+    for (int cell = 0; cell < cellRegion.length; cell++) {
+      this.regionCells[next[cellRegion[cell]]] = cell;
+      next[cellRegion[cell]]++;
+    }
+  }
+
+  // Changes the flood color and absorbs every region of that color on the border,
+  // returning the number of cells absorbed. Two regions of one color never touch, so
+  // the regions this brings onto the border can never be absorbed by the same move.
+  // EFFECT: floods the absorbed regions and their cells, and updates the border
+  public int spread(int color) {
+    int absorbed = 0;
+    int kept = 0;
+    int addedSize = 0;
+    for (int i = 0; i < this.borderSize; i++) {
+      int region = this.border[i];
+      if (this.graph.regionColor[region] == color) {
+        absorbed += this.absorb(region);
+        for (int n : this.graph.neighbors[region]) {
+          if (!RegionGraph.contains(this.bordered, n)) {
+            RegionGraph.add(this.bordered, n);
+            this.added[addedSize] = n;
+            addedSize++;
+          }
+        }
+      }
+      else {
+        this.border[kept] = region;
+        kept++;
+      }
+    }
+    System.arraycopy(this.added, 0, this.border, kept, addedSize);
+    this.borderSize = kept + addedSize;
+    this.floodColor = color;
+    return absorbed;
+  }
+
+  // Floods the given region, returning its number of cells
+  // EFFECT: adds the region to the flooded set and its key to the hash, and floods
+  // its cells on the board
+  int absorb(int region) {
+    RegionGraph.add(this.flooded, region);
+    this.regionsLeft--;
+    this.floodedHash ^= this.graph.regionKey[region];
+    for (int i = this.regionStart[region]; i < this.regionStart[region + 1]; i++) {
+      this.board.flood(this.regionCells[i]);
+    }
+    return this.graph.regionSize[region];
+  }
+
+  // The number of cells spreading the given color would absorb, found from the
+  // border without changing anything
+  int gain(int color) {
+    int cells = 0;
+    for (int i = 0; i < this.borderSize; i++) {
+      int region = this.border[i];
+      if (this.graph.regionColor[region] == color) {
+        cells += this.graph.regionSize[region];
+      }
+    }
+    return cells;
+  }
+
+  // Works out what spreading every color would do in one pass over the border. The
+  // frontier is counted in regions: those left on the border after the move, which
+  // are the border regions of other colors and the regions the absorbed ones would
+  // bring onto it, each counted once per color.
+  // EFFECT: fills in into, and uses the counted marks as scratch space
+  public void evaluateMoves(MoveEvaluation into) {
+    this.stamp++;
+    if (this.stamp == 0) {
+      Arrays.fill(this.countedStamp, 0);
+      this.stamp = 1;
+    }
+    for (int c = 0; c < Palette.SIZE; c++) {
+      into.gain[c] = 0;
+      into.frontier[c] = this.borderSize;
+    }
+    for (int i = 0; i < this.borderSize; i++) {
+      int region = this.border[i];
+      int color = this.graph.regionColor[region];
+      into.gain[color] += this.graph.regionSize[region];
+      into.frontier[color]--;
+      for (int n : this.graph.neighbors[region]) {
+        if (!RegionGraph.contains(this.bordered, n)) {
+          if (this.countedStamp[n] != this.stamp) {
+            this.countedStamp[n] = this.stamp;
+            this.counted[n] = 0;
+          }
+          if ((this.counted[n] & (1 << color)) == 0) {
+            this.counted[n] |= 1 << color;
+            into.frontier[color]++;
+          }
+        }
+      }
+    }
+  }
+
+  // The number of regions left, counting the flooded ones as one; the board is
+  // flooded when only one is left
+  int regionsLeft() {
+    return this.regionsLeft;
+  }
+
+  // The color index the flooded region currently has
+  public int floodColor() {
+    return this.floodColor;
+  }
+
+  // A copy of this engine, with its own sets of regions, flooding the given board
+  public FloodEngine copyOnto(Board board) {
+    return new RegionEngine(board, this);
+  }
+
+  // The XOR of the Zobrist keys of every flooded cell
+  public long floodedHash() {
+    return this.floodedHash;
+  }
+
+}
+
+// Examples of flooding by region
+class ExamplesRegionEngine {
+
+  PackedBoard board;
+  RegionEngine engine;
+
+  void initData() {
+    // 4 columns, 3 rows of color indexes:
+    // 0 0 1 2
+    // 1 1 1 2
+    // 2 0 1 0
+    this.board = new PackedBoard(4, 3);
+    int[] colors = {0, 0, 1, 2, 1, 1, 1, 2, 2, 0, 1, 0};
+    for (int i = 0; i < colors.length; i++) {
+      this.board.setColor(i, colors[i]);
+    }
+    this.engine = new RegionEngine(this.board);
+  }
+
+  // tests the start and listCells methods
+  void testStart(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.engine.start(), 2);
+    t.checkExpect(this.board.isFlooded(1), true);
+    t.checkExpect(this.board.isFlooded(2), false);
+    t.checkExpect(this.engine.floodColor(), 0);
+
+    // Region 0 is the top-left cell alone, and region 1 the cell it absorbed
+    t.checkExpect(this.engine.graph.regionCount, 7);
+    t.checkExpect(this.engine.regionsLeft(), 6);
+    t.checkExpect(this.engine.regionStart, new int[] {0, 1, 2, 7, 9, 10, 11, 12});
+    t.checkExpect(this.engine.regionCells,
+        new int[] {0, 1, 2, 4, 5, 6, 10, 3, 7, 8, 9, 11});
+    t.checkExpect(this.engine.borderSize, 1);
+    t.checkExpect(this.engine.border[0], 2);
+  }
+
+  // tests the spread, absorb and regionsLeft methods
+  void testSpread(Tester t) {
+    this.initData();
+    this.engine.start();
+
+    t.checkExpect(this.engine.spread(1), 5);
+    t.checkExpect(this.board.isFlooded(10), true);
+    t.checkExpect(this.board.isFlooded(3), false);
+    t.checkExpect(this.engine.floodColor(), 1);
+    t.checkExpect(this.engine.regionsLeft(), 5);
+
+    // A color with no regions on the border absorbs nothing
+    t.checkExpect(this.engine.spread(5), 0);
+
+    t.checkExpect(this.engine.spread(2), 3);
+    t.checkExpect(this.engine.spread(0), 2);
+    t.checkExpect(this.engine.regionsLeft(), 1);
+    t.checkExpect(this.engine.borderSize, 0);
+    for (int i = 0; i < 12; i++) {
+      t.checkExpect(this.board.isFlooded(i), true);
+    }
+  }
+
+  // tests the gain method
+  void testGain(Tester t) {
+    this.initData();
+    this.engine.start();
+
+    t.checkExpect(this.engine.gain(1), 5);
+    t.checkExpect(this.engine.gain(2), 0);
+    this.engine.spread(1);
+    t.checkExpect(this.engine.gain(2), 3);
+    t.checkExpect(this.engine.gain(0), 2);
+    t.checkExpect(this.board.isFlooded(3), false);
+  }
+
+  // tests the copyOnto method
+  void testCopyOnto(Tester t) {
+    this.initData();
+    this.engine.start();
+    this.engine.spread(1);
+    PackedBoard copyBoard = new PackedBoard(this.board);
+    FloodEngine copy = this.engine.copyOnto(copyBoard);
+
+    t.checkExpect(copy.spread(2), 3);
+    t.checkExpect(copyBoard.isFlooded(3), true);
+    t.checkExpect(this.board.isFlooded(3), false);
+    t.checkExpect(this.engine.regionsLeft(), 5);
+    t.checkExpect(this.engine.spread(2), 3);
+  }
+
+  // tests that flooding by region floods the same cells as flooding from the
+  // frontier, move for move, on random boards
+  void testMatchesFrontierEngine(Tester t) {
+    for (int seed = 0; seed < 20; seed++) {
+      FloodGame byFrontier = FloodGame.newGame(15, 4, seed);
+      PackedBoard board = new PackedBoard(15, 15);
+      BoardGenerator.fill(board, seed, 4, BoardGenerator.CANONICAL);
+      FloodGame byRegion = new FloodGame(board, new RegionEngine(board), byFrontier.colors, 0);
+      t.checkExpect(byRegion.floodedCount, byFrontier.floodedCount);
+
+      Random moves = new Random(seed);
+      while (!byFrontier.isWon()) {
+        int color = moves.nextInt(4);
+        t.checkExpect(byRegion.play(color), byFrontier.play(color));
+      }
+      t.checkExpect(byRegion.isWon(), true);
+      t.checkExpect(((RegionEngine) byRegion.engine).regionsLeft(), 1);
+    }
+  }
+
+  // tests the evaluateMoves method
+  void testEvaluateMoves(Tester t) {
+    this.initData();
+    this.engine.start();
+    MoveEvaluation moves = new MoveEvaluation();
+    this.engine.evaluateMoves(moves);
+
+    // The 1s leave the border, bringing the four regions around them onto it
+    t.checkExpect(moves.gain, new int[] {0, 5, 0, 0, 0, 0});
+    t.checkExpect(moves.frontier, new int[] {1, 4, 1, 1, 1, 1});
+    t.checkExpect(this.engine.borderSize, 1);
+    t.checkExpect(this.board.isFlooded(2), false);
+
+    this.engine.spread(1);
+    this.engine.evaluateMoves(moves);
+    t.checkExpect(moves.gain, new int[] {2, 0, 3, 0, 0, 0});
+    t.checkExpect(moves.frontier, new int[] {2, 4, 2, 4, 4, 4});
+  }
+
+  // tests that evaluating every move gives the same gains and borders as playing
+  // each one on a snapshot of the game, on random boards
+  void testEvaluateMovesMatchesSpread(Tester t) {
+    MoveEvaluation moves = new MoveEvaluation();
+    boolean same = true;
+    for (int seed = 0; seed < 20; seed++) {
+      PackedBoard board = BoardGenerator.generate(seed, 12, 3 + seed % 4);
+      FloodGame game = new FloodGame(board, new RegionEngine(board), new int[] {0, 1, 2, 3, 4, 5}, 0);
+      Random rand = new Random(seed);
+      while (!game.isWon()) {
+        game.evaluateMoves(moves);
+        for (int c = 0; c < Palette.SIZE; c++) {
+          FloodGame copy = game.snapshot();
+          same = same && copy.flood(c) == moves.gain[c]
+              && ((RegionEngine) copy.engine).borderSize == moves.frontier[c];
+        }
+        game.play(rand.nextInt(Palette.SIZE));
+      }
+    }
+    t.checkExpect(same, true);
+  }
+}
@@ -0,0 +1,371 @@
+import java.util.Arrays;
+import tester.Tester;
+
+// The regions of a board: each maximal group of connected unflooded cells of one
+// color is a region, and the flooded cells together are region 0. Picking a color
+// absorbs every region of that color next to the flooded ones, so games can be
+// played and searched on regions without looking at cells at all. The regions are
+// found with union-find. Sets of regions are bitsets, one bit per region.
+class RegionGraph {
+  // the number of regions
+  int regionCount;
+
+  // the palette index, number of cells and neighboring regions of every region
+  int[] regionColor;
+  int[] regionSize;
+  int[][] neighbors;
+
+  // the region of every cell on the board
+  int[] cellRegion;
+
+  // the XOR of the Zobrist keys of the cells of every region, so a set of regions
+  // hashes the same as its cells
+  long[] regionKey;
+
+  // the number of cells on the board
+  int cellCount;
+
+  // Finds the regions of the given board, whose flooded cells have the given color.
+  // The top-left cell must be flooded, so the flooded cells are region 0.
+  RegionGraph(Board board, int floodColor) {
+    int width = board.width();
+    this.cellCount = width * board.height();
+
+    // Joins every cell with the cells to its right and below it when they are in
+    // the same region, so each region ends up as one set whose root is its first cell
+    int[] parent = new int[this.cellCount];
+    for (int cell = 0; cell < this.cellCount; cell++) {
+      parent[cell] = cell;
+    }
+    for (int cell = 0; cell < this.cellCount; cell++) {
+      if (cell % width < width - 1 && this.sameRegion(board, cell, cell + 1)) {
+        union(parent, cell, cell + 1);
+      }
+      if (cell + width < this.cellCount && this.sameRegion(board, cell, cell + width)) {
+        union(parent, cell, cell + width);
+      }
+    }
+
+    // Numbers the regions in order of their first cell, row by row
+    this.cellRegion = new int[this.cellCount];
+    int[] colors = new int[16];
+    int[] sizes = new int[16];
+    int regions = 0;
+    for (int cell = 0; cell < this.cellCount; cell++) {
+      int root = find(parent, cell);
+      if (root == cell) {
+        if (regions == colors.length) {
+          colors = Arrays.copyOf(colors, regions * 2);
+          sizes = Arrays.copyOf(sizes, regions * 2);
+        }
+        colors[regions] = regions == 0 ? floodColor : board.colorAt(cell);
+        this.cellRegion[cell] = regions;
+        regions++;
+      }
+      else {
+        this.cellRegion[cell] = this.cellRegion[root];
+      }
+      sizes[this.cellRegion[cell]]++;
+    }
+    this.regionCount = regions;
+    this.regionColor = Arrays.copyOf(colors, regions);
+    this.regionSize = Arrays.copyOf(sizes, regions);
+    this.regionKey = new long[regions];
+    for (int cell = 0; cell < this.cellCount; cell++) {
+      this.regionKey[this.cellRegion[cell]] ^= Zobrist.cellKey(cell);
+    }
+    this.neighbors = this.findNeighbors(width);
+  }
+
+  // True if the two given cells belong in the same region when they touch: both
+  // flooded, or both unflooded with the same color
+  boolean sameRegion(Board board, int a, int b) {
+    boolean flooded = board.isFlooded(a);
+    if (flooded != board.isFlooded(b)) {
+      return false;
+    }
+    return flooded || board.colorAt(a) == board.colorAt(b);
+  }
+
+  // The root of the set holding the given cell
+  // EFFECT: points cells on the way at their grandparents, halving the path
+  static int find(int[] parent, int cell) {
+    while (parent[cell] != cell) {
+      parent[cell] = parent[parent[cell]];
+      cell = parent[cell];
+    }
+    return cell;
+  }
+
+  // Joins the sets holding the two given cells, keeping the smaller root
+  // EFFECT: points one root at the other
+  static void union(int[] parent, int a, int b) {
+    int rootA = find(parent, a);
+    int rootB = find(parent, b);
+    if (rootA < rootB) {
+      parent[rootB] = rootA;
+    }
+    else if (rootB < rootA) {
+      parent[rootA] = rootB;
+    }
+  }
+
+  // The neighboring regions of every region, found from the cells that touch
+  // a cell of another region to their right or below
+  int[][] findNeighbors(int width) {
+    long[] edges = new long[16];
+    int edgeCount = 0;
+    for (int cell = 0; cell < this.cellCount; cell++) {
+      int region = this.cellRegion[cell];
+      if (cell % width < width - 1 && this.cellRegion[cell + 1] != region) {
+        edges = this.addEdge(edges, edgeCount, region, this.cellRegion[cell + 1]);
+        edgeCount += 2;
+      }
+      if (cell + width < this.cellCount && this.cellRegion[cell + width] != region) {
+        edges = this.addEdge(edges, edgeCount, region, this.cellRegion[cell + width]);
+        edgeCount += 2;
+      }
+    }
+
+    // Sorting groups the edges by region and puts duplicates side by side
+    Arrays.sort(edges, 0, edgeCount);
+    int[] degree = new int[this.regionCount];
+    long last = -1;
+    for (int i = 0; i < edgeCount; i++) {
+      if (edges[i] != last) {
+        degree[(int) (edges[i] >>> 32)]++;
+        last = edges[i];
+      }
+    }
+    int[][] result = new int[this.regionCount][];
+    for (int r = 0; r < this.regionCount; r++) {
+      result[r] = new int[degree[r]];
+      degree[r] = 0;
+    }
+    last = -1;
+    for (int i = 0; i < edgeCount; i++) {
+      if (edges[i] != last) {
+        int from = (int) (edges[i] >>> 32);
+        result[from][degree[from]] = (int) edges[i];
+        degree[from]++;
+        last = edges[i];
+      }
+    }
+    return result;
+  }
+
+  // Adds the edge between two regions in both directions at the given position,
+  // returning the array of edges, grown if it was full
+  long[] addEdge(long[] edges, int edgeCount, int a, int b) {
+    if (edgeCount + 2 > edges.length) {
+      edges = Arrays.copyOf(edges, edges.length * 2);
+    }
+    edges[edgeCount] = ((long) a << 32) | b;
+    edges[edgeCount + 1] = ((long) b << 32) | a;
+    return edges;
+  }
+
+  // The regions of a game as it is now
+  static RegionGraph of(FloodGame game) {
+    return new RegionGraph(game.board, game.floodColor());
+  }
+
+  // A new set of regions containing only the flooded region
+  long[] startSet() {
+    long[] set = new long[(this.regionCount + 63) >>> 6];
+    set[0] = 1L;
+    return set;
+  }
+
+  // True if the given region is in the given set
+  static boolean contains(long[] set, int region) {
+    return (set[region >>> 6] & (1L << region)) != 0;
+  }
+
+  // Adds the given region to the given set
+  // EFFECT: sets the region's bit
+  static void add(long[] set, int region) {
+    set[region >>> 6] |= 1L << region;
+  }
+
+  // True if every region is in the given set
+  boolean isFull(long[] set) {
+    for (int r = 0; r < this.regionCount; r++) {
+      if (!contains(set, r)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The XOR of the Zobrist keys of the cells in the regions of the given set
+  long floodedHash(long[] set) {
+    long hash = 0;
+    for (int r = 0; r < this.regionCount; r++) {
+      if (contains(set, r)) {
+        hash ^= this.regionKey[r];
+      }
+    }
+    return hash;
+  }
+
+  // The number of cells in the regions of the given set
+  int cellsIn(long[] set) {
+    int cells = 0;
+    for (int r = 0; r < this.regionCount; r++) {
+      if (contains(set, r)) {
+        cells += this.regionSize[r];
+      }
+    }
+    return cells;
+  }
+
+  // A new set of regions holding the given flooded set and every region of the given
+  // color next to it, which is what picking that color does
+  long[] absorb(long[] flooded, int color) {
+    long[] result = flooded.clone();
+    for (int r = 0; r < this.regionCount; r++) {
+      if (contains(flooded, r)) {
+        for (int n : this.neighbors[r]) {
+          if (this.regionColor[n] == color) {
+            add(result, n);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+}
+
+// Examples of region graphs
+class ExamplesRegionGraph {
+
+  PackedBoard board;
+  RegionGraph graph;
+
+  void initData() {
+    // 4 columns, 3 rows of palette indexes, with regions labeled A to F:
+    // 0 0 1 2     A A B C
+    // 1 1 1 2     B B B C
+    // 2 0 1 0     D E B F
+    this.board = new PackedBoard(4, 3);
+    int[] colors = {0, 0, 1, 2, 1, 1, 1, 2, 2, 0, 1, 0};
+    for (int i = 0; i < colors.length; i++) {
+      this.board.setColor(i, colors[i]);
+    }
+    this.board.flood(0);
+    this.board.flood(1);
+    this.graph = new RegionGraph(this.board, 0);
+  }
+
+  // tests the RegionGraph constructor
+  void testConstructor(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.graph.regionCount, 6);
+    t.checkExpect(this.graph.cellRegion,
+        new int[] {0, 0, 1, 2, 1, 1, 1, 2, 3, 4, 1, 5});
+    t.checkExpect(this.graph.regionColor, new int[] {0, 1, 2, 2, 0, 0});
+    t.checkExpect(this.graph.regionSize, new int[] {2, 5, 2, 1, 1, 1});
+    t.checkExpect(this.graph.neighbors[0], new int[] {1});
+    t.checkExpect(this.graph.neighbors[1], new int[] {0, 2, 3, 4, 5});
+    t.checkExpect(this.graph.neighbors[5], new int[] {1, 2});
+
+    // The key of a region is the XOR of its cells' keys
+    t.checkExpect(this.graph.regionKey[0], Zobrist.cellKey(0) ^ Zobrist.cellKey(1));
+    t.checkExpect(this.graph.regionKey[2], Zobrist.cellKey(3) ^ Zobrist.cellKey(7));
+  }
+
+  // tests that flooded cells form region 0 whatever their colors are
+  void testFloodedRegion(Tester t) {
+    this.initData();
+    this.board.flood(2);
+    this.board.flood(4);
+    RegionGraph flooded = new RegionGraph(this.board, 1);
+
+    t.checkExpect(flooded.cellRegion[2], 0);
+    t.checkExpect(flooded.cellRegion[4], 0);
+    t.checkExpect(flooded.regionColor[0], 1);
+    t.checkExpect(flooded.regionSize[0], 4);
+
+    // The rest of the chain of 1s is its own region
+    t.checkExpect(flooded.cellRegion[5], flooded.cellRegion[10]);
+    t.checkExpect(flooded.regionSize[flooded.cellRegion[5]], 3);
+  }
+
+  // tests the find and union methods
+  void testUnionFind(Tester t) {
+    int[] parent = {0, 1, 2, 3, 4};
+    RegionGraph.union(parent, 3, 4);
+    RegionGraph.union(parent, 4, 1);
+    t.checkExpect(RegionGraph.find(parent, 4), 1);
+    t.checkExpect(RegionGraph.find(parent, 3), 1);
+    t.checkExpect(RegionGraph.find(parent, 2), 2);
+
+    // Joining cells already in one set changes nothing
+    RegionGraph.union(parent, 1, 3);
+    t.checkExpect(RegionGraph.find(parent, 1), 1);
+    t.checkExpect(parent[0], 0);
+  }
+
+  // tests the sameRegion method
+  void testSameRegion(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.graph.sameRegion(this.board, 0, 1), true);
+    t.checkExpect(this.graph.sameRegion(this.board, 1, 2), false);
+    t.checkExpect(this.graph.sameRegion(this.board, 4, 5), true);
+    t.checkExpect(this.graph.sameRegion(this.board, 3, 7), true);
+    t.checkExpect(this.graph.sameRegion(this.board, 2, 6), true);
+    t.checkExpect(this.graph.sameRegion(this.board, 8, 9), false);
+
+    // Flooded cells are one region whatever their colors
+    this.board.flood(4);
+    t.checkExpect(this.graph.sameRegion(this.board, 0, 4), true);
+    t.checkExpect(this.graph.sameRegion(this.board, 4, 5), false);
+  }
+
+  // tests the of method
+  void testOf(Tester t) {
+    FloodGame game = FloodGame.newGame(6, 3, 5);
+    RegionGraph graph = RegionGraph.of(game);
+    t.checkExpect(graph.regionColor[0], game.floodColor());
+    t.checkExpect(graph.regionSize[0], game.floodedCount);
+    t.checkExpect(graph.cellCount, 36);
+  }
+
+  // tests the set methods and floodedHash
+  void testSets(Tester t) {
+    this.initData();
+    long[] set = this.graph.startSet();
+
+    t.checkExpect(RegionGraph.contains(set, 0), true);
+    t.checkExpect(RegionGraph.contains(set, 1), false);
+    RegionGraph.add(set, 5);
+    t.checkExpect(RegionGraph.contains(set, 5), true);
+    t.checkExpect(this.graph.cellsIn(set), 3);
+    t.checkExpect(this.graph.floodedHash(set),
+        Zobrist.cellKey(0) ^ Zobrist.cellKey(1) ^ Zobrist.cellKey(11));
+    t.checkExpect(this.graph.isFull(set), false);
+  }
+
+  // tests the absorb method
+  void testAbsorb(Tester t) {
+    this.initData();
+    long[] start = this.graph.startSet();
+
+    long[] afterOne = this.graph.absorb(start, 1);
+    t.checkExpect(this.graph.cellsIn(afterOne), 7);
+    t.checkExpect(this.graph.cellsIn(start), 2);
+
+    long[] afterTwo = this.graph.absorb(afterOne, 2);
+    t.checkExpect(this.graph.cellsIn(afterTwo), 10);
+    long[] afterZero = this.graph.absorb(afterTwo, 0);
+    t.checkExpect(this.graph.isFull(afterZero), true);
+
+    // A color with no neighboring regions changes nothing
+    t.checkExpect(this.graph.absorb(start, 2), start);
+  }
+
+}
@@ -0,0 +1,914 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import tester.Tester;
+
+// Hosts many headless games over HTTP on the loopback address, one per session:
+//
+//   POST   /games?size=14&colors=6[&seed=n]   starts a game
+//   GET    /games/{id}                        the state of a game
+//   GET    /games/{id}/board                  its colors, one row of digits per line
+//   POST   /games/{id}/moves?color=c          makes a move
+//   DELETE /games/{id}                        ends a game
+//
+// Every request runs on a thread of its own: a virtual thread on a JVM that has
+// them, found by reflection, or a pooled thread on one that does not. Sessions are
+// kept in a SessionStore that expires idle ones and holds a bounded number.
+class SessionServer {
+  // the threads requests run on when the JVM has no virtual threads, per core
+  static final int THREADS_PER_CORE = 4;
+
+  HttpServer server;
+  ExecutorService requests;
+  SessionStore sessions;
+
+  // Starts a server on the given port of the loopback address, or any free port if it
+  // is 0, holding at most maxSessions games that expire after idleMillis
+  SessionServer(int port, int maxSessions, long idleMillis) throws IOException {
+    this.sessions = new SessionStore(maxSessions, idleMillis);
+    this.requests = newPerTaskExecutor();
+    this.server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.server.setExecutor(this.requests);
+    this.server.createContext("/games", new SessionHandler(this.sessions));
+    this.server.start();
+    this.sessions.startSweeping();
+  }
+
+  // An executor that starts a virtual thread for every task, or a pool of daemon
+  // threads if this JVM has no virtual threads
+  static ExecutorService newPerTaskExecutor() {
+    try {
+      Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtual.invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      int threads = Runtime.getRuntime().availableProcessors() * THREADS_PER_CORE;
+      return Executors.newFixedThreadPool(threads, new DaemonThreads("flood-session"));
+    }
+  }
+
+  // Turns off Nagle's algorithm for every HttpServer this JVM starts from now on,
+  // unless the property was set on the command line. Responses go out as headers
+  // and then a body; without this the second write waits on the client's delayed
+  // ack, about 40ms a move. The property is read once, by the first server, so
+  // only a program that owns the whole process should call this, before that.
+  // EFFECT: sets the system property sun.net.httpserver.nodelay
+  static void sendWithoutDelay() {
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  // The port the server is listening on
+  int port() {
+    return this.server.getAddress().getPort();
+  }
+
+  // Stops taking requests and drops every session
+  // EFFECT: stops the server, its threads and the sweeper
+  void stop() {
+    this.server.stop(0);
+    this.requests.shutdown();
+    this.sessions.stopSweeping();
+  }
+
+  // Serves games until the process is killed. Arguments: port, most sessions, and
+  // seconds a session may be idle. Sends without delay, see sendWithoutDelay.
+  public static void main(String[] args) throws IOException {
+    sendWithoutDelay();
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    int maxSessions = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+    long idleSeconds = args.length > 2 ? Long.parseLong(args[2]) : 300;
+    SessionServer server = new SessionServer(port, maxSessions, idleSeconds * 1000);
+    System.out.println("Serving games on http://localhost:" + server.port() + "/games");
+  }
+}
+
+// One player's game. Only one request may change a session at a time: a request
+// claims it with a compare-and-set and a second request that finds it claimed is
+// turned away, so a session never needs a lock. Requests that only read the game
+// never claim it: they read the view the last move published.
+class GameSession {
+  String id;
+  long seed;
+  FloodGame game;
+
+  // claimed by the request changing the game, if any
+  AtomicBoolean busy = new AtomicBoolean();
+
+  // the state and board as of the last move, replaced whole after every move
+  volatile SessionView view;
+
+  // when a request last used this session, from System.nanoTime
+  volatile long lastUsed;
+
+  GameSession(String id, long seed, FloodGame game, long now) {
+    this.id = id;
+    this.seed = seed;
+    this.game = game;
+    this.lastUsed = now;
+    this.publish();
+  }
+
+  // Makes the current state of the game the one readers see. Only the request that
+  // has claimed the session, or the one that made it, may call this.
+  // EFFECT: replaces the view
+  void publish() {
+    this.view = new SessionView(this.toJson(), this.boardText());
+  }
+
+  // Claims the session for a request, returning false if another has it
+  // EFFECT: sets busy
+  boolean claim() {
+    return this.busy.compareAndSet(false, true);
+  }
+
+  // Gives up the claim of a request
+  // EFFECT: clears busy and records the time
+  void release(long now) {
+    this.lastUsed = now;
+    this.busy.set(false);
+  }
+
+  // True if the game is won or out of moves
+  boolean over() {
+    return this.game.isWon() || this.game.movesLeft() == 0;
+  }
+
+  // The state of the game as JSON
+  String toJson() {
+    FloodGame game = this.game;
+    return "{\"id\":\"" + this.id + "\""
+        + ",\"boardId\":\"" + BoardGenerator.boardId(this.seed, game.board.width(),
+            game.colors.length) + "\""
+        + ",\"size\":" + game.board.width()
+        + ",\"colors\":" + game.colors.length
+        + ",\"moves\":" + game.moves
+        + ",\"movesAllowed\":" + game.movesAllowed
+        + ",\"floodColor\":" + game.floodColor()
+        + ",\"flooded\":" + game.floodedCount
+        + ",\"won\":" + game.isWon()
+        + ",\"over\":" + this.over() + "}";
+  }
+
+  // The colors of the board, one row of digits per line
+  String boardText() {
+    Board board = this.game.board;
+    StringBuilder text = new StringBuilder();
+    for (int y = 0; y < board.height(); y++) {
+      for (int x = 0; x < board.width(); x++) {
+        text.append((char) ('0' + board.colorAt(y * board.width() + x)));
+      }
+      text.append('\n');
+    }
+    return text.toString();
+  }
+}
+
+// What readers of a session see: its state as JSON and its board as text, both
+// taken after the same move and never changed after
+class SessionView {
+  final String json;
+  final String board;
+
+  SessionView(String json, String board) {
+    this.json = json;
+    this.board = board;
+  }
+}
+
+// The sessions of a server, by id, with at most a fixed number of them. Sessions no
+// request has used for the idle time are swept out every so often, and when the
+// store is full, starting a game sweeps first, so memory stays bounded by the
+// number of sessions and the largest board allowed. A game takes its slot with a
+// compare-and-set before it is made, so games started at once cannot overfill it.
+class SessionStore {
+  // the largest board a session may play
+  static final int MAX_SIZE = 100;
+
+  // sweeps the stores of every server, on a daemon thread
+  static final ScheduledExecutorService SWEEPERS =
+      Executors.newSingleThreadScheduledExecutor(new DaemonThreads("flood-session"));
+
+  // makes the session ids, which are all that keeps one player out of another's game
+  static final SecureRandom IDS = new SecureRandom();
+
+  ConcurrentHashMap<String, GameSession> sessions = new ConcurrentHashMap<String, GameSession>();
+  // the slots taken, by sessions held and by games being started
+  AtomicInteger slots = new AtomicInteger();
+  int maxSessions;
+  long idleNanos;
+  ScheduledFuture<?> sweeping;
+
+  SessionStore(int maxSessions, long idleMillis) {
+    this.maxSessions = maxSessions;
+    this.idleNanos = idleMillis * 1000000L;
+  }
+
+  // Starts sweeping idle sessions out four times per idle time
+  // EFFECT: schedules the sweeps
+  void startSweeping() {
+    long period = Math.max(1, this.idleNanos / 4);
+    this.sweeping = SWEEPERS.scheduleAtFixedRate(new SessionSweep(this), period, period,
+        TimeUnit.NANOSECONDS);
+  }
+
+  // Stops sweeping and drops every session
+  // EFFECT: cancels the sweeps and empties the store
+  void stopSweeping() {
+    if (this.sweeping != null) {
+      this.sweeping.cancel(false);
+    }
+    for (String id : this.sessions.keySet()) {
+      this.end(id);
+    }
+  }
+
+  // Takes a slot for a new session, returning false if every slot is taken
+  // EFFECT: counts the slot as taken
+  boolean reserve() {
+    int taken = this.slots.get();
+    while (taken < this.maxSessions) {
+      if (this.slots.compareAndSet(taken, taken + 1)) {
+        return true;
+      }
+      taken = this.slots.get();
+    }
+    return false;
+  }
+
+  // A new session playing a size x size board with numColors colors made from the
+  // seed, or null if the store is full even after sweeping
+  // EFFECT: adds the session
+  GameSession start(int size, int numColors, long seed, long now) {
+    if (size <= 0 || size > MAX_SIZE) {
+      throw new IllegalArgumentException("Size must be between 1 and " + MAX_SIZE);
+    }
+    BoardGenerator.checkColors(numColors);
+    if (!this.reserve()) {
+      this.expireIdle(now);
+      if (!this.reserve()) {
+        return null;
+      }
+    }
+    PackedBoard board = BoardGenerator.generate(seed, size, numColors);
+    int[] colors = new int[numColors];
+    System.arraycopy(BoardGenerator.CANONICAL, 0, colors, 0, numColors);
+    FloodGame game = new FloodGame(board, FloodGame.fastEngine(board), colors,
+        FloodGame.defaultMovesAllowed(size, numColors));
+    String id = Long.toHexString(IDS.nextLong() | Long.MIN_VALUE);
+    GameSession session = new GameSession(id, seed, game, now);
+    this.sessions.put(id, session);
+    return session;
+  }
+
+  // The session with the given id, or null
+  GameSession get(String id) {
+    return this.sessions.get(id);
+  }
+
+  // Ends the session with the given id, returning true if there was one
+  // EFFECT: removes it and frees its slot
+  boolean end(String id) {
+    if (this.sessions.remove(id) == null) {
+      return false;
+    }
+    this.slots.decrementAndGet();
+    return true;
+  }
+
+  // The number of sessions held
+  int size() {
+    return this.sessions.size();
+  }
+
+  // Drops every session no request has used for the idle time, as of now, returning
+  // how many there were. A session a request has claimed is never dropped, and the
+  // sweep claims each session it drops while removing it, so a request claims a
+  // session either before it could be dropped or after it is gone.
+  // EFFECT: removes the idle sessions and frees their slots
+  int expireIdle(long now) {
+    int expired = 0;
+    for (GameSession session : this.sessions.values()) {
+      if (now - session.lastUsed > this.idleNanos && session.claim()) {
+        if (this.sessions.remove(session.id, session)) {
+          this.slots.decrementAndGet();
+          expired++;
+        }
+        session.busy.set(false);
+      }
+    }
+    return expired;
+  }
+}
+
+// Sweeps a store's idle sessions out
+class SessionSweep implements Runnable {
+  SessionStore store;
+
+  SessionSweep(SessionStore store) {
+    this.store = store;
+  }
+
+  public void run() {
+    this.store.expireIdle(System.nanoTime());
+  }
+}
+
+// Turns the requests to /games into changes to the sessions of a store
+class SessionHandler implements HttpHandler {
+  SessionStore sessions;
+
+  SessionHandler(SessionStore sessions) {
+    this.sessions = sessions;
+  }
+
+  public void handle(HttpExchange exchange) throws IOException {
+    try {
+      this.route(exchange);
+    }
+    catch (IllegalArgumentException e) {
+      send(exchange, 400, error(e.getMessage()));
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  // Answers the request with the handler its method and path call for
+  // EFFECT: sends the response
+  void route(HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestMethod();
+    String[] path = exchange.getRequestURI().getPath().split("/");
+    String query = exchange.getRequestURI().getRawQuery();
+
+    // The path splits into "", "games", then an id and "moves" or "board"
+    if (path.length == 2 && method.equals("POST")) {
+      this.startGame(exchange, query);
+      return;
+    }
+    if (path.length < 3) {
+      send(exchange, 404, error("No such resource"));
+      return;
+    }
+    GameSession session = this.sessions.get(path[2]);
+    if (session == null) {
+      send(exchange, 404, error("No game " + path[2]));
+      return;
+    }
+    if (path.length == 3 && method.equals("GET")) {
+      send(exchange, 200, this.read(session, false));
+    }
+    else if (path.length == 4 && path[3].equals("board") && method.equals("GET")) {
+      send(exchange, 200, this.read(session, true));
+    }
+    else if (path.length == 4 && path[3].equals("moves") && method.equals("POST")) {
+      this.move(exchange, session, query);
+    }
+    else if (path.length == 3 && method.equals("DELETE")) {
+      // A body keeps the connection open: the JDK server closes it after a response
+      // without one, and a client that reuses it then finds it reset
+      this.sessions.end(session.id);
+      send(exchange, 200, "{\"ended\":\"" + session.id + "\"}");
+    }
+    else {
+      send(exchange, 405, error("Method not allowed"));
+    }
+  }
+
+  // Starts a game from the size, colors and seed of the query
+  // EFFECT: adds a session and sends its state
+  void startGame(HttpExchange exchange, String query) throws IOException {
+    int size = Integer.parseInt(param(query, "size", "14"));
+    int numColors = Integer.parseInt(param(query, "colors", "6"));
+    String seedParam = param(query, "seed", null);
+    long seed = seedParam == null ? ThreadLocalRandom.current().nextLong()
+        : Long.parseLong(seedParam);
+    GameSession session = this.sessions.start(size, numColors, seed, System.nanoTime());
+    if (session == null) {
+      send(exchange, 503, error("Too many games"));
+      return;
+    }
+    send(exchange, 201, session.toJson());
+  }
+
+  // The state of the session, or its board, as of the last move. A move being made
+  // meanwhile is neither waited for nor turned away.
+  // EFFECT: records the time the session was used
+  String read(GameSession session, boolean board) {
+    SessionView view = session.view;
+    session.lastUsed = System.nanoTime();
+    return board ? view.board : view.json;
+  }
+
+  // Makes the move in the color of the query, unless the session expired after the
+  // route found it
+  // EFFECT: changes the session's game and sends its state
+  void move(HttpExchange exchange, GameSession session, String query) throws IOException {
+    int color = Integer.parseInt(param(query, "color", "-1"));
+    if (!session.claim()) {
+      send(exchange, 409, error("Another move is being made"));
+      return;
+    }
+    String response;
+    int status = 200;
+    try {
+      if (this.sessions.get(session.id) != session) {
+        status = 404;
+        response = error("No game " + session.id);
+      }
+      else if (session.over()) {
+        status = 409;
+        response = error("The game is over");
+      }
+      else if (color < 0 || color >= session.game.colors.length) {
+        status = 400;
+        response = error("No color " + color);
+      }
+      else {
+        session.game.play(color);
+        session.publish();
+        response = session.view.json;
+      }
+    }
+    finally {
+      session.release(System.nanoTime());
+    }
+    send(exchange, status, response);
+  }
+
+  // The value of the given parameter of the query, or the default
+  static String param(String query, String name, String otherwise) {
+    if (query == null) {
+      return otherwise;
+    }
+    for (String pair : query.split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals > 0 && pair.substring(0, equals).equals(name)) {
+        return pair.substring(equals + 1);
+      }
+    }
+    return otherwise;
+  }
+
+  // An error message as JSON
+  static String error(String message) {
+    return "{\"error\":" + quote(message) + "}";
+  }
+
+  // The given text as a JSON string, in quotes, with quotes, backslashes and control
+  // characters escaped
+  static String quote(String text) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      }
+      else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      }
+      else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  // Sends the body with the given status
+  // EFFECT: writes the response
+  static void send(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+}
+
+// Plays games against a session server from many clients at once, each playing
+// random colors until its games are over, and times every move from request to
+// response
+class LoadGenerator {
+  // the threads the client's responses are handled on
+  ExecutorService clientThreads;
+  HttpClient client;
+  String base;
+
+  LoadGenerator(int port) {
+    this.clientThreads = SessionServer.newPerTaskExecutor();
+    this.client = HttpClient.newBuilder().executor(this.clientThreads).build();
+    this.base = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port
+        + "/games";
+  }
+
+  // The move times, in nanoseconds, of the given number of clients each playing the
+  // given number of games of the given size and colors, seeded from seed
+  Histogram run(int clients, int games, int size, int numColors, long seed)
+      throws InterruptedException {
+    ExecutorService threads = SessionServer.newPerTaskExecutor();
+    SplittableRandom seeds = new SplittableRandom(seed);
+    ArrayList<Future<Histogram>> results = new ArrayList<Future<Histogram>>();
+    for (int i = 0; i < clients; i++) {
+      results.add(threads.submit(
+          new LoadClient(this, games, size, numColors, seeds.split())));
+    }
+    Histogram all = new Histogram();
+    try {
+      for (Future<Histogram> result : results) {
+        all.add(result.get());
+      }
+    }
+    catch (java.util.concurrent.ExecutionException e) {
+      throw new IllegalStateException("A client failed", e.getCause());
+    }
+    finally {
+      threads.shutdown();
+    }
+    return all;
+  }
+
+  // Stops the client's threads; the generator sends nothing after this
+  // EFFECT: shuts down clientThreads
+  void close() {
+    this.clientThreads.shutdown();
+  }
+
+  // The body of the response to a request with the given method to the given path
+  // under /games, which must have the expected status
+  String send(String method, String path, int expected) throws IOException,
+      InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(this.base + path))
+        .method(method, HttpRequest.BodyPublishers.noBody()).build();
+    HttpResponse<String> response = this.client.send(request,
+        HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != expected) {
+      throw new IOException(method + " " + path + " answered " + response.statusCode()
+          + ": " + response.body());
+    }
+    return response.body();
+  }
+
+  // The value of the given field of a flat JSON object, without quotes
+  static String field(String json, String name) {
+    int start = json.indexOf("\"" + name + "\":") + name.length() + 3;
+    int end = start;
+    while (end < json.length() && json.charAt(end) != ',' && json.charAt(end) != '}') {
+      end++;
+    }
+    return json.substring(start, end).replace("\"", "");
+  }
+
+  // Runs a server on a free port and plays it. Arguments: clients, games per client,
+  // size, colors. Sends without delay, see SessionServer.sendWithoutDelay.
+  public static void main(String[] args) throws IOException, InterruptedException {
+    SessionServer.sendWithoutDelay();
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int games = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+    int size = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+    int numColors = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+    SessionServer server = new SessionServer(0, clients * 2, 60000);
+    LoadGenerator load = new LoadGenerator(server.port());
+    try {
+      long start = System.nanoTime();
+      Histogram moves = load.run(clients, games, size, numColors, 0);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(moves.describe("move latency", 1000, "us"));
+      System.out.println(Math.round(moves.count / seconds) + " moves/s from " + clients
+          + " clients");
+    }
+    finally {
+      load.close();
+      server.stop();
+    }
+  }
+}
+
+// Starts a game in a store, as a request would
+class SessionStart implements java.util.concurrent.Callable<GameSession> {
+  SessionStore store;
+  long seed;
+
+  SessionStart(SessionStore store, long seed) {
+    this.store = store;
+    this.seed = seed;
+  }
+
+  public GameSession call() {
+    return this.store.start(6, 3, this.seed, 0);
+  }
+}
+
+// One client of a load generator
+class LoadClient implements java.util.concurrent.Callable<Histogram> {
+  LoadGenerator load;
+  int games;
+  int size;
+  int numColors;
+  SplittableRandom rand;
+
+  LoadClient(LoadGenerator load, int games, int size, int numColors, SplittableRandom rand) {
+    this.load = load;
+    this.games = games;
+    this.size = size;
+    this.numColors = numColors;
+    this.rand = rand;
+  }
+
+  // The times of every move of this client's games
+  public Histogram call() throws IOException, InterruptedException {
+    Histogram times = new Histogram();
+    for (int i = 0; i < this.games; i++) {
+      String state = this.load.send("POST", "?size=" + this.size + "&colors="
+          + this.numColors + "&seed=" + this.rand.nextLong(), 201);
+      String id = LoadGenerator.field(state, "id");
+      while (LoadGenerator.field(state, "over").equals("false")) {
+        int flood = Integer.parseInt(LoadGenerator.field(state, "floodColor"));
+        int color = (flood + 1 + this.rand.nextInt(this.numColors - 1)) % this.numColors;
+        long start = System.nanoTime();
+        state = this.load.send("POST", "/" + id + "/moves?color=" + color, 200);
+        times.record(System.nanoTime() - start);
+      }
+      this.load.send("DELETE", "/" + id, 200);
+    }
+    return times;
+  }
+}
+
+// A handler whose sessions all expire between being found and being moved, as if
+// the sweep ran just then
+class ExpiringHandler extends SessionHandler {
+  ExpiringHandler(SessionStore sessions) {
+    super(sessions);
+  }
+
+  void move(HttpExchange exchange, GameSession session, String query) throws IOException {
+    this.sessions.expireIdle(session.lastUsed + this.sessions.idleNanos + 1);
+    super.move(exchange, session, query);
+  }
+}
+
+// Examples of the session server
+class ExamplesSessionServer {
+
+  // tests the start, get, end and expireIdle methods of SessionStore
+  void testSessionStore(Tester t) {
+    SessionStore store = new SessionStore(2, 1000);
+    GameSession first = store.start(8, 3, 5, 0);
+    GameSession second = store.start(70, 2, 6, 500000000L);
+
+    t.checkExpect(store.size(), 2);
+    t.checkExpect(store.get(first.id), first);
+    t.checkExpect(first.game.engine instanceof BitboardEngine, true);
+    t.checkExpect(second.game.engine instanceof RegionEngine, true);
+    t.checkExpect(first.game.board.colorAt(7), BoardGenerator.generate(5, 8, 3).colorAt(7));
+
+    // Full until the first session has been idle for a second
+    t.checkExpect(store.start(8, 3, 7, 900000000L), null);
+    GameSession third = store.start(8, 3, 7, 1000000001L);
+    t.checkExpect(third == null, false);
+    t.checkExpect(store.get(first.id), null);
+
+    // Claimed sessions are never expired
+    t.checkExpect(second.claim(), true);
+    t.checkExpect(second.claim(), false);
+    t.checkExpect(store.expireIdle(5000000000L), 1);
+    t.checkExpect(store.get(second.id), second);
+    second.release(5000000000L);
+    t.checkExpect(store.end(second.id), true);
+    t.checkExpect(store.end(second.id), false);
+    t.checkExpect(store.slots.get(), 0);
+
+    t.checkException(new IllegalArgumentException("Size must be between 1 and 100"),
+        store, "start", 101, 3, 1L, 0L);
+  }
+
+  // tests that the reserve method of SessionStore never hands out more slots than
+  // the store holds, even to many threads at once
+  void testReserve(Tester t) throws InterruptedException {
+    SessionStore store = new SessionStore(3, 1000);
+    t.checkExpect(store.reserve(), true);
+    t.checkExpect(store.slots.get(), 1);
+
+    ExecutorService threads = Executors.newFixedThreadPool(8);
+    ArrayList<Future<GameSession>> starts = new ArrayList<Future<GameSession>>();
+    for (int i = 0; i < 64; i++) {
+      starts.add(threads.submit(new SessionStart(store, i)));
+    }
+    int started = 0;
+    try {
+      for (Future<GameSession> start : starts) {
+        if (start.get() != null) {
+          started++;
+        }
+      }
+    }
+    catch (java.util.concurrent.ExecutionException e) {
+      throw new IllegalStateException("A start failed", e.getCause());
+    }
+    finally {
+      threads.shutdown();
+    }
+    t.checkExpect(started, 2);
+    t.checkExpect(store.size(), 2);
+    t.checkExpect(store.reserve(), false);
+
+    // Ending and expiring sessions frees their slots
+    store.end(store.sessions.keySet().iterator().next());
+    t.checkExpect(store.reserve(), true);
+    t.checkExpect(store.expireIdle(2000000000L), 1);
+    t.checkExpect(store.slots.get(), 2);
+  }
+
+  // tests the toJson, over and boardText methods of GameSession
+  void testGameSession(Tester t) {
+    GameSession session = new SessionStore(1, 1000).start(3, 2, 1234, 0);
+    String json = session.toJson();
+
+    t.checkExpect(LoadGenerator.field(json, "id"), session.id);
+    t.checkExpect(LoadGenerator.field(json, "boardId"), "3-2-00000000000004d2");
+    t.checkExpect(LoadGenerator.field(json, "moves"), "0");
+    t.checkExpect(LoadGenerator.field(json, "over"), "false");
+    t.checkExpect(session.boardText().length(), 12);
+    t.checkExpect(session.boardText().charAt(0), (char) ('0' + session.game.board.colorAt(0)));
+    t.checkExpect(session.view.json, json);
+    t.checkExpect(session.view.board, session.boardText());
+
+    // The view changes only when a move is published
+    SessionView before = session.view;
+    session.game.play((session.game.floodColor() + 1) % 2);
+    t.checkExpect(session.view, before);
+    session.publish();
+    t.checkExpect(LoadGenerator.field(session.view.json, "moves"), "1");
+    t.checkExpect(session.view.board, session.boardText());
+    session.game.moves = session.game.movesAllowed;
+    t.checkExpect(session.over(), true);
+  }
+
+  // The message of an error body, read as strict JSON: an object with only an
+  // "error" string, whose escapes are decoded, or null if the body is not one
+  static String errorMessage(String body) {
+    String start = "{\"error\":\"";
+    if (!body.startsWith(start)) {
+      return null;
+    }
+    StringBuilder message = new StringBuilder();
+    int i = start.length();
+    while (i < body.length()) {
+      char c = body.charAt(i);
+      if (c == '"') {
+        return body.substring(i + 1).equals("}") ? message.toString() : null;
+      }
+      if (c < 0x20) {
+        return null;
+      }
+      if (c == '\\') {
+        if (i + 1 >= body.length()) {
+          return null;
+        }
+        char escaped = body.charAt(i + 1);
+        if (escaped == 'u' && i + 6 <= body.length()) {
+          message.append((char) Integer.parseInt(body.substring(i + 2, i + 6), 16));
+          i += 6;
+          continue;
+        }
+        if (escaped != '"' && escaped != '\\' && escaped != '/') {
+          return null;
+        }
+        c = escaped;
+        i++;
+      }
+      message.append(c);
+      i++;
+    }
+    return null;
+  }
+
+  // tests the error and quote methods
+  void testError(Tester t) {
+    t.checkExpect(SessionHandler.error("No game"), "{\"error\":\"No game\"}");
+    t.checkExpect(SessionHandler.quote("a \"b\" \\ c\n"), "\"a \\\"b\\\" \\\\ c\\u000a\"");
+    t.checkExpect(errorMessage(SessionHandler.error("For input string: \"abc\"\t\\")),
+        "For input string: \"abc\"\t\\");
+    t.checkExpect(errorMessage("{\"error\":\"For input string: \"abc\"\"}"), null);
+  }
+
+  // tests the param method
+  void testParam(Tester t) {
+    t.checkExpect(SessionHandler.param("size=8&colors=3", "colors", "6"), "3");
+    t.checkExpect(SessionHandler.param("size=8", "colors", "6"), "6");
+    t.checkExpect(SessionHandler.param(null, "seed", null), null);
+  }
+
+  // tests the server's API from a client on localhost
+  void testServer(Tester t) throws IOException, InterruptedException {
+    SessionServer server = new SessionServer(0, 10, 60000);
+    LoadGenerator client = new LoadGenerator(server.port());
+    try {
+      String state = client.send("POST", "?size=5&colors=3&seed=42", 201);
+      String id = LoadGenerator.field(state, "id");
+      t.checkExpect(LoadGenerator.field(state, "boardId"), "5-3-000000000000002a");
+      t.checkExpect(client.send("GET", "/" + id + "/board", 200).length(), 30);
+
+      int flood = Integer.parseInt(LoadGenerator.field(state, "floodColor"));
+      state = client.send("POST", "/" + id + "/moves?color=" + (flood + 1) % 3, 200);
+      t.checkExpect(LoadGenerator.field(state, "moves"), "1");
+      t.checkExpect(client.send("GET", "/" + id, 200), state);
+
+      client.send("POST", "/" + id + "/moves?color=9", 400);
+      client.send("POST", "/nope/moves?color=1", 404);
+      client.send("PUT", "/" + id, 405);
+      client.send("POST", "?size=500", 400);
+
+      // A message quoting the request is still a JSON string
+      t.checkExpect(errorMessage(client.send("POST", "?size=abc", 400)),
+          "For input string: \"abc\"");
+      t.checkExpect(errorMessage(client.send("GET", "/%22x%5C", 404)), "No game \"x\\");
+
+      // A second move while one is being made is turned away
+      GameSession session = server.sessions.get(id);
+      session.claim();
+      client.send("POST", "/" + id + "/moves?color=0", 409);
+
+      // but reads are answered from the last move's view without waiting for it
+      t.checkExpect(client.send("GET", "/" + id, 200), state);
+      t.checkExpect(client.send("GET", "/" + id + "/board", 200), session.view.board);
+      session.release(System.nanoTime());
+
+      t.checkExpect(client.send("DELETE", "/" + id, 200), "{\"ended\":\"" + id + "\"}");
+      client.send("GET", "/" + id, 404);
+      t.checkExpect(server.sessions.size(), 0);
+    }
+    finally {
+      client.close();
+      server.stop();
+    }
+  }
+
+  // tests that a move on a session that expired after the route found it is not
+  // made, and is answered as a game that does not exist
+  void testMoveExpired(Tester t) throws IOException, InterruptedException {
+    SessionServer server = new SessionServer(0, 10, 60000);
+    server.server.removeContext("/games");
+    server.server.createContext("/games", new ExpiringHandler(server.sessions));
+    LoadGenerator client = new LoadGenerator(server.port());
+    try {
+      String id = LoadGenerator.field(client.send("POST", "?size=5&colors=3&seed=42", 201),
+          "id");
+      GameSession session = server.sessions.get(id);
+      t.checkExpect(errorMessage(client.send("POST", "/" + id + "/moves?color=1", 404)),
+          "No game " + id);
+      t.checkExpect(session.game.moves, 0);
+      t.checkExpect(session.busy.get(), false);
+      t.checkExpect(server.sessions.slots.get(), 0);
+    }
+    finally {
+      client.close();
+      server.stop();
+    }
+  }
+
+  // tests that the load generator plays every game to the end and times its moves
+  void testLoadGenerator(Tester t) throws IOException, InterruptedException {
+    SessionServer server = new SessionServer(0, 100, 60000);
+    LoadGenerator load = new LoadGenerator(server.port());
+    try {
+      Histogram moves = load.run(16, 2, 6, 3, 9);
+      t.checkExpect(moves.count >= 32, true);
+      t.checkExpect(moves.percentile(50) > 0, true);
+      t.checkExpect(moves.percentile(99) >= moves.percentile(50), true);
+      t.checkExpect(server.sessions.size(), 0);
+      t.checkExpect(server.sessions.slots.get(), 0);
+    }
+    finally {
+      load.close();
+      server.stop();
+    }
+  }
+
+}
@@ -0,0 +1,624 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import tester.Tester;
+
+// Finds a sequence of colors that floods a whole board. Solvers work on the
+// RegionGraph of a game, so they never touch cells or change the game itself. A
+// solver whose thread is interrupted stops with a CancellationException, so a
+// solve nobody is waiting for gives its thread back.
+interface Solver {
+  // A sequence of moves that floods every region of the given graph
+  public Solution solve(RegionGraph graph);
+}
+
+// The moves a solver found, as palette indexes, and how it found them
+class Solution {
+  // the colors to pick, in order
+  int[] moves;
+
+  // true if no shorter sequence of moves exists
+  boolean optimal;
+
+  // the number of sets of flooded regions the solver expanded
+  long nodesExpanded;
+
+  Solution(int[] moves, boolean optimal, long nodesExpanded) {
+    this.moves = moves;
+    this.optimal = optimal;
+    this.nodesExpanded = nodesExpanded;
+  }
+
+  // The number of moves in this solution
+  int length() {
+    return this.moves.length;
+  }
+}
+
+// A set of flooded regions reached during a search, along with the move that
+// reached it, so the moves can be read back from the goal
+class SearchNode {
+  long[] flooded;
+  int depth;
+
+  // depth plus a lower bound on the moves still needed, and whether that bound was
+  // worked out for this node or carried over from its parent
+  int estimate;
+  boolean bounded = true;
+
+  // the number of flooded cells
+  int cells;
+
+  // the color picked to get here, and the node it was picked from
+  int color;
+  SearchNode parent;
+
+  SearchNode(long[] flooded, int depth, int estimate, int cells, int color,
+      SearchNode parent) {
+    this.flooded = flooded;
+    this.depth = depth;
+    this.estimate = estimate;
+    this.cells = cells;
+    this.color = color;
+    this.parent = parent;
+  }
+
+  // The colors picked from the start of the search to reach this node
+  int[] moves() {
+    int[] moves = new int[this.depth];
+    SearchNode node = this;
+    for (int i = this.depth - 1; i >= 0; i--) {
+      moves[i] = node.color;
+      node = node.parent;
+    }
+    return moves;
+  }
+}
+
+// A set of flooded regions that can be used as a key in transposition tables
+class RegionSet {
+  long[] regions;
+  int hash;
+
+  RegionSet(long[] regions) {
+    this.regions = regions;
+    this.hash = Arrays.hashCode(regions);
+  }
+
+  // Two region sets are equal if they hold the same regions
+  public boolean equals(Object other) {
+    return other instanceof RegionSet
+        && Arrays.equals(this.regions, ((RegionSet) other).regions);
+  }
+
+  // The hash of the regions, computed once
+  public int hashCode() {
+    return this.hash;
+  }
+}
+
+// What every possible move does to a set of flooded regions, with scratch space
+// that is reused between sets so searches do not allocate per color. The
+// neighbors of each region and the regions of each color are kept as bitsets too,
+// so most of the work is whole-word operations on sets of regions.
+class RegionMoves {
+  RegionGraph graph;
+
+  // the number of words in a set of regions
+  int words;
+
+  // the neighbors of every region, and the regions of every color, as sets
+  long[][] neighborSets;
+  long[][] colorSets;
+
+  // the set of flooded regions that results from each color, or null if the color
+  // has no regions next to the flooded ones
+  long[][] children = new long[Palette.SIZE][];
+
+  // the number of cells each color would absorb
+  int[] gain = new int[Palette.SIZE];
+
+  // the Zobrist hash of the flooded cells that results from each color, from the
+  // hash given to expand
+  long[] childHash = new long[Palette.SIZE];
+
+  // the number of regions each color would absorb, and the number of unflooded
+  // regions of each color
+  int[] absorbed = new int[Palette.SIZE];
+  int[] remaining = new int[Palette.SIZE];
+
+  // scratch sets for searching outward from the flood, and the distance of the
+  // farthest region of each color, for the lower bound
+  long[] reached;
+  long[] layer;
+  long[] nextLayer;
+  int[] farthest = new int[Palette.SIZE];
+
+  RegionMoves(RegionGraph graph) {
+    this.graph = graph;
+    this.words = (graph.regionCount + 63) >>> 6;
+    this.neighborSets = new long[graph.regionCount][this.words];
+    this.colorSets = new long[Palette.SIZE][this.words];
+    for (int r = 0; r < graph.regionCount; r++) {
+      for (int n : graph.neighbors[r]) {
+        RegionGraph.add(this.neighborSets[r], n);
+      }
+      RegionGraph.add(this.colorSets[graph.regionColor[r]], r);
+    }
+    this.reached = new long[this.words];
+    this.layer = new long[this.words];
+    this.nextLayer = new long[this.words];
+  }
+
+  // Puts the unflooded neighbors of every region in the given set into the result
+  // EFFECT: overwrites result
+  void neighborsOf(long[] set, long[] excluded, long[] result) {
+    Arrays.fill(result, 0);
+    for (int w = 0; w < this.words; w++) {
+      long word = set[w];
+      while (word != 0) {
+        long[] neighbors = this.neighborSets[(w << 6) + Long.numberOfTrailingZeros(word)];
+        word &= word - 1;
+        for (int i = 0; i < this.words; i++) {
+          result[i] |= neighbors[i];
+        }
+      }
+    }
+    for (int i = 0; i < this.words; i++) {
+      result[i] &= ~excluded[i];
+    }
+  }
+
+  // Throws if the thread running the search has been interrupted; solvers call this
+  // once per set they expand
+  static void stopIfInterrupted() {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("The solve was interrupted");
+    }
+  }
+
+  // Works out the result of every color on the given set of flooded regions
+  // EFFECT: fills in children, gain, absorbed and remaining
+  void expand(long[] flooded) {
+    this.expand(flooded, 0);
+  }
+
+  // Works out the result of every color on the given set of flooded regions, whose
+  // cells have the given Zobrist hash
+  // EFFECT: fills in children, childHash, gain, absorbed and remaining
+  void expand(long[] flooded, long floodedHash) {
+    this.neighborsOf(flooded, flooded, this.layer);
+    for (int c = 0; c < Palette.SIZE; c++) {
+      long[] colorSet = this.colorSets[c];
+      long[] child = null;
+      long hash = floodedHash;
+      int gain = 0;
+      int absorbed = 0;
+      int remaining = 0;
+      for (int w = 0; w < this.words; w++) {
+        remaining += Long.bitCount(colorSet[w] & ~flooded[w]);
+        long taken = colorSet[w] & this.layer[w];
+        if (taken != 0) {
+          if (child == null) {
+            child = flooded.clone();
+          }
+          child[w] |= taken;
+          absorbed += Long.bitCount(taken);
+          while (taken != 0) {
+            int region = (w << 6) + Long.numberOfTrailingZeros(taken);
+            gain += this.graph.regionSize[region];
+            hash ^= this.graph.regionKey[region];
+            taken &= taken - 1;
+          }
+        }
+      }
+      this.children[c] = child;
+      this.childHash[c] = hash;
+      this.gain[c] = gain;
+      this.absorbed[c] = absorbed;
+      this.remaining[c] = remaining;
+    }
+  }
+
+  // A color that would absorb every remaining region of that color, or -1 if there
+  // is none. Picking such a color first never makes a solution longer.
+  // Must be called after expand.
+  int completingColor() {
+    for (int c = 0; c < Palette.SIZE; c++) {
+      if (this.children[c] != null && this.absorbed[c] == this.remaining[c]) {
+        return c;
+      }
+    }
+    return -1;
+  }
+
+  // A lower bound on the moves needed to flood every region from the given set.
+  // A region d steps away from the flood can only be absorbed by a move of its color
+  // made d or more moves from now, so if k colors have a region at least d steps
+  // away, at least d - 1 + k moves are needed. This covers both the number of
+  // colors left and the distance to the farthest region.
+  int lowerBound(long[] flooded) {
+    // Searches outward from the flood one layer of regions at a time, keeping the
+    // distance of the farthest region of each color
+    Arrays.fill(this.farthest, 0);
+    System.arraycopy(flooded, 0, this.reached, 0, this.words);
+    this.neighborsOf(flooded, this.reached, this.layer);
+    int distance = 0;
+    boolean more = true;
+    while (more) {
+      distance++;
+      more = false;
+      for (int w = 0; w < this.words; w++) {
+        this.reached[w] |= this.layer[w];
+      }
+      for (int c = 0; c < Palette.SIZE; c++) {
+        for (int w = 0; w < this.words; w++) {
+          if ((this.colorSets[c][w] & this.layer[w]) != 0) {
+            this.farthest[c] = distance;
+            break;
+          }
+        }
+      }
+      this.neighborsOf(this.layer, this.reached, this.nextLayer);
+      long[] swap = this.layer;
+      this.layer = this.nextLayer;
+      this.nextLayer = swap;
+      for (int w = 0; w < this.words; w++) {
+        more = more || this.layer[w] != 0;
+      }
+    }
+
+    // Tries each color's farthest distance as d, counting the colors that reach it
+    int bound = 0;
+    for (int c = 0; c < Palette.SIZE; c++) {
+      int d = this.farthest[c];
+      if (d > 0) {
+        int k = 0;
+        for (int other = 0; other < Palette.SIZE; other++) {
+          if (this.farthest[other] >= d) {
+            k++;
+          }
+        }
+        bound = Math.max(bound, d - 1 + k);
+      }
+    }
+    return bound;
+  }
+
+  // The colors worth trying from the given set of flooded regions: just a completing
+  // color if there is one, otherwise every color next to the flooded regions
+  // Must be called after expand.
+  int[] candidates() {
+    int complete = this.completingColor();
+    if (complete >= 0) {
+      return new int[] {complete};
+    }
+    int count = 0;
+    int[] result = new int[Palette.SIZE];
+    for (int c = 0; c < Palette.SIZE; c++) {
+      if (this.children[c] != null) {
+        result[count] = c;
+        count++;
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+}
+
+// Picks the color that absorbs the most cells at every step, after any color that
+// can be cleared from the board completely
+class GreedySolver implements Solver {
+
+  // A sequence of moves that floods every region of the given graph
+  public Solution solve(RegionGraph graph) {
+    RegionMoves moves = new RegionMoves(graph);
+    long[] flooded = graph.startSet();
+    ArrayList<Integer> picked = new ArrayList<Integer>();
+    long expanded = 0;
+    while (!graph.isFull(flooded)) {
+      RegionMoves.stopIfInterrupted();
+      moves.expand(flooded);
+      expanded++;
+      int best = moves.completingColor();
+      if (best < 0) {
+        for (int c = 0; c < Palette.SIZE; c++) {
+          if (moves.children[c] != null && (best < 0 || moves.gain[c] > moves.gain[best])) {
+            best = c;
+          }
+        }
+      }
+      flooded = moves.children[best];
+      picked.add(best);
+    }
+
+    int[] result = new int[picked.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = picked.get(i);
+    }
+    return new Solution(result, false, expanded);
+  }
+}
+
+// Keeps the most promising sets of flooded regions at every depth, judged by the
+// lower bound on moves left and then by flooded cells, and stops at the first
+// depth that floods the whole board
+class BeamSolver implements Solver {
+  // the number of sets kept at every depth
+  int width;
+
+  BeamSolver(int width) {
+    this.width = width;
+  }
+
+  // A sequence of moves that floods every region of the given graph
+  public Solution solve(RegionGraph graph) {
+    RegionMoves moves = new RegionMoves(graph);
+    long[] start = graph.startSet();
+    ArrayList<SearchNode> layer = new ArrayList<SearchNode>();
+    layer.add(new SearchNode(start, 0, moves.lowerBound(start), graph.cellsIn(start), -1,
+        null));
+    long expanded = 0;
+
+    while (true) {
+      ArrayList<SearchNode> next = new ArrayList<SearchNode>();
+      HashSet<RegionSet> seen = new HashSet<RegionSet>();
+      for (SearchNode node : layer) {
+        if (node.cells == graph.cellCount) {
+          return new Solution(node.moves(), false, expanded);
+        }
+        RegionMoves.stopIfInterrupted();
+        moves.expand(node.flooded);
+        expanded++;
+        for (int c : moves.candidates()) {
+          long[] child = moves.children[c];
+          if (seen.add(new RegionSet(child))) {
+            next.add(new SearchNode(child, node.depth + 1, moves.lowerBound(child),
+                node.cells + moves.gain[c], c, node));
+          }
+        }
+      }
+      Collections.sort(next, new BeamOrder());
+      layer = new ArrayList<SearchNode>(next.subList(0, Math.min(this.width, next.size())));
+    }
+  }
+}
+
+// Orders nodes of one depth by fewest moves left at least, then by most cells flooded
+class BeamOrder implements Comparator<SearchNode> {
+  public int compare(SearchNode a, SearchNode b) {
+    if (a.estimate != b.estimate) {
+      return Integer.compare(a.estimate, b.estimate);
+    }
+    return Integer.compare(b.cells, a.cells);
+  }
+}
+
+// Orders nodes by smallest estimated solution length, breaking ties toward
+// deeper nodes since they are closer to a goal
+class EstimateOrder implements Comparator<SearchNode> {
+  public int compare(SearchNode a, SearchNode b) {
+    if (a.estimate != b.estimate) {
+      return Integer.compare(a.estimate, b.estimate);
+    }
+    return Integer.compare(b.depth, a.depth);
+  }
+}
+
+// Finds a shortest solution with A*. Estimates come from RegionMoves.lowerBound,
+// which never overestimates and drops by at most one per move, so the first goal
+// taken from the queue is optimal. Because of that, a new node can be queued with
+// its parent's estimate and only have its own bound worked out once it is taken
+// from the queue, which skips the bound for most nodes. A transposition table keyed
+// by flooded-region sets skips sets already reached in as few moves. A beam search
+// runs first, and only sets that could beat its solution are searched at all.
+class AStarSolver implements Solver {
+  // the number of expansions after which the search gives up and returns the
+  // beam search's solution, not known to be optimal
+  long maxNodes;
+
+  // the beam width used for the first solution
+  int beamWidth;
+
+  AStarSolver(long maxNodes, int beamWidth) {
+    this.maxNodes = maxNodes;
+    this.beamWidth = beamWidth;
+  }
+
+  // A shortest sequence of moves that floods every region of the given graph, or the
+  // best one found if the search runs out of nodes
+  public Solution solve(RegionGraph graph) {
+    Solution bound = new BeamSolver(this.beamWidth).solve(graph);
+    RegionMoves moves = new RegionMoves(graph);
+    long[] start = graph.startSet();
+    PriorityQueue<SearchNode> open = new PriorityQueue<SearchNode>(new EstimateOrder());
+    HashMap<RegionSet, Integer> bestDepth = new HashMap<RegionSet, Integer>();
+    open.add(new SearchNode(start, 0, moves.lowerBound(start), graph.cellsIn(start), -1,
+        null));
+    bestDepth.put(new RegionSet(start), 0);
+    long expanded = bound.nodesExpanded;
+
+    while (!open.isEmpty()) {
+      SearchNode node = open.poll();
+      if (node.cells == graph.cellCount) {
+        return new Solution(node.moves(), true, expanded);
+      }
+      if (!node.bounded) {
+        node.bounded = true;
+        int estimate = node.depth + moves.lowerBound(node.flooded);
+        if (estimate >= bound.length()) {
+          continue;
+        }
+        if (estimate > node.estimate) {
+          node.estimate = estimate;
+          open.add(node);
+          continue;
+        }
+      }
+      if (expanded >= this.maxNodes) {
+        return new Solution(bound.moves, false, expanded);
+      }
+
+      RegionMoves.stopIfInterrupted();
+      moves.expand(node.flooded);
+      expanded++;
+      for (int c : moves.candidates()) {
+        long[] child = moves.children[c];
+        int depth = node.depth + 1;
+        RegionSet key = new RegionSet(child);
+        Integer seen = bestDepth.get(key);
+        if (seen == null || depth < seen) {
+          bestDepth.put(key, depth);
+          SearchNode next = new SearchNode(child, depth, node.estimate,
+              node.cells + moves.gain[c], c, node);
+          next.bounded = false;
+          open.add(next);
+        }
+      }
+    }
+
+    // Nothing shorter than the beam search's solution exists
+    return new Solution(bound.moves, true, expanded);
+  }
+}
+
+// Examples of solvers
+class ExamplesSolver {
+
+  RegionGraph small;
+  RegionGraph medium;
+
+  void initData() {
+    // 4 columns, 3 rows:
+    // 0 0 1 2
+    // 1 1 1 2
+    // 2 0 1 0
+    PackedBoard board = new PackedBoard(4, 3);
+    int[] colors = {0, 0, 1, 2, 1, 1, 1, 2, 2, 0, 1, 0};
+    for (int i = 0; i < colors.length; i++) {
+      board.setColor(i, colors[i]);
+    }
+    this.small = RegionGraph.of(new FloodGame(board, new int[] {0, 1, 2}, 5));
+    this.medium = RegionGraph.of(FloodGame.newGame(8, 4, 7));
+  }
+
+  // Plays the given moves on a game and reports whether they flood the whole board
+  boolean floods(FloodGame game, int[] moves) {
+    for (int c : moves) {
+      game.play(c);
+    }
+    return game.isWon();
+  }
+
+  // tests the RegionMoves expand, completingColor and candidates methods
+  void testRegionMoves(Tester t) {
+    this.initData();
+    RegionMoves moves = new RegionMoves(this.small);
+    moves.expand(this.small.startSet());
+
+    t.checkExpect(moves.children[0], null);
+    t.checkExpect(moves.children[2], null);
+    t.checkExpect(moves.gain[1], 5);
+    t.checkExpect(moves.absorbed[1], 1);
+    t.checkExpect(moves.remaining, new int[] {2, 1, 2, 0, 0, 0});
+
+    // Color 1 has only one region and it is next to the flood
+    t.checkExpect(moves.completingColor(), 1);
+    t.checkExpect(moves.candidates(), new int[] {1});
+
+    // Each child's hash is the flood's with the absorbed regions' keys added
+    long start = this.small.regionKey[0];
+    moves.expand(this.small.startSet(), start);
+    t.checkExpect(moves.childHash[1], start ^ this.small.regionKey[1]);
+    t.checkExpect(moves.childHash[1], this.small.floodedHash(moves.children[1]));
+
+    moves.expand(moves.children[1]);
+    t.checkExpect(moves.gain[0], 2);
+    t.checkExpect(moves.gain[2], 3);
+    t.checkExpect(moves.completingColor(), 0);
+  }
+
+  // tests the lowerBound method
+  void testLowerBound(Tester t) {
+    this.initData();
+    RegionMoves moves = new RegionMoves(this.small);
+    long[] start = this.small.startSet();
+
+    // Three colors are left, and every region is within two moves
+    t.checkExpect(moves.lowerBound(start), 3);
+    long[] after = this.small.absorb(start, 1);
+    t.checkExpect(moves.lowerBound(after), 2);
+    long[] all = this.small.absorb(this.small.absorb(after, 0), 2);
+    t.checkExpect(moves.lowerBound(all), 0);
+  }
+
+  // tests the GreedySolver
+  void testGreedy(Tester t) {
+    this.initData();
+
+    Solution solution = new GreedySolver().solve(this.small);
+    t.checkExpect(solution.moves, new int[] {1, 0, 2});
+    t.checkExpect(solution.optimal, false);
+
+    Solution larger = new GreedySolver().solve(this.medium);
+    t.checkExpect(this.floods(FloodGame.newGame(8, 4, 7), larger.moves), true);
+  }
+
+  // tests the BeamSolver
+  void testBeam(Tester t) {
+    this.initData();
+
+    t.checkExpect(new BeamSolver(4).solve(this.small).length(), 3);
+    Solution larger = new BeamSolver(16).solve(this.medium);
+    t.checkExpect(this.floods(FloodGame.newGame(8, 4, 7), larger.moves), true);
+    t.checkExpect(larger.length() <= new GreedySolver().solve(this.medium).length(), true);
+  }
+
+  // tests the AStarSolver
+  void testAStar(Tester t) {
+    this.initData();
+
+    Solution solution = new AStarSolver(100000, 4).solve(this.small);
+    t.checkExpect(solution.length(), 3);
+    t.checkExpect(solution.optimal, true);
+
+    Solution larger = new AStarSolver(100000, 16).solve(this.medium);
+    t.checkExpect(larger.optimal, true);
+    t.checkExpect(this.floods(FloodGame.newGame(8, 4, 7), larger.moves), true);
+    t.checkExpect(larger.length() <= new BeamSolver(16).solve(this.medium).length(), true);
+
+    // Running out of nodes falls back to the beam search's solution
+    Solution limited = new AStarSolver(0, 16).solve(this.medium);
+    t.checkExpect(limited.length(), new BeamSolver(16).solve(this.medium).length());
+  }
+
+  // tests that every solver stops when its thread is interrupted
+  void testInterrupted(Tester t) {
+    this.initData();
+    Solver[] solvers = {new GreedySolver(), new BeamSolver(4), new AStarSolver(100000, 4)};
+    for (Solver solver : solvers) {
+      Thread.currentThread().interrupt();
+      t.checkException(new CancellationException("The solve was interrupted"),
+          solver, "solve", this.medium);
+      Thread.interrupted();
+    }
+    t.checkExpect(new GreedySolver().solve(this.small).length(), 3);
+  }
+
+  // tests that optimal solutions on 14x14 boards with 6 colors are no longer than the
+  // beam search's and actually flood the board
+  void testAStarFourteen(Tester t) {
+    for (int seed = 1; seed <= 3; seed++) {
+      RegionGraph graph = RegionGraph.of(FloodGame.newGame(14, 6, seed));
+      Solution optimal = new AStarSolver(2000000, 32).solve(graph);
+      t.checkExpect(optimal.optimal, true);
+      t.checkExpect(optimal.length() <= new BeamSolver(32).solve(graph).length(), true);
+      t.checkExpect(this.floods(FloodGame.newGame(14, 6, seed), optimal.moves), true);
+    }
+  }
+
+}
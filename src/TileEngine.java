@@ -0,0 +1,411 @@
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// Floods a TiledBoard a tile at a time, with the same row bitboards as a
+// BitboardEngine inside each tile. A spread grows every tile with flooded cells and
+// every tile next to one, then any tile whose flood reached one of its edges passes
+// that on to the tile across it, which grows in turn, until no tile changes. Tiles
+// the flood has not come near are never made, so the work and memory of a move
+// grow with the edge of the flood rather than the area of the board.
+class TileEngine implements FloodEngine {
+  // the board being flooded
+  TiledBoard board;
+
+  // the tiles waiting to grow during a spread, in a ring, and whether each one is
+  // waiting already
+  int[] queue;
+  boolean[] queued;
+  int head;
+  int waiting;
+
+  // scratch space for the flooded rows of a tile as it grows, and the cells of the
+  // new color they may grow into
+  long[] rows = new long[TiledBoard.TILE];
+  long[] mask = new long[TiledBoard.TILE];
+
+  // the color index the flooded region currently has
+  int floodColor;
+
+  // the XOR of the Zobrist keys of the flooded cells
+  long floodedHash;
+
+  TileEngine(TiledBoard board) {
+    this.board = board;
+    this.queue = new int[board.tiles.length];
+    this.queued = new boolean[board.tiles.length];
+  }
+
+  // Copies the state of another engine onto a copy of its board
+  TileEngine(TiledBoard board, TileEngine other) {
+    this(board);
+    this.floodColor = other.floodColor;
+    this.floodedHash = other.floodedHash;
+  }
+
+  // Floods the top-left cell and every cell connected to it by its color, returning
+  // the number of cells flooded
+  // EFFECT: floods cells on the board, making the tiles they are in
+  public int start() {
+    this.board.flood(0);
+    this.floodedHash = Zobrist.cellKey(0);
+    this.floodColor = this.board.colorAt(0);
+    return 1 + this.spread(this.floodColor);
+  }
+
+  // Changes the flood color and absorbs every unflooded cell of that color that is
+  // connected to the flooded region, returning the number of cells absorbed. Tiles
+  // with nothing flooded in or next to them are dropped afterwards.
+  // EFFECT: floods cells on the board, making and dropping tiles
+  public int spread(int color) {
+    for (int t = 0; t < this.board.tiles.length; t++) {
+      if (this.board.hasFlooded(t)) {
+        this.enqueue(t);
+        this.enqueueAround(t);
+      }
+    }
+    int absorbed = 0;
+    while (this.waiting > 0) {
+      int t = this.queue[this.head];
+      this.head = (this.head + 1) % this.queue.length;
+      this.waiting--;
+      this.queued[t] = false;
+      absorbed += this.growTile(t, color);
+    }
+    this.floodColor = color;
+    this.board.trim();
+    return absorbed;
+  }
+
+  // Puts the given tile in line to grow, unless it is already or is all flooded
+  // EFFECT: may add the tile to the queue
+  void enqueue(int t) {
+    if (!this.queued[t] && this.board.tiles[t] != BoardTile.FLOODED) {
+      this.queued[t] = true;
+      this.queue[(this.head + this.waiting) % this.queue.length] = t;
+      this.waiting++;
+    }
+  }
+
+  // Puts the tiles beside, above and below the given one in line to grow
+  // EFFECT: may add tiles to the queue
+  void enqueueAround(int t) {
+    int tx = t % this.board.tilesWide;
+    int ty = t / this.board.tilesWide;
+    if (tx > 0) {
+      this.enqueue(t - 1);
+    }
+    if (tx < this.board.tilesWide - 1) {
+      this.enqueue(t + 1);
+    }
+    if (ty > 0) {
+      this.enqueue(t - this.board.tilesWide);
+    }
+    if (ty < this.board.tilesHigh - 1) {
+      this.enqueue(t + this.board.tilesWide);
+    }
+  }
+
+  // Grows the flood of the given tile into the given color, starting from its own
+  // flooded cells and the flooded cells across its edges, and returns the number
+  // of cells absorbed. Tiles across an edge the flood reached are put in line.
+  // EFFECT: floods cells of the tile, and may make it or swap it for FLOODED
+  int growTile(int t, int color) {
+    BoardTile tile = this.board.tile(t);
+    int height = this.board.rowsIn(t);
+    long rowMask = this.board.rowMask(t);
+    for (int y = 0; y < height; y++) {
+      this.mask[y] = tile.rowOf(color, y) & rowMask & ~tile.flooded[y];
+      this.rows[y] = tile.flooded[y] | (this.flowingIn(t, y, height) & this.mask[y]);
+    }
+    this.growAll(height);
+
+    int absorbed = 0;
+    int corner = this.board.cornerOf(t);
+    long lastColumn = 1L << (this.board.columnsIn(t) - 1);
+    int tx = t % this.board.tilesWide;
+    int ty = t / this.board.tilesWide;
+    for (int y = 0; y < height; y++) {
+      long added = this.rows[y] & ~tile.flooded[y];
+      if (added == 0) {
+        continue;
+      }
+      tile.flooded[y] = this.rows[y];
+      absorbed += Long.bitCount(added);
+      if ((added & 1) != 0 && tx > 0) {
+        this.enqueue(t - 1);
+      }
+      if ((added & lastColumn) != 0 && tx < this.board.tilesWide - 1) {
+        this.enqueue(t + 1);
+      }
+      if (y == 0 && ty > 0) {
+        this.enqueue(t - this.board.tilesWide);
+      }
+      if (y == height - 1 && ty < this.board.tilesHigh - 1) {
+        this.enqueue(t + this.board.tilesWide);
+      }
+      while (added != 0) {
+        this.floodedHash ^= Zobrist.cellKey(corner + y * this.board.width
+            + Long.numberOfTrailingZeros(added));
+        added &= added - 1;
+      }
+    }
+    tile.floodedCount += absorbed;
+    this.board.settle(t);
+    return absorbed;
+  }
+
+  // The cells of the given row of the given tile, of the given height, that are
+  // next to a flooded cell of another tile, as bits. Only tiles on the right and
+  // bottom edges are cut short, so the tiles to the left and above are whole.
+  long flowingIn(int t, int y, int height) {
+    int tx = t % this.board.tilesWide;
+    int ty = t / this.board.tilesWide;
+    long edge = 0;
+    if (tx > 0) {
+      edge |= this.board.floodedRow(t - 1, y) >>> (TiledBoard.TILE - 1);
+    }
+    if (tx < this.board.tilesWide - 1) {
+      edge |= this.board.floodedRow(t + 1, y) << (TiledBoard.TILE - 1);
+    }
+    if (y == 0 && ty > 0) {
+      edge |= this.board.floodedRow(t - this.board.tilesWide, TiledBoard.TILE - 1);
+    }
+    if (y == height - 1 && ty < this.board.tilesHigh - 1) {
+      edge |= this.board.floodedRow(t + this.board.tilesWide, 0);
+    }
+    return edge;
+  }
+
+  // Grows this.rows into the connected cells of this.mask over the given number of
+  // rows, sweeping down and then up until a pair of sweeps changes nothing
+  // EFFECT: updates this.rows
+  void growAll(int height) {
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int y = 0; y < height; y++) {
+        changed = this.grow(y, height) || changed;
+      }
+      for (int y = height - 2; y >= 0; y--) {
+        changed = this.grow(y, height) || changed;
+      }
+    }
+  }
+
+  // Grows the flooded cells of the given row into the cells of the mask next to
+  // them, in this row or the rows above and below, returning true if it changed
+  // EFFECT: updates the row in this.rows
+  boolean grow(int y, int height) {
+    long row = this.rows[y];
+    long reach = (row << 1) | (row >>> 1);
+    if (y > 0) {
+      reach |= this.rows[y - 1];
+    }
+    if (y < height - 1) {
+      reach |= this.rows[y + 1];
+    }
+    long grown = row | (reach & this.mask[y]);
+
+    // Runs of the color along the row fill in one bit further each time
+    long last = row;
+    while (grown != last) {
+      last = grown;
+      grown |= ((grown << 1) | (grown >>> 1)) & this.mask[y];
+    }
+    this.rows[y] = grown;
+    return grown != row;
+  }
+
+  // The number of flooded cells next to a cell that is not flooded, counted a row
+  // of a tile at a time, looking across the edges of tiles
+  int frontier() {
+    int count = 0;
+    TiledBoard board = this.board;
+    for (int t = 0; t < board.tiles.length; t++) {
+      if (!board.hasFlooded(t)) {
+        continue;
+      }
+      int tx = t % board.tilesWide;
+      int ty = t / board.tilesWide;
+      int height = board.rowsIn(t);
+      long rowMask = board.rowMask(t);
+      for (int y = 0; y < height; y++) {
+        long row = board.floodedRow(t, y);
+        long open = ~row & rowMask;
+        long near = (open << 1) | (open >>> 1);
+        if (tx > 0) {
+          near |= ~board.floodedRow(t - 1, y) >>> (TiledBoard.TILE - 1);
+        }
+        if (tx < board.tilesWide - 1) {
+          near |= ~board.floodedRow(t + 1, y) << (TiledBoard.TILE - 1);
+        }
+        if (y > 0) {
+          near |= ~board.floodedRow(t, y - 1);
+        }
+        else if (ty > 0) {
+          near |= ~board.floodedRow(t - board.tilesWide, TiledBoard.TILE - 1);
+        }
+        if (y < height - 1) {
+          near |= ~board.floodedRow(t, y + 1);
+        }
+        else if (ty < board.tilesHigh - 1) {
+          near |= ~board.floodedRow(t + board.tilesWide, 0);
+        }
+        count += Long.bitCount(row & near & rowMask);
+      }
+    }
+    return count;
+  }
+
+  // Works out what spreading every color would do by spreading it on a copy of the
+  // board, which shares the colors of its tiles and copies only their flooded rows
+  // EFFECT: fills in into
+  public void evaluateMoves(MoveEvaluation into) {
+    int frontier = this.frontier();
+    for (int c = 0; c < Palette.SIZE; c++) {
+      into.gain[c] = 0;
+      into.frontier[c] = frontier;
+      if (c == this.floodColor || c >= this.board.numColors) {
+        continue;
+      }
+      TileEngine trial = new TileEngine(new TiledBoard(this.board), this);
+      into.gain[c] = trial.spread(c);
+      if (into.gain[c] > 0) {
+        into.frontier[c] = trial.frontier();
+      }
+    }
+  }
+
+  // The color index the flooded region currently has
+  public int floodColor() {
+    return this.floodColor;
+  }
+
+  // A copy of this engine flooding the given copy of its board, which must be a
+  // TiledBoard
+  public FloodEngine copyOnto(Board board) {
+    if (!(board instanceof TiledBoard)) {
+      throw new IllegalArgumentException("Tile engines flood only tiled boards");
+    }
+    return new TileEngine((TiledBoard) board, this);
+  }
+
+  // The XOR of the Zobrist keys of every flooded cell
+  public long floodedHash() {
+    return this.floodedHash;
+  }
+
+}
+
+// Examples of flooding a tile at a time
+class ExamplesTileEngine {
+
+  // tests the start and spread methods on a board that fits in one tile
+  void testSpread(Tester t) {
+    TiledBoard board = new TiledBoard(8, 6, 5, 3);
+    PackedBoard whole = BoardGenerator.generate(8, 6, 5, 3);
+    TileEngine engine = new TileEngine(board);
+    FrontierEngine cells = new FrontierEngine(whole);
+    t.checkExpect(engine.start(), cells.start());
+    t.checkExpect(engine.floodColor(), whole.colorAt(0));
+    t.checkExpect(engine.spread(1), cells.spread(1));
+    t.checkExpect(engine.spread(2), cells.spread(2));
+    t.checkExpect(engine.floodedHash(), cells.floodedHash());
+    boolean same = true;
+    for (int i = 0; i < 30; i++) {
+      same = same && board.isFlooded(i) == whole.isFlooded(i);
+    }
+    t.checkExpect(same, true);
+  }
+
+  // tests that floods cross between tiles every way, against the frontier engine on
+  // boards of two colors, whose floods wind in and out of every tile
+  void testCrossTiles(Tester t) {
+    for (int seed = 0; seed < 4; seed++) {
+      TiledBoard board = new TiledBoard(seed, 130, 70, 2);
+      PackedBoard whole = BoardGenerator.generate(seed, 130, 70, 2);
+      TileEngine engine = new TileEngine(board);
+      FrontierEngine cells = new FrontierEngine(whole);
+      boolean same = engine.start() == cells.start();
+      for (int move = 0; move < 6; move++) {
+        same = same && engine.spread(1 - move % 2) == cells.spread(1 - move % 2);
+      }
+      for (int i = 0; i < 130 * 70; i++) {
+        same = same && board.isFlooded(i) == whole.isFlooded(i);
+      }
+      t.checkExpect(same, true);
+      t.checkExpect(engine.floodedHash(), cells.floodedHash());
+    }
+  }
+
+  // tests that whole games flood the same cells and evaluate every move the same
+  // way as the frontier engine, on boards with tiles cut short by the edges
+  void testMatchesFrontier(Tester t) {
+    MoveEvaluation tiled = new MoveEvaluation();
+    MoveEvaluation cells = new MoveEvaluation();
+    int[][] sizes = {{64, 64}, {65, 3}, {100, 130}};
+    for (int[] size : sizes) {
+      for (int seed = 0; seed < 3; seed++) {
+        PackedBoard whole = BoardGenerator.generate(seed, size[0], size[1], 4);
+        FloodGame byFrontier = new FloodGame(whole, BoardGenerator.CANONICAL, 0);
+        FloodGame byTiles = FloodGame.newTiledGame(size[0], size[1], 4, seed);
+        byTiles.checkFloodedCount = true;
+
+        Random rand = new Random(seed);
+        boolean same = byTiles.floodedCount == byFrontier.floodedCount;
+        while (!byFrontier.isWon()) {
+          byFrontier.evaluateMoves(cells);
+          byTiles.evaluateMoves(tiled);
+          same = same && Arrays.equals(tiled.gain, cells.gain)
+              && Arrays.equals(tiled.frontier, cells.frontier);
+          int color = rand.nextInt(4);
+          same = same && byTiles.play(color) == byFrontier.play(color);
+        }
+        t.checkExpect(same, true);
+        t.checkExpect(byTiles.isWon(), true);
+        t.checkExpect(byTiles.engine.floodedHash(), byFrontier.engine.floodedHash());
+        t.checkExpect(byTiles.stateHash(), Zobrist.stateHash(
+            ((TiledBoard) byTiles.board).boardKey(), byFrontier.engine.floodedHash(),
+            byFrontier.floodColor()));
+        t.checkExpect(((TiledBoard) byTiles.board).liveTiles(), 0);
+      }
+    }
+  }
+
+  // tests that snapshots flood copies of the board, apart from the game they came
+  // from
+  void testCopyOnto(Tester t) {
+    FloodGame game = FloodGame.newTiledGame(70, 70, 3, 11);
+    game.play(1);
+    FloodGame copy = game.snapshot();
+    t.checkExpect(copy.board instanceof TiledBoard, true);
+    t.checkExpect(copy.stateHash(), game.stateHash());
+    copy.play(2);
+    t.checkExpect(copy.floodedCount > game.floodedCount, true);
+    t.checkExpect(game.engine.floodColor(), 1);
+    t.checkExpect(copy.stateHash() == game.stateHash(), false);
+    t.checkException(new IllegalArgumentException("Tile engines flood only tiled boards"),
+        game.engine, "copyOnto", new PackedBoard(70, 70));
+  }
+
+  // tests that a game on a 5000 x 5000 board keeps only the tiles along the edge of
+  // its flood
+  void testEndurance(Tester t) {
+    FloodGame game = FloodGame.newTiledGame(5000, 5000, 6, 3);
+    TiledBoard board = (TiledBoard) game.board;
+
+    // The state is hashed from the board's key, without reading its 25 million colors
+    game.stateHash();
+    t.checkExpect(game.boardKey, board.boardKey());
+
+    MoveEvaluation moves = new MoveEvaluation();
+    for (int i = 0; i < 40; i++) {
+      game.play(game.evaluateMoves(moves).best(game.colors, game.floodColor()));
+    }
+    t.checkExpect(game.floodedCount > 500, true);
+    t.checkExpect(board.liveTiles() < 20, true);
+    t.checkExpect(board.tiles.length, 79 * 79);
+  }
+
+}
@@ -0,0 +1,412 @@
+import tester.Tester;
+
+// A board too big to hold whole, made of square tiles of TILE x TILE cells that are
+// only made when something needs them. Colors come from the seed, the same ones
+// BoardGenerator gives a board of this size, so a tile can be made again from the
+// seed at any time. A tile holds its colors packed into bit planes and one long of
+// flooded cells per row. A tile whose every cell is flooded is swapped for the
+// shared BoardTile.FLOODED marker, and trim() drops tiles with nothing flooded in
+// or next to them, so the tiles kept are the ones along the edge of the flood.
+class TiledBoard implements Board {
+  // the number of cells along a side of a tile, one per bit of a long
+  static final int TILE = 64;
+
+  // the number of columns and rows
+  int width;
+  int height;
+
+  // the seed and number of colors the board is made from
+  long seed;
+  int numColors;
+
+  // the number of tiles across and down; tiles on the right and bottom edges may
+  // be cut short by the edge of the board
+  int tilesWide;
+  int tilesHigh;
+
+  // every tile, row by row: null if it has not been made, or has been dropped
+  BoardTile[] tiles;
+
+  // the number of times a tile has been made from the seed
+  int tilesMade;
+
+  // A width x height board with colors 0 up to numColors, made from the seed
+  TiledBoard(long seed, int width, int height, int numColors) {
+    BoardGenerator.checkColors(numColors);
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("A board needs at least one column and one row");
+    }
+    if ((long) width * height > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("A board can have at most " + Integer.MAX_VALUE
+          + " cells");
+    }
+    this.seed = seed;
+    this.width = width;
+    this.height = height;
+    this.numColors = numColors;
+    this.tilesWide = (width + TILE - 1) / TILE;
+    this.tilesHigh = (height + TILE - 1) / TILE;
+    this.tiles = new BoardTile[this.tilesWide * this.tilesHigh];
+  }
+
+  // A copy of another board, with its own flooded cells; the colors of its tiles
+  // never change, so they are shared
+  TiledBoard(TiledBoard other) {
+    this(other.seed, other.width, other.height, other.numColors);
+    for (int t = 0; t < this.tiles.length; t++) {
+      BoardTile tile = other.tiles[t];
+      if (tile == null || tile == BoardTile.FLOODED) {
+        this.tiles[t] = tile;
+      }
+      else {
+        this.tiles[t] = new BoardTile(tile.planes, tile.flooded.clone(), tile.floodedCount);
+      }
+    }
+  }
+
+  // The number of columns
+  public int width() {
+    return this.width;
+  }
+
+  // The number of rows
+  public int height() {
+    return this.height;
+  }
+
+  // The color index of the cell at the given index, from the seed, without making
+  // its tile
+  public int colorAt(int index) {
+    return BoardGenerator.colorOf(this.seed, this.numColors, BoardGenerator.CANONICAL, index);
+  }
+
+  // The key of this board's colors in state hashes. Every color follows from the
+  // seed and the number of colors, so together with the size they stand in for the
+  // fingerprint of the colors, which would look at every cell.
+  long boardKey() {
+    long size = ((long) this.width << 32) | this.height;
+    return BoardGenerator.mix(BoardGenerator.mix(this.seed ^ size) + this.numColors);
+  }
+
+  // Tiled boards are colored from their seed and cannot be changed
+  public void setColor(int index, int color) {
+    throw new UnsupportedOperationException("A tiled board is colored from its seed");
+  }
+
+  // True if the cell at the given index has been flooded
+  public boolean isFlooded(int index) {
+    int t = this.tileOf(index);
+    int y = (index / this.width) % TILE;
+    return (this.floodedRow(t, y) >>> ((index % this.width) % TILE) & 1) != 0;
+  }
+
+  // Marks the cell at the given index flooded, making its tile if needed
+  // EFFECT: sets the cell's flooded bit, and may swap its tile for FLOODED
+  public void flood(int index) {
+    int t = this.tileOf(index);
+    BoardTile tile = this.tile(t);
+    if (tile == BoardTile.FLOODED) {
+      return;
+    }
+    int y = (index / this.width) % TILE;
+    long bit = 1L << ((index % this.width) % TILE);
+    if ((tile.flooded[y] & bit) == 0) {
+      tile.flooded[y] |= bit;
+      tile.floodedCount++;
+      this.settle(t);
+    }
+  }
+
+  // The tile holding the cell at the given index
+  int tileOf(int index) {
+    return (index / this.width / TILE) * this.tilesWide + (index % this.width) / TILE;
+  }
+
+  // The index of the top left cell of the given tile
+  int cornerOf(int t) {
+    return (t / this.tilesWide) * TILE * this.width + (t % this.tilesWide) * TILE;
+  }
+
+  // The number of columns of the given tile that are on the board
+  int columnsIn(int t) {
+    return Math.min(TILE, this.width - (t % this.tilesWide) * TILE);
+  }
+
+  // The number of rows of the given tile that are on the board
+  int rowsIn(int t) {
+    return Math.min(TILE, this.height - (t / this.tilesWide) * TILE);
+  }
+
+  // The bits of a row of the given tile that are on the board
+  long rowMask(int t) {
+    int columns = this.columnsIn(t);
+    return columns == TILE ? -1L : (1L << columns) - 1;
+  }
+
+  // The given tile, made from the seed first if it is not there
+  // EFFECT: may make the tile
+  BoardTile tile(int t) {
+    if (this.tiles[t] == null) {
+      this.tiles[t] = this.makeTile(t);
+      this.tilesMade++;
+    }
+    return this.tiles[t];
+  }
+
+  // A new tile for the given place on the board, with its colors packed from the
+  // seed and nothing flooded
+  BoardTile makeTile(int t) {
+    BoardTile tile = new BoardTile(new long[BoardTile.PLANES * TILE], new long[TILE], 0);
+    int corner = this.cornerOf(t);
+    for (int y = 0; y < this.rowsIn(t); y++) {
+      for (int x = 0; x < this.columnsIn(t); x++) {
+        tile.setColor(x, y, this.colorAt(corner + y * this.width + x));
+      }
+    }
+    return tile;
+  }
+
+  // The flooded cells of the given row of the given tile, as bits, without making it
+  long floodedRow(int t, int y) {
+    BoardTile tile = this.tiles[t];
+    if (tile == null) {
+      return 0;
+    }
+    if (tile == BoardTile.FLOODED) {
+      return this.rowMask(t);
+    }
+    return tile.flooded[y];
+  }
+
+  // True if the given tile has any flooded cells
+  boolean hasFlooded(int t) {
+    BoardTile tile = this.tiles[t];
+    return tile != null && (tile == BoardTile.FLOODED || tile.floodedCount > 0);
+  }
+
+  // Swaps the given tile for FLOODED if every one of its cells is flooded
+  // EFFECT: may replace the tile
+  void settle(int t) {
+    if (this.tiles[t].floodedCount == this.columnsIn(t) * this.rowsIn(t)) {
+      this.tiles[t] = BoardTile.FLOODED;
+    }
+  }
+
+  // Drops every tile with no flooded cells that is not next to a tile with some,
+  // since it can be made again from the seed when the flood comes near
+  // EFFECT: sets those tiles back to null
+  void trim() {
+    for (int t = 0; t < this.tiles.length; t++) {
+      BoardTile tile = this.tiles[t];
+      if (tile != null && tile != BoardTile.FLOODED && tile.floodedCount == 0
+          && !this.nearFlood(t)) {
+        this.tiles[t] = null;
+      }
+    }
+  }
+
+  // True if a tile beside, above or below the given one has flooded cells
+  boolean nearFlood(int t) {
+    int tx = t % this.tilesWide;
+    int ty = t / this.tilesWide;
+    return (tx > 0 && this.hasFlooded(t - 1))
+        || (tx < this.tilesWide - 1 && this.hasFlooded(t + 1))
+        || (ty > 0 && this.hasFlooded(t - this.tilesWide))
+        || (ty < this.tilesHigh - 1 && this.hasFlooded(t + this.tilesWide));
+  }
+
+  // The number of tiles holding cells of their own, which is what the board's size
+  // in memory grows with
+  int liveTiles() {
+    int count = 0;
+    for (BoardTile tile : this.tiles) {
+      if (tile != null && tile != BoardTile.FLOODED) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
+
+// The cells of one tile of a TiledBoard. Colors are packed into PLANES bit planes:
+// bit x of planes[b * TILE + y] is bit b of the color index of column x, row y.
+// Flooded cells are one long per row, like the rows of a BitboardEngine.
+class BoardTile {
+  // the number of bits a color index takes, enough for every palette index
+  static final int PLANES = 3;
+
+  // the marker for a tile whose every cell is flooded, which needs no cells
+  static final BoardTile FLOODED = new BoardTile(null, null, 0);
+
+  // the colors, packed into bit planes, and the flooded cells row by row
+  long[] planes;
+  long[] flooded;
+
+  // the number of flooded cells
+  int floodedCount;
+
+  BoardTile(long[] planes, long[] flooded, int floodedCount) {
+    this.planes = planes;
+    this.flooded = flooded;
+    this.floodedCount = floodedCount;
+  }
+
+  // Packs the color index of the given cell into the planes, which must not have
+  // been given a color for it yet
+  // EFFECT: sets the cell's bits in the planes
+  void setColor(int x, int y, int color) {
+    for (int b = 0; b < PLANES; b++) {
+      if ((color >> b & 1) != 0) {
+        this.planes[b * TiledBoard.TILE + y] |= 1L << x;
+      }
+    }
+  }
+
+  // The cells of the given row that have the given color index, as bits; bits past
+  // the edge of the board hold color 0
+  long rowOf(int color, int y) {
+    long row = -1L;
+    for (int b = 0; b < PLANES; b++) {
+      long plane = this.planes[b * TiledBoard.TILE + y];
+      row &= (color >> b & 1) != 0 ? plane : ~plane;
+    }
+    return row;
+  }
+}
+
+// Examples of tiled boards
+class ExamplesTiledBoard {
+
+  // tests the constructor
+  void testConstructor(Tester t) {
+    t.checkConstructorException(
+        new IllegalArgumentException("A board needs at least one column and one row"),
+        "TiledBoard", 5L, 0, 10, 3);
+    t.checkConstructorException(
+        new IllegalArgumentException("A board can have at most " + Integer.MAX_VALUE
+            + " cells"),
+        "TiledBoard", 5L, 100000, 100000, 3);
+    t.checkConstructorException(
+        new IllegalArgumentException("Number of colors must be between 1 and 6"),
+        "TiledBoard", 5L, 10, 10, 7);
+
+    TiledBoard board = new TiledBoard(5, 5000, 5000, 6);
+    t.checkExpect(board.tiles.length, 79 * 79);
+    t.checkExpect(board.liveTiles(), 0);
+  }
+
+  // tests the tileOf, cornerOf, columnsIn, rowsIn and rowMask methods
+  void testTiles(Tester t) {
+    // 2 tiles across and 2 down, the right ones 36 columns and the bottom ones 6 rows
+    TiledBoard board = new TiledBoard(5, 100, 70, 4);
+    t.checkExpect(board.tilesWide, 2);
+    t.checkExpect(board.tilesHigh, 2);
+    t.checkExpect(board.tileOf(0), 0);
+    t.checkExpect(board.tileOf(63), 0);
+    t.checkExpect(board.tileOf(64), 1);
+    t.checkExpect(board.tileOf(64 * 100 + 3), 2);
+    t.checkExpect(board.tileOf(69 * 100 + 99), 3);
+    t.checkExpect(board.cornerOf(3), 64 * 100 + 64);
+    t.checkExpect(board.columnsIn(0), 64);
+    t.checkExpect(board.columnsIn(3), 36);
+    t.checkExpect(board.rowsIn(1), 64);
+    t.checkExpect(board.rowsIn(2), 6);
+    t.checkExpect(board.rowMask(0), -1L);
+    t.checkExpect(board.rowMask(1), (1L << 36) - 1);
+  }
+
+  // tests that colors match the board BoardGenerator makes, both read from the seed
+  // and packed into tiles
+  void testColors(Tester t) {
+    TiledBoard board = new TiledBoard(17, 100, 70, 5);
+    PackedBoard whole = BoardGenerator.generate(17, 100, 70, 5);
+    boolean same = true;
+    for (int i = 0; i < 100 * 70; i++) {
+      int tile = board.tileOf(i);
+      int x = (i % 100) % TiledBoard.TILE;
+      int y = (i / 100) % TiledBoard.TILE;
+      same = same && board.colorAt(i) == whole.colorAt(i)
+          && (board.tile(tile).rowOf(whole.colorAt(i), y) >>> x & 1) == 1;
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(board.tilesMade, 4);
+    t.checkException(new UnsupportedOperationException("A tiled board is colored from its seed"),
+        board, "setColor", 0, 1);
+  }
+
+  // tests the flood, isFlooded, floodedRow and settle methods
+  void testFlood(Tester t) {
+    TiledBoard board = new TiledBoard(3, 66, 2, 3);
+    t.checkExpect(board.isFlooded(65), false);
+    t.checkExpect(board.tilesMade, 0);
+
+    board.flood(65);
+    board.flood(65);
+    t.checkExpect(board.isFlooded(65), true);
+    t.checkExpect(board.isFlooded(64), false);
+    t.checkExpect(board.tiles[1].floodedCount, 1);
+    t.checkExpect(board.floodedRow(1, 0), 2L);
+    t.checkExpect(board.floodedRow(0, 0), 0L);
+
+    // The right tile has only 4 cells, so flooding them all collapses it
+    board.flood(64);
+    board.flood(130);
+    board.flood(131);
+    t.checkExpect(board.tiles[1], BoardTile.FLOODED);
+    t.checkExpect(board.floodedRow(1, 1), 3L);
+    t.checkExpect(board.isFlooded(130), true);
+    board.flood(131);
+    t.checkExpect(board.liveTiles(), 0);
+  }
+
+  // tests the trim and nearFlood methods
+  void testTrim(Tester t) {
+    TiledBoard board = new TiledBoard(3, 200, 64, 3);
+    for (int i = 0; i < 4; i++) {
+      board.tile(i);
+    }
+    board.flood(0);
+    t.checkExpect(board.nearFlood(1), true);
+    t.checkExpect(board.nearFlood(2), false);
+    board.trim();
+    t.checkExpect(board.tiles[0] != null, true);
+    t.checkExpect(board.tiles[1] != null, true);
+    t.checkExpect(board.tiles[2], null);
+    t.checkExpect(board.tiles[3], null);
+    t.checkExpect(board.liveTiles(), 2);
+
+    // A dropped tile is made again the same
+    BoardTile again = board.tile(2);
+    t.checkExpect(again.planes, board.makeTile(2).planes);
+    t.checkExpect(board.tilesMade, 5);
+  }
+
+  // tests the copy constructor
+  void testCopy(Tester t) {
+    TiledBoard board = new TiledBoard(3, 66, 2, 3);
+    board.flood(0);
+    board.flood(64);
+    board.flood(65);
+    board.flood(130);
+    board.flood(131);
+    TiledBoard copy = new TiledBoard(board);
+    t.checkExpect(copy.tiles[1], BoardTile.FLOODED);
+    t.checkExpect(copy.tiles[0].planes == board.tiles[0].planes, true);
+
+    copy.flood(1);
+    t.checkExpect(copy.isFlooded(1), true);
+    t.checkExpect(board.isFlooded(1), false);
+    t.checkExpect(board.tiles[0].floodedCount, 1);
+  }
+
+  // tests the boardKey method
+  void testBoardKey(Tester t) {
+    TiledBoard board = new TiledBoard(3, 100, 130, 4);
+    t.checkExpect(board.boardKey(), new TiledBoard(3, 100, 130, 4).boardKey());
+    t.checkExpect(board.boardKey() == new TiledBoard(4, 100, 130, 4).boardKey(), false);
+    t.checkExpect(board.boardKey() == new TiledBoard(3, 130, 100, 4).boardKey(), false);
+    t.checkExpect(board.boardKey() == new TiledBoard(3, 100, 130, 5).boardKey(), false);
+    t.checkExpect(board.tilesMade, 0);
+  }
+
+}
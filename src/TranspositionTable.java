@@ -0,0 +1,268 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import tester.Tester;
+
+// A bounded table from 64-bit state hashes to values, read and written without
+// locks. Its only user is HintSearch: every hint search shares HintEngine.TABLE,
+// one search at a time on the hint thread, while the solvers keep maps of their
+// own. Slots are grouped in buckets of WAYS, and a hash can only live in its own
+// bucket. A slot holds its value and its hash XORed with its value, written one
+// after the other; a reader only trusts a slot whose two words agree, so a slot two
+// threads wrote at once is a miss, never a wrong value. A full bucket makes room
+// with the clock policy: every hit marks its slot referenced, and the bucket's hand
+// sweeps past referenced slots, unmarking them, to evict the first one that has not
+// been used since the hand last went by.
+class TranspositionTable {
+  // the number of slots in a bucket
+  static final int WAYS = 4;
+
+  // what get returns for a hash that is not in the table
+  static final long MISSING = -1;
+
+  // the bit that marks a slot in use; values must leave it clear
+  static final long PRESENT = Long.MIN_VALUE;
+
+  // the value of every slot with PRESENT set, or 0 for an empty slot, and the hash
+  // of every slot XORed with that
+  AtomicLongArray values;
+  AtomicLongArray checks;
+
+  // whether each slot has been hit since the clock hand last passed it, and the
+  // next slot each bucket's hand looks at. Both are only hints for eviction, so
+  // threads read and write them without synchronizing.
+  boolean[] referenced;
+  byte[] hands;
+
+  // the bucket of a hash is its low bits
+  int bucketMask;
+
+  // A table of at least the given number of slots, rounded up to a power of two
+  TranspositionTable(int capacity) {
+    int needed = Math.max((capacity + WAYS - 1) / WAYS, 1);
+    int buckets = needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+    this.bucketMask = buckets - 1;
+    this.values = new AtomicLongArray(buckets * WAYS);
+    this.checks = new AtomicLongArray(buckets * WAYS);
+    this.referenced = new boolean[buckets * WAYS];
+    this.hands = new byte[buckets];
+  }
+
+  // The first slot of the bucket the given hash lives in
+  int bucketStart(long hash) {
+    return ((int) (hash ^ (hash >>> 32)) & this.bucketMask) * WAYS;
+  }
+
+  // The value stored for the given hash, or MISSING
+  // EFFECT: marks the slot referenced on a hit
+  long get(long hash) {
+    int start = this.bucketStart(hash);
+    for (int slot = start; slot < start + WAYS; slot++) {
+      long value = this.values.get(slot);
+      if (value != 0 && (this.checks.get(slot) ^ value) == hash) {
+        this.referenced[slot] = true;
+        return value & ~PRESENT;
+      }
+    }
+    return MISSING;
+  }
+
+  // Stores the given value, which must not be negative, for the given hash. The
+  // hash's own slot is overwritten if it has one, then an empty slot is used, and
+  // otherwise the clock picks a slot to evict.
+  // EFFECT: writes a slot of the hash's bucket and may move the bucket's hand
+  void put(long hash, long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Values must not be negative");
+    }
+    int start = this.bucketStart(hash);
+    int target = -1;
+    for (int slot = start; slot < start + WAYS && target < 0; slot++) {
+      long current = this.values.get(slot);
+      if (current != 0 && (this.checks.get(slot) ^ current) == hash) {
+        target = slot;
+      }
+    }
+    for (int slot = start; slot < start + WAYS && target < 0; slot++) {
+      if (this.values.get(slot) == 0) {
+        target = slot;
+      }
+    }
+    if (target < 0) {
+      target = this.evict(start);
+    }
+    long stored = value | PRESENT;
+    this.values.set(target, stored);
+    this.checks.set(target, hash ^ stored);
+    this.referenced[target] = false;
+  }
+
+  // The slot of the full bucket starting at the given slot that the clock evicts:
+  // the first one from the hand on that has not been referenced. Every referenced
+  // slot the hand passes loses its mark, so a second sweep always finds one.
+  // EFFECT: unmarks slots and moves the bucket's hand past the evicted one
+  int evict(int start) {
+    int bucket = start / WAYS;
+    int hand = this.hands[bucket] & (WAYS - 1);
+    while (this.referenced[start + hand]) {
+      this.referenced[start + hand] = false;
+      hand = (hand + 1) & (WAYS - 1);
+    }
+    this.hands[bucket] = (byte) ((hand + 1) & (WAYS - 1));
+    return start + hand;
+  }
+
+  // The number of slots in the table
+  int capacity() {
+    return this.values.length();
+  }
+
+  // The number of slots in use, found by looking at every slot
+  int size() {
+    int size = 0;
+    for (int slot = 0; slot < this.values.length(); slot++) {
+      if (this.values.get(slot) != 0) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  // Empties the table
+  // EFFECT: clears every slot
+  void clear() {
+    for (int slot = 0; slot < this.values.length(); slot++) {
+      this.values.set(slot, 0);
+      this.checks.set(slot, 0);
+      this.referenced[slot] = false;
+    }
+  }
+}
+
+// Puts and gets hashes on a shared table as fast as it can, counting the values it
+// gets that were not stored for their hash. Every hash's value is the hash shifted
+// right by one, so any value can be checked.
+class TableWorker implements Runnable {
+  TranspositionTable table;
+  int offset;
+  int wrong;
+
+  TableWorker(TranspositionTable table, int offset) {
+    this.table = table;
+    this.offset = offset;
+  }
+
+  public void run() {
+    for (long n = this.offset; n < 200000; n++) {
+      long hash = BoardGenerator.mix(n % 4096);
+      this.table.put(hash, hash >>> 1);
+      long other = BoardGenerator.mix((n * 7) % 4096);
+      long value = this.table.get(other);
+      if (value != TranspositionTable.MISSING && value != other >>> 1) {
+        this.wrong++;
+      }
+    }
+  }
+}
+
+// Examples of transposition tables
+class ExamplesTranspositionTable {
+
+  // tests the constructor and capacity method
+  void testCapacity(Tester t) {
+    t.checkExpect(new TranspositionTable(16).capacity(), 16);
+    t.checkExpect(new TranspositionTable(17).capacity(), 32);
+    t.checkExpect(new TranspositionTable(1).capacity(), 4);
+    t.checkExpect(new TranspositionTable(1000).bucketMask, 255);
+  }
+
+  // tests the get, put, size and clear methods
+  void testGetPut(Tester t) {
+    TranspositionTable table = new TranspositionTable(64);
+
+    t.checkExpect(table.get(42L), TranspositionTable.MISSING);
+    table.put(42L, 7L);
+    table.put(-5L, 0L);
+    t.checkExpect(table.get(42L), 7L);
+    t.checkExpect(table.get(-5L), 0L);
+    t.checkExpect(table.size(), 2);
+
+    // A hash is stored once, however often it is put
+    table.put(42L, 9L);
+    t.checkExpect(table.get(42L), 9L);
+    t.checkExpect(table.size(), 2);
+
+    t.checkException(new IllegalArgumentException("Values must not be negative"),
+        table, "put", 1L, -1L);
+
+    table.clear();
+    t.checkExpect(table.get(42L), TranspositionTable.MISSING);
+    t.checkExpect(table.size(), 0);
+  }
+
+  // tests that a slot whose two words disagree, as after two threads wrote it at
+  // once, is a miss
+  void testTornSlot(Tester t) {
+    TranspositionTable table = new TranspositionTable(4);
+    table.put(3L, 10L);
+    table.values.set(0, 11L | TranspositionTable.PRESENT);
+
+    t.checkExpect(table.get(3L), TranspositionTable.MISSING);
+  }
+
+  // tests the evict method: a full bucket evicts the slots not hit since the
+  // hand last passed
+  void testEvict(Tester t) {
+    // One bucket, so every hash shares it
+    TranspositionTable table = new TranspositionTable(4);
+    for (long hash = 1; hash <= 4; hash++) {
+      table.put(hash, hash * 10);
+    }
+    table.get(1L);
+    table.get(2L);
+
+    // The hand passes 1 and 2, which were hit, and evicts 3
+    table.put(5L, 50L);
+    t.checkExpect(table.get(3L), TranspositionTable.MISSING);
+    t.checkExpect(table.get(1L), 10L);
+    t.checkExpect(table.get(5L), 50L);
+    t.checkExpect(table.hands[0], (byte) 3);
+
+    // 4 is next, never having been hit
+    table.put(6L, 60L);
+    t.checkExpect(table.get(4L), TranspositionTable.MISSING);
+    t.checkExpect(table.size(), 4);
+
+    // Once every slot is referenced, a full sweep clears them and evicts where the
+    // hand started
+    table.get(1L);
+    table.get(2L);
+    table.get(5L);
+    table.get(6L);
+    table.put(7L, 70L);
+    t.checkExpect(table.get(1L), TranspositionTable.MISSING);
+    t.checkExpect(table.get(7L), 70L);
+  }
+
+  // tests that threads sharing a table never read a value stored for another hash
+  void testShared(Tester t) throws InterruptedException {
+    TranspositionTable table = new TranspositionTable(256);
+    ArrayList<TableWorker> workers = new ArrayList<TableWorker>();
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 4; i++) {
+      TableWorker worker = new TableWorker(table, i);
+      Thread thread = new Thread(worker);
+      workers.add(worker);
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    for (TableWorker worker : workers) {
+      t.checkExpect(worker.wrong, 0);
+    }
+    t.checkExpect(table.size(), 256);
+  }
+
+}
@@ -0,0 +1,190 @@
+import tester.Tester;
+
+// The part of a board the world shows: a window of columnsShown x rowsShown cells
+// whose top left cell is (firstColumn, firstRow). Zoom level 0 shows the whole
+// board, and every level in shows half as many cells a side, down to MIN_SPAN.
+// The window always stays on the board, so panning past an edge stops at it.
+class Viewport {
+  // the fewest cells shown along a side when zoomed in all the way
+  static final int MIN_SPAN = 8;
+
+  // the number of columns and rows of the board
+  int boardWidth;
+  int boardHeight;
+
+  // how many times the window has been halved from the whole board
+  int zoom;
+
+  // the top left cell shown
+  int firstColumn;
+  int firstRow;
+
+  // A view of the whole of a board of the given size
+  Viewport(int boardWidth, int boardHeight) {
+    this.boardWidth = boardWidth;
+    this.boardHeight = boardHeight;
+  }
+
+  // The most cells shown along either side: the longer side of the board, halved
+  // once for every zoom level
+  int span() {
+    return Math.max(Math.max(this.boardWidth, this.boardHeight) >> this.zoom, 1);
+  }
+
+  // The number of columns shown
+  int columnsShown() {
+    return Math.min(this.boardWidth, this.span());
+  }
+
+  // The number of rows shown
+  int rowsShown() {
+    return Math.min(this.boardHeight, this.span());
+  }
+
+  // Whether the next zoom level in would still show MIN_SPAN cells a side
+  boolean canZoomIn() {
+    return this.span() / 2 >= MIN_SPAN;
+  }
+
+  // Zooms in one level, centered on the given cell, and returns whether it could
+  // EFFECT: may change the zoom and the window
+  boolean zoomIn(int column, int row) {
+    if (!this.canZoomIn()) {
+      return false;
+    }
+    this.zoom++;
+    this.centerOn(column, row);
+    return true;
+  }
+
+  // Zooms out one level around the middle of the window, and returns whether it
+  // could
+  // EFFECT: may change the zoom and the window
+  boolean zoomOut() {
+    if (this.zoom == 0) {
+      return false;
+    }
+    int column = this.firstColumn + this.columnsShown() / 2;
+    int row = this.firstRow + this.rowsShown() / 2;
+    this.zoom--;
+    this.centerOn(column, row);
+    return true;
+  }
+
+  // Shows the whole board again, and returns whether that changed the window
+  // EFFECT: may reset the zoom and the window
+  boolean showAll() {
+    if (this.zoom == 0) {
+      return false;
+    }
+    this.zoom = 0;
+    this.firstColumn = 0;
+    this.firstRow = 0;
+    return true;
+  }
+
+  // Moves the window by the given number of steps right and down, where a step is a
+  // quarter of the window, and returns whether it moved
+  // EFFECT: may change the window
+  boolean pan(int right, int down) {
+    int column = this.firstColumn;
+    int row = this.firstRow;
+    this.firstColumn += right * Math.max(this.columnsShown() / 4, 1);
+    this.firstRow += down * Math.max(this.rowsShown() / 4, 1);
+    this.clamp();
+    return column != this.firstColumn || row != this.firstRow;
+  }
+
+  // Puts the given cell in the middle of the window, as nearly as the edges allow
+  // EFFECT: changes the window
+  void centerOn(int column, int row) {
+    this.firstColumn = column - this.columnsShown() / 2;
+    this.firstRow = row - this.rowsShown() / 2;
+    this.clamp();
+  }
+
+  // Moves the window back onto the board
+  // EFFECT: may change the window
+  void clamp() {
+    this.firstColumn = Math.max(0, Math.min(this.firstColumn,
+        this.boardWidth - this.columnsShown()));
+    this.firstRow = Math.max(0, Math.min(this.firstRow, this.boardHeight - this.rowsShown()));
+  }
+}
+
+// Examples of viewports
+class ExamplesViewport {
+
+  // tests the span, columnsShown, rowsShown and canZoomIn methods
+  void testShown(Tester t) {
+    Viewport view = new Viewport(1000, 40);
+    t.checkExpect(view.span(), 1000);
+    t.checkExpect(view.columnsShown(), 1000);
+    t.checkExpect(view.rowsShown(), 40);
+
+    view.zoom = 5;
+    t.checkExpect(view.span(), 31);
+    t.checkExpect(view.columnsShown(), 31);
+    t.checkExpect(view.rowsShown(), 31);
+    t.checkExpect(view.canZoomIn(), true);
+    view.zoom = 6;
+    t.checkExpect(view.span(), 15);
+    t.checkExpect(view.canZoomIn(), false);
+
+    t.checkExpect(new Viewport(15, 15).canZoomIn(), false);
+    t.checkExpect(new Viewport(16, 16).canZoomIn(), true);
+  }
+
+  // tests the zoomIn, zoomOut and showAll methods
+  void testZoom(Tester t) {
+    Viewport view = new Viewport(100, 100);
+    t.checkExpect(view.zoomOut(), false);
+
+    t.checkExpect(view.zoomIn(50, 50), true);
+    t.checkExpect(view.columnsShown(), 50);
+    t.checkExpect(view.firstColumn, 25);
+    t.checkExpect(view.firstRow, 25);
+
+    // Zooming in near a corner keeps the window on the board
+    t.checkExpect(view.zoomIn(95, 2), true);
+    t.checkExpect(view.columnsShown(), 25);
+    t.checkExpect(view.firstColumn, 75);
+    t.checkExpect(view.firstRow, 0);
+
+    t.checkExpect(view.zoomIn(50, 50), true);
+    t.checkExpect(view.zoomIn(50, 50), false);
+    t.checkExpect(view.zoom, 3);
+
+    // Zooming out keeps the middle of the window where it was
+    t.checkExpect(view.zoomOut(), true);
+    t.checkExpect(view.columnsShown(), 25);
+    t.checkExpect(view.firstColumn, 38);
+
+    t.checkExpect(view.showAll(), true);
+    t.checkExpect(view.firstColumn, 0);
+    t.checkExpect(view.columnsShown(), 100);
+    t.checkExpect(view.showAll(), false);
+  }
+
+  // tests the pan, centerOn and clamp methods
+  void testPan(Tester t) {
+    Viewport view = new Viewport(100, 60);
+    t.checkExpect(view.pan(1, 1), false);
+
+    view.zoomIn(0, 0);
+    t.checkExpect(view.firstColumn, 0);
+    t.checkExpect(view.pan(1, 0), true);
+    t.checkExpect(view.firstColumn, 12);
+    t.checkExpect(view.pan(0, 1), true);
+    t.checkExpect(view.firstRow, 10);
+    t.checkExpect(view.pan(0, 1), false);
+    t.checkExpect(view.pan(-5, -5), true);
+    t.checkExpect(view.firstColumn, 0);
+    t.checkExpect(view.firstRow, 0);
+
+    view.centerOn(99, 59);
+    t.checkExpect(view.firstColumn, 50);
+    t.checkExpect(view.firstRow, 10);
+  }
+
+}
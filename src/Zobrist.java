@@ -0,0 +1,125 @@
+import java.util.Random;
+import tester.Tester;
+
+// Zobrist keys for the state of a game: a 64-bit key for every cell and every
+// color, so a state hashes to the XOR of the keys of its flooded cells, the key of
+// its flood color and the fingerprint of its board's colors. Absorbing a cell only
+// XORs in its key, so engines keep the hash up to date as they flood, and the
+// flooded regions of a RegionGraph hash the same way from the XOR of their cells'
+// keys. Keys are splitmix64 draws worked out from the cell or color index rather
+// than a table, so boards of any size have them.
+class Zobrist {
+  // the multiplier that spreads color indexes apart before they are mixed, another
+  // one than cell keys use, so colors draw their keys from a sequence of their own
+  static final long COLOR_GAMMA = 0xD1B54A32D192ED03L;
+
+  // The key of the given cell index
+  static long cellKey(int cell) {
+    return BoardGenerator.mix((cell + 1L) * BoardGenerator.GAMMA);
+  }
+
+  // The key of the given palette index as the flood color
+  static long colorKey(int color) {
+    return BoardGenerator.mix((color + 1L) * COLOR_GAMMA);
+  }
+
+  // The hash of a state from the fingerprint of its board, the XOR of the keys of
+  // its flooded cells, and its flood color
+  static long stateHash(long boardKey, long floodedHash, int floodColor) {
+    return boardKey ^ floodedHash ^ colorKey(floodColor);
+  }
+
+  // The XOR of the keys of every flooded cell of the given board, found by looking
+  // at every cell; engines keep this up to date one cell at a time instead
+  static long floodedHash(Board board) {
+    long hash = 0;
+    int cellCount = board.width() * board.height();
+    for (int i = 0; i < cellCount; i++) {
+      if (board.isFlooded(i)) {
+        hash ^= cellKey(i);
+      }
+    }
+    return hash;
+  }
+}
+
+// Examples of Zobrist keys
+class ExamplesZobrist {
+
+  // tests the cellKey and colorKey methods
+  void testKeys(Tester t) {
+    t.checkExpect(Zobrist.cellKey(0), BoardGenerator.mix(BoardGenerator.GAMMA));
+    t.checkExpect(Zobrist.cellKey(0) == Zobrist.cellKey(1), false);
+    t.checkExpect(Zobrist.colorKey(0) == Zobrist.colorKey(1), false);
+
+    boolean distinct = true;
+    for (int cell = 0; cell < 4096; cell++) {
+      for (int color = 0; color < Palette.SIZE; color++) {
+        distinct = distinct && Zobrist.cellKey(cell) != Zobrist.colorKey(color);
+      }
+    }
+    t.checkExpect(distinct, true);
+  }
+
+  // tests the floodedHash and stateHash methods
+  void testStateHash(Tester t) {
+    PackedBoard board = new PackedBoard(3, 2);
+    t.checkExpect(Zobrist.floodedHash(board), 0L);
+    board.flood(0);
+    board.flood(4);
+    t.checkExpect(Zobrist.floodedHash(board), Zobrist.cellKey(0) ^ Zobrist.cellKey(4));
+
+    long hash = Zobrist.stateHash(7L, Zobrist.floodedHash(board), 2);
+    t.checkExpect(hash ^ Zobrist.colorKey(2) ^ Zobrist.colorKey(3),
+        Zobrist.stateHash(7L, Zobrist.floodedHash(board), 3));
+  }
+
+  // tests that every engine keeps the same hash as looking at every cell, move for
+  // move, and that two orders of moves reaching one state hash the same
+  void testEnginesMatch(Tester t) {
+    boolean same = true;
+    for (int seed = 0; seed < 10; seed++) {
+      PackedBoard[] boards = new PackedBoard[3];
+      FloodGame[] games = new FloodGame[3];
+      for (int i = 0; i < 3; i++) {
+        boards[i] = BoardGenerator.generate(seed, 10, 4);
+      }
+      games[0] = new FloodGame(boards[0], new FrontierEngine(boards[0]),
+          BoardGenerator.CANONICAL, 0);
+      games[1] = new FloodGame(boards[1], new RegionEngine(boards[1]),
+          BoardGenerator.CANONICAL, 0);
+      games[2] = new FloodGame(boards[2], new BitboardEngine(boards[2]),
+          BoardGenerator.CANONICAL, 0);
+      Random moves = new Random(seed);
+      while (!games[0].isWon()) {
+        int color = moves.nextInt(4);
+        for (FloodGame game : games) {
+          game.play(color);
+          same = same && game.engine.floodedHash() == Zobrist.floodedHash(game.board)
+              && game.stateHash() == games[0].stateHash();
+        }
+      }
+    }
+    t.checkExpect(same, true);
+
+    // 2 columns, 2 rows: 0 1 / 2 3. Playing 1 then 2 floods the same cells as 2
+    // then 1, in another color, and 3 after either floods the board in 3.
+    PackedBoard board = new PackedBoard(2, 2);
+    for (int i = 0; i < 4; i++) {
+      board.setColor(i, i);
+    }
+    FloodGame oneFirst = new FloodGame(board, BoardGenerator.CANONICAL, 9);
+    FloodGame twoFirst = oneFirst.snapshot();
+    t.checkExpect(twoFirst.stateHash(), oneFirst.stateHash());
+    oneFirst.play(1);
+    oneFirst.play(2);
+    twoFirst.play(2);
+    twoFirst.play(1);
+    t.checkExpect(oneFirst.stateHash() ^ twoFirst.stateHash(),
+        Zobrist.colorKey(1) ^ Zobrist.colorKey(2));
+    oneFirst.play(3);
+    twoFirst.play(3);
+    t.checkExpect(oneFirst.stateHash(), twoFirst.stateHash());
+  }
+
+}